@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.DeliveryStatus;
+import com.sinch.xms.api.MtBatchResult;
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import com.sinch.xms.api.MtBatchTextSmsResult;
+import com.sinch.xms.api.RecipientDeliveryReport;
+import com.sinch.xms.api.RecipientDeliveryReportSms;
+import com.sinch.xms.api.ReportType;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Compares the default and accelerated modes of {@link ApiObjectMapper}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AcceleratedJsonBenchmark {
+
+  @Param({"false", "true"})
+  public boolean accelerated;
+
+  private JsonCodecs codecs;
+
+  private MtBatchTextSmsCreate create;
+
+  private byte[] result;
+
+  private byte[] report;
+
+  @Setup
+  public void setup() throws IOException {
+    ApiObjectMapper json = new ApiObjectMapper(false, accelerated);
+    codecs = new JsonCodecs(json);
+
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    create =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("46701234567", "46701234568", "46701234569")
+            .body("Your verification code is 123456")
+            .deliveryReport(ReportType.PER_RECIPIENT)
+            .expireAt(time)
+            .clientReference("ref-1")
+            .build();
+
+    result =
+        json.writeValueAsBytes(
+            MtBatchTextSmsResult.builder()
+                .flashMessage(false)
+                .feedbackEnabled(false)
+                .deliveryReport(ReportType.NONE)
+                .sender("12345")
+                .addRecipient("46701234567", "46701234568", "46701234569")
+                .body("Your verification code is 123456")
+                .canceled(false)
+                .id(BatchId.of("4nQCc1T6Dg"))
+                .createdAt(time)
+                .modifiedAt(time)
+                .build());
+
+    report =
+        json.writeValueAsBytes(
+            RecipientDeliveryReportSms.builder()
+                .batchId(BatchId.of("4nQCc1T6Dg"))
+                .recipient("46701234567")
+                .code(0)
+                .status(DeliveryStatus.DELIVERED)
+                .at(time)
+                .operatorStatusAt(time)
+                .clientReference("ref-1")
+                .build());
+  }
+
+  @Benchmark
+  public byte[] writeTextBatch() throws IOException {
+    return codecs.writer(create.getClass()).writeValueAsBytes(create);
+  }
+
+  @Benchmark
+  public MtBatchResult readTextBatchResult() throws IOException {
+    return codecs.reader(MtBatchResult.class).readValue(result);
+  }
+
+  @Benchmark
+  public RecipientDeliveryReport readDeliveryReport() throws IOException {
+    return codecs.reader(RecipientDeliveryReport.class).readValue(report);
+  }
+}
@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.MtBatchResult;
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import com.sinch.xms.api.MtBatchTextSmsResult;
+import com.sinch.xms.api.ReportType;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares reading and writing API objects through the object mapper with doing so through the
+ * cached readers and writers of {@link JsonCodecs}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonCodecsBenchmark {
+
+  private ApiObjectMapper json;
+
+  private JsonCodecs codecs;
+
+  private MtBatchTextSmsCreate create;
+
+  private byte[] result;
+
+  @Setup
+  public void setup() throws IOException {
+    json = new ApiObjectMapper(false);
+    codecs = new JsonCodecs(json);
+
+    create =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("46701234567", "46701234568", "46701234569")
+            .body("Your verification code is 123456")
+            .clientReference("ref-1")
+            .build();
+
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    result =
+        json.writeValueAsBytes(
+            MtBatchTextSmsResult.builder()
+                .flashMessage(false)
+                .feedbackEnabled(false)
+                .deliveryReport(ReportType.NONE)
+                .sender("12345")
+                .addRecipient("46701234567", "46701234568", "46701234569")
+                .body("Your verification code is 123456")
+                .canceled(false)
+                .id(BatchId.of("4nQCc1T6Dg"))
+                .createdAt(time)
+                .modifiedAt(time)
+                .build());
+  }
+
+  @Benchmark
+  public MtBatchResult readWithMapper() throws IOException {
+    return json.readValue(result, MtBatchResult.class);
+  }
+
+  @Benchmark
+  public MtBatchResult readWithCachedReader() throws IOException {
+    ObjectReader reader = codecs.reader(MtBatchResult.class);
+    return reader.readValue(result);
+  }
+
+  @Benchmark
+  public byte[] writeWithMapper() throws IOException {
+    return json.writeValueAsBytes(create);
+  }
+
+  @Benchmark
+  public byte[] writeWithCachedWriter() throws IOException {
+    ObjectWriter writer = codecs.writer(create.getClass());
+    return writer.writeValueAsBytes(create);
+  }
+}
@@ -20,9 +20,9 @@
 package com.sinch.xms;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.sinch.xms.api.BatchDeliveryReport;
 import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.CompactRecipientsModule;
 import com.sinch.xms.api.FeedbackDeliveryCreate;
 import com.sinch.xms.api.GroupCreate;
 import com.sinch.xms.api.GroupId;
@@ -32,6 +32,7 @@ import com.sinch.xms.api.MoSms;
 import com.sinch.xms.api.MtBatchBinarySmsCreate;
 import com.sinch.xms.api.MtBatchBinarySmsResult;
 import com.sinch.xms.api.MtBatchBinarySmsUpdate;
+import com.sinch.xms.api.MtBatchCreate;
 import com.sinch.xms.api.MtBatchDryRunResult;
 import com.sinch.xms.api.MtBatchMmsCreate;
 import com.sinch.xms.api.MtBatchMmsResult;
@@ -41,6 +42,7 @@ import com.sinch.xms.api.MtBatchSmsCreate;
 import com.sinch.xms.api.MtBatchTextSmsCreate;
 import com.sinch.xms.api.MtBatchTextSmsResult;
 import com.sinch.xms.api.MtBatchTextSmsUpdate;
+import com.sinch.xms.api.MtBatchUpdate;
 import com.sinch.xms.api.Page;
 import com.sinch.xms.api.PagedBatchResult;
 import com.sinch.xms.api.PagedDeliveryReportResult;
@@ -53,13 +55,20 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
@@ -76,7 +85,6 @@ import org.apache.http.entity.ContentType;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.nio.client.HttpAsyncClient;
 import org.apache.http.nio.protocol.BasicAsyncRequestProducer;
-import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
 import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
 import org.immutables.value.Value;
 import org.slf4j.Logger;
@@ -151,16 +159,57 @@ public abstract class ApiConnection implements Closeable {
   /** The default endpoint of this API connection. */
   public static final URI DEFAULT_ENDPOINT = URI.create("https://us.sms.api.sinch.com/xms");
 
-  /** A Jackson object mapper. */
-  private final ApiObjectMapper json;
+  /**
+   * State shared by a connection and the connections derived from it using {@link
+   * #withDeadline(Duration)}. The state is created lazily from the original connection, the owner.
+   */
+  static final class Shared {
+
+    private final ApiConnection owner;
+
+    private JsonCodecs codecs;
+
+    private CallbackWrapper callbackWrapper;
+
+    private Shared(ApiConnection owner) {
+      this.owner = owner;
+    }
+
+    synchronized JsonCodecs codecs() {
+      if (codecs == null) {
+        ApiObjectMapper mapper =
+            new ApiObjectMapper(owner.prettyPrintJson(), owner.acceleratedJson());
+
+        if (owner.compactRecipients()) {
+          mapper.registerModule(new CompactRecipientsModule());
+        }
+
+        codecs = new JsonCodecs(mapper);
+      }
+
+      return codecs;
+    }
+
+    synchronized CallbackWrapper callbackWrapper() {
+      if (callbackWrapper == null) {
+        Executor executor = owner.callbackExecutor();
+
+        if (executor == null) {
+          callbackWrapper = owner.callbackWrapper();
+        } else {
+          callbackWrapper = new ExecutorCallbackWrapper(executor, owner.callbackWrapper());
+        }
+      }
+
+      return callbackWrapper;
+    }
+  }
 
   /**
    * Constructor of API connections. This only has package visibility since users of the SDK are not
    * expected to inherit from this class.
    */
-  ApiConnection() {
-    json = new ApiObjectMapper();
-  }
+  ApiConnection() {}
 
   /**
    * Returns a fresh builder of API connections.
@@ -174,6 +223,11 @@ public abstract class ApiConnection implements Closeable {
 
   /** Starts up this API connection. This must be called before performing any API calls. */
   public void start() {
+    if (isDerived()) {
+      log.debug("Not starting API connection since it is derived from another connection");
+      return;
+    }
+
     log.debug("Starting API connection: {}", this);
 
     if (httpClient() instanceof ApiHttpAsyncClient) {
@@ -187,12 +241,18 @@ public abstract class ApiConnection implements Closeable {
    * Closes this API connection and releases associated resources.
    *
    * <p>Note, this will <em>not</em> shut down the HTTP client if the API connection was initialized
-   * with a custom {@link HttpAsyncClient http client}.
+   * with a custom {@link HttpAsyncClient http client}. Closing a connection created using {@link
+   * #withDeadline(Duration)} has no effect, the original connection must be closed instead.
    *
    * @see java.io.Closeable#close()
    */
   @Override
   public void close() throws IOException {
+    if (isDerived()) {
+      log.debug("Not closing API connection since it is derived from another connection");
+      return;
+    }
+
     log.debug("Closing API connection: {}", this);
 
     HttpAsyncClient c = httpClient();
@@ -228,6 +288,35 @@ public abstract class ApiConnection implements Closeable {
     return false;
   }
 
+  /**
+   * Whether JSON should be serialized and deserialized in accelerated mode. In this mode
+   * hand-written codecs are used for the most frequently exchanged objects, such as text batches
+   * and recipient delivery reports, and if <code>jackson-module-blackbird</code> is available on
+   * the class path then it is used for the remaining objects. Default is to <i>not</i> use
+   * accelerated mode.
+   *
+   * @return true if accelerated mode is enabled; false otherwise
+   * @see ApiObjectMapper#ApiObjectMapper(boolean, boolean)
+   */
+  @Value.Default
+  public boolean acceleratedJson() {
+    return false;
+  }
+
+  /**
+   * Whether the recipients of fetched batch delivery reports should be stored compactly. This
+   * considerably reduces the memory held by full delivery reports of large batches, at the cost of
+   * creating the recipient strings each time they are accessed. Default is to <i>not</i> store
+   * recipients compactly.
+   *
+   * @return true if compact recipients are enabled; false otherwise
+   * @see CompactRecipientsModule
+   */
+  @Value.Default
+  public boolean compactRecipients() {
+    return false;
+  }
+
   /**
    * The HTTP client used by this connection. The default client is a minimal one that does not
    * support, for example, authentication or redirects.
@@ -256,6 +345,213 @@ public abstract class ApiConnection implements Closeable {
     return CallbackWrapper.exceptionDropper;
   }
 
+  /**
+   * The executor on which to run callbacks of asynchronous API calls. By default this is <code>null
+   * </code>, meaning that callbacks are run directly on the I/O dispatcher thread of the HTTP
+   * client.
+   *
+   * <p>When set, completions are handed off to this executor after being wrapped by {@link
+   * #callbackWrapper()}. This isolates the HTTP client from slow callbacks, at the cost of a thread
+   * hand-off per request. Any executor may be used, for example a thread pool or, on JVMs
+   * supporting it, a virtual thread per task executor. The executor is not shut down when this
+   * connection is closed.
+   *
+   * <p>The hand-off queue can be monitored through {@link #callbackDispatcher()}.
+   *
+   * @return an executor or <code>null</code> to run callbacks on the I/O thread
+   */
+  @Nullable
+  public abstract Executor callbackExecutor();
+
+  /**
+   * The callback wrapper that is applied to callbacks given to API calls. This is {@link
+   * #callbackWrapper()} optionally followed by a hand-off to {@link #callbackExecutor()}.
+   *
+   * @return a non-null callback wrapper
+   */
+  @Value.Lazy
+  CallbackWrapper effectiveCallbackWrapper() {
+    return shared.callbackWrapper();
+  }
+
+  /**
+   * The callback dispatcher of this connection, if callbacks are dispatched onto an executor. The
+   * returned object provides metrics on the depth of the callback hand-off queue.
+   *
+   * @return the callback dispatcher or <code>null</code> if callbacks run on the I/O thread
+   */
+  @Nullable
+  public ExecutorCallbackWrapper callbackDispatcher() {
+    CallbackWrapper wrapper = effectiveCallbackWrapper();
+
+    if (wrapper instanceof ExecutorCallbackWrapper) {
+      return (ExecutorCallbackWrapper) wrapper;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * The rate limiter metering requests made through this connection. By default this is <code>null
+   * </code>, meaning that requests are not rate limited.
+   *
+   * <p>All requests count towards the request rate, batch creation and replacement also count their
+   * recipients towards the recipient rate. Since the permitted throughput is a property of the
+   * service plan, connections using the same {@link #servicePlanId()} should share a single rate
+   * limiter.
+   *
+   * @return a rate limiter or <code>null</code> if requests are not rate limited
+   */
+  @Nullable
+  public abstract RateLimiter rateLimiter();
+
+  /**
+   * The policy for retrying failed requests. By default this is <code>null</code>, meaning that
+   * failed requests are not retried.
+   *
+   * <p>Only idempotent requests are retried, that is, all requests except batch creations lacking a
+   * client reference, batch, group, and tag updates, delivery feedback, and group creations. A
+   * retried request completes with the outcome of its last attempt.
+   *
+   * @return a retry policy or <code>null</code> if requests are not retried
+   */
+  @Nullable
+  public abstract RetryPolicy retryPolicy();
+
+  /**
+   * The circuit breaker guarding requests made through this connection. By default this is <code>
+   * null</code>, meaning that requests are always sent.
+   *
+   * <p>While the breaker is open requests fail immediately with a {@link
+   * CircuitBreakerOpenException}. Retries of failed requests are also subject to the breaker.
+   *
+   * @return a circuit breaker or <code>null</code> if no circuit breaker is used
+   */
+  @Nullable
+  public abstract CircuitBreaker circuitBreaker();
+
+  /**
+   * The pool of buffers into which response bodies are read. By default each connection has a pool
+   * of its own, holding at most 4 MiB of buffers. A pool may be shared among several connections.
+   *
+   * @return a non-null buffer pool
+   */
+  @Value.Default
+  public ResponseBufferPool responseBufferPool() {
+    return ResponseBufferPool.builder().build();
+  }
+
+  /**
+   * The number of recipients or group members from which request bodies are streamed. Requests
+   * holding fewer are serialized in full before being sent, while larger requests are encoded a
+   * chunk at a time as they are sent, using chunked transfer encoding. This bounds the memory used
+   * for encoding and lets the first bytes reach the wire sooner. Default is 1000.
+   *
+   * @return a non-negative number of recipients or members
+   */
+  @Value.Default
+  public int streamingThreshold() {
+    return 1000;
+  }
+
+  /**
+   * The deadline of each API call made through this connection. By default this is <code>null
+   * </code>, meaning that calls may take arbitrarily long, subject only to the timeouts of the HTTP
+   * client.
+   *
+   * <p>The deadline covers the whole call, including any delay imposed by the rate limiter and any
+   * retries. When the deadline expires the call fails with a {@link DeadlineExceededException} and
+   * the HTTP exchange in progress is aborted, releasing its connection back to the pool. For paged
+   * fetches the deadline applies to each page individually.
+   *
+   * <p>A call failing because its deadline expired is completed on the {@link #callbackExecutor()
+   * callback executor} or, if there is none, by the default asynchronous execution facility of
+   * {@link CompletableFuture}, normally {@link java.util.concurrent.ForkJoinPool#commonPool()}. The
+   * same holds for calls failing when a send delayed by the rate limiter or the retry policy is
+   * attempted. Other calls are completed on the I/O dispatcher thread of the HTTP client, or on the
+   * calling thread if they fail before being sent.
+   *
+   * @return a deadline or <code>null</code> if calls have no deadline
+   * @see #withDeadline(Duration)
+   */
+  @Nullable
+  public abstract Duration deadline();
+
+  /**
+   * Returns a connection that performs its API calls using the given deadline but otherwise is
+   * identical to this connection. The returned connection shares the HTTP client, callback
+   * dispatcher, rate limiter, retry policy, and circuit breaker of this connection. It need not be
+   * started nor closed, it is usable for as long as this connection is open.
+   *
+   * <p>For example, to fetch a batch within 500 milliseconds
+   *
+   * <pre>
+   * conn.withDeadline(Duration.ofMillis(500)).fetchBatch(batchId);
+   * </pre>
+   *
+   * Creating the returned connection is fairly cheap but for frequent use it may be kept around
+   * rather than created anew for each call.
+   *
+   * @param deadline the deadline of each call, or <code>null</code> for no deadline
+   * @return a non-null API connection
+   * @throws IllegalArgumentException if the deadline is not positive
+   */
+  @Nonnull
+  public ApiConnection withDeadline(@Nullable Duration deadline) {
+    if (deadline != null && (deadline.isNegative() || deadline.isZero())) {
+      throw new IllegalArgumentException("deadline must be positive");
+    }
+
+    DERIVING.set(shared);
+
+    try {
+      return builder().using(this).deadline(deadline).build();
+    } finally {
+      DERIVING.remove();
+    }
+  }
+
+  /**
+   * The shared state handed by {@link #withDeadline(Duration)} to the connection it is building.
+   * Connections built in any other way, including copies made using the builder, own their state.
+   */
+  private static final ThreadLocal<Shared> DERIVING = new ThreadLocal<Shared>();
+
+  /**
+   * The state used by this connection, owned by this connection unless it was derived using {@link
+   * #withDeadline(Duration)}. This is not an attribute and is therefore never copied by the
+   * builder.
+   */
+  private final Shared shared = initShared();
+
+  private Shared initShared() {
+    Shared s = DERIVING.get();
+    DERIVING.remove();
+
+    return (s == null) ? new Shared(this) : s;
+  }
+
+  /**
+   * Whether this connection was derived from another connection using {@link
+   * #withDeadline(Duration)}.
+   *
+   * @return true if derived; false if built directly
+   */
+  private boolean isDerived() {
+    return shared.owner != this;
+  }
+
+  /**
+   * The JSON readers and writers used by this connection. Connections derived using {@link
+   * #withDeadline(Duration)} share the readers and writers of the original connection.
+   *
+   * @return a non-null set of readers and writers
+   */
+  @Value.Lazy
+  JsonCodecs codecs() {
+    return shared.codecs();
+  }
+
   /**
    * The base endpoint of the XMS API. This specifies the HTTP host and base path that will be used
    * in sending requests to XMS. The URL should not contain query or fragment components.
@@ -281,7 +577,14 @@ public abstract class ApiConnection implements Closeable {
   /** Validates that this object is in a coherent state. */
   @Value.Check
   protected void check() {
-    json.configure(SerializationFeature.INDENT_OUTPUT, prettyPrintJson());
+    if (streamingThreshold() < 0) {
+      throw new IllegalStateException("streaming threshold must be non-negative");
+    }
+
+    Duration deadline = deadline();
+    if (deadline != null && (deadline.isNegative() || deadline.isZero())) {
+      throw new IllegalStateException("deadline must be positive");
+    }
 
     if (endpoint().getQuery() != null) {
       throw new IllegalStateException("base endpoint has query component");
@@ -419,7 +722,8 @@ public abstract class ApiConnection implements Closeable {
    */
   @SuppressWarnings("unchecked")
   private <T, P extends T> JsonApiAsyncConsumer<T> jsonAsyncConsumer(Class<P> clazz) {
-    return (JsonApiAsyncConsumer<T>) new JsonApiAsyncConsumer<P>(json, clazz);
+    return (JsonApiAsyncConsumer<T>)
+        new JsonApiAsyncConsumer<P>(codecs(), clazz, responseBufferPool());
   }
 
   /**
@@ -479,13 +783,54 @@ public abstract class ApiConnection implements Closeable {
   }
 
   /**
-   * Attaches an object serialized as JSON to the given request.
+   * Returns the number of recipients or group members carried by the given request object. This is
+   * used to estimate the size of the request body.
+   *
+   * @param object the request object
+   * @return a non-negative count
+   */
+  private static int payloadSize(Object object) {
+    if (object instanceof MtBatchCreate) {
+      return ((MtBatchCreate) object).recipients().size();
+    } else if (object instanceof MtBatchUpdate) {
+      MtBatchUpdate update = (MtBatchUpdate) object;
+      return sizeOf(update.recipientInsertions()) + sizeOf(update.recipientRemovals());
+    } else if (object instanceof GroupCreate) {
+      return ((GroupCreate) object).members().size();
+    } else if (object instanceof GroupUpdate) {
+      GroupUpdate update = (GroupUpdate) object;
+      return update.memberInsertions().size() + update.memberRemovals().size();
+    } else if (object instanceof FeedbackDeliveryCreate) {
+      return ((FeedbackDeliveryCreate) object).recipients().size();
+    } else {
+      return 0;
+    }
+  }
+
+  private static int sizeOf(@Nullable Collection<?> collection) {
+    return (collection == null) ? 0 : collection.size();
+  }
+
+  /**
+   * Attaches an object serialized as JSON to the given request. If the object holds at least {@link
+   * #streamingThreshold()} recipients or members then it is encoded while being sent, see {@link
+   * StreamingJsonEntity}.
    *
    * @param object the object that should be serialized and added to the request
    * @param req the request to which the headers should be added
    * @return the given request object
    */
   private <T extends HttpEntityEnclosingRequest> T withJsonContent(Object object, T req) {
+    if (payloadSize(object) >= streamingThreshold()) {
+      try {
+        req.setEntity(new StreamingJsonEntity(codecs(), object));
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+
+      return req;
+    }
+
     final byte[] content;
 
     /*
@@ -496,7 +841,7 @@ public abstract class ApiConnection implements Closeable {
      * state management.
      */
     try {
-      content = json.writeValueAsBytes(object);
+      content = codecs().writer(object.getClass()).writeValueAsBytes(object);
     } catch (JsonProcessingException e) {
       throw new IllegalStateException(e);
     }
@@ -508,6 +853,107 @@ public abstract class ApiConnection implements Closeable {
     return req;
   }
 
+  /**
+   * Executes the given request using the HTTP client of this connection. All API calls pass through
+   * this method.
+   *
+   * @param request the HTTP request
+   * @param consumer supplier of HTTP response consumers
+   * @param callback the callback to invoke on completion, may be <code>null</code>
+   * @return a future yielding the consumed response
+   * @param <T> the response type
+   */
+  private <T> Future<T> execute(
+      HttpRequest request,
+      Supplier<? extends HttpAsyncResponseConsumer<T>> consumer,
+      @Nullable FutureCallback<T> callback) {
+    return execute(request, consumer, callback, 0);
+  }
+
+  /**
+   * Executes the given request using the HTTP client of this connection. The request is retried
+   * according to the {@link #retryPolicy() retry policy} if its method is idempotent.
+   *
+   * @param request the HTTP request
+   * @param consumer supplier of HTTP response consumers
+   * @param callback the callback to invoke on completion, may be <code>null</code>
+   * @param recipients the number of batch recipients in the request
+   * @return a future yielding the consumed response
+   * @param <T> the response type
+   */
+  private <T> Future<T> execute(
+      HttpRequest request,
+      Supplier<? extends HttpAsyncResponseConsumer<T>> consumer,
+      @Nullable FutureCallback<T> callback,
+      int recipients) {
+    String method = request.getRequestLine().getMethod();
+    boolean idempotent = !"POST".equals(method);
+
+    return execute(request, consumer, callback, recipients, idempotent);
+  }
+
+  /**
+   * Executes the given request using the HTTP client of this connection. If a {@link #rateLimiter()
+   * rate limiter} is configured then the request is metered and possibly delayed or rejected. If
+   * the request is retryable and a {@link #retryPolicy() retry policy} is configured then failed
+   * attempts are retried. If a {@link #circuitBreaker() circuit breaker} is configured then each
+   * attempt must be permitted by the breaker. If a {@link #deadline() deadline} is configured then
+   * the call is aborted once the deadline expires.
+   *
+   * <p>The response consumer is supplied anew for each attempt since consumers cannot be reused.
+   *
+   * @param request the HTTP request
+   * @param consumer supplier of HTTP response consumers
+   * @param callback the callback to invoke on completion, may be <code>null</code>
+   * @param recipients the number of batch recipients in the request
+   * @param retryable whether the request may safely be sent more than once
+   * @return a future yielding the consumed response
+   * @param <T> the response type
+   */
+  private <T> Future<T> execute(
+      HttpRequest request,
+      Supplier<? extends HttpAsyncResponseConsumer<T>> consumer,
+      @Nullable FutureCallback<T> callback,
+      int recipients,
+      boolean retryable) {
+    FutureCallback<T> wrapped = effectiveCallbackWrapper().wrap(callback);
+    RateLimiter limiter = rateLimiter();
+    RetryPolicy retry = retryable ? retryPolicy() : null;
+    CircuitBreaker breaker = circuitBreaker();
+    Duration deadline = deadline();
+
+    if (limiter == null && retry == null && breaker == null && deadline == null) {
+      return httpClient()
+          .execute(new BasicAsyncRequestProducer(endpointHost(), request), consumer.get(), wrapped);
+    }
+
+    return new RequestExecution<T>(
+            httpClient(),
+            endpointHost(),
+            request,
+            consumer,
+            wrapped,
+            limiter,
+            recipients,
+            retry,
+            breaker,
+            deadline,
+            callbackExecutor())
+        .start();
+  }
+
+  /**
+   * Adapts a callback based API call into a completable future. The given function is called with a
+   * callback that completes the returned future and should issue the API call.
+   *
+   * @param call function that issues an API call using the given callback
+   * @return a completable future that completes with the API call
+   * @param <T> the response type
+   */
+  private static <T> CompletableFuture<T> completable(Function<FutureCallback<T>, Future<T>> call) {
+    return CompletableFutureCallback.adapt(call);
+  }
+
   /**
    * Creates the given batch and schedules it for submission. If {@link
    * MtBatchTextSmsCreate#sendAt()} returns <code>null</code> then the batch submission will begin
@@ -544,12 +990,27 @@ public abstract class ApiConnection implements Closeable {
       MtBatchTextSmsCreate sms, FutureCallback<MtBatchTextSmsResult> callback) {
     HttpPost req = post(batchesEndpoint(), sms);
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchTextSmsResult> responseConsumer =
-        jsonAsyncConsumer(MtBatchTextSmsResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchTextSmsResult>> responseConsumer =
+        () -> jsonAsyncConsumer(MtBatchTextSmsResult.class);
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+    return execute(
+        req, responseConsumer, callback, sms.recipients().size(), sms.clientReference() != null);
+  }
+
+  /**
+   * Asynchronously creates the given text batch and schedules it for submission. If {@link
+   * MtBatchTextSmsCreate#sendAt()} returns <code>null</code> then the batch submission will begin
+   * immediately.
+   *
+   * <p>This is equivalent to {@link #createBatchAsync(MtBatchTextSmsCreate, FutureCallback)} but
+   * the result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param sms the batch to create
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchTextSmsResult> createBatchAsync(MtBatchTextSmsCreate sms) {
+    return completable(callback -> createBatchAsync(sms, callback));
   }
 
   /**
@@ -588,12 +1049,27 @@ public abstract class ApiConnection implements Closeable {
       MtBatchBinarySmsCreate sms, FutureCallback<MtBatchBinarySmsResult> callback) {
     HttpPost req = post(batchesEndpoint(), sms);
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchBinarySmsResult> responseConsumer =
-        jsonAsyncConsumer(MtBatchBinarySmsResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchBinarySmsResult>> responseConsumer =
+        () -> jsonAsyncConsumer(MtBatchBinarySmsResult.class);
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+    return execute(
+        req, responseConsumer, callback, sms.recipients().size(), sms.clientReference() != null);
+  }
+
+  /**
+   * Asynchronously creates the given binary batch and schedules it for submission. If {@link
+   * MtBatchBinarySmsCreate#sendAt()} returns <code>null</code> then the batch submission will begin
+   * immediately.
+   *
+   * <p>This is equivalent to {@link #createBatchAsync(MtBatchBinarySmsCreate, FutureCallback)} but
+   * the result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param sms the batch to create
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchBinarySmsResult> createBatchAsync(MtBatchBinarySmsCreate sms) {
+    return completable(callback -> createBatchAsync(sms, callback));
   }
 
   /**
@@ -631,12 +1107,27 @@ public abstract class ApiConnection implements Closeable {
       MtBatchMmsCreate mms, FutureCallback<MtBatchMmsResult> callback) {
     HttpPost req = post(batchesEndpoint(), mms);
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchMmsResult> responseConsumer =
-        jsonAsyncConsumer(MtBatchMmsResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchMmsResult>> responseConsumer =
+        () -> jsonAsyncConsumer(MtBatchMmsResult.class);
+
+    return execute(
+        req, responseConsumer, callback, mms.recipients().size(), mms.clientReference() != null);
+  }
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+  /**
+   * Asynchronously creates the given mms batch and schedules it for submission. If {@link
+   * MtBatchMmsCreate#sendAt()} returns <code>null</code> then the batch submission will begin
+   * immediately.
+   *
+   * <p>This is equivalent to {@link #createBatchAsync(MtBatchMmsCreate, FutureCallback)} but the
+   * result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param mms the batch to create
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchMmsResult> createBatchAsync(MtBatchMmsCreate mms) {
+    return completable(callback -> createBatchAsync(mms, callback));
   }
 
   /**
@@ -675,12 +1166,28 @@ public abstract class ApiConnection implements Closeable {
       BatchId id, MtBatchTextSmsCreate sms, FutureCallback<MtBatchTextSmsResult> callback) {
     HttpPut req = put(batchEndpoint(id), sms);
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchTextSmsResult> responseConsumer =
-        jsonAsyncConsumer(MtBatchTextSmsResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchTextSmsResult>> responseConsumer =
+        () -> jsonAsyncConsumer(MtBatchTextSmsResult.class);
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+    return execute(req, responseConsumer, callback, sms.recipients().size());
+  }
+
+  /**
+   * Asynchronously replaces the batch with the given identifier. On completion, the batch will
+   * match the provided batch description.
+   *
+   * <p>This is equivalent to {@link #replaceBatchAsync(BatchId, MtBatchTextSmsCreate,
+   * FutureCallback)} but the result is provided as a {@link CompletableFuture}, which allows
+   * composition with other asynchronous operations. Cancelling the returned future also cancels the
+   * underlying request.
+   *
+   * @param id identifier of the batch to replace
+   * @param sms the new batch description
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchTextSmsResult> replaceBatchAsync(
+      BatchId id, MtBatchTextSmsCreate sms) {
+    return completable(callback -> replaceBatchAsync(id, sms, callback));
   }
 
   /**
@@ -719,12 +1226,28 @@ public abstract class ApiConnection implements Closeable {
       BatchId id, MtBatchBinarySmsCreate sms, FutureCallback<MtBatchBinarySmsResult> callback) {
     HttpPut req = put(batchEndpoint(id), sms);
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchBinarySmsResult> responseConsumer =
-        jsonAsyncConsumer(MtBatchBinarySmsResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchBinarySmsResult>> responseConsumer =
+        () -> jsonAsyncConsumer(MtBatchBinarySmsResult.class);
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+    return execute(req, responseConsumer, callback, sms.recipients().size());
+  }
+
+  /**
+   * Asynchronously replaces the batch with the given identifier. On completion, the batch will
+   * match the provided batch description.
+   *
+   * <p>This is equivalent to {@link #replaceBatchAsync(BatchId, MtBatchBinarySmsCreate,
+   * FutureCallback)} but the result is provided as a {@link CompletableFuture}, which allows
+   * composition with other asynchronous operations. Cancelling the returned future also cancels the
+   * underlying request.
+   *
+   * @param id identifier of the batch to replace
+   * @param sms the new batch description
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchBinarySmsResult> replaceBatchAsync(
+      BatchId id, MtBatchBinarySmsCreate sms) {
+    return completable(callback -> replaceBatchAsync(id, sms, callback));
   }
 
   /**
@@ -763,12 +1286,26 @@ public abstract class ApiConnection implements Closeable {
       BatchId id, MtBatchMmsCreate mms, FutureCallback<MtBatchMmsResult> callback) {
     HttpPut req = put(batchEndpoint(id), mms);
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchMmsResult> responseConsumer =
-        jsonAsyncConsumer(MtBatchMmsResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchMmsResult>> responseConsumer =
+        () -> jsonAsyncConsumer(MtBatchMmsResult.class);
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+    return execute(req, responseConsumer, callback, mms.recipients().size());
+  }
+
+  /**
+   * Asynchronously replaces the batch with the given identifier. On completion, the batch will
+   * match the provided batch description.
+   *
+   * <p>This is equivalent to {@link #replaceBatchAsync(BatchId, MtBatchMmsCreate, FutureCallback)}
+   * but the result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id identifier of the batch to replace
+   * @param mms the new batch description
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchMmsResult> replaceBatchAsync(BatchId id, MtBatchMmsCreate mms) {
+    return completable(callback -> replaceBatchAsync(id, mms, callback));
   }
 
   /**
@@ -806,11 +1343,28 @@ public abstract class ApiConnection implements Closeable {
       BatchId batchId, MtBatchTextSmsUpdate sms, FutureCallback<MtBatchTextSmsResult> callback) {
     HttpPost req = post(batchEndpoint(batchId), sms);
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchTextSmsResult> consumer =
-        jsonAsyncConsumer(MtBatchTextSmsResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchTextSmsResult>> consumer =
+        () -> jsonAsyncConsumer(MtBatchTextSmsResult.class);
+
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Asynchronously updates the text batch with the given batch ID. The batch is updated to match
+   * the given update object.
+   *
+   * <p>This is equivalent to {@link #updateBatchAsync(BatchId, MtBatchTextSmsUpdate,
+   * FutureCallback)} but the result is provided as a {@link CompletableFuture}, which allows
+   * composition with other asynchronous operations. Cancelling the returned future also cancels the
+   * underlying request.
+   *
+   * @param batchId the batch that should be updated
+   * @param sms description of the desired update
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchTextSmsResult> updateBatchAsync(
+      BatchId batchId, MtBatchTextSmsUpdate sms) {
+    return completable(callback -> updateBatchAsync(batchId, sms, callback));
   }
 
   /**
@@ -850,11 +1404,28 @@ public abstract class ApiConnection implements Closeable {
       FutureCallback<MtBatchBinarySmsResult> callback) {
     HttpPost req = post(batchEndpoint(batchId), sms);
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchBinarySmsResult> consumer =
-        jsonAsyncConsumer(MtBatchBinarySmsResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchBinarySmsResult>> consumer =
+        () -> jsonAsyncConsumer(MtBatchBinarySmsResult.class);
+
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Asynchronously updates the binary batch with the given batch ID. The batch is updated to match
+   * the given update object.
+   *
+   * <p>This is equivalent to {@link #updateBatchAsync(BatchId, MtBatchBinarySmsUpdate,
+   * FutureCallback)} but the result is provided as a {@link CompletableFuture}, which allows
+   * composition with other asynchronous operations. Cancelling the returned future also cancels the
+   * underlying request.
+   *
+   * @param batchId the batch that should be updated
+   * @param sms description of the desired update
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchBinarySmsResult> updateBatchAsync(
+      BatchId batchId, MtBatchBinarySmsUpdate sms) {
+    return completable(callback -> updateBatchAsync(batchId, sms, callback));
   }
 
   /**
@@ -892,11 +1463,27 @@ public abstract class ApiConnection implements Closeable {
       BatchId batchId, MtBatchMmsUpdate mms, FutureCallback<MtBatchMmsResult> callback) {
     HttpPost req = post(batchEndpoint(batchId), mms);
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchMmsResult> consumer =
-        jsonAsyncConsumer(MtBatchMmsResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchMmsResult>> consumer =
+        () -> jsonAsyncConsumer(MtBatchMmsResult.class);
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+    return execute(req, consumer, callback);
+  }
+
+  /**
+   * Asynchronously updates the mms batch with the given batch ID. The batch is updated to match the
+   * given update object.
+   *
+   * <p>This is equivalent to {@link #updateBatchAsync(BatchId, MtBatchMmsUpdate, FutureCallback)}
+   * but the result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param batchId the batch that should be updated
+   * @param mms description of the desired update
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchMmsResult> updateBatchAsync(
+      BatchId batchId, MtBatchMmsUpdate mms) {
+    return completable(callback -> updateBatchAsync(batchId, mms, callback));
   }
 
   /**
@@ -929,11 +1516,24 @@ public abstract class ApiConnection implements Closeable {
       BatchId batchId, FutureCallback<MtBatchResult> callback) {
     HttpGet req = get(batchEndpoint(batchId));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<MtBatchResult>> consumer =
+        () -> jsonAsyncConsumer(MtBatchResult.class);
 
-    HttpAsyncResponseConsumer<MtBatchResult> consumer = jsonAsyncConsumer(MtBatchResult.class);
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Fetches a batch with the given batch ID.
+   *
+   * <p>This is equivalent to {@link #fetchBatchAsync(BatchId, FutureCallback)} but the result is
+   * provided as a {@link CompletableFuture}, which allows composition with other asynchronous
+   * operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param batchId ID of the batch to fetch
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchResult> fetchBatchAsync(BatchId batchId) {
+    return completable(callback -> fetchBatchAsync(batchId, callback));
   }
 
   /**
@@ -949,7 +1549,7 @@ public abstract class ApiConnection implements Closeable {
       @Override
       Future<Page<MtBatchResult>> fetchAsync(
           int page, FutureCallback<Page<MtBatchResult>> callback) {
-        return fetchBatches(page, filter, callbackWrapper().wrap(callback));
+        return fetchBatches(page, filter, callback);
       }
     };
   }
@@ -969,12 +1569,10 @@ public abstract class ApiConnection implements Closeable {
 
     HttpGet req = get(url);
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
-
-    HttpAsyncResponseConsumer<Page<MtBatchResult>> consumer =
-        jsonAsyncConsumer(PagedBatchResult.class);
+    Supplier<HttpAsyncResponseConsumer<Page<MtBatchResult>>> consumer =
+        () -> jsonAsyncConsumer(PagedBatchResult.class);
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+    return execute(req, consumer, callback);
   }
 
   /**
@@ -1007,11 +1605,24 @@ public abstract class ApiConnection implements Closeable {
       BatchId batchId, FutureCallback<MtBatchResult> callback) {
     HttpDelete req = delete(batchEndpoint(batchId));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<MtBatchResult>> consumer =
+        () -> jsonAsyncConsumer(MtBatchResult.class);
 
-    HttpAsyncResponseConsumer<MtBatchResult> consumer = jsonAsyncConsumer(MtBatchResult.class);
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Cancels the batch with the given batch ID.
+   *
+   * <p>This is equivalent to {@link #cancelBatchAsync(BatchId, FutureCallback)} but the result is
+   * provided as a {@link CompletableFuture}, which allows composition with other asynchronous
+   * operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param batchId identifier of the batch to delete
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchResult> cancelBatchAsync(BatchId batchId) {
+    return completable(callback -> cancelBatchAsync(batchId, callback));
   }
 
   /**
@@ -1064,12 +1675,30 @@ public abstract class ApiConnection implements Closeable {
 
     HttpPost req = post(batchDryRunEndpoint(params), sms);
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<MtBatchDryRunResult> responseConsumer =
-        jsonAsyncConsumer(MtBatchDryRunResult.class);
+    Supplier<HttpAsyncResponseConsumer<MtBatchDryRunResult>> responseConsumer =
+        () -> jsonAsyncConsumer(MtBatchDryRunResult.class);
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+    // A dry run has no side effects and is therefore safe to retry.
+    return execute(req, responseConsumer, callback, 0, true);
+  }
+
+  /**
+   * Asynchronously performs a dry run of the given batch.
+   *
+   * <p>This is equivalent to {@link #createBatchDryRunAsync(MtBatchSmsCreate, Boolean, Integer,
+   * FutureCallback)} but the result is provided as a {@link CompletableFuture}, which allows
+   * composition with other asynchronous operations. Cancelling the returned future also cancels the
+   * underlying request.
+   *
+   * @param sms the batch to dry run
+   * @param perRecipient whether the per-recipient result should be populated
+   * @param numRecipients the number of recipients to populate
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MtBatchDryRunResult> createBatchDryRunAsync(
+      MtBatchSmsCreate sms, Boolean perRecipient, Integer numRecipients) {
+    return completable(
+        callback -> createBatchDryRunAsync(sms, perRecipient, numRecipients, callback));
   }
 
   /**
@@ -1107,12 +1736,27 @@ public abstract class ApiConnection implements Closeable {
     List<NameValuePair> params = filter.toQueryParams();
     HttpGet req = get(batchDeliveryReportEndpoint(id, params));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<BatchDeliveryReport>> consumer =
+        () -> jsonAsyncConsumer(BatchDeliveryReport.class);
 
-    HttpAsyncResponseConsumer<BatchDeliveryReport> consumer =
-        jsonAsyncConsumer(BatchDeliveryReport.class);
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Fetches a delivery report for the batch with the given batch ID.
+   *
+   * <p>This is equivalent to {@link #fetchDeliveryReportAsync(BatchId, BatchDeliveryReportParams,
+   * FutureCallback)} but the result is provided as a {@link CompletableFuture}, which allows
+   * composition with other asynchronous operations. Cancelling the returned future also cancels the
+   * underlying request.
+   *
+   * @param id batch ID of the delivery report batch to fetch
+   * @param filter parameters controlling the response content
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<BatchDeliveryReport> fetchDeliveryReportAsync(
+      BatchId id, BatchDeliveryReportParams filter) {
+    return completable(callback -> fetchDeliveryReportAsync(id, filter, callback));
   }
 
   /**
@@ -1149,12 +1793,26 @@ public abstract class ApiConnection implements Closeable {
       BatchId id, String recipient, FutureCallback<RecipientDeliveryReport> callback) {
     HttpGet req = get(batchRecipientDeliveryReportEndpoint(id, recipient));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<RecipientDeliveryReport>> consumer =
+        () -> jsonAsyncConsumer(RecipientDeliveryReport.class);
 
-    HttpAsyncResponseConsumer<RecipientDeliveryReport> consumer =
-        jsonAsyncConsumer(RecipientDeliveryReport.class);
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Fetches a delivery report for the batch with the given batch ID and recipient.
+   *
+   * <p>This is equivalent to {@link #fetchDeliveryReportAsync(BatchId, String, FutureCallback)} but
+   * the result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id identifier of the batch
+   * @param recipient MSISDN of recipient
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<RecipientDeliveryReport> fetchDeliveryReportAsync(
+      BatchId id, String recipient) {
+    return completable(callback -> fetchDeliveryReportAsync(id, recipient, callback));
   }
 
   /**
@@ -1170,7 +1828,7 @@ public abstract class ApiConnection implements Closeable {
       @Override
       Future<Page<RecipientDeliveryReport>> fetchAsync(
           int page, FutureCallback<Page<RecipientDeliveryReport>> callback) {
-        return fetchDeliveryReports(page, filter, callbackWrapper().wrap(callback));
+        return fetchDeliveryReports(page, filter, callback);
       }
     };
   }
@@ -1190,12 +1848,10 @@ public abstract class ApiConnection implements Closeable {
     List<NameValuePair> params = filter.toQueryParams(page);
     HttpGet req = get(deliveryReportListEndpoint(params));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<Page<RecipientDeliveryReport>>> consumer =
+        () -> jsonAsyncConsumer(PagedDeliveryReportResult.class);
 
-    HttpAsyncResponseConsumer<Page<RecipientDeliveryReport>> consumer =
-        jsonAsyncConsumer(PagedDeliveryReportResult.class);
-
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+    return execute(req, consumer, callback);
   }
 
   /**
@@ -1234,11 +1890,28 @@ public abstract class ApiConnection implements Closeable {
 
     HttpPost req = post(batchDeliveryFeedbackEndpoint(id), feedbackDeliveryCreate);
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<Void>> consumer = () -> jsonAsyncConsumer(Void.class);
 
-    HttpAsyncResponseConsumer<Void> consumer = jsonAsyncConsumer(Void.class);
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Create a delivery feedback for the batch with the given batch ID. Feedback can only be provided
+   * if feedback_enabled was set when batch was submitted.
+   *
+   * <p>This is equivalent to {@link #createDeliveryFeedbackAsync(BatchId, FeedbackDeliveryCreate,
+   * FutureCallback)} but the result is provided as a {@link CompletableFuture}, which allows
+   * composition with other asynchronous operations. Cancelling the returned future also cancels the
+   * underlying request.
+   *
+   * @param id identifier of the batch
+   * @param feedbackDeliveryCreate create delivery feedback input with recipients
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<Void> createDeliveryFeedbackAsync(
+      BatchId id, FeedbackDeliveryCreate feedbackDeliveryCreate) {
+    return completable(
+        callback -> createDeliveryFeedbackAsync(id, feedbackDeliveryCreate, callback));
   }
 
   /**
@@ -1271,11 +1944,24 @@ public abstract class ApiConnection implements Closeable {
       GroupCreate group, FutureCallback<GroupResult> callback) {
     HttpPost req = post(groupsEndpoint(), group);
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<GroupResult> responseConsumer = jsonAsyncConsumer(GroupResult.class);
+    Supplier<HttpAsyncResponseConsumer<GroupResult>> responseConsumer =
+        () -> jsonAsyncConsumer(GroupResult.class);
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+    return execute(req, responseConsumer, callback);
+  }
+
+  /**
+   * Asynchronously creates the given group.
+   *
+   * <p>This is equivalent to {@link #createGroupAsync(GroupCreate, FutureCallback)} but the result
+   * is provided as a {@link CompletableFuture}, which allows composition with other asynchronous
+   * operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param group the group to create
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<GroupResult> createGroupAsync(GroupCreate group) {
+    return completable(callback -> createGroupAsync(group, callback));
   }
 
   /**
@@ -1307,11 +1993,24 @@ public abstract class ApiConnection implements Closeable {
   public Future<GroupResult> fetchGroupAsync(GroupId id, FutureCallback<GroupResult> callback) {
     HttpGet req = get(groupEndpoint(id));
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<GroupResult> responseConsumer = jsonAsyncConsumer(GroupResult.class);
+    Supplier<HttpAsyncResponseConsumer<GroupResult>> responseConsumer =
+        () -> jsonAsyncConsumer(GroupResult.class);
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+    return execute(req, responseConsumer, callback);
+  }
+
+  /**
+   * Asynchronously fetches the given group.
+   *
+   * <p>This is equivalent to {@link #fetchGroupAsync(GroupId, FutureCallback)} but the result is
+   * provided as a {@link CompletableFuture}, which allows composition with other asynchronous
+   * operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id the group to fetch
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<GroupResult> fetchGroupAsync(GroupId id) {
+    return completable(callback -> fetchGroupAsync(id, callback));
   }
 
   /**
@@ -1344,13 +2043,25 @@ public abstract class ApiConnection implements Closeable {
       GroupId id, FutureCallback<Set<String>> callback) {
     HttpGet req = get(groupMembersEndpoint(id));
 
-    HttpAsyncRequestProducer requestProducer = new BasicAsyncRequestProducer(endpointHost(), req);
-
     @SuppressWarnings("unchecked")
-    HttpAsyncResponseConsumer<Set<String>> responseConsumer = jsonAsyncConsumer(Set.class);
+    Supplier<HttpAsyncResponseConsumer<Set<String>>> responseConsumer =
+        () -> jsonAsyncConsumer(Set.class);
+
+    return execute(req, responseConsumer, callback);
+  }
 
-    return httpClient()
-        .execute(requestProducer, responseConsumer, callbackWrapper().wrap(callback));
+  /**
+   * Asynchronously fetches the members of the given group.
+   *
+   * <p>This is equivalent to {@link #fetchGroupMembersAsync(GroupId, FutureCallback)} but the
+   * result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id the group whose members should be fetched
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<Set<String>> fetchGroupMembersAsync(GroupId id) {
+    return completable(callback -> fetchGroupMembersAsync(id, callback));
   }
 
   /**
@@ -1365,7 +2076,7 @@ public abstract class ApiConnection implements Closeable {
 
       @Override
       Future<Page<GroupResult>> fetchAsync(int page, FutureCallback<Page<GroupResult>> callback) {
-        return fetchGroups(page, filter, callbackWrapper().wrap(callback));
+        return fetchGroups(page, filter, callback);
       }
     };
   }
@@ -1383,12 +2094,10 @@ public abstract class ApiConnection implements Closeable {
     List<NameValuePair> params = filter.toQueryParams(page);
     HttpGet req = get(groupsEndpoint(params));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<Page<GroupResult>>> consumer =
+        () -> jsonAsyncConsumer(PagedGroupResult.class);
 
-    HttpAsyncResponseConsumer<Page<GroupResult>> consumer =
-        jsonAsyncConsumer(PagedGroupResult.class);
-
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+    return execute(req, consumer, callback);
   }
 
   /**
@@ -1426,10 +2135,26 @@ public abstract class ApiConnection implements Closeable {
       GroupId id, GroupUpdate group, FutureCallback<GroupResult> callback) {
     HttpPost req = post(groupEndpoint(id), group);
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<GroupResult> consumer = jsonAsyncConsumer(GroupResult.class);
+    Supplier<HttpAsyncResponseConsumer<GroupResult>> consumer =
+        () -> jsonAsyncConsumer(GroupResult.class);
+
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Asynchronously updates the group with the given group ID. The group is updated to match the
+   * given update object.
+   *
+   * <p>This is equivalent to {@link #updateGroupAsync(GroupId, GroupUpdate, FutureCallback)} but
+   * the result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id the group that should be updated
+   * @param group description of the desired updates
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<GroupResult> updateGroupAsync(GroupId id, GroupUpdate group) {
+    return completable(callback -> updateGroupAsync(id, group, callback));
   }
 
   /**
@@ -1467,10 +2192,26 @@ public abstract class ApiConnection implements Closeable {
       GroupId id, GroupCreate group, FutureCallback<GroupResult> callback) {
     HttpPut req = put(groupEndpoint(id), group);
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<GroupResult> consumer = jsonAsyncConsumer(GroupResult.class);
+    Supplier<HttpAsyncResponseConsumer<GroupResult>> consumer =
+        () -> jsonAsyncConsumer(GroupResult.class);
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+    return execute(req, consumer, callback);
+  }
+
+  /**
+   * Asynchronously replaces the group with the given group ID. The group is replaced by the given
+   * group definition.
+   *
+   * <p>This is equivalent to {@link #replaceGroupAsync(GroupId, GroupCreate, FutureCallback)} but
+   * the result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id the group that should be replaced
+   * @param group description of the new group
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<GroupResult> replaceGroupAsync(GroupId id, GroupCreate group) {
+    return completable(callback -> replaceGroupAsync(id, group, callback));
   }
 
   /**
@@ -1501,10 +2242,24 @@ public abstract class ApiConnection implements Closeable {
   public Future<Void> deleteGroupAsync(GroupId id, FutureCallback<Void> callback) {
     HttpDelete req = delete(groupEndpoint(id));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
-    HttpAsyncResponseConsumer<Void> consumer = new EmptyAsyncConsumer(json);
+    Supplier<HttpAsyncResponseConsumer<Void>> consumer =
+        () -> new EmptyAsyncConsumer(codecs(), responseBufferPool());
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+    return execute(req, consumer, callback);
+  }
+
+  /**
+   * Asynchronously deletes the group with the given group ID.
+   *
+   * <p>This is equivalent to {@link #deleteGroupAsync(GroupId, FutureCallback)} but the result is
+   * provided as a {@link CompletableFuture}, which allows composition with other asynchronous
+   * operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id the group that should be deleted
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<Void> deleteGroupAsync(GroupId id) {
+    return completable(callback -> deleteGroupAsync(id, callback));
   }
 
   /**
@@ -1539,11 +2294,24 @@ public abstract class ApiConnection implements Closeable {
   public Future<Tags> updateTagsAsync(GroupId id, TagsUpdate tags, FutureCallback<Tags> callback) {
     HttpPost req = post(groupTagsEndpoint(id), tags);
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<Tags>> consumer = () -> jsonAsyncConsumer(Tags.class);
 
-    HttpAsyncResponseConsumer<Tags> consumer = jsonAsyncConsumer(Tags.class);
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Updates the tags of the group with the given identifier.
+   *
+   * <p>This is equivalent to {@link #updateTagsAsync(GroupId, TagsUpdate, FutureCallback)} but the
+   * result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id identifier of the group
+   * @param tags the tag update object
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<Tags> updateTagsAsync(GroupId id, TagsUpdate tags) {
+    return completable(callback -> updateTagsAsync(id, tags, callback));
   }
 
   /**
@@ -1577,11 +2345,24 @@ public abstract class ApiConnection implements Closeable {
   public Future<Tags> replaceTagsAsync(GroupId id, Tags tags, FutureCallback<Tags> callback) {
     HttpPut req = put(groupTagsEndpoint(id), tags);
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<Tags>> consumer = () -> jsonAsyncConsumer(Tags.class);
 
-    HttpAsyncResponseConsumer<Tags> consumer = jsonAsyncConsumer(Tags.class);
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Replaces the tags of the group with the given identifier.
+   *
+   * <p>This is equivalent to {@link #replaceTagsAsync(GroupId, Tags, FutureCallback)} but the
+   * result is provided as a {@link CompletableFuture}, which allows composition with other
+   * asynchronous operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id identifier of the group
+   * @param tags the replacement tags
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<Tags> replaceTagsAsync(GroupId id, Tags tags) {
+    return completable(callback -> replaceTagsAsync(id, tags, callback));
   }
 
   /**
@@ -1613,11 +2394,23 @@ public abstract class ApiConnection implements Closeable {
   public Future<Tags> fetchTagsAsync(GroupId id, FutureCallback<Tags> callback) {
     HttpGet req = get(groupTagsEndpoint(id));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<Tags>> consumer = () -> jsonAsyncConsumer(Tags.class);
 
-    HttpAsyncResponseConsumer<Tags> consumer = jsonAsyncConsumer(Tags.class);
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Fetches the tags of the group with the given identifier.
+   *
+   * <p>This is equivalent to {@link #fetchTagsAsync(GroupId, FutureCallback)} but the result is
+   * provided as a {@link CompletableFuture}, which allows composition with other asynchronous
+   * operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id identifier of the group
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<Tags> fetchTagsAsync(GroupId id) {
+    return completable(callback -> fetchTagsAsync(id, callback));
   }
 
   /**
@@ -1632,7 +2425,7 @@ public abstract class ApiConnection implements Closeable {
 
       @Override
       Future<Page<MoSms>> fetchAsync(int page, FutureCallback<Page<MoSms>> callback) {
-        return fetchInbounds(page, filter, callbackWrapper().wrap(callback));
+        return fetchInbounds(page, filter, callback);
       }
     };
   }
@@ -1650,11 +2443,10 @@ public abstract class ApiConnection implements Closeable {
     List<NameValuePair> params = filter.toQueryParams(page);
     HttpGet req = get(inboundsEndpoint(params));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
-
-    HttpAsyncResponseConsumer<Page<MoSms>> consumer = jsonAsyncConsumer(PagedInboundsResult.class);
+    Supplier<HttpAsyncResponseConsumer<Page<MoSms>>> consumer =
+        () -> jsonAsyncConsumer(PagedInboundsResult.class);
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+    return execute(req, consumer, callback);
   }
 
   /**
@@ -1686,10 +2478,22 @@ public abstract class ApiConnection implements Closeable {
   public Future<MoSms> fetchInboundAsync(String id, FutureCallback<MoSms> callback) {
     HttpGet req = get(inboundEndpoint(id));
 
-    HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(endpointHost(), req);
+    Supplier<HttpAsyncResponseConsumer<MoSms>> consumer = () -> jsonAsyncConsumer(MoSms.class);
 
-    HttpAsyncResponseConsumer<MoSms> consumer = jsonAsyncConsumer(MoSms.class);
+    return execute(req, consumer, callback);
+  }
 
-    return httpClient().execute(producer, consumer, callbackWrapper().wrap(callback));
+  /**
+   * Fetches the inbound message having the given identifier.
+   *
+   * <p>This is equivalent to {@link #fetchInboundAsync(String, FutureCallback)} but the result is
+   * provided as a {@link CompletableFuture}, which allows composition with other asynchronous
+   * operations. Cancelling the returned future also cancels the underlying request.
+   *
+   * @param id identifier of the inbound message
+   * @return a completable future yielding the response
+   */
+  public CompletableFuture<MoSms> fetchInboundAsync(String id) {
+    return completable(callback -> fetchInboundAsync(id, callback));
   }
 }
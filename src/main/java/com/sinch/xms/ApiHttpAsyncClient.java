@@ -22,8 +22,16 @@ package com.sinch.xms;
 import java.io.Closeable;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.apache.http.HeaderElement;
 import org.apache.http.HeaderElementIterator;
 import org.apache.http.HttpHost;
@@ -31,14 +39,23 @@ import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.BasicFuture;
 import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.RegistryBuilder;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.message.BasicHeaderElementIterator;
 import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
 import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
 import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
 import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContexts;
@@ -49,13 +66,235 @@ import org.apache.http.ssl.SSLContexts;
  * host.
  *
  * <p>It is in most cases sufficient to let {@link ApiConnection} create and manage the HTTP client.
- * If necessary, however, it is possible to create and manage this type of connections manually.
+ * If necessary, however, it is possible to create and manage this type of connections manually, see
+ * {@link #of()} and {@link #builder()}.
  */
 public class ApiHttpAsyncClient implements HttpAsyncClient, Closeable {
 
+  /**
+   * A builder of asynchronous HTTP clients. Any attribute that is not explicitly set will take a
+   * default value suitable for communicating with XMS.
+   */
+  public static final class Builder {
+
+    private int maxConnectionsTotal = DEFAULT_MAX_CONN;
+
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONN;
+
+    private int ioThreadCount = Runtime.getRuntime().availableProcessors();
+
+    private Duration connectTimeout = DEFAULT_TIMEOUT;
+
+    private Duration socketTimeout = DEFAULT_TIMEOUT;
+
+    private Duration connectionRequestTimeout = Duration.ZERO;
+
+    private int socketSendBufferSize = 0;
+
+    private int socketReceiveBufferSize = 0;
+
+    private boolean tcpNoDelay = true;
+
+    private Duration connectionTimeToLive = Duration.ZERO;
+
+    private Duration defaultKeepAlive = DEFAULT_KEEP_ALIVE;
+
+    private Duration maxIdleTime = Duration.ZERO;
+
+    private int maxPendingRequests = 0;
+
+    private Builder() {}
+
+    /**
+     * The maximum number of simultaneously open connections. Default is 100.
+     *
+     * @param n a positive number of connections
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxConnectionsTotal(int n) {
+      this.maxConnectionsTotal = requirePositive(n, "maxConnectionsTotal");
+      return this;
+    }
+
+    /**
+     * The maximum number of simultaneously open connections towards a single host. Default is 100.
+     *
+     * @param n a positive number of connections
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxConnectionsPerRoute(int n) {
+      this.maxConnectionsPerRoute = requirePositive(n, "maxConnectionsPerRoute");
+      return this;
+    }
+
+    /**
+     * The number of I/O dispatcher threads. Default is the number of available processors.
+     *
+     * @param n a positive number of threads
+     * @return this builder for use in a chained invocation
+     */
+    public Builder ioThreadCount(int n) {
+      this.ioThreadCount = requirePositive(n, "ioThreadCount");
+      return this;
+    }
+
+    /**
+     * The timeout for establishing a connection. Default is 30 seconds.
+     *
+     * @param timeout the timeout, zero means no timeout
+     * @return this builder for use in a chained invocation
+     */
+    public Builder connectTimeout(@Nonnull Duration timeout) {
+      this.connectTimeout = requireNonNegative(timeout, "connectTimeout");
+      return this;
+    }
+
+    /**
+     * The maximum period of inactivity while waiting for data. Default is 30 seconds.
+     *
+     * @param timeout the timeout, zero means no timeout
+     * @return this builder for use in a chained invocation
+     */
+    public Builder socketTimeout(@Nonnull Duration timeout) {
+      this.socketTimeout = requireNonNegative(timeout, "socketTimeout");
+      return this;
+    }
+
+    /**
+     * The timeout for leasing a connection from the connection pool. Default is no timeout.
+     *
+     * @param timeout the timeout, zero means no timeout
+     * @return this builder for use in a chained invocation
+     */
+    public Builder connectionRequestTimeout(@Nonnull Duration timeout) {
+      this.connectionRequestTimeout = requireNonNegative(timeout, "connectionRequestTimeout");
+      return this;
+    }
+
+    /**
+     * The socket send buffer size in bytes. Default is zero, meaning the system default.
+     *
+     * @param size a non-negative buffer size
+     * @return this builder for use in a chained invocation
+     */
+    public Builder socketSendBufferSize(int size) {
+      this.socketSendBufferSize = requireNonNegative(size, "socketSendBufferSize");
+      return this;
+    }
+
+    /**
+     * The socket receive buffer size in bytes. Default is zero, meaning the system default.
+     *
+     * @param size a non-negative buffer size
+     * @return this builder for use in a chained invocation
+     */
+    public Builder socketReceiveBufferSize(int size) {
+      this.socketReceiveBufferSize = requireNonNegative(size, "socketReceiveBufferSize");
+      return this;
+    }
+
+    /**
+     * Whether to disable Nagle's algorithm on opened sockets. Default is <code>true</code>.
+     *
+     * @param enabled whether <code>TCP_NODELAY</code> should be set
+     * @return this builder for use in a chained invocation
+     */
+    public Builder tcpNoDelay(boolean enabled) {
+      this.tcpNoDelay = enabled;
+      return this;
+    }
+
+    /**
+     * The maximum total lifetime of a pooled connection. Default is zero, meaning that connections
+     * may be kept indefinitely.
+     *
+     * @param ttl the time to live, zero means no limit
+     * @return this builder for use in a chained invocation
+     */
+    public Builder connectionTimeToLive(@Nonnull Duration ttl) {
+      this.connectionTimeToLive = requireNonNegative(ttl, "connectionTimeToLive");
+      return this;
+    }
+
+    /**
+     * How long to keep an idle connection alive when the server does not specify a keep-alive
+     * timeout. Default is 5 seconds.
+     *
+     * @param keepAlive the keep-alive duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder defaultKeepAlive(@Nonnull Duration keepAlive) {
+      this.defaultKeepAlive = requireNonNegative(keepAlive, "defaultKeepAlive");
+      return this;
+    }
+
+    /**
+     * Enables background eviction of connections that have been idle for longer than the given
+     * duration. Expired connections are evicted as well. Default is zero, meaning that no
+     * background eviction is performed.
+     *
+     * @param maxIdleTime the maximum idle time, zero disables eviction
+     * @return this builder for use in a chained invocation
+     */
+    public Builder evictIdleConnections(@Nonnull Duration maxIdleTime) {
+      this.maxIdleTime = requireNonNegative(maxIdleTime, "maxIdleTime");
+      return this;
+    }
+
+    /**
+     * The maximum number of requests that may be pending, that is, submitted but not yet completed.
+     * Requests submitted beyond this limit fail immediately with a {@link
+     * RejectedExecutionException}. Default is zero, meaning that there is no limit.
+     *
+     * @param n a non-negative number of requests, zero means no limit
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxPendingRequests(int n) {
+      this.maxPendingRequests = requireNonNegative(n, "maxPendingRequests");
+      return this;
+    }
+
+    /**
+     * Builds a new, initially stopped, HTTP client.
+     *
+     * @return a newly constructed HTTP client
+     */
+    @Nonnull
+    public ApiHttpAsyncClient build() {
+      return new ApiHttpAsyncClient(false, this);
+    }
+
+    private static int requirePositive(int n, String name) {
+      if (n <= 0) {
+        throw new IllegalArgumentException(name + " must be positive");
+      }
+
+      return n;
+    }
+
+    private static int requireNonNegative(int n, String name) {
+      if (n < 0) {
+        throw new IllegalArgumentException(name + " must be non-negative");
+      }
+
+      return n;
+    }
+
+    private static Duration requireNonNegative(Duration d, String name) {
+      if (Utils.requireNonNull(d, name).isNegative()) {
+        throw new IllegalArgumentException(name + " must be non-negative");
+      }
+
+      return d;
+    }
+  }
+
   /** The default limit for the socket and connect timeout. */
   private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
 
+  /** The default keep-alive if the server does not specify one. */
+  private static final Duration DEFAULT_KEEP_ALIVE = Duration.ofSeconds(5);
+
   /** The default maximum number of simultaneous connections to open towards the XMS endpoint. */
   private static final int DEFAULT_MAX_CONN = 100;
 
@@ -65,13 +304,35 @@ public class ApiHttpAsyncClient implements HttpAsyncClient, Closeable {
   /** The underlying actual HTTP client. */
   private final CloseableHttpAsyncClient client;
 
+  /** The connection manager of the underlying HTTP client. */
+  private final PoolingNHttpClientConnectionManager connManager;
+
+  /** The maximum idle time of pooled connections, zero if idle connections are not evicted. */
+  private final Duration maxIdleTime;
+
+  /** Permits for pending requests, <code>null</code> if the number is unlimited. */
+  @Nullable private final Semaphore pendingPermits;
+
+  /** The maximum number of pending requests, zero if unlimited. */
+  private final int maxPendingRequests;
+
+  /** Scheduler performing idle connection eviction, only present when started. */
+  @Nullable private ScheduledExecutorService evictor;
+
   /**
    * Creates a new HTTP asynchronous client suitable for communicating with XMS.
    *
    * @param startedInternally whether this object was created inside this SDK
    */
   ApiHttpAsyncClient(boolean startedInternally) {
+    this(startedInternally, new Builder());
+  }
+
+  private ApiHttpAsyncClient(boolean startedInternally, Builder b) {
     this.startedInternally = startedInternally;
+    this.maxIdleTime = b.maxIdleTime;
+    this.maxPendingRequests = b.maxPendingRequests;
+    this.pendingPermits = (b.maxPendingRequests > 0) ? new Semaphore(b.maxPendingRequests) : null;
 
     // Allow TLSv1.2 protocol only
     SSLIOSessionStrategy sslSessionStrategy =
@@ -81,19 +342,49 @@ public class ApiHttpAsyncClient implements HttpAsyncClient, Closeable {
             null,
             SSLIOSessionStrategy.getDefaultHostnameVerifier());
 
+    IOReactorConfig ioReactorConfig =
+        IOReactorConfig.custom()
+            .setIoThreadCount(b.ioThreadCount)
+            .setConnectTimeout((int) b.connectTimeout.toMillis())
+            .setSoTimeout((int) b.socketTimeout.toMillis())
+            .setSndBufSize(b.socketSendBufferSize)
+            .setRcvBufSize(b.socketReceiveBufferSize)
+            .setTcpNoDelay(b.tcpNoDelay)
+            .build();
+
+    try {
+      this.connManager =
+          new PoolingNHttpClientConnectionManager(
+              new DefaultConnectingIOReactor(ioReactorConfig),
+              null,
+              RegistryBuilder.<SchemeIOSessionStrategy>create()
+                  .register("http", NoopIOSessionStrategy.INSTANCE)
+                  .register("https", sslSessionStrategy)
+                  .build(),
+              null,
+              null,
+              b.connectionTimeToLive.isZero() ? -1 : b.connectionTimeToLive.toMillis(),
+              TimeUnit.MILLISECONDS);
+    } catch (IOReactorException e) {
+      throw new IllegalStateException("failed to create I/O reactor", e);
+    }
+
+    connManager.setMaxTotal(b.maxConnectionsTotal);
+    connManager.setDefaultMaxPerRoute(b.maxConnectionsPerRoute);
+
     RequestConfig requestConfig =
         RequestConfig.custom()
-            .setConnectTimeout((int) DEFAULT_TIMEOUT.toMillis())
-            .setSocketTimeout((int) DEFAULT_TIMEOUT.toMillis())
+            .setConnectTimeout((int) b.connectTimeout.toMillis())
+            .setSocketTimeout((int) b.socketTimeout.toMillis())
+            .setConnectionRequestTimeout((int) b.connectionRequestTimeout.toMillis())
             .build();
 
-    // TODO: Is this a good default setup?
+    final long defaultKeepAliveMillis = b.defaultKeepAlive.toMillis();
+
     this.client =
         HttpAsyncClients.custom()
-            .setSSLStrategy(sslSessionStrategy)
+            .setConnectionManager(connManager)
             .disableCookieManagement()
-            .setMaxConnPerRoute(DEFAULT_MAX_CONN)
-            .setMaxConnTotal(DEFAULT_MAX_CONN)
             .setKeepAliveStrategy(
                 (HttpResponse response, HttpContext context) -> {
                   HeaderElementIterator it =
@@ -106,7 +397,7 @@ public class ApiHttpAsyncClient implements HttpAsyncClient, Closeable {
                       return Long.parseLong(value) * 1000;
                     }
                   }
-                  return 5_000;
+                  return defaultKeepAliveMillis;
                 })
             .setDefaultRequestConfig(requestConfig)
             .build();
@@ -122,6 +413,17 @@ public class ApiHttpAsyncClient implements HttpAsyncClient, Closeable {
     return new ApiHttpAsyncClient(false);
   }
 
+  /**
+   * Returns a fresh builder of asynchronous HTTP clients. This can be used to tune, for example,
+   * the connection pool size and the number of I/O threads.
+   *
+   * @return a non-null client builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
   /**
    * Whether this object was created inside the SDK.
    *
@@ -140,9 +442,49 @@ public class ApiHttpAsyncClient implements HttpAsyncClient, Closeable {
     return client.isRunning();
   }
 
+  /**
+   * Statistics of the connection pool of this client.
+   *
+   * @return a snapshot of the connection pool statistics
+   */
+  @Nonnull
+  public PoolStats poolStats() {
+    return connManager.getTotalStats();
+  }
+
+  /**
+   * The number of requests that currently are pending in this client. This is only tracked if a
+   * limit on the number of pending requests is set, otherwise this method always returns zero.
+   *
+   * @return a non-negative number
+   */
+  public int pendingRequests() {
+    return (pendingPermits == null) ? 0 : maxPendingRequests - pendingPermits.availablePermits();
+  }
+
   /** Starts this client. */
-  public void start() {
+  public synchronized void start() {
     client.start();
+
+    if (!maxIdleTime.isZero() && evictor == null) {
+      evictor =
+          Executors.newSingleThreadScheduledExecutor(
+              r -> {
+                Thread t = new Thread(r, "xms-idle-connection-evictor");
+                t.setDaemon(true);
+                return t;
+              });
+
+      long period = Math.max(maxIdleTime.toMillis() / 2, 1);
+      evictor.scheduleWithFixedDelay(
+          () -> {
+            connManager.closeExpiredConnections();
+            connManager.closeIdleConnections(maxIdleTime.toMillis(), TimeUnit.MILLISECONDS);
+          },
+          period,
+          period,
+          TimeUnit.MILLISECONDS);
+    }
   }
 
   /**
@@ -151,17 +493,92 @@ public class ApiHttpAsyncClient implements HttpAsyncClient, Closeable {
    * @throws IOException if an I/O error occurs
    */
   @Override
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
+    if (evictor != null) {
+      evictor.shutdownNow();
+      evictor = null;
+    }
+
     client.close();
   }
 
+  /**
+   * Performs the given call if the pending request limit permits, otherwise fails immediately.
+   *
+   * @param callback the callback of the request, may be <code>null</code>
+   * @param call function performing the request using the given callback
+   * @return a future yielding the response
+   * @param <T> the response type
+   */
+  private <T> Future<T> limited(
+      @Nullable final FutureCallback<T> callback, Function<FutureCallback<T>, Future<T>> call) {
+    final Semaphore permits = pendingPermits;
+
+    if (permits == null) {
+      return call.apply(callback);
+    }
+
+    if (!permits.tryAcquire()) {
+      BasicFuture<T> future = new BasicFuture<T>(callback);
+      future.failed(
+          new RejectedExecutionException(
+              "too many pending requests, limit is " + maxPendingRequests));
+      return future;
+    }
+
+    final AtomicBoolean released = new AtomicBoolean();
+
+    FutureCallback<T> releasingCallback =
+        new FutureCallback<T>() {
+
+          private void release() {
+            if (released.compareAndSet(false, true)) {
+              permits.release();
+            }
+          }
+
+          @Override
+          public void completed(T result) {
+            release();
+            if (callback != null) {
+              callback.completed(result);
+            }
+          }
+
+          @Override
+          public void failed(Exception ex) {
+            release();
+            if (callback != null) {
+              callback.failed(ex);
+            }
+          }
+
+          @Override
+          public void cancelled() {
+            release();
+            if (callback != null) {
+              callback.cancelled();
+            }
+          }
+        };
+
+    try {
+      return call.apply(releasingCallback);
+    } catch (RuntimeException e) {
+      if (released.compareAndSet(false, true)) {
+        permits.release();
+      }
+      throw e;
+    }
+  }
+
   @Override
   public <T> Future<T> execute(
       HttpAsyncRequestProducer requestProducer,
       HttpAsyncResponseConsumer<T> responseConsumer,
       HttpContext context,
       FutureCallback<T> callback) {
-    return client.execute(requestProducer, responseConsumer, context, callback);
+    return limited(callback, cb -> client.execute(requestProducer, responseConsumer, context, cb));
   }
 
   @Override
@@ -169,7 +586,7 @@ public class ApiHttpAsyncClient implements HttpAsyncClient, Closeable {
       HttpAsyncRequestProducer requestProducer,
       HttpAsyncResponseConsumer<T> responseConsumer,
       FutureCallback<T> callback) {
-    return client.execute(requestProducer, responseConsumer, callback);
+    return limited(callback, cb -> client.execute(requestProducer, responseConsumer, cb));
   }
 
   @Override
@@ -178,24 +595,24 @@ public class ApiHttpAsyncClient implements HttpAsyncClient, Closeable {
       HttpRequest request,
       HttpContext context,
       FutureCallback<HttpResponse> callback) {
-    return client.execute(target, request, context, callback);
+    return limited(callback, cb -> client.execute(target, request, context, cb));
   }
 
   @Override
   public Future<HttpResponse> execute(
       HttpHost target, HttpRequest request, FutureCallback<HttpResponse> callback) {
-    return client.execute(target, request, callback);
+    return limited(callback, cb -> client.execute(target, request, cb));
   }
 
   @Override
   public Future<HttpResponse> execute(
       HttpUriRequest request, HttpContext context, FutureCallback<HttpResponse> callback) {
-    return client.execute(request, context, callback);
+    return limited(callback, cb -> client.execute(request, context, cb));
   }
 
   @Override
   public Future<HttpResponse> execute(
       HttpUriRequest request, FutureCallback<HttpResponse> callback) {
-    return client.execute(request, callback);
+    return limited(callback, cb -> client.execute(request, cb));
   }
 }
@@ -22,9 +22,11 @@ package com.sinch.xms;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sinch.xms.api.AcceleratedApiModule;
 import com.sinch.xms.api.BatchId;
 import com.sinch.xms.api.DeliveryStatus;
 import com.sinch.xms.api.GroupId;
@@ -49,6 +51,22 @@ public class ApiObjectMapper extends ObjectMapper {
    * @param prettyPrint whether serialized JSON should be pretty printed
    */
   public ApiObjectMapper(boolean prettyPrint) {
+    this(prettyPrint, false);
+  }
+
+  /**
+   * Creates an object mapper suitable for the Sinch REST API, optionally in accelerated mode.
+   *
+   * <p>In accelerated mode the {@link AcceleratedApiModule} is registered, which provides
+   * hand-written serializers and deserializers for the most frequently exchanged API objects. If
+   * the <code>com.fasterxml.jackson.module:jackson-module-blackbird</code> artifact is available on
+   * the class path then its module is also registered, replacing reflective property access with
+   * generated accessors for the remaining API objects.
+   *
+   * @param prettyPrint whether serialized JSON should be pretty printed
+   * @param accelerated whether to enable accelerated serialization and deserialization
+   */
+  public ApiObjectMapper(boolean prettyPrint, boolean accelerated) {
     registerModule(new JavaTimeModule());
     setSerializationInclusion(Include.NON_NULL);
     disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
@@ -82,5 +100,20 @@ public class ApiObjectMapper extends ObjectMapper {
         .setInclude(JsonInclude.Value.construct(Include.NON_NULL, Include.NON_NULL));
     configOverride(GroupId.class)
         .setInclude(JsonInclude.Value.construct(Include.NON_NULL, Include.NON_NULL));
+
+    if (accelerated) {
+      registerModule(new AcceleratedApiModule());
+      registerBlackbirdModule();
+    }
+  }
+
+  /** Registers the Blackbird module if it is available on the class path. */
+  private void registerBlackbirdModule() {
+    try {
+      Class<?> cls = Class.forName("com.fasterxml.jackson.module.blackbird.BlackbirdModule");
+      registerModule((Module) cls.getConstructor().newInstance());
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // Blackbird is optional, fall back to reflective property access.
+    }
   }
 }
@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.time.Duration;
+import org.immutables.value.Value;
+
+/** A summary of the batches sent by a {@link BulkSender}. */
+@Value.Immutable
+@ValueStylePackage
+public abstract class BulkSendSummary {
+
+  /**
+   * The number of batches submitted for sending.
+   *
+   * @return a non-negative number
+   */
+  public abstract long submitted();
+
+  /**
+   * The number of batches that were successfully created.
+   *
+   * @return a non-negative number
+   */
+  public abstract long succeeded();
+
+  /**
+   * The number of batches that failed to be created.
+   *
+   * @return a non-negative number
+   */
+  public abstract long failed();
+
+  /**
+   * The total number of recipients in the successfully created batches.
+   *
+   * @return a non-negative number
+   */
+  public abstract long recipients();
+
+  /**
+   * The time elapsed from the first submitted batch until the summary was created.
+   *
+   * @return a non-null duration
+   */
+  public abstract Duration elapsed();
+
+  /**
+   * The number of completed batches, successful or not, per second.
+   *
+   * @return a non-negative rate
+   */
+  public double batchesPerSecond() {
+    return rate(succeeded() + failed());
+  }
+
+  /**
+   * The number of recipients in successfully created batches per second.
+   *
+   * @return a non-negative rate
+   */
+  public double recipientsPerSecond() {
+    return rate(recipients());
+  }
+
+  private double rate(long count) {
+    long nanos = elapsed().toNanos();
+
+    return (nanos <= 0) ? 0.0 : count * 1e9 / nanos;
+  }
+}
@@ -0,0 +1,469 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.MtBatchBinarySmsCreate;
+import com.sinch.xms.api.MtBatchCreate;
+import com.sinch.xms.api.MtBatchMmsCreate;
+import com.sinch.xms.api.MtBatchResult;
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends large numbers of batches through an {@link ApiConnection} while keeping a bounded number of
+ * requests in flight.
+ *
+ * <p>When the limit is reached the submitting thread is blocked until a request completes. This
+ * applies backpressure to the producer of batches, rather than queuing an unbounded number of
+ * requests in the HTTP client. For example,
+ *
+ * <pre>
+ * BulkSender sender = BulkSender.builder().connection(conn).maxInFlight(64).build();
+ * BulkSendSummary summary = sender.sendAll(batches.iterator());
+ * </pre>
+ *
+ * <p>Batches may also be taken from a Reactive Streams {@link Publisher}, which is then asked for
+ * one batch each time there is room for another request in flight.
+ *
+ * <p>The outcome of each individual batch is reported to the configured {@link Listener}, the
+ * aggregate outcome is available through {@link #summary()}.
+ */
+public final class BulkSender {
+
+  /**
+   * A listener of bulk send outcomes. The methods of the listener are called on the thread
+   * completing the request, typically an I/O thread of the HTTP client, and should therefore return
+   * quickly.
+   */
+  public interface Listener {
+
+    /**
+     * Called when a batch was successfully created.
+     *
+     * @param create the submitted batch
+     * @param result the created batch
+     */
+    void succeeded(MtBatchCreate create, MtBatchResult result);
+
+    /**
+     * Called when a batch failed to be created.
+     *
+     * @param create the submitted batch
+     * @param e the cause of the failure
+     */
+    void failed(MtBatchCreate create, Exception e);
+  }
+
+  /** A builder of bulk senders. The API connection must be set. */
+  public static final class Builder {
+
+    private ApiConnection connection;
+
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    private Listener listener = NOOP_LISTENER;
+
+    private Builder() {}
+
+    /**
+     * The API connection through which to send batches.
+     *
+     * @param connection a started API connection
+     * @return this builder for use in a chained invocation
+     */
+    public Builder connection(@Nonnull ApiConnection connection) {
+      this.connection = Utils.requireNonNull(connection, "connection");
+      return this;
+    }
+
+    /**
+     * The maximum number of requests in flight. Default is 64.
+     *
+     * @param n a positive number of requests
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxInFlight(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("maxInFlight must be positive");
+      }
+
+      this.maxInFlight = n;
+      return this;
+    }
+
+    /**
+     * The listener receiving the outcome of each batch. Default is a listener that ignores all
+     * outcomes.
+     *
+     * @param listener the outcome listener
+     * @return this builder for use in a chained invocation
+     */
+    public Builder listener(@Nonnull Listener listener) {
+      this.listener = Utils.requireNonNull(listener, "listener");
+      return this;
+    }
+
+    /**
+     * Builds a new bulk sender.
+     *
+     * @return a bulk sender
+     * @throws IllegalStateException if the connection is missing
+     */
+    @Nonnull
+    public BulkSender build() {
+      if (connection == null) {
+        throw new IllegalStateException("connection is required");
+      }
+
+      return new BulkSender(this);
+    }
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(BulkSender.class);
+
+  /** The default maximum number of requests in flight. */
+  private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+  private static final Listener NOOP_LISTENER =
+      new Listener() {
+
+        @Override
+        public void succeeded(MtBatchCreate create, MtBatchResult result) {}
+
+        @Override
+        public void failed(MtBatchCreate create, Exception e) {}
+      };
+
+  private final ApiConnection connection;
+
+  private final int maxInFlight;
+
+  private final Listener listener;
+
+  /** Permits for requests in flight. */
+  private final Semaphore permits;
+
+  private final LongAdder submitted = new LongAdder();
+
+  private final LongAdder succeeded = new LongAdder();
+
+  private final LongAdder failed = new LongAdder();
+
+  private final LongAdder recipients = new LongAdder();
+
+  /** The time of the first submission, in nanoseconds, or zero if nothing has been submitted. */
+  private final AtomicLong startNanos = new AtomicLong();
+
+  private BulkSender(Builder b) {
+    this.connection = b.connection;
+    this.maxInFlight = b.maxInFlight;
+    this.listener = b.listener;
+    this.permits = new Semaphore(b.maxInFlight);
+  }
+
+  /**
+   * Returns a fresh builder of bulk senders.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * The maximum number of requests in flight.
+   *
+   * @return a positive number
+   */
+  public int maxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * The number of requests currently in flight.
+   *
+   * @return a non-negative number
+   */
+  public int inFlight() {
+    return maxInFlight - permits.availablePermits();
+  }
+
+  /**
+   * Submits the given batch for sending. If the maximum number of requests already are in flight
+   * then this method blocks until a request completes.
+   *
+   * @param create the batch to send
+   * @return a future yielding the created batch
+   * @throws InterruptedException if interrupted while waiting for a request to complete
+   * @throws IllegalArgumentException if the batch type is not supported
+   */
+  @Nonnull
+  public CompletableFuture<? extends MtBatchResult> submit(@Nonnull final MtBatchCreate create)
+      throws InterruptedException {
+    Utils.requireNonNull(create, "create");
+
+    permits.acquire();
+
+    return dispatch(create);
+  }
+
+  /**
+   * Sends the given batch using an already acquired permit, which is released when the request
+   * completes.
+   *
+   * @param create the batch to send
+   * @return a future yielding the created batch
+   * @throws IllegalArgumentException if the batch type is not supported
+   */
+  private CompletableFuture<? extends MtBatchResult> dispatch(final MtBatchCreate create) {
+    startNanos.compareAndSet(0, System.nanoTime());
+    submitted.increment();
+
+    CompletableFuture<? extends MtBatchResult> future;
+    try {
+      future = send(create);
+    } catch (RuntimeException e) {
+      failed.increment();
+      permits.release();
+      throw e;
+    }
+
+    future.whenComplete(
+        (result, t) -> {
+          try {
+            if (t == null) {
+              succeeded.increment();
+              recipients.add(create.recipients().size());
+              listener.succeeded(create, result);
+            } else {
+              failed.increment();
+              listener.failed(
+                  create, (t instanceof Exception) ? (Exception) t : new ExecutionException(t));
+            }
+          } catch (RuntimeException e) {
+            log.error("caught and dropped exception in bulk send listener: {}", e.getMessage(), e);
+          } finally {
+            permits.release();
+          }
+        });
+
+    return future;
+  }
+
+  /**
+   * Sends all batches of the given iterator and waits for all requests to complete. Batches are
+   * only pulled from the iterator when there is room for another request in flight.
+   *
+   * @param creates the batches to send
+   * @return a summary of all batches sent by this sender
+   * @throws InterruptedException if interrupted while waiting for requests to complete
+   */
+  @Nonnull
+  public BulkSendSummary sendAll(@Nonnull Iterator<? extends MtBatchCreate> creates)
+      throws InterruptedException {
+    while (creates.hasNext()) {
+      submit(creates.next());
+    }
+
+    awaitCompletion();
+
+    return summary();
+  }
+
+  /**
+   * Sends all batches of the given stream and waits for all requests to complete. The stream is
+   * consumed lazily, that is, batches are only produced when there is room for another request in
+   * flight.
+   *
+   * @param creates the batches to send
+   * @return a summary of all batches sent by this sender
+   * @throws InterruptedException if interrupted while waiting for requests to complete
+   */
+  @Nonnull
+  public BulkSendSummary sendAll(@Nonnull Stream<? extends MtBatchCreate> creates)
+      throws InterruptedException {
+    return sendAll(creates.iterator());
+  }
+
+  /**
+   * Sends all batches published by the given publisher and waits for all requests to complete. A
+   * single batch is requested from the publisher each time there is room for another request in
+   * flight, that is, the publisher is subject to the same backpressure as an iterator.
+   *
+   * <p>If the publisher signals an error then the requests in flight are awaited and the error is
+   * rethrown, checked exceptions other than {@link ApiException} are wrapped in a {@link
+   * ConcurrentException}. If interrupted then the subscription is cancelled.
+   *
+   * <p>Note, this method requires the optional <code>org.reactivestreams:reactive-streams</code>
+   * dependency. It is deliberately not an overload of {@link #sendAll(Iterator)}, such that the
+   * other methods can be compiled against without that dependency.
+   *
+   * @param creates the publisher of batches to send
+   * @return a summary of all batches sent by this sender
+   * @throws InterruptedException if interrupted while waiting for batches or requests
+   * @throws ApiException if the publisher signalled an error
+   */
+  @Nonnull
+  public BulkSendSummary sendAllPublished(@Nonnull Publisher<? extends MtBatchCreate> creates)
+      throws InterruptedException, ApiException {
+    new PublisherDrain().run(Utils.requireNonNull(creates, "creates"));
+
+    awaitCompletion();
+
+    return summary();
+  }
+
+  /**
+   * Waits until all requests currently in flight have completed.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitCompletion() throws InterruptedException {
+    permits.acquire(maxInFlight);
+    permits.release(maxInFlight);
+  }
+
+  /**
+   * Returns a summary of the batches sent so far by this sender.
+   *
+   * @return a non-null summary
+   */
+  @Nonnull
+  public BulkSendSummary summary() {
+    long start = startNanos.get();
+
+    return BulkSendSummaryImpl.builder()
+        .submitted(submitted.sum())
+        .succeeded(succeeded.sum())
+        .failed(failed.sum())
+        .recipients(recipients.sum())
+        .elapsed((start == 0) ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - start))
+        .build();
+  }
+
+  /**
+   * Pulls batches from a publisher on the calling thread. The subscriber merely queues the signals
+   * it receives, each batch is requested only after a permit has been acquired for it.
+   */
+  private final class PublisherDrain implements Subscriber<MtBatchCreate> {
+
+    /** Marks the completion of the publisher in {@link #signals}. */
+    private final Object complete = new Object();
+
+    /** The received subscription, batches, and terminal signal. */
+    private final BlockingQueue<Object> signals = new LinkedBlockingQueue<Object>();
+
+    void run(Publisher<? extends MtBatchCreate> publisher)
+        throws InterruptedException, ApiException {
+      publisher.subscribe(this);
+
+      Object signal = signals.take();
+
+      if (!(signal instanceof Subscription)) {
+        throw new IllegalStateException("publisher signalled before subscription");
+      }
+
+      Subscription subscription = (Subscription) signal;
+
+      try {
+        while (true) {
+          permits.acquire();
+          subscription.request(1);
+          signal = signals.take();
+
+          if (signal instanceof MtBatchCreate) {
+            dispatch((MtBatchCreate) signal);
+          } else {
+            permits.release();
+            break;
+          }
+        }
+      } catch (InterruptedException | RuntimeException e) {
+        subscription.cancel();
+        throw e;
+      }
+
+      if (signal instanceof Throwable) {
+        awaitCompletion();
+        throw unwrap((Throwable) signal);
+      }
+    }
+
+    private ApiException unwrap(Throwable t) {
+      if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t instanceof Error) {
+        throw (Error) t;
+      } else if (t instanceof ApiException) {
+        return (ApiException) t;
+      } else {
+        return new ConcurrentException(t);
+      }
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      signals.add(s);
+    }
+
+    @Override
+    public void onNext(MtBatchCreate create) {
+      signals.add(Utils.requireNonNull(create, "create"));
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      signals.add(Utils.requireNonNull(t, "t"));
+    }
+
+    @Override
+    public void onComplete() {
+      signals.add(complete);
+    }
+  }
+
+  private CompletableFuture<? extends MtBatchResult> send(MtBatchCreate create) {
+    if (create instanceof MtBatchTextSmsCreate) {
+      return connection.createBatchAsync((MtBatchTextSmsCreate) create);
+    } else if (create instanceof MtBatchBinarySmsCreate) {
+      return connection.createBatchAsync((MtBatchBinarySmsCreate) create);
+    } else if (create instanceof MtBatchMmsCreate) {
+      return connection.createBatchAsync((MtBatchMmsCreate) create);
+    } else {
+      throw new IllegalArgumentException("unsupported batch type " + create.getClass().getName());
+    }
+  }
+}
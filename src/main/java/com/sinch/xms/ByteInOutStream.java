@@ -72,4 +72,15 @@ final class ByteInOutStream extends ByteArrayOutputStream {
   public InputStream toInputStream() {
     return new ByteArrayInputStream(buf, 0, count);
   }
+
+  /**
+   * Creates a byte buffer wrapping the written data. Note, the returned buffer shares its data
+   * buffer with this class and is invalidated by further writes or a {@link #reset()}.
+   *
+   * @return a byte buffer
+   */
+  @Nonnull
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, count);
+  }
 }
@@ -0,0 +1,639 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sinch.xms.api.BatchDeliveryReport;
+import com.sinch.xms.api.MoSms;
+import com.sinch.xms.api.RecipientDeliveryReport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An embedded HTTP server receiving the callbacks that XMS posts to the callback URL of a batch or
+ * service plan. Received batch delivery reports, recipient delivery reports, and inbound messages
+ * are parsed and handed to the registered handlers. For example,
+ *
+ * <pre>
+ * CallbackReceiver receiver =
+ *     CallbackReceiver.builder()
+ *         .port(8080)
+ *         .onRecipientDeliveryReport(report -&gt; store(report))
+ *         .onInbound(mo -&gt; reply(mo))
+ *         .start();
+ * </pre>
+ *
+ * <p>Callbacks are parsed on the HTTP server threads, reading the request body into a buffer taken
+ * from a {@link ResponseBufferPool}, and are acknowledged as soon as the parsed event has been
+ * queued for its handler. Handlers are run on a separate pool of {@link
+ * Builder#handlerThreads(int)} threads fed by a queue of at most {@link Builder#queueCapacity(int)}
+ * events. When the queue is full the callback is answered with status 503 Service Unavailable,
+ * which makes XMS retry it later. Callbacks that cannot be parsed are answered with status 400 Bad
+ * Request, and callbacks whose body exceeds {@link Builder#maxBodySize(int)} bytes are answered
+ * with status 413 Payload Too Large.
+ *
+ * <p>A handler that throws an exception has the exception logged and counted in {@link #failed()},
+ * the callback has then already been acknowledged.
+ */
+public final class CallbackReceiver implements Closeable {
+
+  /** A builder of callback receivers. */
+  public static final class Builder {
+
+    private InetSocketAddress address = new InetSocketAddress(0);
+
+    private String path = "/";
+
+    private int serverThreads = DEFAULT_SERVER_THREADS;
+
+    private int handlerThreads = DEFAULT_HANDLER_THREADS;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+
+    private boolean acceleratedJson = false;
+
+    private ResponseBufferPool bufferPool;
+
+    private Consumer<? super BatchDeliveryReport> batchDeliveryReportHandler;
+
+    private Consumer<? super RecipientDeliveryReport> recipientDeliveryReportHandler;
+
+    private Consumer<? super MoSms> inboundHandler;
+
+    private Builder() {}
+
+    /**
+     * The port on which to listen, on all interfaces. Default is an ephemeral port, the chosen port
+     * is available through {@link CallbackReceiver#address()}.
+     *
+     * @param port a port number, zero for an ephemeral port
+     * @return this builder for use in a chained invocation
+     */
+    public Builder port(int port) {
+      return address(new InetSocketAddress(port));
+    }
+
+    /**
+     * The address on which to listen.
+     *
+     * @param address a socket address
+     * @return this builder for use in a chained invocation
+     */
+    public Builder address(@Nonnull InetSocketAddress address) {
+      this.address = Utils.requireNonNull(address, "address");
+      return this;
+    }
+
+    /**
+     * The path below which callbacks are received. Default is "/".
+     *
+     * @param path a path starting with "/"
+     * @return this builder for use in a chained invocation
+     */
+    public Builder path(@Nonnull String path) {
+      if (!Utils.requireNonNull(path, "path").startsWith("/")) {
+        throw new IllegalArgumentException("path must start with '/'");
+      }
+
+      this.path = path;
+      return this;
+    }
+
+    /**
+     * The number of threads reading and parsing callbacks. Default is 4.
+     *
+     * @param n a positive number of threads
+     * @return this builder for use in a chained invocation
+     */
+    public Builder serverThreads(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("serverThreads must be positive");
+      }
+
+      this.serverThreads = n;
+      return this;
+    }
+
+    /**
+     * The number of threads running handlers. Default is 4.
+     *
+     * @param n a positive number of threads
+     * @return this builder for use in a chained invocation
+     */
+    public Builder handlerThreads(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("handlerThreads must be positive");
+      }
+
+      this.handlerThreads = n;
+      return this;
+    }
+
+    /**
+     * The maximum number of parsed events waiting for a handler thread. Default is 10000.
+     *
+     * @param n a positive number of events
+     * @return this builder for use in a chained invocation
+     */
+    public Builder queueCapacity(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("queueCapacity must be positive");
+      }
+
+      this.queueCapacity = n;
+      return this;
+    }
+
+    /**
+     * The maximum size of an accepted callback body. Larger callbacks are rejected without being
+     * read in full. Default is 1 MiB.
+     *
+     * @param bytes a positive number of bytes
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxBodySize(int bytes) {
+      if (bytes <= 0) {
+        throw new IllegalArgumentException("maxBodySize must be positive");
+      }
+
+      this.maxBodySize = bytes;
+      return this;
+    }
+
+    /**
+     * Whether to parse callbacks using the accelerated JSON mode of {@link ApiObjectMapper}.
+     * Default is false.
+     *
+     * @param accelerated whether to enable accelerated parsing
+     * @return this builder for use in a chained invocation
+     */
+    public Builder acceleratedJson(boolean accelerated) {
+      this.acceleratedJson = accelerated;
+      return this;
+    }
+
+    /**
+     * The pool from which request body buffers are taken. By default the receiver uses a pool of
+     * its own.
+     *
+     * @param pool a buffer pool
+     * @return this builder for use in a chained invocation
+     */
+    public Builder bufferPool(@Nonnull ResponseBufferPool pool) {
+      this.bufferPool = Utils.requireNonNull(pool, "pool");
+      return this;
+    }
+
+    /**
+     * The handler of batch delivery reports. Callbacks of this type are rejected if no handler is
+     * set.
+     *
+     * @param handler the handler
+     * @return this builder for use in a chained invocation
+     */
+    public Builder onBatchDeliveryReport(@Nonnull Consumer<? super BatchDeliveryReport> handler) {
+      this.batchDeliveryReportHandler = Utils.requireNonNull(handler, "handler");
+      return this;
+    }
+
+    /**
+     * The handler of recipient delivery reports. Callbacks of this type are rejected if no handler
+     * is set.
+     *
+     * @param handler the handler
+     * @return this builder for use in a chained invocation
+     */
+    public Builder onRecipientDeliveryReport(
+        @Nonnull Consumer<? super RecipientDeliveryReport> handler) {
+      this.recipientDeliveryReportHandler = Utils.requireNonNull(handler, "handler");
+      return this;
+    }
+
+    /**
+     * The handler of inbound messages. Callbacks of this type are rejected if no handler is set.
+     *
+     * @param handler the handler
+     * @return this builder for use in a chained invocation
+     */
+    public Builder onInbound(@Nonnull Consumer<? super MoSms> handler) {
+      this.inboundHandler = Utils.requireNonNull(handler, "handler");
+      return this;
+    }
+
+    /**
+     * Builds and starts a new callback receiver.
+     *
+     * @return a started callback receiver
+     * @throws IOException if the server could not be bound to its address
+     */
+    @Nonnull
+    public CallbackReceiver start() throws IOException {
+      CallbackReceiver receiver = new CallbackReceiver(this);
+
+      receiver.start();
+
+      return receiver;
+    }
+  }
+
+  /** The default number of threads reading and parsing callbacks. */
+  private static final int DEFAULT_SERVER_THREADS = 4;
+
+  /** The default number of threads running handlers. */
+  private static final int DEFAULT_HANDLER_THREADS = 4;
+
+  /** The default maximum number of queued events. */
+  private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+  /** The default maximum size of a callback body. */
+  private static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+  /** Thrown when reading a callback body larger than the maximum body size. */
+  private static final class BodyTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    BodyTooLargeException() {
+      super("callback body too large");
+    }
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(CallbackReceiver.class);
+
+  private final InetSocketAddress requestedAddress;
+
+  private final String path;
+
+  private final ResponseBufferPool bufferPool;
+
+  private final int maxBodySize;
+
+  private final JsonFactory jsonFactory;
+
+  private final ObjectReader batchDeliveryReportReader;
+
+  private final ObjectReader recipientDeliveryReportReader;
+
+  private final ObjectReader inboundReader;
+
+  @Nullable private final Consumer<? super BatchDeliveryReport> batchDeliveryReportHandler;
+
+  @Nullable private final Consumer<? super RecipientDeliveryReport> recipientDeliveryReportHandler;
+
+  @Nullable private final Consumer<? super MoSms> inboundHandler;
+
+  private final ExecutorService serverExecutor;
+
+  private final ThreadPoolExecutor handlerExecutor;
+
+  private final LongAdder received = new LongAdder();
+
+  private final LongAdder rejected = new LongAdder();
+
+  private final LongAdder failed = new LongAdder();
+
+  private HttpServer server;
+
+  private CallbackReceiver(Builder b) {
+    ApiObjectMapper mapper = new ApiObjectMapper(false, b.acceleratedJson);
+
+    this.requestedAddress = b.address;
+    this.path = b.path;
+    this.bufferPool = b.bufferPool == null ? ResponseBufferPool.builder().build() : b.bufferPool;
+    this.maxBodySize = b.maxBodySize;
+    this.jsonFactory = mapper.getFactory();
+    this.batchDeliveryReportReader = mapper.readerFor(BatchDeliveryReport.class);
+    this.recipientDeliveryReportReader = mapper.readerFor(RecipientDeliveryReport.class);
+    this.inboundReader = mapper.readerFor(MoSms.class);
+    this.batchDeliveryReportHandler = b.batchDeliveryReportHandler;
+    this.recipientDeliveryReportHandler = b.recipientDeliveryReportHandler;
+    this.inboundHandler = b.inboundHandler;
+    this.serverExecutor =
+        Executors.newFixedThreadPool(b.serverThreads, threadFactory("xms-callback-server"));
+    this.handlerExecutor =
+        new ThreadPoolExecutor(
+            b.handlerThreads,
+            b.handlerThreads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(b.queueCapacity),
+            threadFactory("xms-callback-handler"));
+  }
+
+  /**
+   * Returns a fresh builder of callback receivers.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static ThreadFactory threadFactory(final String prefix) {
+    final AtomicInteger counter = new AtomicInteger();
+
+    return r -> {
+      Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  private void start() throws IOException {
+    server = HttpServer.create(requestedAddress, 0);
+    server.createContext(path, this::handle);
+    server.setExecutor(serverExecutor);
+    server.start();
+  }
+
+  /**
+   * The address on which this receiver listens.
+   *
+   * @return a non-null socket address
+   */
+  @Nonnull
+  public InetSocketAddress address() {
+    return server.getAddress();
+  }
+
+  /**
+   * The number of callbacks that have been accepted and queued for a handler.
+   *
+   * @return a non-negative number
+   */
+  public long received() {
+    return received.sum();
+  }
+
+  /**
+   * The number of callbacks rejected because they could not be parsed, had no handler, or because
+   * the handler queue was full.
+   *
+   * @return a non-negative number
+   */
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * The number of events whose handler threw an exception.
+   *
+   * @return a non-negative number
+   */
+  public long failed() {
+    return failed.sum();
+  }
+
+  /**
+   * Stops receiving callbacks and waits for the already queued events to be handled.
+   *
+   * @throws IOException never
+   */
+  @Override
+  public void close() throws IOException {
+    server.stop(0);
+    serverExecutor.shutdown();
+    handlerExecutor.shutdown();
+
+    try {
+      while (!handlerExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+        log.debug("waiting for {} queued callback events", handlerExecutor.getQueue().size());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        respond(exchange, 405);
+        return;
+      }
+
+      if (declaredLength(exchange) > maxBodySize) {
+        rejected.increment();
+        respond(exchange, 413);
+        return;
+      }
+
+      Runnable event;
+
+      try {
+        event = parse(exchange.getRequestBody());
+      } catch (BodyTooLargeException e) {
+        rejected.increment();
+        respond(exchange, 413);
+        return;
+      } catch (IOException | RuntimeException e) {
+        log.debug("rejected malformed callback: {}", e.getMessage());
+        event = null;
+      }
+
+      if (event == null) {
+        rejected.increment();
+        respond(exchange, 400);
+        return;
+      }
+
+      try {
+        handlerExecutor.execute(event);
+      } catch (RejectedExecutionException e) {
+        rejected.increment();
+        respond(exchange, 503);
+        return;
+      }
+
+      received.increment();
+      respond(exchange, 200);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Responds with the given status and no body. Whatever is left of the request body is first
+   * discarded, up to an implementation specific amount, since the server otherwise closes the
+   * connection with unread data and may reset it before the client has read the response.
+   *
+   * @param exchange the exchange
+   * @param status the response status
+   * @throws IOException if the response could not be sent
+   */
+  private static void respond(HttpExchange exchange, int status) throws IOException {
+    exchange.getRequestBody().close();
+    exchange.sendResponseHeaders(status, -1);
+  }
+
+  /**
+   * The body length declared by the Content-Length header of the given exchange.
+   *
+   * @param exchange the exchange
+   * @return the declared length, or -1 if absent or malformed
+   */
+  private static long declaredLength(HttpExchange exchange) {
+    String value = exchange.getRequestHeaders().getFirst("Content-Length");
+
+    if (value == null) {
+      return -1;
+    }
+
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Reads and parses the given callback body.
+   *
+   * @param in the request body
+   * @return a task running the handler of the parsed event, <code>null</code> if the event has an
+   *     unknown type or no handler
+   * @throws BodyTooLargeException if the body exceeds the maximum body size
+   * @throws IOException if the body could not be read or parsed
+   */
+  @Nullable
+  private Runnable parse(InputStream in) throws IOException {
+    byte[] pooled = bufferPool.acquire();
+    byte[] buf = pooled;
+    int len = 0;
+
+    try {
+      int n;
+
+      while ((n = in.read(buf, len, buf.length - len)) != -1) {
+        len += n;
+
+        if (len > maxBodySize) {
+          throw new BodyTooLargeException();
+        }
+
+        if (len == buf.length) {
+          buf = Arrays.copyOf(buf, (int) Math.min(buf.length * 2L, maxBodySize + 1L));
+        }
+      }
+
+      return parse(buf, len);
+    } finally {
+      bufferPool.release(pooled, len);
+    }
+  }
+
+  @Nullable
+  private Runnable parse(byte[] buf, int len) throws IOException {
+    String type = typeOf(buf, len);
+
+    if (type == null) {
+      return null;
+    }
+
+    switch (type) {
+      case "delivery_report_sms":
+      case "delivery_report_mms":
+        return task(batchDeliveryReportHandler, batchDeliveryReportReader, buf, len);
+      case "recipient_delivery_report_sms":
+      case "recipient_delivery_report_mms":
+        return task(recipientDeliveryReportHandler, recipientDeliveryReportReader, buf, len);
+      case "mo_text":
+      case "mo_binary":
+      case "mo_media":
+        return task(inboundHandler, inboundReader, buf, len);
+      default:
+        return null;
+    }
+  }
+
+  @Nullable
+  private <T> Runnable task(
+      @Nullable final Consumer<? super T> handler, ObjectReader reader, byte[] buf, int len)
+      throws IOException {
+    if (handler == null) {
+      return null;
+    }
+
+    final T event = reader.readValue(buf, 0, len);
+
+    return () -> {
+      try {
+        handler.accept(event);
+      } catch (RuntimeException e) {
+        failed.increment();
+        log.error("caught and dropped exception in callback handler: {}", e.getMessage(), e);
+      }
+    };
+  }
+
+  /**
+   * Finds the value of the top-level "type" field of the given JSON object without binding the
+   * object.
+   *
+   * @return the type, <code>null</code> if the object has no type
+   * @throws IOException if the JSON is malformed
+   */
+  @Nullable
+  private String typeOf(byte[] buf, int len) throws IOException {
+    try (JsonParser p = jsonFactory.createParser(buf, 0, len)) {
+      if (p.nextToken() != JsonToken.START_OBJECT) {
+        return null;
+      }
+
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String name = p.getCurrentName();
+        JsonToken value = p.nextToken();
+
+        if ("type".equals(name)) {
+          return value == JsonToken.VALUE_STRING ? p.getText() : null;
+        }
+
+        p.skipChildren();
+      }
+
+      return null;
+    }
+  }
+}
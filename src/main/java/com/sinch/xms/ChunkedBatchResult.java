@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.MtBatchCreate;
+import com.sinch.xms.api.MtBatchResult;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.immutables.value.Value;
+
+/**
+ * The outcome of sending a batch split into chunks by a {@link ChunkingSender}. Each chunk is
+ * created as a batch of its own, so some chunks may have been created while others failed.
+ */
+@Value.Immutable
+@ValueStylePackage
+public abstract class ChunkedBatchResult {
+
+  /** A chunk that failed to be created. */
+  @Value.Immutable
+  public abstract static class FailedChunk {
+
+    /**
+     * The position of the chunk among all chunks, starting at zero.
+     *
+     * @return a non-negative index
+     */
+    public abstract int index();
+
+    /**
+     * The batch that failed to be created. This can be used to retry the chunk.
+     *
+     * @return a non-null batch
+     */
+    public abstract MtBatchCreate chunk();
+
+    /**
+     * The cause of the failure.
+     *
+     * @return a non-null exception
+     */
+    public abstract Exception cause();
+  }
+
+  /**
+   * The total number of chunks.
+   *
+   * @return a non-negative number
+   */
+  public abstract int chunks();
+
+  /**
+   * The successfully created batches, in chunk order.
+   *
+   * @return a, possibly empty, list of batches
+   */
+  public abstract List<MtBatchResult> batches();
+
+  /**
+   * The chunks that failed to be created, in chunk order.
+   *
+   * @return a, possibly empty, list of failed chunks
+   */
+  public abstract List<FailedChunk> failures();
+
+  /**
+   * The identifiers of the successfully created batches, in chunk order.
+   *
+   * @return a, possibly empty, list of batch identifiers
+   */
+  @Value.Derived
+  public List<BatchId> batchIds() {
+    return batches().stream().map(MtBatchResult::id).collect(Collectors.toList());
+  }
+
+  /**
+   * Whether every chunk was successfully created.
+   *
+   * @return true if there were no failures; false otherwise
+   */
+  public boolean isComplete() {
+    return failures().isEmpty();
+  }
+}
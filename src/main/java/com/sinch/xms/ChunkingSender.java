@@ -0,0 +1,411 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.MtBatchBinarySmsCreate;
+import com.sinch.xms.api.MtBatchCreate;
+import com.sinch.xms.api.MtBatchMmsCreate;
+import com.sinch.xms.api.MtBatchResult;
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import com.sinch.xms.api.ParameterValues;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nonnull;
+
+/**
+ * Sends batches having very many recipients by splitting them into chunks, each created as a batch
+ * of its own. This keeps individual requests small, lets chunks be uploaded concurrently, and
+ * contains failures to the affected chunks. For example,
+ *
+ * <pre>
+ * ChunkingSender sender = ChunkingSender.builder().connection(conn).chunkSize(1000).build();
+ * ChunkedBatchResult result = sender.send(campaign);
+ * </pre>
+ *
+ * <p>Each chunk carries all attributes of the original batch except that the recipients are
+ * restricted to those of the chunk and the template parameters only hold substitutions for those
+ * recipients. Chunks are built lazily as they are sent, at most {@link #maxConcurrency()} chunks
+ * are in flight at any time.
+ */
+public final class ChunkingSender {
+
+  /** A builder of chunking senders. The API connection must be set. */
+  public static final class Builder {
+
+    private ApiConnection connection;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+    private Builder() {}
+
+    /**
+     * The API connection through which to send chunks.
+     *
+     * @param connection a started API connection
+     * @return this builder for use in a chained invocation
+     */
+    public Builder connection(@Nonnull ApiConnection connection) {
+      this.connection = Utils.requireNonNull(connection, "connection");
+      return this;
+    }
+
+    /**
+     * The maximum number of recipients of each chunk. Default is 1000.
+     *
+     * @param n a positive number of recipients
+     * @return this builder for use in a chained invocation
+     */
+    public Builder chunkSize(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("chunkSize must be positive");
+      }
+
+      this.chunkSize = n;
+      return this;
+    }
+
+    /**
+     * The maximum number of chunks in flight for each sent batch. Default is 4.
+     *
+     * @param n a positive number of chunks
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxConcurrency(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("maxConcurrency must be positive");
+      }
+
+      this.maxConcurrency = n;
+      return this;
+    }
+
+    /**
+     * Builds a new chunking sender.
+     *
+     * @return a chunking sender
+     * @throws IllegalStateException if the connection is missing
+     */
+    @Nonnull
+    public ChunkingSender build() {
+      if (connection == null) {
+        throw new IllegalStateException("connection is required");
+      }
+
+      return new ChunkingSender(this);
+    }
+  }
+
+  /** The default maximum number of recipients per chunk. */
+  private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  /** The default maximum number of chunks in flight. */
+  private static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+  private final ApiConnection connection;
+
+  private final int chunkSize;
+
+  private final int maxConcurrency;
+
+  private ChunkingSender(Builder b) {
+    this.connection = b.connection;
+    this.chunkSize = b.chunkSize;
+    this.maxConcurrency = b.maxConcurrency;
+  }
+
+  /**
+   * Returns a fresh builder of chunking senders.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * The maximum number of recipients of each chunk.
+   *
+   * @return a positive number
+   */
+  public int chunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * The maximum number of chunks in flight for each sent batch.
+   *
+   * @return a positive number
+   */
+  public int maxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /**
+   * Sends the given batch in chunks and waits for all chunks to complete.
+   *
+   * @param create the batch to send
+   * @return the outcome of all chunks
+   * @throws InterruptedException if interrupted while waiting, no further chunks are then sent
+   * @throws IllegalArgumentException if the batch type is not supported
+   */
+  @Nonnull
+  public ChunkedBatchResult send(@Nonnull MtBatchCreate create) throws InterruptedException {
+    CompletableFuture<ChunkedBatchResult> future = sendAsync(create);
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(false);
+      throw e;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Asynchronously sends the given batch in chunks. The returned future completes when all chunks
+   * have completed, failed chunks are reported in the result rather than failing the future.
+   * Cancelling the future stops further chunks from being sent, chunks already in flight are not
+   * affected.
+   *
+   * @param create the batch to send
+   * @return a future yielding the outcome of all chunks
+   * @throws IllegalArgumentException if the batch type is not supported
+   */
+  @Nonnull
+  public CompletableFuture<ChunkedBatchResult> sendAsync(@Nonnull MtBatchCreate create) {
+    Utils.requireNonNull(create, "create");
+
+    if (!(create instanceof MtBatchTextSmsCreate)
+        && !(create instanceof MtBatchBinarySmsCreate)
+        && !(create instanceof MtBatchMmsCreate)) {
+      throw new IllegalArgumentException("unsupported batch type " + create.getClass().getName());
+    }
+
+    return new Run(create).start();
+  }
+
+  /**
+   * Builds the chunk holding the recipients of the given range.
+   *
+   * @param template a batch having all attributes of the original batch, it is only used for
+   *     copying and its recipients and parameters are replaced
+   * @param original the original batch
+   * @param from the index of the first recipient of the chunk
+   * @param to the index following the last recipient of the chunk
+   * @return a batch holding the chunk
+   */
+  static MtBatchCreate chunk(MtBatchCreate template, MtBatchCreate original, int from, int to) {
+    List<String> recipients = original.recipients().subList(from, to);
+
+    if (template instanceof MtBatchTextSmsCreate) {
+      return MtBatchTextSmsCreate.builder()
+          .using((MtBatchTextSmsCreate) template)
+          .recipients(recipients)
+          .parameters(chunkParameters(((MtBatchTextSmsCreate) original).parameters(), recipients))
+          .build();
+    } else if (template instanceof MtBatchMmsCreate) {
+      return MtBatchMmsCreate.builder()
+          .using((MtBatchMmsCreate) template)
+          .recipients(recipients)
+          .parameters(chunkParameters(((MtBatchMmsCreate) original).parameters(), recipients))
+          .build();
+    } else {
+      return MtBatchBinarySmsCreate.builder()
+          .using((MtBatchBinarySmsCreate) template)
+          .recipients(recipients)
+          .build();
+    }
+  }
+
+  /** Restricts the substitutions of the given parameters to the given recipients. */
+  private static Map<String, ParameterValues> chunkParameters(
+      Map<String, ParameterValues> parameters, List<String> recipients) {
+    if (parameters.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    Map<String, ParameterValues> result = new LinkedHashMap<String, ParameterValues>();
+
+    for (Map.Entry<String, ParameterValues> entry : parameters.entrySet()) {
+      ParameterValues values = entry.getValue();
+      ParameterValues.Builder builder =
+          SinchSMSApi.parameterValues().defaultValue(values.defaultValue());
+
+      for (String recipient : recipients) {
+        String substitution = values.substitutions().get(recipient);
+        if (substitution != null) {
+          builder.putSubstitution(recipient, substitution);
+        }
+      }
+
+      result.put(entry.getKey(), builder.build());
+    }
+
+    return result;
+  }
+
+  private CompletableFuture<? extends MtBatchResult> sendChunk(MtBatchCreate chunk) {
+    if (chunk instanceof MtBatchTextSmsCreate) {
+      return connection.createBatchAsync((MtBatchTextSmsCreate) chunk);
+    } else if (chunk instanceof MtBatchBinarySmsCreate) {
+      return connection.createBatchAsync((MtBatchBinarySmsCreate) chunk);
+    } else {
+      return connection.createBatchAsync((MtBatchMmsCreate) chunk);
+    }
+  }
+
+  /** The sending of a single batch. */
+  private final class Run {
+
+    private final MtBatchCreate original;
+
+    private final int recipients;
+
+    private final int chunks;
+
+    private final CompletableFuture<ChunkedBatchResult> future =
+        new CompletableFuture<ChunkedBatchResult>();
+
+    /** The outcome of each chunk, either the created batch or a failed chunk. */
+    private final AtomicReferenceArray<Object> outcomes;
+
+    /** The index of the next chunk to send. */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /** The number of chunks not yet completed. */
+    private final AtomicInteger remaining;
+
+    /** The number of requested dispatches, only the thread raising it from zero dispatches. */
+    private final AtomicInteger dispatches = new AtomicInteger();
+
+    /** The batch that chunks are copied from, built together with the first chunk. */
+    private volatile MtBatchCreate template;
+
+    Run(MtBatchCreate original) {
+      this.original = original;
+      this.recipients = original.recipients().size();
+      this.chunks = (recipients + chunkSize - 1) / chunkSize;
+      this.outcomes = new AtomicReferenceArray<Object>(chunks);
+      this.remaining = new AtomicInteger(chunks);
+    }
+
+    CompletableFuture<ChunkedBatchResult> start() {
+      for (int i = 0; i < Math.min(maxConcurrency, chunks); i++) {
+        requestDispatch();
+      }
+
+      return future;
+    }
+
+    /**
+     * Requests that the next chunk is sent. Chunks completing immediately request further
+     * dispatches, these are handled by the loop here rather than by recursion.
+     */
+    private void requestDispatch() {
+      if (dispatches.getAndIncrement() != 0) {
+        return;
+      }
+
+      do {
+        dispatch();
+      } while (dispatches.decrementAndGet() != 0);
+    }
+
+    private void dispatch() {
+      final int i = next.getAndIncrement();
+      if (i >= chunks || future.isCancelled()) {
+        return;
+      }
+
+      int from = i * chunkSize;
+      int to = Math.min(from + chunkSize, recipients);
+
+      final MtBatchCreate chunk;
+      CompletableFuture<? extends MtBatchResult> sent;
+      try {
+        if (template == null) {
+          template = chunk(original, original, from, to);
+          chunk = template;
+        } else {
+          chunk = chunk(template, original, from, to);
+        }
+
+        sent = sendChunk(chunk);
+      } catch (RuntimeException e) {
+        completed(i, failure(i, original, e));
+        return;
+      }
+
+      sent.whenComplete(
+          (result, t) -> {
+            if (t == null) {
+              completed(i, result);
+            } else {
+              completed(
+                  i,
+                  failure(
+                      i,
+                      chunk,
+                      (t instanceof Exception) ? (Exception) t : new ExecutionException(t)));
+            }
+          });
+    }
+
+    private ChunkedBatchResult.FailedChunk failure(int i, MtBatchCreate chunk, Exception e) {
+      return FailedChunkImpl.builder().index(i).chunk(chunk).cause(e).build();
+    }
+
+    private void completed(int i, Object outcome) {
+      outcomes.set(i, outcome);
+
+      if (remaining.decrementAndGet() == 0) {
+        finish();
+      } else {
+        requestDispatch();
+      }
+    }
+
+    private void finish() {
+      ChunkedBatchResultImpl.Builder builder = ChunkedBatchResultImpl.builder().chunks(chunks);
+
+      for (int i = 0; i < chunks; i++) {
+        Object outcome = outcomes.get(i);
+
+        if (outcome instanceof MtBatchResult) {
+          builder.addBatch((MtBatchResult) outcome);
+        } else {
+          builder.addFailure((ChunkedBatchResult.FailedChunk) outcome);
+        }
+      }
+
+      future.complete(builder.build());
+    }
+  }
+}
@@ -0,0 +1,519 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A circuit breaker protecting against a degraded XMS endpoint. While the breaker is open requests
+ * fail immediately with a {@link CircuitBreakerOpenException} instead of occupying connections
+ * waiting for timeouts.
+ *
+ * <p>The breaker starts out {@link State#CLOSED closed} and records the outcome of the most recent
+ * requests in a sliding window. A request counts as failed if it failed with an I/O error, which
+ * includes timeouts, if it exceeded its deadline, or if XMS responded with a 5xx status. It counts
+ * as slow if it took longer than the slow call duration. Once the window holds the minimum number
+ * of calls and either the failure rate or the slow call rate reaches its threshold the breaker
+ * {@link State#OPEN opens}.
+ *
+ * <p>After the open duration has passed the breaker becomes {@link State#HALF_OPEN half-open} and
+ * lets a limited number of probe requests through. If all probes succeed without being slow then
+ * the breaker closes again, otherwise it reopens. Requests that were let through before the breaker
+ * opened and complete while it is half-open are not probes, their outcomes are ignored.
+ *
+ * <p>A circuit breaker is attached to an API connection using {@link
+ * ApiConnection.Builder#circuitBreaker(CircuitBreaker)}. State transitions can be observed by
+ * adding a {@link Listener}.
+ */
+public final class CircuitBreaker {
+
+  /** The state of a circuit breaker. */
+  public enum State {
+
+    /** Requests are allowed and their outcomes are recorded. */
+    CLOSED,
+
+    /** Requests are rejected. */
+    OPEN,
+
+    /** A limited number of probe requests are allowed. */
+    HALF_OPEN
+  }
+
+  /** A listener of circuit breaker state transitions. */
+  public interface Listener {
+
+    /**
+     * Called when the circuit breaker changes state. The method is called on the thread that caused
+     * the transition and should return quickly.
+     *
+     * @param breaker the circuit breaker
+     * @param from the previous state
+     * @param to the new state
+     */
+    void onStateTransition(CircuitBreaker breaker, State from, State to);
+  }
+
+  /** A builder of circuit breakers. */
+  public static final class Builder {
+
+    private double failureRateThreshold = 0.5;
+
+    private double slowCallRateThreshold = 1.0;
+
+    private Duration slowCallDuration = Duration.ofSeconds(10);
+
+    private int windowSize = 100;
+
+    private int minimumCalls = 20;
+
+    private Duration openDuration = Duration.ofSeconds(30);
+
+    private int probeCalls = 5;
+
+    private LongSupplier clock = System::nanoTime;
+
+    private Builder() {}
+
+    /**
+     * The failure rate at which the breaker opens. Default is 0.5.
+     *
+     * @param threshold a rate in the range (0, 1]
+     * @return this builder for use in a chained invocation
+     */
+    public Builder failureRateThreshold(double threshold) {
+      this.failureRateThreshold = requireRate(threshold, "failureRateThreshold");
+      return this;
+    }
+
+    /**
+     * The slow call rate at which the breaker opens. Default is 1.0, that is, the breaker opens if
+     * all calls in the window are slow.
+     *
+     * @param threshold a rate in the range (0, 1]
+     * @return this builder for use in a chained invocation
+     */
+    public Builder slowCallRateThreshold(double threshold) {
+      this.slowCallRateThreshold = requireRate(threshold, "slowCallRateThreshold");
+      return this;
+    }
+
+    /**
+     * The duration above which a call is considered slow. Default is 10 seconds.
+     *
+     * @param duration a positive duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder slowCallDuration(@Nonnull Duration duration) {
+      this.slowCallDuration = requirePositive(duration, "slowCallDuration");
+      return this;
+    }
+
+    /**
+     * The number of most recent calls considered when computing failure and slow call rates.
+     * Default is 100.
+     *
+     * @param size a positive number of calls
+     * @return this builder for use in a chained invocation
+     */
+    public Builder windowSize(int size) {
+      if (size <= 0) {
+        throw new IllegalArgumentException("windowSize must be positive");
+      }
+
+      this.windowSize = size;
+      return this;
+    }
+
+    /**
+     * The minimum number of recorded calls before the breaker may open. Default is 20.
+     *
+     * @param n a positive number of calls
+     * @return this builder for use in a chained invocation
+     */
+    public Builder minimumCalls(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("minimumCalls must be positive");
+      }
+
+      this.minimumCalls = n;
+      return this;
+    }
+
+    /**
+     * How long the breaker stays open before allowing probe calls. Default is 30 seconds.
+     *
+     * @param duration a positive duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder openDuration(@Nonnull Duration duration) {
+      this.openDuration = requirePositive(duration, "openDuration");
+      return this;
+    }
+
+    /**
+     * The number of probe calls allowed while half-open. Default is 5.
+     *
+     * @param n a positive number of calls
+     * @return this builder for use in a chained invocation
+     */
+    public Builder probeCalls(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("probeCalls must be positive");
+      }
+
+      this.probeCalls = n;
+      return this;
+    }
+
+    /**
+     * The clock used for timing, this is intended for testing.
+     *
+     * @param clock a monotonic clock in nanoseconds
+     * @return this builder for use in a chained invocation
+     */
+    Builder clock(LongSupplier clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Builds a new, initially closed, circuit breaker.
+     *
+     * @return a circuit breaker
+     */
+    @Nonnull
+    public CircuitBreaker build() {
+      return new CircuitBreaker(this);
+    }
+
+    private static double requireRate(double rate, String name) {
+      if (!(rate > 0.0 && rate <= 1.0)) {
+        throw new IllegalArgumentException(name + " must be in the range (0, 1]");
+      }
+
+      return rate;
+    }
+
+    private static Duration requirePositive(Duration d, String name) {
+      if (Utils.requireNonNull(d, name).isNegative() || d.isZero()) {
+        throw new IllegalArgumentException(name + " must be positive");
+      }
+
+      return d;
+    }
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  private static final byte FAILED = 1;
+
+  private static final byte SLOW = 2;
+
+  private final double failureRateThreshold;
+
+  private final double slowCallRateThreshold;
+
+  private final long slowCallNanos;
+
+  private final int minimumCalls;
+
+  private final long openNanos;
+
+  private final int probeCalls;
+
+  private final LongSupplier clock;
+
+  private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+  /** The outcomes of the most recent calls, a ring buffer of flags. */
+  private final byte[] window;
+
+  /** The next position to write in the window. */
+  private int windowPos = 0;
+
+  /** The number of recorded calls in the window. */
+  private int calls = 0;
+
+  private int failures = 0;
+
+  private int slowCalls = 0;
+
+  /** The current state, written only while holding the lock of this object. */
+  private volatile State state = State.CLOSED;
+
+  /**
+   * The generation of the current state, incremented on every state transition and written only
+   * while holding the lock of this object. Permissions carry the generation in which they were
+   * granted such that outcomes of calls permitted in an earlier state can be told apart.
+   */
+  private volatile long generation = 0;
+
+  /** The time at which the breaker last opened. */
+  private long openedAt;
+
+  /** The number of probe permits handed out while half-open. */
+  private int probesStarted = 0;
+
+  /** The number of successful probes while half-open. */
+  private int probesSucceeded = 0;
+
+  private CircuitBreaker(Builder b) {
+    this.failureRateThreshold = b.failureRateThreshold;
+    this.slowCallRateThreshold = b.slowCallRateThreshold;
+    this.slowCallNanos = b.slowCallDuration.toNanos();
+    this.minimumCalls = Math.min(b.minimumCalls, b.windowSize);
+    this.openNanos = b.openDuration.toNanos();
+    this.probeCalls = b.probeCalls;
+    this.clock = b.clock;
+    this.window = new byte[b.windowSize];
+  }
+
+  /**
+   * Returns a fresh builder of circuit breakers.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Adds a listener of state transitions.
+   *
+   * @param listener the listener to add
+   */
+  public void addListener(@Nonnull Listener listener) {
+    listeners.add(Utils.requireNonNull(listener, "listener"));
+  }
+
+  /**
+   * Removes a previously added listener.
+   *
+   * @param listener the listener to remove
+   */
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * The current state of this circuit breaker. Note, an open breaker only becomes half-open when a
+   * request is attempted.
+   *
+   * @return a non-null state
+   */
+  @Nonnull
+  public State state() {
+    return state;
+  }
+
+  /**
+   * The failure rate of the calls in the current window.
+   *
+   * @return a rate between 0 and 1
+   */
+  public synchronized double failureRate() {
+    return (calls == 0) ? 0.0 : (double) failures / calls;
+  }
+
+  /**
+   * The slow call rate of the calls in the current window.
+   *
+   * @return a rate between 0 and 1
+   */
+  public synchronized double slowCallRate() {
+    return (calls == 0) ? 0.0 : (double) slowCalls / calls;
+  }
+
+  /**
+   * Attempts to acquire permission to perform a call. A permitted call must be followed by either
+   * {@link #record} or {@link #releasePermission(long)}, given the returned permission.
+   *
+   * @return the permission, identifying the state in which it was granted
+   * @throws CircuitBreakerOpenException if the call is not permitted
+   */
+  long acquirePermission() {
+    // Read the generation first, a permission read this way never matches a later generation.
+    long g = generation;
+
+    if (state == State.CLOSED) {
+      return g;
+    }
+
+    State from;
+    synchronized (this) {
+      long now = clock.getAsLong();
+
+      switch (state) {
+        case CLOSED:
+          return generation;
+        case OPEN:
+          if (now - openedAt < openNanos) {
+            throw new CircuitBreakerOpenException(State.OPEN);
+          }
+
+          from = state;
+          transition(State.HALF_OPEN);
+          probesStarted = 1;
+          probesSucceeded = 0;
+          g = generation;
+          break;
+        default:
+          if (probesStarted >= probeCalls) {
+            throw new CircuitBreakerOpenException(State.HALF_OPEN);
+          }
+
+          probesStarted++;
+          return generation;
+      }
+    }
+
+    notifyListeners(from, State.HALF_OPEN);
+
+    return g;
+  }
+
+  /**
+   * Releases a permission without recording an outcome, for example because the call was cancelled.
+   * Only a probe permission of the current half-open state is returned to the pool of probes.
+   *
+   * @param permission the permission returned by {@link #acquirePermission()}
+   */
+  synchronized void releasePermission(long permission) {
+    if (state == State.HALF_OPEN && permission == generation && probesStarted > 0) {
+      probesStarted--;
+    }
+  }
+
+  /**
+   * Records the outcome of a permitted call. While half-open only the outcomes of probes permitted
+   * in the current half-open state count, outcomes of calls permitted earlier are ignored. While
+   * closed every outcome is added to the window.
+   *
+   * @param permission the permission returned by {@link #acquirePermission()}
+   * @param elapsedNanos the duration of the call in nanoseconds
+   * @param failure the cause of failure, or <code>null</code> if the call succeeded
+   */
+  void record(long permission, long elapsedNanos, @Nullable Exception failure) {
+    boolean failed = isFailure(failure);
+    boolean slow = elapsedNanos > slowCallNanos;
+
+    State from;
+    State to;
+    synchronized (this) {
+      from = state;
+
+      if (from == State.HALF_OPEN) {
+        if (permission != generation) {
+          // A call permitted before the breaker opened, it is not a probe.
+        } else if (failed || slow) {
+          open();
+        } else if (++probesSucceeded >= probeCalls) {
+          close();
+        }
+      } else if (from == State.CLOSED) {
+        add((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+
+        if (calls >= minimumCalls
+            && ((double) failures / calls >= failureRateThreshold
+                || (double) slowCalls / calls >= slowCallRateThreshold)) {
+          open();
+        }
+      }
+
+      to = state;
+    }
+
+    if (from != to) {
+      notifyListeners(from, to);
+    }
+  }
+
+  private void add(byte outcome) {
+    if (calls == window.length) {
+      byte evicted = window[windowPos];
+      failures -= evicted & FAILED;
+      slowCalls -= (evicted & SLOW) >> 1;
+    } else {
+      calls++;
+    }
+
+    window[windowPos] = outcome;
+    failures += outcome & FAILED;
+    slowCalls += (outcome & SLOW) >> 1;
+    windowPos = (windowPos + 1) % window.length;
+  }
+
+  private void transition(State to) {
+    state = to;
+    generation++;
+  }
+
+  private void open() {
+    transition(State.OPEN);
+    openedAt = clock.getAsLong();
+  }
+
+  private void close() {
+    transition(State.CLOSED);
+    calls = 0;
+    failures = 0;
+    slowCalls = 0;
+    windowPos = 0;
+  }
+
+  private void notifyListeners(State from, State to) {
+    log.info("Circuit breaker changed state from {} to {}", from, to);
+
+    for (Listener listener : listeners) {
+      try {
+        listener.onStateTransition(this, from, to);
+      } catch (RuntimeException e) {
+        log.error(
+            "caught and dropped exception in circuit breaker listener: {}", e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Whether the given exception indicates a degraded endpoint.
+   *
+   * @param e the exception to examine, may be <code>null</code>
+   * @return whether the exception counts as a failure
+   */
+  private static boolean isFailure(Exception e) {
+    if (e instanceof IOException || e instanceof DeadlineExceededException) {
+      return true;
+    } else if (e instanceof UnexpectedResponseException) {
+      int status = ((UnexpectedResponseException) e).getResponse().getStatusLine().getStatusCode();
+      return status >= 500;
+    } else {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a request is rejected because the {@link CircuitBreaker} of an API connection is
+ * open. The request was not sent to XMS.
+ */
+public class CircuitBreakerOpenException extends RejectedExecutionException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final CircuitBreaker.State state;
+
+  /**
+   * Constructs a new circuit breaker exception.
+   *
+   * @param state the state of the circuit breaker when the request was rejected
+   */
+  public CircuitBreakerOpenException(CircuitBreaker.State state) {
+    super("circuit breaker is " + state);
+    this.state = state;
+  }
+
+  /**
+   * The state of the circuit breaker when the request was rejected. This is either {@link
+   * CircuitBreaker.State#OPEN} or {@link CircuitBreaker.State#HALF_OPEN}, in the latter case all
+   * probe requests were already in flight.
+   *
+   * @return a non-null state
+   */
+  public CircuitBreaker.State getState() {
+    return state;
+  }
+}
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * A completable future that also acts as a {@link FutureCallback}. When used as callback for an
+ * asynchronous HTTP request the future completes together with the request.
+ *
+ * <p>The future can be bound to the {@link Future} of the underlying request, in which case
+ * cancelling this future also cancels the request.
+ *
+ * @param <T> the result type
+ */
+final class CompletableFutureCallback<T> extends CompletableFuture<T> implements FutureCallback<T> {
+
+  /** The future of the underlying request, if bound. */
+  private volatile Future<?> delegate;
+
+  /**
+   * Adapts a callback based asynchronous call into a completable future. The given function is
+   * called with a callback that completes the returned future and should issue the call.
+   *
+   * @param call function that issues an asynchronous call using the given callback
+   * @return a completable future that completes with the call
+   * @param <T> the result type
+   */
+  static <T> CompletableFuture<T> adapt(Function<FutureCallback<T>, Future<T>> call) {
+    CompletableFutureCallback<T> future = new CompletableFutureCallback<T>();
+
+    future.bind(call.apply(future));
+
+    return future;
+  }
+
+  /**
+   * Binds this future to the given future of the underlying request. If this future already was
+   * cancelled then the given future is immediately cancelled.
+   *
+   * @param delegate the future to cancel when this future is cancelled
+   */
+  void bind(Future<?> delegate) {
+    this.delegate = delegate;
+
+    if (isCancelled()) {
+      delegate.cancel(true);
+    }
+  }
+
+  /**
+   * Aborts the underlying request, if bound, without otherwise affecting this future. This is
+   * useful when this future already has been completed but the request still is in progress.
+   */
+  void abortDelegate() {
+    Future<?> f = delegate;
+
+    if (f != null) {
+      f.cancel(true);
+    }
+  }
+
+  /**
+   * Returns a callback that completes this future and then notifies the given callback.
+   *
+   * @param callback the callback to notify after this future, may be <code>null</code>
+   * @return a non-null callback
+   */
+  FutureCallback<T> andThen(@Nullable final FutureCallback<T> callback) {
+    if (callback == null) {
+      return this;
+    }
+
+    return new FutureCallback<T>() {
+
+      @Override
+      public void completed(T result) {
+        CompletableFutureCallback.this.completed(result);
+        callback.completed(result);
+      }
+
+      @Override
+      public void failed(Exception ex) {
+        CompletableFutureCallback.this.failed(ex);
+        callback.failed(ex);
+      }
+
+      @Override
+      public void cancelled() {
+        CompletableFutureCallback.this.cancelled();
+        callback.cancelled();
+      }
+    };
+  }
+
+  @Override
+  public void completed(T result) {
+    complete(result);
+  }
+
+  @Override
+  public void failed(Exception ex) {
+    completeExceptionally(ex);
+  }
+
+  @Override
+  public void cancelled() {
+    super.cancel(false);
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+    Future<?> f = delegate;
+    if (cancelled && f != null) {
+      f.cancel(mayInterruptIfRunning);
+    }
+
+    return cancelled;
+  }
+}
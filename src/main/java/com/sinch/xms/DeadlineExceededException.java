@@ -0,0 +1,57 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.time.Duration;
+import javax.annotation.Nonnull;
+
+/**
+ * Exception thrown when an API call did not complete within its deadline. The HTTP exchange in
+ * progress when the deadline expired has been aborted.
+ *
+ * @see ApiConnection#withDeadline(Duration)
+ */
+public class DeadlineExceededException extends ApiException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Duration deadline;
+
+  /**
+   * Creates a new deadline exceeded exception.
+   *
+   * @param deadline the deadline that was exceeded
+   */
+  public DeadlineExceededException(@Nonnull Duration deadline) {
+    super("Call did not complete within " + Utils.requireNonNull(deadline, "deadline"));
+
+    this.deadline = deadline;
+  }
+
+  /**
+   * Returns the deadline that was exceeded.
+   *
+   * @return a non-null duration
+   */
+  @Nonnull
+  public Duration getDeadline() {
+    return deadline;
+  }
+}
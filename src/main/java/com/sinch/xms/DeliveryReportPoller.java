@@ -0,0 +1,701 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.BatchDeliveryReport;
+import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.DeliveryStatus;
+import com.sinch.xms.api.FinalizedDeliveryStatus;
+import com.sinch.xms.api.MtBatchResult;
+import com.sinch.xms.api.Status;
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls the delivery reports of a set of batches until all their messages have reached a final
+ * delivery status.
+ *
+ * <p>The poll interval of each batch adapts to its age, its expiry time, and how often its report
+ * changes. Fresh batches are polled frequently, the interval grows while the report stays the same
+ * and shrinks when it changes. Since no message can change status after the batch has expired, a
+ * batch is polled once shortly after its expiry time rather than later. Polls are spread using a
+ * random jitter and at most a configured number of polls are in flight at any time, which avoids
+ * bursts of requests when many batches are tracked at once. For example,
+ *
+ * <pre>
+ * DeliveryReportPoller poller =
+ *     DeliveryReportPoller.builder().connection(conn).listener(listener).start();
+ * poller.track(conn.createBatch(batch));
+ * </pre>
+ *
+ * <p>A batch stops being tracked when every status of its delivery report is a {@link
+ * FinalizedDeliveryStatus} covering all messages of the batch, at which point the listener is
+ * notified through {@link Listener#completed(BatchDeliveryReport)}.
+ *
+ * <p>The timers of the tracked batches are kept in a hierarchical timing wheel, which is advanced
+ * periodically on a shared scheduler thread. Tracking and untracking batches therefore take
+ * constant time, independent of the number of tracked batches.
+ */
+public final class DeliveryReportPoller implements Closeable {
+
+  /**
+   * A listener of polled delivery reports. The methods of the listener are called on the thread
+   * completing the request, typically an I/O thread of the HTTP client, and should therefore return
+   * quickly.
+   */
+  public interface Listener {
+
+    /**
+     * Called when the delivery report of a tracked batch has changed since the previous poll.
+     *
+     * @param report the new delivery report
+     */
+    void updated(BatchDeliveryReport report);
+
+    /**
+     * Called when all messages of a tracked batch have reached a final status. The batch is no
+     * longer tracked.
+     *
+     * @param report the final delivery report
+     */
+    void completed(BatchDeliveryReport report);
+
+    /**
+     * Called when polling the delivery report of a tracked batch failed. The batch remains tracked
+     * and is polled again after a longer interval.
+     *
+     * @param id the identifier of the batch
+     * @param e the cause of the failure
+     */
+    void failed(BatchId id, Exception e);
+  }
+
+  /** A builder of delivery report pollers. The API connection must be set. */
+  public static final class Builder {
+
+    private ApiConnection connection;
+
+    private Listener listener = NOOP_LISTENER;
+
+    private BatchDeliveryReportParams params = DEFAULT_PARAMS;
+
+    private int maxConcurrentPolls = DEFAULT_MAX_CONCURRENT_POLLS;
+
+    private Duration minInterval = DEFAULT_MIN_INTERVAL;
+
+    private Duration maxInterval = DEFAULT_MAX_INTERVAL;
+
+    private Duration tick = DEFAULT_TICK;
+
+    private double jitter = DEFAULT_JITTER;
+
+    private Builder() {}
+
+    /**
+     * The API connection through which to poll delivery reports.
+     *
+     * @param connection a started API connection
+     * @return this builder for use in a chained invocation
+     */
+    public Builder connection(@Nonnull ApiConnection connection) {
+      this.connection = Utils.requireNonNull(connection, "connection");
+      return this;
+    }
+
+    /**
+     * The listener receiving the polled delivery reports. Default is a listener that ignores all
+     * reports.
+     *
+     * @param listener the report listener
+     * @return this builder for use in a chained invocation
+     */
+    public Builder listener(@Nonnull Listener listener) {
+      this.listener = Utils.requireNonNull(listener, "listener");
+      return this;
+    }
+
+    /**
+     * The parameters of the delivery report requests. Default is a summary report.
+     *
+     * @param params the delivery report parameters
+     * @return this builder for use in a chained invocation
+     */
+    public Builder params(@Nonnull BatchDeliveryReportParams params) {
+      this.params = Utils.requireNonNull(params, "params");
+      return this;
+    }
+
+    /**
+     * The maximum number of polls in flight. Polls that are due while the limit is reached are
+     * issued in order as earlier polls complete. Default is 8.
+     *
+     * @param n a positive number of polls
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxConcurrentPolls(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("maxConcurrentPolls must be positive");
+      }
+
+      this.maxConcurrentPolls = n;
+      return this;
+    }
+
+    /**
+     * The shortest interval between two polls of the same batch. Default is 1 second.
+     *
+     * @param interval a positive duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder minInterval(@Nonnull Duration interval) {
+      this.minInterval = requirePositive(interval, "minInterval");
+      return this;
+    }
+
+    /**
+     * The longest interval between two polls of the same batch. Default is 10 minutes.
+     *
+     * @param interval a positive duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxInterval(@Nonnull Duration interval) {
+      this.maxInterval = requirePositive(interval, "maxInterval");
+      return this;
+    }
+
+    /**
+     * The resolution of the poll timers. Default is 100 milliseconds.
+     *
+     * @param tick a positive duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder tick(@Nonnull Duration tick) {
+      this.tick = requirePositive(tick, "tick");
+      return this;
+    }
+
+    /**
+     * The relative amount of random variation applied to each poll interval. For example, a jitter
+     * of 0.1 varies the intervals by up to 10% in either direction. Default is 0.1.
+     *
+     * @param jitter a number between 0 and 1, inclusive
+     * @return this builder for use in a chained invocation
+     */
+    public Builder jitter(double jitter) {
+      if (!(jitter >= 0 && jitter <= 1)) {
+        throw new IllegalArgumentException("jitter must be between 0 and 1");
+      }
+
+      this.jitter = jitter;
+      return this;
+    }
+
+    /**
+     * Builds and starts a new delivery report poller.
+     *
+     * @return a started poller
+     * @throws IllegalStateException if the connection is missing or the minimum interval exceeds
+     *     the maximum interval
+     */
+    @Nonnull
+    public DeliveryReportPoller start() {
+      if (connection == null) {
+        throw new IllegalStateException("connection is required");
+      }
+
+      if (minInterval.compareTo(maxInterval) > 0) {
+        throw new IllegalStateException("minInterval must not exceed maxInterval");
+      }
+
+      DeliveryReportPoller poller = new DeliveryReportPoller(this);
+
+      poller.start();
+
+      return poller;
+    }
+
+    private static Duration requirePositive(Duration duration, String name) {
+      Utils.requireNonNull(duration, name);
+
+      if (duration.isNegative() || duration.isZero()) {
+        throw new IllegalArgumentException(name + " must be positive");
+      }
+
+      return duration;
+    }
+  }
+
+  /** The state of a tracked batch, guarded by the poller. */
+  private static final class Tracked {
+
+    private final BatchId id;
+
+    /** The creation time of the batch, in epoch milliseconds. */
+    private final long createdAt;
+
+    /** The expiry time of the batch, in epoch milliseconds, or zero if unknown. */
+    private final long expireAt;
+
+    /** The current poll interval, in milliseconds. */
+    private long interval;
+
+    @Nullable private TimingWheel.Timer<Tracked> timer;
+
+    @Nullable private Set<Status> lastStatuses;
+
+    private Tracked(BatchId id, long createdAt, long expireAt, long interval) {
+      this.id = id;
+      this.createdAt = createdAt;
+      this.expireAt = expireAt;
+      this.interval = interval;
+    }
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(DeliveryReportPoller.class);
+
+  private static final BatchDeliveryReportParams DEFAULT_PARAMS =
+      BatchDeliveryReportParams.builder().summaryReport().build();
+
+  private static final int DEFAULT_MAX_CONCURRENT_POLLS = 8;
+
+  private static final Duration DEFAULT_MIN_INTERVAL = Duration.ofSeconds(1);
+
+  private static final Duration DEFAULT_MAX_INTERVAL = Duration.ofMinutes(10);
+
+  private static final Duration DEFAULT_TICK = Duration.ofMillis(100);
+
+  private static final double DEFAULT_JITTER = 0.1;
+
+  /**
+   * The age based interval is the age of the batch divided by this number, that is, a batch that is
+   * an hour old is polled about every six minutes.
+   */
+  private static final long AGE_DIVISOR = 10;
+
+  /** The number of levels of the timing wheel, at 100 ms ticks it covers about 19 days. */
+  private static final int WHEEL_LEVELS = 4;
+
+  /** The delivery statuses after which a message will not change status. */
+  private static final Set<DeliveryStatus> FINAL_STATUSES =
+      Collections.unmodifiableSet(
+          new HashSet<DeliveryStatus>(
+              Arrays.asList(
+                  finalStatus(FinalizedDeliveryStatus.ABORTED),
+                  finalStatus(FinalizedDeliveryStatus.CANCELLED),
+                  finalStatus(FinalizedDeliveryStatus.REJECTED),
+                  finalStatus(FinalizedDeliveryStatus.DELIVERED),
+                  finalStatus(FinalizedDeliveryStatus.FAILED),
+                  finalStatus(FinalizedDeliveryStatus.EXPIRED),
+                  finalStatus(FinalizedDeliveryStatus.UNKNOWN))));
+
+  private static final Listener NOOP_LISTENER =
+      new Listener() {
+
+        @Override
+        public void updated(BatchDeliveryReport report) {}
+
+        @Override
+        public void completed(BatchDeliveryReport report) {}
+
+        @Override
+        public void failed(BatchId id, Exception e) {}
+      };
+
+  private final ApiConnection connection;
+
+  private final Listener listener;
+
+  private final BatchDeliveryReportParams params;
+
+  private final int maxConcurrentPolls;
+
+  private final long minInterval;
+
+  private final long maxInterval;
+
+  private final long tickMillis;
+
+  private final double jitter;
+
+  private final long startNanos = System.nanoTime();
+
+  private final TimingWheel<Tracked> wheel = new TimingWheel<Tracked>(WHEEL_LEVELS, 0);
+
+  private final Map<BatchId, Tracked> tracked = new HashMap<BatchId, Tracked>();
+
+  /** Batches whose poll is due but that wait for a poll to complete. */
+  private final ArrayDeque<Tracked> pending = new ArrayDeque<Tracked>();
+
+  private int polls = 0;
+
+  private boolean closed = false;
+
+  @Nullable private ScheduledFuture<?> ticker;
+
+  private DeliveryReportPoller(Builder b) {
+    this.connection = b.connection;
+    this.listener = b.listener;
+    this.params = b.params;
+    this.maxConcurrentPolls = b.maxConcurrentPolls;
+    this.minInterval = b.minInterval.toMillis();
+    this.maxInterval = b.maxInterval.toMillis();
+    this.tickMillis = Math.max(1, b.tick.toMillis());
+    this.jitter = b.jitter;
+  }
+
+  /**
+   * Returns a fresh builder of delivery report pollers.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private synchronized void start() {
+    ticker =
+        SharedScheduler.get()
+            .scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Starts tracking the given batch, using its creation and expiry times to adapt the poll
+   * interval.
+   *
+   * @param batch the batch to track
+   * @return true if the batch was not already tracked
+   */
+  public boolean track(@Nonnull MtBatchResult batch) {
+    return track(batch.id(), batch.createdAt(), batch.expireAt());
+  }
+
+  /**
+   * Starts tracking the batch with the given identifier, assuming it was just created.
+   *
+   * @param id the identifier of the batch to track
+   * @return true if the batch was not already tracked
+   */
+  public boolean track(@Nonnull BatchId id) {
+    return track(id, null, null);
+  }
+
+  /**
+   * Starts tracking the batch with the given identifier. The first poll happens after the minimum
+   * interval.
+   *
+   * @param id the identifier of the batch to track
+   * @param createdAt the creation time of the batch, if <code>null</code> the batch is assumed to
+   *     have been just created
+   * @param expireAt the expiry time of the batch, may be <code>null</code>
+   * @return true if the batch was not already tracked
+   * @throws IllegalStateException if this poller has been closed
+   */
+  public synchronized boolean track(
+      @Nonnull BatchId id, @Nullable OffsetDateTime createdAt, @Nullable OffsetDateTime expireAt) {
+    Utils.requireNonNull(id, "id");
+
+    if (closed) {
+      throw new IllegalStateException("poller is closed");
+    }
+
+    if (tracked.containsKey(id)) {
+      return false;
+    }
+
+    long now = System.currentTimeMillis();
+    long created = createdAt == null ? now : createdAt.toInstant().toEpochMilli();
+    long expires = expireAt == null ? 0 : expireAt.toInstant().toEpochMilli();
+    Tracked t = new Tracked(id, created, expires, minInterval);
+
+    tracked.put(id, t);
+    schedule(t, minInterval);
+
+    return true;
+  }
+
+  /**
+   * Stops tracking the batch with the given identifier. A poll in flight for the batch completes
+   * without notifying the listener.
+   *
+   * @param id the identifier of the batch
+   * @return true if the batch was tracked
+   */
+  public synchronized boolean untrack(@Nonnull BatchId id) {
+    Tracked t = tracked.remove(id);
+
+    if (t == null) {
+      return false;
+    }
+
+    if (t.timer != null) {
+      wheel.cancel(t.timer);
+      t.timer = null;
+    }
+
+    pending.remove(t);
+
+    return true;
+  }
+
+  /**
+   * The identifiers of the tracked batches.
+   *
+   * @return a snapshot of the tracked batch identifiers
+   */
+  @Nonnull
+  public synchronized Set<BatchId> tracked() {
+    return new HashSet<BatchId>(tracked.keySet());
+  }
+
+  /** Stops polling and untracks all batches. Polls in flight complete without notification. */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+
+    if (ticker != null) {
+      ticker.cancel(false);
+    }
+
+    for (Tracked t : tracked.values()) {
+      if (t.timer != null) {
+        wheel.cancel(t.timer);
+      }
+    }
+
+    tracked.clear();
+    pending.clear();
+  }
+
+  /**
+   * Computes the interval until the next poll of a batch. This is the age based interval, pulled
+   * towards the previous interval: it halves when the report changed and doubles when it did not.
+   * If the batch expires before the next poll would happen, the next poll happens shortly after the
+   * expiry instead.
+   *
+   * @param previous the previous interval
+   * @param changed whether the report changed at the last poll
+   * @param age the age of the batch
+   * @param untilExpiry the time until the batch expires, zero or negative if unknown or expired
+   * @param min the minimum interval
+   * @param max the maximum interval
+   * @return the interval, between the minimum and maximum interval
+   */
+  static long nextInterval(
+      long previous, boolean changed, long age, long untilExpiry, long min, long max) {
+    long ageBased = Math.min(max, Math.max(min, age / AGE_DIVISOR));
+    long next;
+
+    if (changed) {
+      next = Math.max(min, Math.min(previous, ageBased) / 2);
+    } else {
+      next = Math.min(max, Math.max(ageBased, Math.min(previous, max / 2) * 2));
+    }
+
+    if (untilExpiry > 0 && untilExpiry + min < next) {
+      next = untilExpiry + min;
+    }
+
+    return next;
+  }
+
+  /**
+   * Determines whether all messages of a delivery report have reached a final status.
+   *
+   * @param report the delivery report
+   * @return true if no further changes to the report are expected
+   */
+  static boolean isFinal(BatchDeliveryReport report) {
+    if (report.statuses().isEmpty()) {
+      return false;
+    }
+
+    long count = 0;
+
+    for (Status status : report.statuses()) {
+      if (!FINAL_STATUSES.contains(status.status())) {
+        return false;
+      }
+
+      count += status.count();
+    }
+
+    return count >= report.totalMessageCount();
+  }
+
+  private static DeliveryStatus finalStatus(FinalizedDeliveryStatus status) {
+    return DeliveryStatus.of(status.status());
+  }
+
+  private long currentTick() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) / tickMillis;
+  }
+
+  /** Schedules the next poll of the given batch, varying the interval by the jitter. */
+  private void schedule(Tracked t, long interval) {
+    double variation = jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    long delay = Math.round(interval * (1 + variation));
+    long ticks = Math.max(1, (delay + tickMillis - 1) / tickMillis);
+
+    t.interval = interval;
+    t.timer = wheel.schedule(t, currentTick() + ticks);
+  }
+
+  /** Advances the wheel to the current time and issues the due polls. */
+  private void tick() {
+    List<Tracked> due = new ArrayList<Tracked>();
+
+    try {
+      synchronized (this) {
+        wheel.advance(currentTick(), t -> enqueue(t));
+        dequeue(due);
+      }
+
+      for (Tracked t : due) {
+        poll(t);
+      }
+    } catch (RuntimeException e) {
+      // Exceptions would cancel the periodic task.
+      log.error("caught and dropped exception in delivery report poller: {}", e.getMessage(), e);
+    }
+  }
+
+  private void enqueue(Tracked t) {
+    t.timer = null;
+    pending.add(t);
+  }
+
+  /** Moves pending polls to the given list while below the concurrency limit. */
+  private void dequeue(List<Tracked> due) {
+    while (polls < maxConcurrentPolls && !pending.isEmpty()) {
+      Tracked t = pending.poll();
+
+      polls++;
+      due.add(t);
+    }
+  }
+
+  private void poll(Tracked t) {
+    CompletableFuture<BatchDeliveryReport> f;
+
+    try {
+      f = connection.fetchDeliveryReportAsync(t.id, params);
+    } catch (RuntimeException e) {
+      // Handle it like a failed poll, this returns the poll slot and reschedules the batch.
+      polled(t, null, e);
+      return;
+    }
+
+    f.whenComplete((report, ex) -> polled(t, report, ex));
+  }
+
+  private void polled(Tracked t, @Nullable BatchDeliveryReport report, @Nullable Throwable ex) {
+    List<Tracked> due = new ArrayList<Tracked>();
+    boolean notify;
+    boolean changed = false;
+    boolean completed = false;
+
+    synchronized (this) {
+      polls--;
+      notify = !closed && tracked.get(t.id) == t;
+
+      if (notify) {
+        long now = System.currentTimeMillis();
+        long untilExpiry = t.expireAt == 0 ? 0 : t.expireAt - now;
+
+        if (ex != null) {
+          schedule(t, Math.min(maxInterval, t.interval * 2));
+        } else {
+          Set<Status> statuses = new HashSet<Status>(report.statuses());
+
+          changed = !statuses.equals(t.lastStatuses);
+          completed = isFinal(report);
+          t.lastStatuses = statuses;
+
+          if (completed) {
+            tracked.remove(t.id);
+          } else {
+            long interval =
+                nextInterval(
+                    t.interval, changed, now - t.createdAt, untilExpiry, minInterval, maxInterval);
+
+            schedule(t, interval);
+          }
+        }
+      }
+
+      if (!closed) {
+        dequeue(due);
+      }
+    }
+
+    if (notify) {
+      try {
+        if (ex != null) {
+          listener.failed(t.id, unwrap(ex));
+        } else if (completed) {
+          listener.completed(report);
+        } else if (changed) {
+          listener.updated(report);
+        }
+      } catch (RuntimeException e) {
+        log.error("caught and dropped exception in listener: {}", e.getMessage(), e);
+      }
+    }
+
+    for (Tracked next : due) {
+      poll(next);
+    }
+  }
+
+  private static Exception unwrap(Throwable ex) {
+    Throwable cause =
+        ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+
+    if (cause instanceof Exception) {
+      return (Exception) cause;
+    }
+
+    return new CompletionException(cause);
+  }
+}
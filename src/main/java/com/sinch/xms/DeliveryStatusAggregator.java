@@ -0,0 +1,420 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.BatchDeliveryReport;
+import com.sinch.xms.api.BatchDeliveryReportMms;
+import com.sinch.xms.api.BatchDeliveryReportSms;
+import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.DeliveryStatus;
+import com.sinch.xms.api.RecipientDeliveryReport;
+import com.sinch.xms.api.RecipientDeliveryReportMms;
+import com.sinch.xms.api.Status;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Aggregates recipient delivery reports into per-batch delivery status counters. This allows a
+ * summary of the delivery state of a batch to be kept locally, for example by feeding it the
+ * recipient delivery reports received by a {@link CallbackReceiver} or fetched using {@link
+ * ApiConnection#fetchDeliveryReports(DeliveryReportFilter)}, rather than repeatedly fetching batch
+ * delivery reports.
+ *
+ * <pre>
+ * DeliveryStatusAggregator aggregator = DeliveryStatusAggregator.builder().build();
+ *
+ * CallbackReceiver.builder().onRecipientDeliveryReport(aggregator::ingest).start();
+ *
+ * BatchDeliveryReport summary = aggregator.summary(batchId);
+ * </pre>
+ *
+ * <p>The counters of a batch are held in primitive arrays indexed by delivery status and status
+ * code, ingesting a report does not allocate. By default each recipient is counted once, in the
+ * status of its most recent report as given by {@link RecipientDeliveryReport#at()}, such that
+ * intermediate states and reports arriving late or more than once do not skew the counts. This
+ * requires remembering the recipients of each batch, which can be turned off using {@link
+ * Builder#trackRecipients(boolean)} when only final reports are ingested.
+ *
+ * <p>The summary of a batch is built when first requested after a change and is then cached.
+ */
+public final class DeliveryStatusAggregator {
+
+  /** A builder of delivery status aggregators. */
+  public static final class Builder {
+
+    private boolean trackRecipients = true;
+
+    private Builder() {}
+
+    /**
+     * Whether each recipient should be counted once, in its latest status. If false then every
+     * ingested report is counted, which saves memory when each recipient is known to get exactly
+     * one report, for example when only final reports are ingested. Default is true.
+     *
+     * @param track whether to track the status of each recipient
+     * @return this builder for use in a chained invocation
+     */
+    public Builder trackRecipients(boolean track) {
+      this.trackRecipients = track;
+      return this;
+    }
+
+    /**
+     * Builds a new delivery status aggregator.
+     *
+     * @return a delivery status aggregator
+     */
+    @Nonnull
+    public DeliveryStatusAggregator build() {
+      return new DeliveryStatusAggregator(this);
+    }
+  }
+
+  private final boolean trackRecipients;
+
+  private final ConcurrentHashMap<BatchId, Counters> batches =
+      new ConcurrentHashMap<BatchId, Counters>();
+
+  /** The delivery statuses seen so far, a status is identified by its index in this array. */
+  private volatile DeliveryStatus[] statuses = new DeliveryStatus[0];
+
+  private DeliveryStatusAggregator(Builder b) {
+    this.trackRecipients = b.trackRecipients;
+  }
+
+  /**
+   * Returns a fresh builder of delivery status aggregators.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Ingests the given recipient delivery report.
+   *
+   * @param report the report to ingest
+   */
+  public void ingest(@Nonnull RecipientDeliveryReport report) {
+    Utils.requireNonNull(report, "report");
+
+    int status = statusIndex(report.status());
+
+    Counters counters = batches.get(report.batchId());
+    if (counters == null) {
+      counters = batches.computeIfAbsent(report.batchId(), id -> new Counters(id));
+    }
+
+    counters.ingest(report, status);
+  }
+
+  /**
+   * Ingests all the given recipient delivery reports.
+   *
+   * @param reports the reports to ingest
+   */
+  public void ingestAll(@Nonnull Iterable<? extends RecipientDeliveryReport> reports) {
+    for (RecipientDeliveryReport report : reports) {
+      ingest(report);
+    }
+  }
+
+  /**
+   * Returns a summary of the delivery state of the given batch. The summary lists the number of
+   * messages in each delivery status and status code, it does not list recipients. The total
+   * message count is the number of recipients having a report, or the number of ingested reports if
+   * recipients are not tracked.
+   *
+   * @param id the batch identifier
+   * @return a batch delivery report, <code>null</code> if no report of the batch has been ingested
+   */
+  @Nullable
+  public BatchDeliveryReport summary(@Nonnull BatchId id) {
+    Counters counters = batches.get(id);
+
+    return counters == null ? null : counters.summary();
+  }
+
+  /**
+   * Returns the number of messages of the given batch that have the given delivery status.
+   *
+   * @param id the batch identifier
+   * @param status the delivery status
+   * @return a non-negative number
+   */
+  public int count(@Nonnull BatchId id, @Nonnull DeliveryStatus status) {
+    Counters counters = batches.get(id);
+    int index = indexOf(statuses, status);
+
+    return (counters == null || index < 0) ? 0 : counters.count(index);
+  }
+
+  /**
+   * The batches for which reports have been ingested.
+   *
+   * @return an unmodifiable view of the batch identifiers
+   */
+  @Nonnull
+  public Set<BatchId> batches() {
+    return Collections.unmodifiableSet(batches.keySet());
+  }
+
+  /**
+   * Discards the counters of the given batch.
+   *
+   * @param id the batch identifier
+   * @return true if the batch had counters
+   */
+  public boolean remove(@Nonnull BatchId id) {
+    return batches.remove(id) != null;
+  }
+
+  private int statusIndex(DeliveryStatus status) {
+    int index = indexOf(statuses, status);
+
+    return index >= 0 ? index : addStatus(status);
+  }
+
+  private synchronized int addStatus(DeliveryStatus status) {
+    DeliveryStatus[] current = statuses;
+    int index = indexOf(current, status);
+
+    if (index < 0) {
+      index = current.length;
+      DeliveryStatus[] grown = Arrays.copyOf(current, index + 1);
+      grown[index] = status;
+      statuses = grown;
+    }
+
+    return index;
+  }
+
+  private static int indexOf(DeliveryStatus[] statuses, DeliveryStatus status) {
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] == status || statuses[i].equals(status)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static long epochMillis(OffsetDateTime at) {
+    return at.toEpochSecond() * 1000 + at.getNano() / 1_000_000;
+  }
+
+  /** The counters of a single batch, all access is guarded by the instance monitor. */
+  private final class Counters {
+
+    private final BatchId batchId;
+
+    /**
+     * The status index and code of each bucket, packed as <code>status &lt;&lt; 32 | code</code>.
+     */
+    private long[] bucketKeys = new long[4];
+
+    /** The number of messages in each bucket. */
+    private int[] bucketCounts = new int[4];
+
+    private int buckets = 0;
+
+    /** Open addressing table of recipients, if tracked. */
+    private String[] recipients;
+
+    /** The bucket of each recipient. */
+    private int[] recipientBuckets;
+
+    /** The time of the latest report of each recipient, in epoch milliseconds. */
+    private long[] recipientTimes;
+
+    private int total = 0;
+
+    private boolean mms = false;
+
+    @Nullable private String clientReference;
+
+    /** The summary built since the last change, if any. */
+    @Nullable private BatchDeliveryReport summary;
+
+    Counters(BatchId batchId) {
+      this.batchId = batchId;
+
+      if (trackRecipients) {
+        recipients = new String[16];
+        recipientBuckets = new int[16];
+        recipientTimes = new long[16];
+      }
+    }
+
+    synchronized void ingest(RecipientDeliveryReport report, int status) {
+      int bucket = bucket(status, report.code());
+
+      if (trackRecipients) {
+        long time = epochMillis(report.at());
+        int slot = slot(recipients, report.recipient());
+
+        if (recipients[slot] == null) {
+          recipients[slot] = report.recipient();
+          recipientBuckets[slot] = bucket;
+          recipientTimes[slot] = time;
+          total++;
+
+          if (total * 2 > recipients.length) {
+            growRecipients();
+          }
+        } else if (time < recipientTimes[slot]) {
+          // A late report of an earlier state.
+          return;
+        } else {
+          bucketCounts[recipientBuckets[slot]]--;
+          recipientBuckets[slot] = bucket;
+          recipientTimes[slot] = time;
+        }
+      } else {
+        total++;
+      }
+
+      bucketCounts[bucket]++;
+
+      if (report instanceof RecipientDeliveryReportMms) {
+        mms = true;
+      }
+
+      if (report.clientReference() != null) {
+        clientReference = report.clientReference();
+      }
+
+      summary = null;
+    }
+
+    synchronized int count(int status) {
+      int count = 0;
+
+      for (int i = 0; i < buckets; i++) {
+        if ((int) (bucketKeys[i] >>> 32) == status) {
+          count += bucketCounts[i];
+        }
+      }
+
+      return count;
+    }
+
+    synchronized BatchDeliveryReport summary() {
+      if (summary == null) {
+        DeliveryStatus[] names = statuses;
+        List<Status> list = new ArrayList<Status>(buckets);
+
+        for (int i = 0; i < buckets; i++) {
+          if (bucketCounts[i] > 0) {
+            list.add(
+                Status.builder()
+                    .status(names[(int) (bucketKeys[i] >>> 32)])
+                    .code((int) bucketKeys[i])
+                    .count(bucketCounts[i])
+                    .build());
+          }
+        }
+
+        if (mms) {
+          summary =
+              BatchDeliveryReportMms.builder()
+                  .batchId(batchId)
+                  .totalMessageCount(total)
+                  .statuses(list)
+                  .clientReference(clientReference)
+                  .build();
+        } else {
+          summary =
+              BatchDeliveryReportSms.builder()
+                  .batchId(batchId)
+                  .totalMessageCount(total)
+                  .statuses(list)
+                  .clientReference(clientReference)
+                  .build();
+        }
+      }
+
+      return summary;
+    }
+
+    /** Finds or adds the bucket of the given status and code. */
+    private int bucket(int status, int code) {
+      long key = ((long) status << 32) | (code & 0xffffffffL);
+
+      for (int i = 0; i < buckets; i++) {
+        if (bucketKeys[i] == key) {
+          return i;
+        }
+      }
+
+      if (buckets == bucketKeys.length) {
+        bucketKeys = Arrays.copyOf(bucketKeys, buckets * 2);
+        bucketCounts = Arrays.copyOf(bucketCounts, buckets * 2);
+      }
+
+      bucketKeys[buckets] = key;
+      return buckets++;
+    }
+
+    private void growRecipients() {
+      String[] oldRecipients = recipients;
+      int[] oldBuckets = recipientBuckets;
+      long[] oldTimes = recipientTimes;
+
+      recipients = new String[oldRecipients.length * 2];
+      recipientBuckets = new int[recipients.length];
+      recipientTimes = new long[recipients.length];
+
+      for (int i = 0; i < oldRecipients.length; i++) {
+        if (oldRecipients[i] != null) {
+          int slot = slot(recipients, oldRecipients[i]);
+          recipients[slot] = oldRecipients[i];
+          recipientBuckets[slot] = oldBuckets[i];
+          recipientTimes[slot] = oldTimes[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the slot of the given recipient in the given open addressing table, or the empty slot
+   * where it should be inserted.
+   */
+  private static int slot(String[] table, String recipient) {
+    int mask = table.length - 1;
+    int h = recipient.hashCode();
+    int i = (h ^ (h >>> 16)) & mask;
+
+    while (table[i] != null && !table[i].equals(recipient)) {
+      i = (i + 1) & mask;
+    }
+
+    return i;
+  }
+}
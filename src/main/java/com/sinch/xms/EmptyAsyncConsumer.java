@@ -19,12 +19,14 @@
  */
 package com.sinch.xms;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.exc.ValueInstantiationException;
 import com.sinch.xms.api.ApiError;
 import com.sinch.xms.api.BadRequestError;
 import java.io.IOException;
-import java.nio.CharBuffer;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -32,7 +34,6 @@ import org.apache.http.RequestLine;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.nio.IOControl;
-import org.apache.http.nio.client.methods.AsyncCharConsumer;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 import org.slf4j.Logger;
@@ -41,39 +42,68 @@ import org.slf4j.LoggerFactory;
 /**
  * An asynchronous consumer that consumes empty responses. If a non-empty response is received with
  * a success status code (2xx), then a warning is logged.
+ *
+ * <p>Since the body normally is empty it is buffered only if present, using a read buffer borrowed
+ * from a {@link ResponseBufferPool}.
  */
-class EmptyAsyncConsumer extends AsyncCharConsumer<Void> {
+class EmptyAsyncConsumer extends PooledByteConsumer<Void> {
 
   private static final Logger log = LoggerFactory.getLogger(EmptyAsyncConsumer.class);
 
-  private final ObjectMapper json;
+  private final JsonCodecs codecs;
   private HttpResponse response;
-  private StringBuilder sb;
+
+  /** The received body, <code>null</code> if nothing has been received. */
+  private ByteInOutStream bios;
 
   /**
    * Builds a new empty body consumer.
    *
-   * @param json the object mapper
+   * @param codecs the JSON readers
+   * @param pool the pool from which to borrow the read buffer
    */
-  public EmptyAsyncConsumer(ObjectMapper json) {
-    this.json = json;
+  public EmptyAsyncConsumer(JsonCodecs codecs, ResponseBufferPool pool) {
+    super(pool);
+
+    this.codecs = codecs;
   }
 
   @Override
-  protected void onCharReceived(CharBuffer buf, IOControl ioctrl) throws IOException {
-    sb.append(buf.toString());
+  protected void onByteReceived(ByteBuffer buf, IOControl ioctrl) throws IOException {
+    if (bios == null) {
+      bios = new ByteInOutStream(buf.remaining());
+    }
+
+    bios.write(buf);
   }
 
   @Override
   protected void onResponseReceived(HttpResponse response) throws HttpException, IOException {
     this.response = response;
-    this.sb = new StringBuilder();
+  }
+
+  /**
+   * Decodes the received body using the charset of the response, or ISO-8859-1 if the response does
+   * not specify a charset.
+   *
+   * @return the body as a string, empty if no body was received
+   * @throws UnsupportedEncodingException if the charset is not supported
+   */
+  private String content() throws UnsupportedEncodingException {
+    if (bios == null) {
+      return "";
+    }
+
+    ContentType type = ContentType.getLenient(response.getEntity());
+    Charset charset = (type == null) ? null : type.getCharset();
+
+    return bios.toString((charset == null ? StandardCharsets.ISO_8859_1 : charset).name());
   }
 
   @Override
   protected Void buildResult(HttpContext context) throws Exception {
     int code = response.getStatusLine().getStatusCode();
-    String content = sb.toString();
+    String content = content();
 
     switch (code) {
       case HttpStatus.SC_OK:
@@ -85,10 +115,10 @@ class EmptyAsyncConsumer extends AsyncCharConsumer<Void> {
       case HttpStatus.SC_BAD_REQUEST:
       case HttpStatus.SC_FORBIDDEN:
         try {
-          ApiError error = json.readValue(content, ApiError.class);
+          ApiError error = codecs.reader(ApiError.class).readValue(content);
           throw new ErrorResponseException(error);
         } catch (ValueInstantiationException e) {
-          BadRequestError error = json.readValue(content, BadRequestError.class);
+          BadRequestError error = codecs.reader(BadRequestError.class).readValue(content);
           throw new BadRequestResponseException(error);
         }
       case HttpStatus.SC_NOT_FOUND:
@@ -0,0 +1,192 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import org.apache.http.concurrent.FutureCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A callback wrapper that dispatches callback invocations onto an {@link Executor}. This moves the
+ * execution of user callbacks away from the I/O dispatcher threads of the HTTP client, such that a
+ * slow callback does not delay other requests handled by the same dispatcher.
+ *
+ * <p>The wrapper keeps track of the number of callbacks that have been handed off to the executor
+ * but not yet started, which can be used to monitor whether the executor keeps up with the rate of
+ * completed requests.
+ *
+ * <p>If the executor rejects a callback then the callback is instead run directly on the calling
+ * thread, that is, a completion is never lost.
+ */
+public final class ExecutorCallbackWrapper implements CallbackWrapper {
+
+  private static final Logger log = LoggerFactory.getLogger(ExecutorCallbackWrapper.class);
+
+  private final class WrappedCallback<T> implements FutureCallback<T> {
+
+    private final FutureCallback<T> callback;
+
+    private WrappedCallback(FutureCallback<T> callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public void completed(final T result) {
+      dispatch(() -> callback.completed(result));
+    }
+
+    @Override
+    public void failed(final Exception ex) {
+      dispatch(() -> callback.failed(ex));
+    }
+
+    @Override
+    public void cancelled() {
+      dispatch(callback::cancelled);
+    }
+  }
+
+  private final Executor executor;
+
+  private final CallbackWrapper inner;
+
+  /** The number of callbacks handed to the executor that have not yet started running. */
+  private final AtomicInteger pending = new AtomicInteger();
+
+  /** The highest observed value of {@link #pending}. */
+  private final AtomicInteger peakPending = new AtomicInteger();
+
+  /** The number of callbacks handed to the executor. */
+  private final AtomicLong dispatched = new AtomicLong();
+
+  /** The number of callbacks that were rejected by the executor and run on the calling thread. */
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * Creates a new callback wrapper that runs callbacks wrapped by the given inner wrapper using the
+   * given executor.
+   *
+   * @param executor the executor on which to run callbacks
+   * @param inner the wrapper to apply before handing off to the executor
+   */
+  public ExecutorCallbackWrapper(@Nonnull Executor executor, @Nonnull CallbackWrapper inner) {
+    if (executor == null) {
+      throw new NullPointerException("executor");
+    }
+
+    if (inner == null) {
+      throw new NullPointerException("inner");
+    }
+
+    this.executor = executor;
+    this.inner = inner;
+  }
+
+  /**
+   * Creates a new callback wrapper that runs callbacks using the given executor. Exceptions thrown
+   * within the callbacks are logged and dropped, see {@link CallbackWrapper#exceptionDropper}.
+   *
+   * @param executor the executor on which to run callbacks
+   */
+  public ExecutorCallbackWrapper(@Nonnull Executor executor) {
+    this(executor, CallbackWrapper.exceptionDropper);
+  }
+
+  @Override
+  public <T> FutureCallback<T> wrap(FutureCallback<T> callback) {
+    FutureCallback<T> wrapped = inner.wrap(callback);
+
+    return (wrapped == null) ? null : new WrappedCallback<T>(wrapped);
+  }
+
+  /**
+   * The executor used to run callbacks.
+   *
+   * @return a non-null executor
+   */
+  @Nonnull
+  public Executor executor() {
+    return executor;
+  }
+
+  /**
+   * The number of callbacks that currently are waiting to be run by the executor. That is, the
+   * current depth of the hand-off queue.
+   *
+   * @return a non-negative number
+   */
+  public int pendingCallbacks() {
+    return pending.get();
+  }
+
+  /**
+   * The largest number of callbacks simultaneously waiting to be run by the executor since this
+   * wrapper was created.
+   *
+   * @return a non-negative number
+   */
+  public int peakPendingCallbacks() {
+    return peakPending.get();
+  }
+
+  /**
+   * The total number of callbacks handed off to the executor.
+   *
+   * @return a non-negative number
+   */
+  public long dispatchedCallbacks() {
+    return dispatched.get();
+  }
+
+  /**
+   * The total number of callbacks that were rejected by the executor and therefore were run on the
+   * I/O dispatcher thread.
+   *
+   * @return a non-negative number
+   */
+  public long rejectedCallbacks() {
+    return rejected.get();
+  }
+
+  private void dispatch(final Runnable task) {
+    peakPending.accumulateAndGet(pending.incrementAndGet(), Math::max);
+    dispatched.incrementAndGet();
+
+    try {
+      executor.execute(
+          () -> {
+            pending.decrementAndGet();
+            task.run();
+          });
+    } catch (RejectedExecutionException e) {
+      pending.decrementAndGet();
+      rejected.incrementAndGet();
+
+      log.warn("callback rejected by executor, running on calling thread", e);
+
+      task.run();
+    }
+  }
+}
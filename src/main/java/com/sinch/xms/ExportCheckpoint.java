@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.immutables.value.Value;
+
+/**
+ * The progress of a {@link ResumableExport}. The exported time range is split into windows, each
+ * fetched page by page, and the checkpoint records how far each window has progressed. A checkpoint
+ * is saved to an {@link ExportCheckpointStore} after every exported page such that an interrupted
+ * export can resume where it left off.
+ */
+@Value.Immutable
+@ValueStylePackage
+public abstract class ExportCheckpoint {
+
+  /** A builder of export checkpoints. */
+  public static class Builder extends ExportCheckpointImpl.Builder {
+
+    Builder() {}
+  }
+
+  /** The progress of a single time window of an export. */
+  @Value.Immutable
+  public abstract static class Window {
+
+    /** A builder of export windows. */
+    public static class Builder extends WindowImpl.Builder {
+
+      Builder() {}
+    }
+
+    /**
+     * Creates a builder of {@link Window} instances.
+     *
+     * @return a builder
+     */
+    @Nonnull
+    public static final Window.Builder builder() {
+      return new Builder();
+    }
+
+    /**
+     * The start of this window, inclusive.
+     *
+     * @return a date and time
+     */
+    public abstract OffsetDateTime start();
+
+    /**
+     * The end of this window, exclusive.
+     *
+     * @return a date and time
+     */
+    public abstract OffsetDateTime end();
+
+    /**
+     * The number of the next page to fetch in this window.
+     *
+     * @return a non-negative page number
+     */
+    @Value.Default
+    public int nextPage() {
+      return 0;
+    }
+
+    /**
+     * The number of elements exported from this window so far.
+     *
+     * @return a non-negative number
+     */
+    @Value.Default
+    public int seenElements() {
+      return 0;
+    }
+
+    /**
+     * The latest timestamp among the elements exported from this window so far.
+     *
+     * @return a date and time, <code>null</code> if no element has been exported
+     */
+    @Nullable
+    public abstract OffsetDateTime lastSeen();
+
+    /**
+     * Whether all pages of this window have been exported.
+     *
+     * @return true if this window is complete
+     */
+    @Value.Default
+    public boolean done() {
+      return false;
+    }
+  }
+
+  /**
+   * Creates a builder of {@link ExportCheckpoint} instances.
+   *
+   * @return a builder
+   */
+  @Nonnull
+  public static final ExportCheckpoint.Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * A description of the filter of the export. An export only resumes from a checkpoint having the
+   * same filter description.
+   *
+   * @return a non-null string
+   */
+  public abstract String filter();
+
+  /**
+   * The windows of the export, in time order.
+   *
+   * @return a non-null list of windows
+   */
+  public abstract List<Window> windows();
+
+  /**
+   * Whether all windows of the export are complete.
+   *
+   * @return true if the export is complete
+   */
+  public boolean isComplete() {
+    for (Window window : windows()) {
+      if (!window.done()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
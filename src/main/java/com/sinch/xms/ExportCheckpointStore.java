@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Persistent storage of the checkpoint of a {@link ResumableExport}. The export loads the
+ * checkpoint when started and saves a new checkpoint after every exported page.
+ *
+ * <p>Saves are never concurrent, but they may be performed by different threads.
+ */
+public interface ExportCheckpointStore {
+
+  /**
+   * Returns a store keeping the checkpoint as JSON in the given file. The file is replaced
+   * atomically on each save so that a crash never leaves a partially written checkpoint.
+   *
+   * @param file the checkpoint file, it need not exist
+   * @return a non-null checkpoint store
+   */
+  @Nonnull
+  static ExportCheckpointStore file(@Nonnull Path file) {
+    return new FileExportCheckpointStore(Utils.requireNonNull(file, "file"));
+  }
+
+  /**
+   * Loads the most recently saved checkpoint.
+   *
+   * @return the checkpoint, <code>null</code> if no checkpoint has been saved
+   * @throws IOException if the checkpoint could not be loaded
+   */
+  @Nullable
+  ExportCheckpoint load() throws IOException;
+
+  /**
+   * Saves the given checkpoint, replacing any previously saved checkpoint.
+   *
+   * @param checkpoint the checkpoint to save
+   * @throws IOException if the checkpoint could not be saved
+   */
+  void save(@Nonnull ExportCheckpoint checkpoint) throws IOException;
+}
@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A checkpoint store keeping the checkpoint as JSON in a file. Each save writes a temporary file
+ * next to the checkpoint file and then atomically moves it into place.
+ */
+final class FileExportCheckpointStore implements ExportCheckpointStore {
+
+  private static final ObjectMapper MAPPER = new ApiObjectMapper(false);
+
+  private final Path file;
+
+  FileExportCheckpointStore(Path file) {
+    this.file = file;
+  }
+
+  @Override
+  public ExportCheckpoint load() throws IOException {
+    JsonNode root;
+
+    try {
+      root = MAPPER.readTree(Files.readAllBytes(file));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    try {
+      ExportCheckpoint.Builder builder =
+          ExportCheckpoint.builder().filter(root.path("filter").textValue());
+
+      for (JsonNode w : root.path("windows")) {
+        JsonNode lastSeen = w.path("last_seen");
+
+        builder.addWindow(
+            ExportCheckpoint.Window.builder()
+                .start(OffsetDateTime.parse(w.path("start").textValue()))
+                .end(OffsetDateTime.parse(w.path("end").textValue()))
+                .nextPage(w.path("next_page").intValue())
+                .seenElements(w.path("seen_elements").intValue())
+                .lastSeen(lastSeen.isTextual() ? OffsetDateTime.parse(lastSeen.textValue()) : null)
+                .done(w.path("done").booleanValue())
+                .build());
+      }
+
+      return builder.build();
+    } catch (NullPointerException | IllegalStateException | DateTimeParseException e) {
+      throw new IOException("invalid checkpoint file " + file, e);
+    }
+  }
+
+  @Override
+  public void save(ExportCheckpoint checkpoint) throws IOException {
+    ObjectNode root = MAPPER.createObjectNode();
+    root.put("filter", checkpoint.filter());
+
+    ArrayNode windows = root.putArray("windows");
+
+    for (ExportCheckpoint.Window window : checkpoint.windows()) {
+      ObjectNode w = windows.addObject();
+      w.put("start", window.start().toString());
+      w.put("end", window.end().toString());
+      w.put("next_page", window.nextPage());
+      w.put("seen_elements", window.seenElements());
+
+      if (window.lastSeen() != null) {
+        w.put("last_seen", window.lastSeen().toString());
+      }
+
+      w.put("done", window.done());
+    }
+
+    Path dir = file.toAbsolutePath().getParent();
+    Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+
+    try {
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        MAPPER.writeValue(out, root);
+      }
+
+      Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
@@ -19,8 +19,12 @@
  */
 package com.sinch.xms;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.exc.ValueInstantiationException;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.sinch.xms.api.ApiError;
 import com.sinch.xms.api.BadRequestError;
 import java.io.IOException;
@@ -33,67 +37,150 @@ import org.apache.http.RequestLine;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.nio.IOControl;
-import org.apache.http.nio.client.methods.AsyncByteConsumer;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 
 /**
  * An asynchronous consumer that consumes JSON objects.
  *
+ * <p>Successful responses are tokenized as the body arrives using a non-blocking JSON parser, the
+ * tokens are collected in a compact token buffer from which the result object is bound once the
+ * response is complete. This way tokenization overlaps with the network transfer and the raw body
+ * is never held in memory. Error responses are typically small and are buffered in full.
+ *
+ * <p>The read buffer is borrowed from a {@link ResponseBufferPool}.
+ *
  * @param <T> the expected type after deserialization
  */
-class JsonApiAsyncConsumer<T> extends AsyncByteConsumer<T> {
+class JsonApiAsyncConsumer<T> extends PooledByteConsumer<T> {
 
-  private final ObjectMapper json;
-  private final Class<T> jsonClass;
+  private final JsonCodecs codecs;
+  private final ObjectReader reader;
   private HttpResponse response;
+
+  /** Buffer of the raw body, used for error responses. */
   private ByteInOutStream bios;
 
+  /** Non-blocking parser of the body, used for successful responses. */
+  private JsonParser parser;
+
+  /** Tokens produced by {@link #parser}. */
+  private TokenBuffer tokens;
+
+  /** Scratch array used when the received bytes are not backed by an array. */
+  private byte[] scratch;
+
   /**
    * Builds a new JSON consumer.
    *
-   * @param json the object mapper
+   * @param codecs the JSON readers
    * @param jsonClass the class that will be deserialized
+   * @param pool the pool from which to borrow the read buffer
    */
-  public JsonApiAsyncConsumer(ObjectMapper json, Class<T> jsonClass) {
-    this.json = json;
-    this.jsonClass = jsonClass;
+  public JsonApiAsyncConsumer(JsonCodecs codecs, Class<T> jsonClass, ResponseBufferPool pool) {
+    super(pool);
+
+    this.codecs = codecs;
+    this.reader = codecs.reader(jsonClass);
   }
 
   @Override
   protected void onByteReceived(ByteBuffer buf, IOControl ioctrl) throws IOException {
-    bios.write(buf);
+    if (parser == null) {
+      bios.write(buf);
+      return;
+    }
+
+    ByteArrayFeeder feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    int length = buf.remaining();
+
+    if (buf.hasArray()) {
+      int start = buf.arrayOffset() + buf.position();
+      feeder.feedInput(buf.array(), start, start + length);
+      buf.position(buf.limit());
+    } else {
+      if (scratch == null || scratch.length < length) {
+        scratch = new byte[length];
+      }
+
+      buf.get(scratch, 0, length);
+      feeder.feedInput(scratch, 0, length);
+    }
+
+    // The parser refers to the fed array, which is reused, so drain it completely.
+    drainTokens();
+  }
+
+  /**
+   * Moves all tokens currently available from the parser into the token buffer.
+   *
+   * @throws IOException if the input is not valid JSON
+   */
+  private void drainTokens() throws IOException {
+    JsonToken token;
+
+    while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+      tokens.copyCurrentEvent(parser);
+    }
   }
 
   @Override
   protected void onResponseReceived(HttpResponse response) throws HttpException, IOException {
     this.response = response;
 
-    /*
-     * We'll assume that most responses fit within 1KiB. For larger
-     * responses the output stream will grow automatically.
-     */
-    this.bios = new ByteInOutStream(1024);
+    switch (response.getStatusLine().getStatusCode()) {
+      case HttpStatus.SC_OK:
+      case HttpStatus.SC_CREATED:
+        this.parser = reader.createNonBlockingByteArrayParser();
+        this.tokens = new TokenBuffer(parser);
+        break;
+      default:
+        /*
+         * We'll assume that most responses fit within 1KiB. For larger
+         * responses the output stream will grow automatically.
+         */
+        this.bios = new ByteInOutStream(1024);
+        break;
+    }
+  }
+
+  /**
+   * Binds the tokens of a successful response to the result class.
+   *
+   * @return the deserialized object
+   * @throws IOException if the response is not a valid JSON representation of the result class
+   */
+  private T readTokens() throws IOException {
+    ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).endOfInput();
+    drainTokens();
+    parser.close();
+
+    try (JsonParser tokenParser = tokens.asParser(reader)) {
+      return reader.readValue(tokenParser);
+    }
   }
 
   @Override
   protected T buildResult(HttpContext context) throws Exception {
     int code = response.getStatusLine().getStatusCode();
+
+    if (parser != null) {
+      return readTokens();
+    }
+
     InputStream inputStream = bios.toInputStream();
 
     switch (code) {
-      case HttpStatus.SC_OK:
-      case HttpStatus.SC_CREATED:
-        return json.readValue(inputStream, jsonClass);
       case HttpStatus.SC_ACCEPTED:
         return null;
       case HttpStatus.SC_BAD_REQUEST:
       case HttpStatus.SC_FORBIDDEN:
         try {
-          ApiError error = json.readValue(inputStream, ApiError.class);
+          ApiError error = codecs.reader(ApiError.class).readValue(inputStream);
           throw new ErrorResponseException(error);
         } catch (ValueInstantiationException e) {
-          BadRequestError error = json.readValue(bios.toInputStream(), BadRequestError.class);
+          BadRequestError error =
+              codecs.reader(BadRequestError.class).readValue(bios.toInputStream());
           throw new BadRequestResponseException(error);
         }
       case HttpStatus.SC_NOT_FOUND:
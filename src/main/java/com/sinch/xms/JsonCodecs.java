@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sinch.xms.api.ApiError;
+import com.sinch.xms.api.BadRequestError;
+import com.sinch.xms.api.BatchDeliveryReport;
+import com.sinch.xms.api.GroupResult;
+import com.sinch.xms.api.MoSms;
+import com.sinch.xms.api.MtBatchBinarySmsResult;
+import com.sinch.xms.api.MtBatchDryRunResult;
+import com.sinch.xms.api.MtBatchMmsResult;
+import com.sinch.xms.api.MtBatchResult;
+import com.sinch.xms.api.MtBatchTextSmsResult;
+import com.sinch.xms.api.PagedBatchResult;
+import com.sinch.xms.api.PagedDeliveryReportResult;
+import com.sinch.xms.api.PagedGroupResult;
+import com.sinch.xms.api.PagedInboundsResult;
+import com.sinch.xms.api.RecipientDeliveryReport;
+import com.sinch.xms.api.Tags;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nonnull;
+
+/**
+ * Readers and writers of the JSON representation of API objects. Looking up the root deserializer
+ * or serializer of a type, including its polymorphic type handling, is done once per type rather
+ * than once per call. Readers of all response types are built up front while writers are built when
+ * a type is first written, since the concrete request types are not known in advance.
+ *
+ * <p>The readers and writers are snapshots of the mapper configuration, the mapper must therefore
+ * be fully configured before being given to this class.
+ */
+final class JsonCodecs {
+
+  /** The types read by {@link ApiConnection}. */
+  private static final Class<?>[] RESPONSE_TYPES = {
+    ApiError.class,
+    BadRequestError.class,
+    BatchDeliveryReport.class,
+    GroupResult.class,
+    MoSms.class,
+    MtBatchBinarySmsResult.class,
+    MtBatchDryRunResult.class,
+    MtBatchMmsResult.class,
+    MtBatchResult.class,
+    MtBatchTextSmsResult.class,
+    PagedBatchResult.class,
+    PagedDeliveryReportResult.class,
+    PagedGroupResult.class,
+    PagedInboundsResult.class,
+    RecipientDeliveryReport.class,
+    Set.class,
+    Tags.class
+  };
+
+  private final ObjectMapper json;
+
+  private final ConcurrentMap<Class<?>, ObjectReader> readers =
+      new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+  private final ConcurrentMap<Class<?>, ObjectWriter> writers =
+      new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+  /**
+   * Creates readers and writers using the given mapper.
+   *
+   * @param json a fully configured object mapper
+   */
+  JsonCodecs(ObjectMapper json) {
+    this.json = json;
+
+    for (Class<?> type : RESPONSE_TYPES) {
+      readers.put(type, json.readerFor(type));
+    }
+  }
+
+  /**
+   * The object mapper from which the readers and writers are built.
+   *
+   * @return a non-null object mapper
+   */
+  @Nonnull
+  ObjectMapper mapper() {
+    return json;
+  }
+
+  /**
+   * Returns a reader of the given type.
+   *
+   * @param type the type to read
+   * @return a non-null reader
+   */
+  @Nonnull
+  ObjectReader reader(Class<?> type) {
+    ObjectReader reader = readers.get(type);
+
+    return (reader != null) ? reader : readers.computeIfAbsent(type, json::readerFor);
+  }
+
+  /**
+   * Returns a writer of the given type. Typically the type is the runtime class of the object to
+   * write.
+   *
+   * @param type the type to write
+   * @return a non-null writer
+   */
+  @Nonnull
+  ObjectWriter writer(Class<?> type) {
+    ObjectWriter writer = writers.get(type);
+
+    return (writer != null) ? writer : writers.computeIfAbsent(type, json::writerFor);
+  }
+}
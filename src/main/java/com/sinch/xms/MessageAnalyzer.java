@@ -0,0 +1,366 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.MtBatchDryRunResult;
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import com.sinch.xms.api.ParameterValues;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Local analysis of text messages, determining their encoding and the number of message parts they
+ * are split into. This allows the outcome of {@link ApiConnection#createBatchDryRun} to be computed
+ * without a round trip to XMS.
+ *
+ * <p>A message is encoded using the GSM 03.38 7-bit default alphabet if every character is found in
+ * the basic character set or its extension table, where the latter costs two septets each.
+ * Otherwise the message is encoded using UCS-2. A message fitting in 160 septets, or 70 UCS-2
+ * characters, is sent as a single part. Longer messages are concatenated and the user data header
+ * then leaves room for 153 septets, or 67 UCS-2 characters, per part. An extension character or a
+ * surrogate pair is never split between two parts.
+ *
+ * <p>Message templates are expanded per recipient, see {@link MtBatchTextSmsCreate#body()}. A
+ * parameter having neither a substitution for the recipient nor a default value is left unexpanded.
+ * The expanded message is not built while counting, only the per-recipient sample of a dry run
+ * includes message bodies.
+ */
+public final class MessageAnalyzer {
+
+  /** The encoding name used for GSM 03.38 messages, as in {@link MtBatchDryRunResult}. */
+  public static final String ENCODING_TEXT = "text";
+
+  /** The encoding name used for UCS-2 messages, as in {@link MtBatchDryRunResult}. */
+  public static final String ENCODING_UNICODE = "unicode";
+
+  /** The characters of the GSM 03.38 basic character set, except the escape character. */
+  private static final String GSM_BASIC =
+      "@£$¥èéùìòÇ\nØø\rÅå"
+          + "Δ_ΦΓΛΩΠΨΣΘΞÆæßÉ"
+          + " !\"#¤%&'()*+,-./0123456789:;<=>?"
+          + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§"
+          + "¿abcdefghijklmnopqrstuvwxyzäöñüà";
+
+  /** The characters of the GSM 03.38 extension table. */
+  private static final String GSM_EXTENSION = "\f^{}\\[~]|€";
+
+  /** The septet cost of characters below U+0400, zero for characters not in GSM 03.38. */
+  private static final byte[] GSM_COST = new byte[0x400];
+
+  static {
+    for (int i = 0; i < GSM_BASIC.length(); i++) {
+      GSM_COST[GSM_BASIC.charAt(i)] = 1;
+    }
+
+    for (int i = 0; i < GSM_EXTENSION.length(); i++) {
+      char c = GSM_EXTENSION.charAt(i);
+      if (c < GSM_COST.length) {
+        GSM_COST[c] = 2;
+      }
+    }
+  }
+
+  private static final int GSM_SINGLE = 160;
+
+  private static final int GSM_CONCATENATED = 153;
+
+  private static final int UCS2_SINGLE = 70;
+
+  private static final int UCS2_CONCATENATED = 67;
+
+  /** Batches having at least this many recipients are analyzed in parallel. */
+  private static final int PARALLEL_THRESHOLD = 4096;
+
+  /** Flag in the result of {@link Template#measure(String)} set for GSM 03.38 messages. */
+  private static final long GSM_FLAG = 1L << 32;
+
+  private MessageAnalyzer() {}
+
+  /**
+   * Performs a local dry run of the given batch, without per-recipient information.
+   *
+   * @param batch the batch to analyze
+   * @return a dry run result
+   */
+  @Nonnull
+  public static MtBatchDryRunResult dryRun(MtBatchTextSmsCreate batch) {
+    return dryRun(batch, false, 0);
+  }
+
+  /**
+   * Performs a local dry run of the given batch. The result has the same shape as the one returned
+   * by {@link ApiConnection#createBatchDryRun}. Large batches are analyzed in parallel.
+   *
+   * <p>If {@link MtBatchTextSmsCreate#maxNumberOfMessageParts()} is set then recipients whose
+   * message needs more parts will not be sent any message and do not contribute to the number of
+   * messages. Their per-recipient entry still shows the number of parts that would be needed.
+   *
+   * @param batch the batch to analyze
+   * @param perRecipient whether the per-recipient result should be populated
+   * @param numRecipients the number of recipients to populate, from the start of the recipient list
+   * @return a dry run result
+   * @throws IllegalArgumentException if the number of recipients is negative
+   */
+  @Nonnull
+  public static MtBatchDryRunResult dryRun(
+      MtBatchTextSmsCreate batch, boolean perRecipient, int numRecipients) {
+    if (numRecipients < 0) {
+      throw new IllegalArgumentException("negative number of recipients");
+    }
+
+    final Template template = new Template(batch.body(), batch.parameters());
+    final List<String> recipients = batch.recipients();
+    final int maxParts =
+        batch.maxNumberOfMessageParts() == null
+            ? Integer.MAX_VALUE
+            : batch.maxNumberOfMessageParts();
+
+    IntStream indices = IntStream.range(0, recipients.size());
+    if (recipients.size() >= PARALLEL_THRESHOLD) {
+      indices = indices.parallel();
+    }
+
+    int messages =
+        indices
+            .map(
+                i -> {
+                  int parts = (int) template.measure(recipients.get(i));
+                  return parts <= maxParts ? parts : 0;
+                })
+            .sum();
+
+    MtBatchDryRunResult.Builder builder =
+        MtBatchDryRunResult.builder()
+            .numberOfRecipients(recipients.size())
+            .numberOfMessages(messages);
+
+    if (perRecipient) {
+      for (String recipient : recipients.subList(0, Math.min(numRecipients, recipients.size()))) {
+        long measure = template.measure(recipient);
+
+        builder.addPerRecipient(
+            MtBatchDryRunResult.PerRecipient.builder()
+                .recipient(recipient)
+                .numberOfParts((int) measure)
+                .body(template.expand(recipient))
+                .encoding((measure & GSM_FLAG) != 0 ? ENCODING_TEXT : ENCODING_UNICODE)
+                .build());
+      }
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * Returns the number of parts the given message is split into.
+   *
+   * @param message the message to analyze
+   * @return a positive number of parts
+   */
+  public static int numberOfParts(CharSequence message) {
+    return (int) new Template(message.toString(), Collections.emptyMap()).measure(null);
+  }
+
+  /**
+   * Returns whether the given message can be encoded using the GSM 03.38 7-bit default alphabet.
+   *
+   * @param message the message to analyze
+   * @return true if the message is encoded as text; false if it is encoded as unicode
+   */
+  public static boolean isGsm7(CharSequence message) {
+    for (int i = 0; i < message.length(); i++) {
+      if (gsmCost(message.charAt(i)) == 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the message of the given batch as sent to the given recipient, with the template
+   * expanded.
+   *
+   * @param batch the batch holding the message template
+   * @param recipient the recipient
+   * @return the expanded message
+   */
+  static String expand(MtBatchTextSmsCreate batch, String recipient) {
+    if (batch.parameters().isEmpty()) {
+      return batch.body();
+    }
+
+    return new Template(batch.body(), batch.parameters()).expand(recipient);
+  }
+
+  private static int gsmCost(char c) {
+    if (c < GSM_COST.length) {
+      return GSM_COST[c];
+    }
+
+    return c == '€' ? 2 : 0;
+  }
+
+  /**
+   * A message template split into pieces. Even pieces are literal text and odd pieces are
+   * parameters, whose text depends on the recipient.
+   */
+  private static final class Template {
+
+    private final String[] literals;
+
+    private final ParameterValues[] parameters;
+
+    private final String[] placeholders;
+
+    Template(String body, Map<String, ParameterValues> parameters) {
+      List<String> literals = new ArrayList<String>();
+      List<ParameterValues> values = new ArrayList<ParameterValues>();
+      List<String> placeholders = new ArrayList<String>();
+
+      int start = 0;
+      int from = 0;
+      int open;
+
+      while (!parameters.isEmpty() && (open = body.indexOf("${", from)) >= 0) {
+        int close = body.indexOf('}', open + 2);
+        if (close < 0) {
+          break;
+        }
+
+        ParameterValues value = parameters.get(body.substring(open + 2, close));
+        if (value != null) {
+          literals.add(body.substring(start, open));
+          values.add(value);
+          placeholders.add(body.substring(open, close + 1));
+          start = close + 1;
+        }
+
+        from = close + 1;
+      }
+
+      literals.add(body.substring(start));
+
+      this.literals = literals.toArray(new String[literals.size()]);
+      this.parameters = values.toArray(new ParameterValues[values.size()]);
+      this.placeholders = placeholders.toArray(new String[placeholders.size()]);
+    }
+
+    int pieces() {
+      return literals.length + parameters.length;
+    }
+
+    String piece(int i, @Nullable String recipient) {
+      if (i % 2 == 0) {
+        return literals[i / 2];
+      }
+
+      ParameterValues p = parameters[i / 2];
+      String value = recipient == null ? null : p.substitutions().get(recipient);
+
+      if (value == null) {
+        value = p.defaultValue();
+      }
+
+      return value == null ? placeholders[i / 2] : value;
+    }
+
+    String expand(String recipient) {
+      StringBuilder sb = new StringBuilder();
+
+      for (int i = 0; i < pieces(); i++) {
+        sb.append(piece(i, recipient));
+      }
+
+      return sb.toString();
+    }
+
+    /**
+     * Measures the message sent to the given recipient. The result holds the number of parts in the
+     * low 32 bits and has {@link #GSM_FLAG} set if the message is encoded using GSM 03.38.
+     */
+    long measure(@Nullable String recipient) {
+      boolean gsm = true;
+      int septets = 0;
+      int units = 0;
+
+      for (int i = 0; i < pieces(); i++) {
+        String piece = piece(i, recipient);
+        units += piece.length();
+
+        for (int j = 0; gsm && j < piece.length(); j++) {
+          int cost = gsmCost(piece.charAt(j));
+          gsm = cost > 0;
+          septets += cost;
+        }
+      }
+
+      int parts;
+      if (gsm) {
+        parts = septets <= GSM_SINGLE ? 1 : split(recipient, true);
+      } else {
+        parts = units <= UCS2_SINGLE ? 1 : split(recipient, false);
+      }
+
+      return gsm ? GSM_FLAG | parts : parts;
+    }
+
+    /** Fills concatenated parts greedily, never splitting an extension character or a pair. */
+    private int split(@Nullable String recipient, boolean gsm) {
+      int capacity = gsm ? GSM_CONCATENATED : UCS2_CONCATENATED;
+      int parts = 1;
+      int used = 0;
+
+      for (int i = 0; i < pieces(); i++) {
+        String piece = piece(i, recipient);
+
+        for (int j = 0; j < piece.length(); j++) {
+          char c = piece.charAt(j);
+          int cost;
+
+          if (gsm) {
+            cost = gsmCost(c);
+          } else if (Character.isHighSurrogate(c)
+              && j + 1 < piece.length()
+              && Character.isLowSurrogate(piece.charAt(j + 1))) {
+            cost = 2;
+            j++;
+          } else {
+            cost = 1;
+          }
+
+          if (used + cost > capacity) {
+            parts++;
+            used = cost;
+          } else {
+            used += cost;
+          }
+        }
+      }
+
+      return parts;
+    }
+  }
+}
@@ -20,9 +20,18 @@
 package com.sinch.xms;
 
 import com.sinch.xms.api.Page;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.apache.http.concurrent.FutureCallback;
@@ -33,6 +42,10 @@ import org.apache.http.concurrent.FutureCallback;
  * individual pages or to produce an iterator that seamlessly will iterate over all elements of all
  * pages.
  *
+ * <p>A fetcher created by a connection having a {@linkplain ApiConnection#withDeadline(Duration)
+ * deadline} applies that deadline to each individual page fetch. If the thread iterating over pages
+ * is interrupted then the page fetch in progress is aborted.
+ *
  * @param <T> the element type
  */
 public abstract class PagedFetcher<T> {
@@ -64,6 +77,18 @@ public abstract class PagedFetcher<T> {
   @Nonnull
   abstract Future<Page<T>> fetchAsync(int page, @Nullable FutureCallback<Page<T>> callback);
 
+  /**
+   * Asynchronously fetches the page having the given page number. The returned future completes
+   * when the page has been fetched and cancelling it also cancels the underlying request.
+   *
+   * @param page page to fetch (starting from zero)
+   * @return a completable future providing the requested page
+   */
+  @Nonnull
+  public CompletableFuture<Page<T>> fetchAsync(int page) {
+    return CompletableFutureCallback.adapt(callback -> fetchAsync(page, callback));
+  }
+
   /**
    * Returns an iterable object that traverses all fetched elements across all associated pages.
    * This is done by iterating over fetched pages and, when necessary, fetching new pages.
@@ -80,13 +105,30 @@ public abstract class PagedFetcher<T> {
    */
   @Nonnull
   public Iterable<T> elements() {
+    return elements(0);
+  }
+
+  /**
+   * Like {@link #elements()} but fetches pages ahead of the consumer as described in {@link
+   * #pages(int)}.
+   *
+   * @param prefetch the maximum number of pages to fetch ahead of the consumer
+   * @return a non-null iterable
+   * @throws IllegalArgumentException if the prefetch count is negative
+   * @throws RuntimeException if the background page fetching failed
+   */
+  @Nonnull
+  public Iterable<T> elements(final int prefetch) {
+    if (prefetch < 0) {
+      throw new IllegalArgumentException("negative prefetch");
+    }
 
     return new Iterable<T>() {
 
       @Override
       public Iterator<T> iterator() {
 
-        final Iterator<Page<T>> pageIt = pages().iterator();
+        final Iterator<Page<T>> pageIt = pages(prefetch).iterator();
 
         return new Iterator<T>() {
 
@@ -134,53 +176,317 @@ public abstract class PagedFetcher<T> {
    */
   @Nonnull
   public Iterable<Page<T>> pages() {
+    return pages(0);
+  }
 
-    return new Iterable<Page<T>>() {
+  /**
+   * Returns an iterable object that fetches and traverses all matching pages while keeping up to
+   * <code>prefetch</code> page fetches in flight ahead of the consumer.
+   *
+   * <p>The first page is always fetched on its own. Its total size and page size then determine the
+   * number of remaining pages, which are requested in parallel, with at most <code>prefetch
+   * </code> requests outstanding at any time. Pages are nevertheless yielded in page order. A
+   * prefetch count of zero gives the plain sequential behavior of {@link #pages()}, a prefetch
+   * count at least as large as the number of pages fans out all remaining requests at once.
+   *
+   * <p>If a fetch fails, or the iterating thread is interrupted, then all outstanding fetches are
+   * cancelled. Fetches that are in flight when the consumer abandons the iteration are allowed to
+   * complete and their pages are discarded.
+   *
+   * @param prefetch the maximum number of pages to fetch ahead of the consumer
+   * @return a non-null iterable
+   * @throws IllegalArgumentException if the prefetch count is negative
+   * @throws RuntimeApiException if the background page fetching failed
+   */
+  @Nonnull
+  public Iterable<Page<T>> pages(final int prefetch) {
+    if (prefetch < 0) {
+      throw new IllegalArgumentException("negative prefetch");
+    }
 
-      @Override
-      public Iterator<Page<T>> iterator() {
+    return () -> new PageIterator(prefetch);
+  }
 
-        return new Iterator<Page<T>>() {
+  /**
+   * Returns a sequential stream over all fetched elements across all associated pages. Pages are
+   * fetched as the stream is consumed.
+   *
+   * <p>Failures to fetch a page are thrown from the terminal operation as {@link
+   * RuntimeApiException}.
+   *
+   * @return a non-null stream
+   */
+  @Nonnull
+  public Stream<T> stream() {
+    return StreamSupport.stream(this::spliterator, PageSpliterator.CHARACTERISTICS, false);
+  }
 
-          private Page<T> page = null;
-          private int seenElements = 0;
+  /**
+   * Returns a parallel stream over all fetched elements across all associated pages. The first page
+   * is fetched when the stream is first split, its total size and page size then determine the
+   * range of remaining pages. This range is split between the worker threads such that disjoint
+   * pages are fetched and processed concurrently.
+   *
+   * <p>Failures to fetch a page are thrown from the terminal operation as {@link
+   * RuntimeApiException}.
+   *
+   * @return a non-null stream
+   */
+  @Nonnull
+  public Stream<T> parallelStream() {
+    return StreamSupport.stream(this::spliterator, PageSpliterator.CHARACTERISTICS, true);
+  }
 
-          @Override
-          public boolean hasNext() {
-            if (page == null) {
-              return true;
-            } else {
-              return seenElements < page.totalSize() && !page.isEmpty();
-            }
-          }
+  /**
+   * Returns a spliterator over all fetched elements across all associated pages. The spliterator
+   * splits by page ranges and its size is an estimate based on the total size reported by the first
+   * page, since the result set may change on the server while being fetched.
+   *
+   * @return a non-null spliterator
+   */
+  @Nonnull
+  public Spliterator<T> spliterator() {
+    return new PageSpliterator();
+  }
 
-          @Override
-          public Page<T> next() {
-            int pageToFetch = (page == null) ? 0 : page.page() + 1;
-
-            try {
-              page = fetchAsync(pageToFetch, null).get();
-            } catch (InterruptedException e) {
-              // Interrupt the thread to let upstream code know.
-              Thread.currentThread().interrupt();
-            } catch (ExecutionException e) {
-              ApiException cause;
-
-              try {
-                cause = Utils.unwrapExecutionException(e);
-              } catch (ApiException einner) {
-                cause = einner;
-              }
+  /**
+   * Synchronously fetches the given page for use in an iterator or spliterator.
+   *
+   * @param page the page number
+   * @return the fetched page
+   * @throws RuntimeApiException if the fetch failed or was interrupted
+   */
+  private Page<T> fetchUnchecked(int page) {
+    try {
+      return fetch(page);
+    } catch (InterruptedException e) {
+      // Interrupt the thread to let upstream code know.
+      Thread.currentThread().interrupt();
 
-              throw new RuntimeApiException(cause);
-            }
+      throw new RuntimeApiException(new ConcurrentException(e));
+    } catch (ApiException e) {
+      throw new RuntimeApiException(e);
+    }
+  }
 
-            seenElements += page.size();
+  /**
+   * Spliterator over the elements of a range of pages. The first page is fetched lazily and
+   * determines the range of pages of the root spliterator. The spliterator covering the last page
+   * of the range continues past it if later pages report a larger total size.
+   */
+  private final class PageSpliterator implements Spliterator<T> {
 
-            return page;
-          }
-        };
+    static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.NONNULL;
+
+    /** Elements of the current page remaining to be traversed. */
+    private Iterator<T> current;
+
+    /** The number of elements remaining in the current page. */
+    private int currentRemaining;
+
+    /** The next page to fetch. */
+    private int from;
+
+    /** The page at which to stop fetching, exclusive. */
+    private int to;
+
+    /** The page size, as given by the first page. */
+    private int pageSize;
+
+    /** Whether this spliterator covers the end of the result. */
+    private boolean tail;
+
+    private boolean initialized;
+
+    PageSpliterator() {}
+
+    private PageSpliterator(
+        Iterator<T> current, int currentRemaining, int from, int to, int pageSize) {
+      this.current = current;
+      this.currentRemaining = currentRemaining;
+      this.from = from;
+      this.to = to;
+      this.pageSize = pageSize;
+      this.tail = false;
+      this.initialized = true;
+    }
+
+    private void init() {
+      if (initialized) {
+        return;
       }
-    };
+
+      Page<T> first = fetchUnchecked(0);
+
+      current = first.iterator();
+      currentRemaining = first.size();
+      pageSize = first.size();
+      from = 1;
+      to = pageSize == 0 ? 1 : (int) ((first.totalSize() + (long) pageSize - 1) / pageSize);
+      tail = true;
+      initialized = true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      init();
+
+      while (!current.hasNext()) {
+        if (from >= to) {
+          return false;
+        }
+
+        Page<T> page = fetchUnchecked(from++);
+
+        if (page.isEmpty()) {
+          to = from;
+          return false;
+        } else if (tail && from == to && (long) from * pageSize < page.totalSize()) {
+          // The result has grown since the first page was fetched.
+          to++;
+        }
+
+        current = page.iterator();
+        currentRemaining = page.size();
+      }
+
+      currentRemaining--;
+      action.accept(current.next());
+
+      return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      init();
+
+      int pages = to - from;
+
+      if (pages < 2 && !(pages == 1 && current.hasNext())) {
+        return null;
+      }
+
+      // The prefix holds the rest of the current page and the first half of the remaining pages.
+      int mid = from + pages / 2;
+
+      PageSpliterator prefix = new PageSpliterator(current, currentRemaining, from, mid, pageSize);
+
+      current = Collections.emptyIterator();
+      currentRemaining = 0;
+      from = mid;
+
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      init();
+
+      return currentRemaining + (long) (to - from) * pageSize;
+    }
+
+    @Override
+    public int characteristics() {
+      return CHARACTERISTICS;
+    }
+  }
+
+  /** Iterator over pages that keeps a window of page fetches in flight. */
+  private final class PageIterator implements Iterator<Page<T>> {
+
+    private final int prefetch;
+
+    /** Outstanding fetches, of consecutive pages in page order. */
+    private final Deque<Future<Page<T>>> inFlight = new ArrayDeque<Future<Page<T>>>();
+
+    /** The number of the next page to request. */
+    private int nextPage = 0;
+
+    /** The size of the first page, used to estimate the number of pages. */
+    private int pageSize = 0;
+
+    private Page<T> page = null;
+    private int seenElements = 0;
+
+    PageIterator(int prefetch) {
+      this.prefetch = prefetch;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (page == null) {
+        return true;
+      } else if (seenElements < page.totalSize() && !page.isEmpty()) {
+        return true;
+      } else {
+        cancelInFlight();
+        return false;
+      }
+    }
+
+    @Override
+    public Page<T> next() {
+      if (inFlight.isEmpty()) {
+        inFlight.add(fetchAsync(nextPage++, null));
+      }
+
+      Future<Page<T>> future = inFlight.poll();
+
+      try {
+        page = future.get();
+      } catch (InterruptedException e) {
+        // Abort the exchanges so that they do not hold on to connections.
+        future.cancel(true);
+        cancelInFlight();
+
+        // Interrupt the thread to let upstream code know.
+        Thread.currentThread().interrupt();
+
+        throw new RuntimeApiException(new ConcurrentException(e));
+      } catch (ExecutionException e) {
+        cancelInFlight();
+
+        ApiException cause;
+
+        try {
+          cause = Utils.unwrapExecutionException(e);
+        } catch (ApiException einner) {
+          cause = einner;
+        }
+
+        throw new RuntimeApiException(cause);
+      }
+
+      seenElements += page.size();
+
+      if (page.page() == 0) {
+        pageSize = page.size();
+      }
+
+      fillWindow();
+
+      return page;
+    }
+
+    /** Requests pages ahead of the consumer, up to the estimated last page. */
+    private void fillWindow() {
+      if (pageSize == 0 || page.isEmpty()) {
+        return;
+      }
+
+      int lastPage = (page.totalSize() - 1) / pageSize;
+
+      while (inFlight.size() < prefetch && nextPage <= lastPage) {
+        inFlight.add(fetchAsync(nextPage++, null));
+      }
+    }
+
+    private void cancelInFlight() {
+      for (Future<Page<T>> f : inFlight) {
+        f.cancel(true);
+      }
+
+      inFlight.clear();
+    }
   }
 }
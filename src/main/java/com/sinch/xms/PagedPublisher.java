@@ -0,0 +1,241 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.Page;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A Reactive Streams publisher of all elements across all pages of a {@link PagedFetcher}. Pages
+ * are fetched asynchronously and only when the subscriber has signalled demand for more elements
+ * than remain in the current page, no thread is blocked while waiting for a page.
+ *
+ * <p>The publisher is cold, each subscription traverses the pages from the first page. A failed
+ * page fetch terminates the subscription with {@link Subscriber#onError(Throwable)}, where the
+ * error is the {@link ApiException} describing the failure or a {@link ConcurrentException}
+ * wrapping any other checked exception. Cancelling the subscription also cancels the page fetch in
+ * progress, if any.
+ *
+ * <p>Note, this class requires the optional <code>org.reactivestreams:reactive-streams</code>
+ * dependency.
+ *
+ * @param <T> the element type
+ */
+public final class PagedPublisher<T> implements Publisher<T> {
+
+  private final PagedFetcher<T> fetcher;
+
+  private PagedPublisher(PagedFetcher<T> fetcher) {
+    this.fetcher = fetcher;
+  }
+
+  /**
+   * Returns a publisher of the elements of the given fetcher.
+   *
+   * @param fetcher the fetcher of the pages to publish
+   * @return a non-null publisher
+   * @param <T> the element type
+   */
+  @Nonnull
+  public static <T> PagedPublisher<T> from(PagedFetcher<T> fetcher) {
+    return new PagedPublisher<T>(Utils.requireNonNull(fetcher, "fetcher"));
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    Utils.requireNonNull(subscriber, "subscriber");
+
+    PageSubscription<T> subscription = new PageSubscription<T>(fetcher, subscriber);
+
+    subscriber.onSubscribe(subscription);
+  }
+
+  /**
+   * A subscription emitting elements to a single subscriber. All signals are emitted from a drain
+   * loop that is entered by at most one thread at a time, either the thread requesting elements or
+   * the thread completing a page fetch.
+   */
+  private static final class PageSubscription<T> implements Subscription {
+
+    private final PagedFetcher<T> fetcher;
+
+    private final Subscriber<? super T> subscriber;
+
+    private final AtomicLong requested = new AtomicLong();
+
+    /** Counts the drain requests, the loop is active while non-zero. */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean cancelled;
+
+    /** Error caused by an invalid request, to be emitted by the drain loop. */
+    private volatile Throwable requestError;
+
+    // The fields below are only accessed from within the drain loop.
+
+    /** The page fetch in progress, if any. */
+    private CompletableFuture<Page<T>> pending;
+
+    /** The most recently fetched page. */
+    private Page<T> page;
+
+    /** Remaining elements of the most recently fetched page. */
+    private Iterator<T> elements = Collections.emptyIterator();
+
+    private int seenElements = 0;
+
+    private int nextPage = 0;
+
+    private boolean terminated;
+
+    PageSubscription(PagedFetcher<T> fetcher, Subscriber<? super T> subscriber) {
+      this.fetcher = fetcher;
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        requestError = new IllegalArgumentException("non-positive request: " + n);
+      } else {
+        requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+      }
+
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+
+      drain();
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+
+      int missed = 1;
+
+      do {
+        drainOnce();
+
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drainOnce() {
+      if (terminated) {
+        return;
+      }
+
+      if (cancelled) {
+        terminate();
+        return;
+      }
+
+      if (requestError != null) {
+        terminate();
+        subscriber.onError(requestError);
+        return;
+      }
+
+      if (pending != null && pending.isDone()) {
+        Page<T> fetched;
+
+        try {
+          fetched = pending.join();
+        } catch (CompletionException | CancellationException e) {
+          terminate();
+          subscriber.onError(unwrap(e));
+          return;
+        }
+
+        pending = null;
+        page = fetched;
+        elements = fetched.iterator();
+        seenElements += fetched.size();
+      }
+
+      long r = requested.get();
+      long emitted = 0;
+
+      while (emitted != r && elements.hasNext()) {
+        subscriber.onNext(elements.next());
+        emitted++;
+
+        if (cancelled) {
+          terminate();
+          return;
+        }
+      }
+
+      if (emitted != 0 && r != Long.MAX_VALUE) {
+        r = requested.addAndGet(-emitted);
+      }
+
+      if (elements.hasNext() || pending != null) {
+        return;
+      }
+
+      if (page != null && (seenElements >= page.totalSize() || page.isEmpty())) {
+        terminate();
+        subscriber.onComplete();
+      } else if (r > 0) {
+        CompletableFuture<Page<T>> future = fetcher.fetchAsync(nextPage++);
+        pending = future;
+        future.whenComplete((p, t) -> drain());
+      }
+    }
+
+    private void terminate() {
+      terminated = true;
+      elements = Collections.emptyIterator();
+
+      if (pending != null) {
+        pending.cancel(true);
+        pending = null;
+      }
+    }
+
+    private static Throwable unwrap(RuntimeException e) {
+      Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+
+      if (cause instanceof ApiException
+          || cause instanceof RuntimeException
+          || cause instanceof Error) {
+        return cause;
+      } else {
+        return new ConcurrentException(cause);
+      }
+    }
+  }
+}
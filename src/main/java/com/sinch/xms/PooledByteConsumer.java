@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+
+/**
+ * An asynchronous response consumer that reads the response body into a buffer borrowed from a
+ * {@link ResponseBufferPool}. This is similar to {@link
+ * org.apache.http.nio.client.methods.AsyncByteConsumer} except that the read buffer is taken from
+ * the pool when the first content arrives and returned once the result has been built.
+ *
+ * @param <T> the result type
+ */
+abstract class PooledByteConsumer<T> extends AbstractAsyncResponseConsumer<T> {
+
+  private final ResponseBufferPool pool;
+
+  /** The borrowed buffer, or <code>null</code> if no content has been received. */
+  private byte[] array;
+
+  private ByteBuffer bbuf;
+
+  /** The number of body bytes received. */
+  private long received = 0;
+
+  /**
+   * Creates a new consumer that borrows from the given pool.
+   *
+   * @param pool the buffer pool
+   */
+  PooledByteConsumer(ResponseBufferPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Invoked to process a chunk of the response body. The buffer is only valid for the duration of
+   * the call.
+   *
+   * @param buf the received bytes
+   * @param ioctrl I/O control of the underlying connection
+   * @throws IOException in case of an I/O error
+   */
+  protected abstract void onByteReceived(ByteBuffer buf, IOControl ioctrl) throws IOException;
+
+  @Override
+  protected final void onEntityEnclosed(HttpEntity entity, ContentType contentType)
+      throws IOException {}
+
+  @Override
+  protected final void onContentReceived(ContentDecoder decoder, IOControl ioctrl)
+      throws IOException {
+    if (bbuf == null) {
+      array = pool.acquire();
+      bbuf = ByteBuffer.wrap(array);
+    }
+
+    int read;
+
+    while ((read = decoder.read(bbuf)) > 0) {
+      received += read;
+
+      bbuf.flip();
+      onByteReceived(bbuf, ioctrl);
+      bbuf.clear();
+    }
+  }
+
+  @Override
+  protected void releaseResources() {
+    if (array != null) {
+      pool.release(array, received);
+      array = null;
+      bbuf = null;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a request is rejected by the {@link RateLimiter} of an API connection. The request
+ * was not sent to XMS.
+ */
+public class RateLimitExceededException extends RejectedExecutionException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Duration retryAfter;
+
+  /**
+   * Constructs a new rate limit exception.
+   *
+   * @param retryAfter the time after which the request would be allowed
+   */
+  public RateLimitExceededException(Duration retryAfter) {
+    super("rate limit exceeded, retry after " + retryAfter);
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * The time after which the rejected request would have been allowed, assuming no other request is
+   * made in the meantime.
+   *
+   * @return a non-null duration
+   */
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
@@ -0,0 +1,291 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A client side rate limiter that meters the number of requests and the number of batch recipients
+ * per second. Use of a rate limiter allows staying just below the throughput of a service plan,
+ * rather than being throttled by XMS.
+ *
+ * <p>A rate limiter is attached to an API connection using {@link
+ * ApiConnection.Builder#rateLimiter(RateLimiter)}. Since the throughput is a property of the
+ * service plan, all connections using the same service plan should share the same rate limiter.
+ *
+ * <p>Each metered quantity is tracked using the generic cell rate algorithm, that is, the state of
+ * each quantity is a single atomic <em>theoretical arrival time</em>. Permits are therefore taken
+ * without locking, also when many threads send concurrently.
+ *
+ * <p>When a request exceeds the rate it is, depending on the {@link Mode mode}, either delayed
+ * until it conforms to the rate or rejected with a {@link RateLimitExceededException}. Delayed
+ * requests do not block the calling thread.
+ */
+public final class RateLimiter {
+
+  /** Describes how requests exceeding the rate are handled. */
+  public enum Mode {
+
+    /** Delay requests until they conform to the rate, up to the configured maximum delay. */
+    DELAY,
+
+    /** Immediately reject requests that exceed the rate. */
+    REJECT
+  }
+
+  /**
+   * A builder of rate limiters. At least one of the requests per second and recipients per second
+   * should be set, otherwise the rate limiter will allow all requests.
+   */
+  public static final class Builder {
+
+    private double requestsPerSecond = 0.0;
+
+    private double recipientsPerSecond = 0.0;
+
+    private Duration burst = Duration.ZERO;
+
+    private Mode mode = Mode.DELAY;
+
+    private Duration maxDelay = DEFAULT_MAX_DELAY;
+
+    private LongSupplier clock = System::nanoTime;
+
+    private Builder() {}
+
+    /**
+     * The maximum number of requests per second. Default is zero, meaning that requests are not
+     * metered.
+     *
+     * @param rate a non-negative rate
+     * @return this builder for use in a chained invocation
+     */
+    public Builder requestsPerSecond(double rate) {
+      this.requestsPerSecond = requireNonNegative(rate, "requestsPerSecond");
+      return this;
+    }
+
+    /**
+     * The maximum number of batch recipients per second. Default is zero, meaning that recipients
+     * are not metered.
+     *
+     * @param rate a non-negative rate
+     * @return this builder for use in a chained invocation
+     */
+    public Builder recipientsPerSecond(double rate) {
+      this.recipientsPerSecond = requireNonNegative(rate, "recipientsPerSecond");
+      return this;
+    }
+
+    /**
+     * How far ahead of the rate requests may be sent. For example, a burst of one second at 100
+     * requests per second allows 100 requests to be sent immediately after a period of inactivity.
+     * Default is zero, meaning that requests are evenly spaced.
+     *
+     * @param burst a non-negative duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder burst(@Nonnull Duration burst) {
+      this.burst = requireNonNegative(burst, "burst");
+      return this;
+    }
+
+    /**
+     * How requests exceeding the rate are handled. Default is {@link Mode#DELAY}.
+     *
+     * @param mode the mode of operation
+     * @return this builder for use in a chained invocation
+     */
+    public Builder mode(@Nonnull Mode mode) {
+      this.mode = Utils.requireNonNull(mode, "mode");
+      return this;
+    }
+
+    /**
+     * The maximum delay of a request in {@link Mode#DELAY} mode. Requests that would need to be
+     * delayed longer are rejected. Default is 30 seconds.
+     *
+     * @param maxDelay a non-negative duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxDelay(@Nonnull Duration maxDelay) {
+      this.maxDelay = requireNonNegative(maxDelay, "maxDelay");
+      return this;
+    }
+
+    /**
+     * The clock used for metering, this is intended for testing.
+     *
+     * @param clock a monotonic clock in nanoseconds
+     * @return this builder for use in a chained invocation
+     */
+    Builder clock(LongSupplier clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Builds a new rate limiter.
+     *
+     * @return a rate limiter
+     */
+    @Nonnull
+    public RateLimiter build() {
+      return new RateLimiter(this);
+    }
+
+    private static double requireNonNegative(double d, String name) {
+      if (!(d >= 0.0) || Double.isInfinite(d)) {
+        throw new IllegalArgumentException(name + " must be non-negative and finite");
+      }
+
+      return d;
+    }
+
+    private static Duration requireNonNegative(Duration d, String name) {
+      if (Utils.requireNonNull(d, name).isNegative()) {
+        throw new IllegalArgumentException(name + " must be non-negative");
+      }
+
+      return d;
+    }
+  }
+
+  /**
+   * A single metered quantity. The state is the theoretical arrival time of the next unit, in clock
+   * nanoseconds.
+   */
+  private static final class Meter {
+
+    /** The emission interval, that is, the number of nanoseconds per unit. */
+    private final double interval;
+
+    /** The theoretical arrival time. */
+    private final AtomicLong tat;
+
+    Meter(double perSecond, long now) {
+      this.interval = 1e9 / perSecond;
+      this.tat = new AtomicLong(now);
+    }
+
+    /**
+     * Attempts to reserve the given number of units.
+     *
+     * @return the necessary delay in nanoseconds, or a negative value whose negation is the
+     *     necessary delay if the delay exceeded the given maximum and nothing was reserved
+     */
+    long reserve(long units, long now, long tolerance, long maxWait) {
+      long increment = (long) Math.ceil(units * interval);
+
+      while (true) {
+        long t = tat.get();
+        long base = Math.max(t, now);
+        long wait = Math.max(base - now - tolerance, 0);
+
+        if (wait > maxWait) {
+          return -wait;
+        }
+
+        if (tat.compareAndSet(t, base + increment)) {
+          return wait;
+        }
+      }
+    }
+
+    /** Returns previously reserved units. */
+    void refund(long units) {
+      tat.addAndGet(-(long) Math.ceil(units * interval));
+    }
+  }
+
+  /** The default maximum delay. */
+  private static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+
+  @Nullable private final Meter requests;
+
+  @Nullable private final Meter recipients;
+
+  private final long tolerance;
+
+  private final long maxWait;
+
+  private final LongSupplier clock;
+
+  private RateLimiter(Builder b) {
+    long now = b.clock.getAsLong();
+
+    this.requests = (b.requestsPerSecond > 0) ? new Meter(b.requestsPerSecond, now) : null;
+    this.recipients = (b.recipientsPerSecond > 0) ? new Meter(b.recipientsPerSecond, now) : null;
+    this.tolerance = b.burst.toNanos();
+    this.maxWait = (b.mode == Mode.REJECT) ? 0 : b.maxDelay.toNanos();
+    this.clock = b.clock;
+  }
+
+  /**
+   * Returns a fresh builder of rate limiters.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Reserves a single request with the given number of recipients.
+   *
+   * @param recipientCount the number of recipients of the request, zero if the request is not a
+   *     batch submission
+   * @return the number of nanoseconds the request must be delayed
+   * @throws RateLimitExceededException if the request should be rejected
+   */
+  long reserve(int recipientCount) {
+    long now = clock.getAsLong();
+    long wait = 0;
+
+    if (requests != null) {
+      wait = requests.reserve(1, now, tolerance, maxWait);
+
+      if (wait < 0) {
+        throw new RateLimitExceededException(Duration.ofNanos(-wait));
+      }
+    }
+
+    if (recipients != null && recipientCount > 0) {
+      long recipientWait = recipients.reserve(recipientCount, now, tolerance, maxWait);
+
+      if (recipientWait < 0) {
+        if (requests != null) {
+          requests.refund(1);
+        }
+
+        throw new RateLimitExceededException(Duration.ofNanos(-recipientWait));
+      }
+
+      wait = Math.max(wait, recipientWait);
+    }
+
+    return wait;
+  }
+}
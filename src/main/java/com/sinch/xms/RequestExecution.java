@@ -0,0 +1,359 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.protocol.BasicAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+
+/**
+ * The execution of a single API call, possibly spanning several HTTP exchanges. This is used by
+ * {@link ApiConnection} when requests need to be rate limited, retried, guarded by a circuit
+ * breaker, or bounded by a deadline.
+ *
+ * <p>The call is exposed as a single future that is bound to the exchange currently in progress,
+ * such that cancelling the future also aborts that exchange. Similarly, when the deadline expires
+ * the call fails with {@link DeadlineExceededException} and the exchange in progress is aborted,
+ * which releases its connection back to the pool.
+ *
+ * <p>The call is completed on the thread that observes its outcome, typically an I/O dispatcher
+ * thread of the HTTP client or the thread starting the call. Outcomes observed by tasks on the
+ * {@link SharedScheduler}, that is, expired deadlines and failures of delayed sends and retries,
+ * are instead completed on the completion executor, such that callbacks and dependent stages of the
+ * future never run on the shared scheduler thread.
+ *
+ * @param <T> the response type
+ */
+final class RequestExecution<T> implements FutureCallback<T> {
+
+  private final HttpAsyncClient client;
+
+  private final HttpHost host;
+
+  private final HttpRequest request;
+
+  private final Supplier<? extends HttpAsyncResponseConsumer<T>> consumers;
+
+  @Nullable private final RateLimiter rateLimiter;
+
+  private final int recipients;
+
+  @Nullable private final RetryPolicy retryPolicy;
+
+  @Nullable private final CircuitBreaker circuitBreaker;
+
+  @Nullable private final Duration deadline;
+
+  /**
+   * The executor completing calls whose outcome is observed on the shared scheduler, if <code>null
+   * </code> then the default asynchronous execution facility of {@link CompletableFuture} is used.
+   */
+  @Nullable private final Executor completionExecutor;
+
+  /** The future representing the whole call. */
+  private final CompletableFutureCallback<T> future = new CompletableFutureCallback<T>();
+
+  /** Callback notified of the final outcome, completes {@link #future} first. */
+  private final FutureCallback<T> done;
+
+  /** Whether {@link #done} has been notified, it must be notified exactly once. */
+  private final AtomicBoolean finished = new AtomicBoolean();
+
+  /** The timer that fires when the deadline expires, if a deadline is set. */
+  @Nullable private volatile ScheduledFuture<?> deadlineTimer;
+
+  /** No circuit breaker permission is held. */
+  private static final int NO_PERMISSION = 0;
+
+  /** A circuit breaker permission is held but the exchange has not yet started. */
+  private static final int PERMITTED = 1;
+
+  /** A circuit breaker permission is held by the exchange in progress. */
+  private static final int IN_FLIGHT = 2;
+
+  /**
+   * The circuit breaker permission held by this execution. The permission is given back exactly
+   * once, either by recording the outcome of the exchange or by releasing it.
+   */
+  private final AtomicInteger permission = new AtomicInteger(NO_PERMISSION);
+
+  /**
+   * The circuit breaker permission held, as returned by {@link CircuitBreaker#acquirePermission()}.
+   * Written before {@link #permission} is set, read after it is cleared.
+   */
+  private volatile long permit;
+
+  /** The number of started exchanges, only accessed by one thread at a time. */
+  private int attempts = 0;
+
+  /** The time at which the current exchange started. */
+  private volatile long attemptStart;
+
+  RequestExecution(
+      HttpAsyncClient client,
+      HttpHost host,
+      HttpRequest request,
+      Supplier<? extends HttpAsyncResponseConsumer<T>> consumers,
+      @Nullable FutureCallback<T> callback,
+      @Nullable RateLimiter rateLimiter,
+      int recipients,
+      @Nullable RetryPolicy retryPolicy,
+      @Nullable CircuitBreaker circuitBreaker,
+      @Nullable Duration deadline,
+      @Nullable Executor completionExecutor) {
+    this.client = client;
+    this.host = host;
+    this.request = request;
+    this.consumers = consumers;
+    this.rateLimiter = rateLimiter;
+    this.recipients = recipients;
+    this.retryPolicy = retryPolicy;
+    this.circuitBreaker = circuitBreaker;
+    this.deadline = deadline;
+    this.completionExecutor = completionExecutor;
+    this.done = future.andThen(callback);
+  }
+
+  /**
+   * Starts this execution.
+   *
+   * @return a future representing the outcome of the call
+   */
+  Future<T> start() {
+    if (retryPolicy != null) {
+      retryPolicy.recordRequest();
+    }
+
+    if (deadline != null) {
+      deadlineTimer =
+          SharedScheduler.get()
+              .schedule(this::deadlineExpired, deadline.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    send();
+
+    return future;
+  }
+
+  /**
+   * Sends the request, possibly after a delay imposed by the rate limiter. The request fails
+   * immediately if the circuit breaker is open.
+   */
+  private void send() {
+    if (finished.get()) {
+      return;
+    } else if (future.isCancelled()) {
+      finishCancelled();
+      return;
+    }
+
+    if (circuitBreaker != null) {
+      try {
+        permit = circuitBreaker.acquirePermission();
+      } catch (CircuitBreakerOpenException e) {
+        finishFailed(e);
+        return;
+      }
+
+      permission.set(PERMITTED);
+    }
+
+    long delay = 0;
+
+    if (rateLimiter != null) {
+      try {
+        delay = rateLimiter.reserve(recipients);
+      } catch (RateLimitExceededException e) {
+        releasePermission();
+        finishFailed(e);
+        return;
+      }
+    }
+
+    if (delay > 0) {
+      SharedScheduler.get().schedule(this::dispatch, delay, TimeUnit.NANOSECONDS);
+    } else {
+      dispatch();
+    }
+  }
+
+  /** Hands the request to the HTTP client. */
+  private void dispatch() {
+    if (finished.get() || future.isCancelled()) {
+      releasePermission();
+      finishCancelled();
+      return;
+    }
+
+    attempts++;
+    attemptStart = System.nanoTime();
+    permission.compareAndSet(PERMITTED, IN_FLIGHT);
+
+    try {
+      future.bind(
+          client.execute(new BasicAsyncRequestProducer(host, request), consumers.get(), this));
+    } catch (RuntimeException e) {
+      // For example, the client has been closed while a retry or rate limit delay was pending.
+      releasePermission();
+      finishFailed(e);
+      return;
+    }
+
+    // The deadline may have expired while the exchange was being handed over.
+    if (finished.get()) {
+      future.abortDelegate();
+    }
+  }
+
+  @Override
+  public void completed(T result) {
+    recordOutcome(null);
+
+    if (finished.compareAndSet(false, true)) {
+      cancelDeadlineTimer();
+      complete(() -> done.completed(result));
+    }
+  }
+
+  @Override
+  public void failed(Exception ex) {
+    recordOutcome(ex);
+
+    long delay = -1;
+
+    if (retryPolicy != null && !future.isCancelled() && !finished.get()) {
+      delay = retryPolicy.retryDelay(attempts, ex);
+    }
+
+    if (delay < 0) {
+      finishFailed(ex);
+    } else {
+      SharedScheduler.get().schedule(this::send, delay, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public void cancelled() {
+    releasePermission();
+    finishCancelled();
+  }
+
+  /**
+   * Fails the call since its deadline has expired. The exchange in progress, if any, is recorded as
+   * failed by the circuit breaker and then aborted, it will subsequently report itself as
+   * cancelled.
+   */
+  private void deadlineExpired() {
+    if (finished.compareAndSet(false, true)) {
+      DeadlineExceededException e = new DeadlineExceededException(deadline);
+
+      if (circuitBreaker != null) {
+        int held = permission.getAndSet(NO_PERMISSION);
+
+        if (held == IN_FLIGHT) {
+          circuitBreaker.record(permit, System.nanoTime() - attemptStart, e);
+        } else if (held == PERMITTED) {
+          circuitBreaker.releasePermission(permit);
+        }
+      }
+
+      complete(() -> done.failed(e));
+      future.abortDelegate();
+    }
+  }
+
+  /**
+   * Records the outcome of the exchange in progress with the circuit breaker, unless the permission
+   * has already been given back.
+   */
+  private void recordOutcome(@Nullable Exception ex) {
+    if (circuitBreaker != null && permission.getAndSet(NO_PERMISSION) == IN_FLIGHT) {
+      circuitBreaker.record(permit, System.nanoTime() - attemptStart, ex);
+    }
+  }
+
+  /** Releases the circuit breaker permission without recording an outcome, if one is held. */
+  private void releasePermission() {
+    if (circuitBreaker != null && permission.getAndSet(NO_PERMISSION) != NO_PERMISSION) {
+      circuitBreaker.releasePermission(permit);
+    }
+  }
+
+  private void finishFailed(Exception ex) {
+    if (finished.compareAndSet(false, true)) {
+      cancelDeadlineTimer();
+      complete(() -> done.failed(ex));
+    }
+  }
+
+  private void finishCancelled() {
+    if (finished.compareAndSet(false, true)) {
+      cancelDeadlineTimer();
+      complete(done::cancelled);
+    }
+  }
+
+  /**
+   * Notifies {@link #done} using the given notification. The notification runs directly unless
+   * called on the shared scheduler thread, in which case it is handed to the completion executor.
+   * If the executor rejects it then it runs directly, a completion is never lost.
+   *
+   * @param notification the notification of {@link #done}
+   */
+  private void complete(Runnable notification) {
+    if (SharedScheduler.isSchedulerThread()) {
+      try {
+        if (completionExecutor == null) {
+          CompletableFuture.runAsync(notification);
+        } else {
+          completionExecutor.execute(notification);
+        }
+
+        return;
+      } catch (RejectedExecutionException e) {
+        // Fall through and run it here.
+      }
+    }
+
+    notification.run();
+  }
+
+  private void cancelDeadlineTimer() {
+    ScheduledFuture<?> timer = deadlineTimer;
+
+    if (timer != null) {
+      timer.cancel(false);
+    }
+  }
+}
@@ -0,0 +1,389 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+
+/**
+ * A pool of byte arrays into which HTTP response bodies are read. Using a pool avoids allocating a
+ * fresh read buffer for every response, which at high request rates otherwise is a noticeable
+ * source of garbage.
+ *
+ * <p>Buffers are pooled in power of two size classes. Each size class holds a fixed number of slots
+ * that are claimed and released using atomic operations, so the pool is lock-free, and the total
+ * number of pooled bytes is bounded by {@link Builder#maxPooledBytes(long)}. A buffer released
+ * while the pool is full is left to the garbage collector.
+ *
+ * <p>The size of the buffers handed out is adapted to the observed response sizes. Specifically,
+ * the pool hands out the smallest size class that would have held 90% of the recently observed
+ * response bodies in a single read, within the configured minimum and maximum buffer size.
+ *
+ * <p>A pool is attached to an API connection using {@link
+ * ApiConnection.Builder#responseBufferPool(ResponseBufferPool)} and may be shared among several
+ * connections.
+ */
+public final class ResponseBufferPool {
+
+  /** A builder of response buffer pools. */
+  public static final class Builder {
+
+    private long maxPooledBytes = 4L * 1024 * 1024;
+
+    private int minBufferSize = 1024;
+
+    private int maxBufferSize = 64 * 1024;
+
+    private Builder() {}
+
+    /**
+     * The maximum total size of the pooled buffers. Default is 4 MiB.
+     *
+     * @param maxPooledBytes a non-negative number of bytes
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxPooledBytes(long maxPooledBytes) {
+      if (maxPooledBytes < 0) {
+        throw new IllegalArgumentException("maxPooledBytes must be non-negative");
+      }
+
+      this.maxPooledBytes = maxPooledBytes;
+      return this;
+    }
+
+    /**
+     * The smallest buffer size to hand out, rounded up to a power of two. Default is 1 KiB.
+     *
+     * @param minBufferSize a positive number of bytes
+     * @return this builder for use in a chained invocation
+     */
+    public Builder minBufferSize(int minBufferSize) {
+      this.minBufferSize = requireBufferSize(minBufferSize, "minBufferSize");
+      return this;
+    }
+
+    /**
+     * The largest buffer size to hand out, rounded up to a power of two. Default is 64 KiB.
+     *
+     * @param maxBufferSize a positive number of bytes
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxBufferSize(int maxBufferSize) {
+      this.maxBufferSize = requireBufferSize(maxBufferSize, "maxBufferSize");
+      return this;
+    }
+
+    /**
+     * Builds a new response buffer pool.
+     *
+     * @return a response buffer pool
+     * @throws IllegalArgumentException if the minimum buffer size exceeds the maximum
+     */
+    @Nonnull
+    public ResponseBufferPool build() {
+      if (minBufferSize > maxBufferSize) {
+        throw new IllegalArgumentException("minBufferSize must not exceed maxBufferSize");
+      }
+
+      return new ResponseBufferPool(this);
+    }
+
+    private static int requireBufferSize(int size, String name) {
+      if (size <= 0 || size > MAX_BUFFER_SIZE) {
+        throw new IllegalArgumentException(name + " must be in range [1, " + MAX_BUFFER_SIZE + "]");
+      }
+
+      return size;
+    }
+  }
+
+  /** The largest permitted buffer size. */
+  private static final int MAX_BUFFER_SIZE = 1 << 24;
+
+  /** The maximum number of slots of a single size class. */
+  private static final int MAX_SLOTS = 64;
+
+  /** The number of observed responses between recomputations of the buffer size. */
+  private static final int RESIZE_INTERVAL = 256;
+
+  /** The number of observations after which the size histogram is halved. */
+  private static final long DECAY_THRESHOLD = 1L << 14;
+
+  /** The fraction of responses that should fit in a single buffer. */
+  private static final double SIZE_PERCENTILE = 0.9;
+
+  private final long maxPooledBytes;
+
+  /** The base 2 logarithm of the smallest size class. */
+  private final int minShift;
+
+  /** The pooled buffers, indexed by size class. */
+  private final AtomicReferenceArray<byte[]>[] slots;
+
+  /** The number of observed responses per size class. */
+  private final AtomicLongArray histogram;
+
+  private final AtomicLong observations = new AtomicLong();
+
+  private final AtomicLong pooledBytes = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder discards = new LongAdder();
+
+  /** The size class currently handed out. */
+  private volatile int currentClass = 0;
+
+  @SuppressWarnings("unchecked")
+  private ResponseBufferPool(Builder b) {
+    this.maxPooledBytes = b.maxPooledBytes;
+    this.minShift = shiftOf(b.minBufferSize);
+
+    int classes = shiftOf(b.maxBufferSize) - minShift + 1;
+
+    this.slots = new AtomicReferenceArray[classes];
+    this.histogram = new AtomicLongArray(classes);
+
+    for (int i = 0; i < classes; i++) {
+      long perClass = maxPooledBytes >>> (minShift + i);
+      slots[i] = new AtomicReferenceArray<byte[]>((int) Math.min(perClass, MAX_SLOTS));
+    }
+  }
+
+  /**
+   * Returns a fresh builder of response buffer pools.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the base 2 logarithm of the given size rounded up to a power of two.
+   *
+   * @param size a positive size
+   * @return the logarithm
+   */
+  private static int shiftOf(int size) {
+    return 32 - Integer.numberOfLeadingZeros(size - 1);
+  }
+
+  /**
+   * Takes a buffer from this pool, allocating a new one if the pool holds no buffer of the current
+   * size.
+   *
+   * @return a non-null buffer
+   */
+  @Nonnull
+  byte[] acquire() {
+    int sizeClass = currentClass;
+    AtomicReferenceArray<byte[]> classSlots = slots[sizeClass];
+    int n = classSlots.length();
+    int start = startIndex(n);
+
+    for (int i = 0; i < n; i++) {
+      int idx = (start + i) % n;
+
+      if (classSlots.get(idx) != null) {
+        byte[] buf = classSlots.getAndSet(idx, null);
+
+        if (buf != null) {
+          pooledBytes.addAndGet(-buf.length);
+          hits.increment();
+          return buf;
+        }
+      }
+    }
+
+    misses.increment();
+
+    return new byte[1 << (minShift + sizeClass)];
+  }
+
+  /**
+   * Returns a buffer to this pool, the buffer must not be used after this call.
+   *
+   * @param buf the buffer to return
+   * @param responseSize the size of the response body read into the buffer
+   */
+  void release(@Nonnull byte[] buf, long responseSize) {
+    observe(responseSize);
+
+    int sizeClass = currentClass;
+
+    if (buf.length != 1 << (minShift + sizeClass) || !reserve(buf.length)) {
+      discards.increment();
+      return;
+    }
+
+    AtomicReferenceArray<byte[]> classSlots = slots[sizeClass];
+    int n = classSlots.length();
+    int start = startIndex(n);
+
+    for (int i = 0; i < n; i++) {
+      int idx = (start + i) % n;
+
+      if (classSlots.get(idx) == null && classSlots.compareAndSet(idx, null, buf)) {
+        return;
+      }
+    }
+
+    pooledBytes.addAndGet(-buf.length);
+    discards.increment();
+  }
+
+  /**
+   * Attempts to account for the given number of bytes being added to the pool.
+   *
+   * @param bytes the number of bytes to add
+   * @return whether the bytes fit within the maximum number of pooled bytes
+   */
+  private boolean reserve(int bytes) {
+    while (true) {
+      long current = pooledBytes.get();
+
+      if (current + bytes > maxPooledBytes) {
+        return false;
+      } else if (pooledBytes.compareAndSet(current, current + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  /** Returns a slot index from which to start scanning, spreading threads over the slots. */
+  private static int startIndex(int n) {
+    return n == 0 ? 0 : (int) (Thread.currentThread().getId() % n);
+  }
+
+  /**
+   * Records the size of a response body and periodically adapts the size of handed out buffers.
+   *
+   * @param responseSize the body size in bytes
+   */
+  private void observe(long responseSize) {
+    int sizeClass =
+        (responseSize <= 1) ? 0 : 64 - Long.numberOfLeadingZeros(responseSize - 1) - minShift;
+    histogram.incrementAndGet(Math.max(0, Math.min(sizeClass, slots.length - 1)));
+
+    if (observations.incrementAndGet() % RESIZE_INTERVAL == 0) {
+      resize();
+    }
+  }
+
+  /** Picks the size class covering the configured percentile of observed response sizes. */
+  private void resize() {
+    long total = 0;
+
+    for (int i = 0; i < histogram.length(); i++) {
+      total += histogram.get(i);
+    }
+
+    long target = (long) Math.ceil(total * SIZE_PERCENTILE);
+    long cumulative = 0;
+    int sizeClass = histogram.length() - 1;
+
+    for (int i = 0; i < histogram.length(); i++) {
+      cumulative += histogram.get(i);
+
+      if (cumulative >= target) {
+        sizeClass = i;
+        break;
+      }
+    }
+
+    currentClass = sizeClass;
+
+    // Let old observations fade so that the pool follows changes in traffic.
+    if (total > DECAY_THRESHOLD) {
+      for (int i = 0; i < histogram.length(); i++) {
+        histogram.set(i, histogram.get(i) / 2);
+      }
+    }
+  }
+
+  /**
+   * The size of the buffers currently handed out by this pool.
+   *
+   * @return a number of bytes
+   */
+  public int bufferSize() {
+    return 1 << (minShift + currentClass);
+  }
+
+  /**
+   * The total size of the buffers currently held by this pool.
+   *
+   * @return a non-negative number
+   */
+  public long pooledBytes() {
+    return pooledBytes.get();
+  }
+
+  /**
+   * The number of times a buffer was taken from this pool.
+   *
+   * @return a non-negative number
+   */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /**
+   * The number of times a buffer had to be allocated since this pool held no suitable buffer.
+   *
+   * @return a non-negative number
+   */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /**
+   * The number of returned buffers that were dropped since this pool was full or no longer hands
+   * out buffers of their size. A high number relative to {@link #hits()} suggests that the maximum
+   * number of pooled bytes is too small.
+   *
+   * @return a non-negative number
+   */
+  public long discards() {
+    return discards.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "ResponseBufferPool{bufferSize="
+        + bufferSize()
+        + ", pooledBytes="
+        + pooledBytes()
+        + ", hits="
+        + hits()
+        + ", misses="
+        + misses()
+        + ", discards="
+        + discards()
+        + "}";
+  }
+}
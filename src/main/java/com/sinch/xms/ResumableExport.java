@@ -0,0 +1,626 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.MoSms;
+import com.sinch.xms.api.Page;
+import com.sinch.xms.api.RecipientDeliveryReport;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+
+/**
+ * Exports all delivery reports or inbound messages matching a filter, saving a checkpoint after
+ * every exported page such that an interrupted export can be resumed. For example,
+ *
+ * <pre>
+ * ResumableExport&lt;RecipientDeliveryReport&gt; export =
+ *     ResumableExport.deliveryReports(filter)
+ *         .connection(conn)
+ *         .checkpointStore(ExportCheckpointStore.file(Paths.get("export.json")))
+ *         .build();
+ *
+ * export.run(page -&gt; write(page.content()));
+ * </pre>
+ *
+ * <p>The time range of the filter is split into windows of {@link Builder#windowLength(Duration)}
+ * that are fetched concurrently, this keeps page numbers small within each window. The pages of a
+ * window are delivered in order, but pages of different windows are delivered concurrently from the
+ * threads completing the page fetches so the page consumer must be thread safe.
+ *
+ * <p>If the checkpoint store holds a checkpoint of an export having the same filter then the export
+ * resumes from it, each incomplete window continuing from the page following the last exported
+ * page. A page is consumed before the checkpoint covering it is saved, so after a crash the last
+ * page of each window may be delivered again. The {@link ExportCheckpoint.Window#lastSeen()
+ * last-seen timestamp} of a window can be used to recognize such duplicates.
+ *
+ * @param <T> the type of exported elements
+ */
+public final class ResumableExport<T> {
+
+  /**
+   * A builder of resumable exports. The API connection must be set.
+   *
+   * @param <T> the type of exported elements
+   */
+  public static final class Builder<T> {
+
+    private final Source<T> source;
+
+    private final String filter;
+
+    private final OffsetDateTime start;
+
+    private final OffsetDateTime end;
+
+    private final boolean wholeDays;
+
+    private ApiConnection connection;
+
+    private ExportCheckpointStore checkpointStore;
+
+    private Duration windowLength = DEFAULT_WINDOW_LENGTH;
+
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+    private Builder(
+        Source<T> source,
+        String filter,
+        OffsetDateTime start,
+        OffsetDateTime end,
+        boolean wholeDays) {
+      this.source = source;
+      this.filter = filter;
+      this.start = start;
+      this.end = end;
+      this.wholeDays = wholeDays;
+    }
+
+    /**
+     * The API connection through which to fetch pages.
+     *
+     * @param connection a started API connection
+     * @return this builder for use in a chained invocation
+     */
+    public Builder<T> connection(@Nonnull ApiConnection connection) {
+      this.connection = Utils.requireNonNull(connection, "connection");
+      return this;
+    }
+
+    /**
+     * The store of the export checkpoint. By default the checkpoint is only kept in memory, which
+     * allows an export to be resumed by running it again in the same process.
+     *
+     * @param store a checkpoint store
+     * @return this builder for use in a chained invocation
+     */
+    public Builder<T> checkpointStore(@Nonnull ExportCheckpointStore store) {
+      this.checkpointStore = Utils.requireNonNull(store, "store");
+      return this;
+    }
+
+    /**
+     * The length of the time windows into which the time range of the filter is split. Default is
+     * one day. Inbound messages are filtered by date so the window length of an inbound message
+     * export must be a whole number of days.
+     *
+     * @param length a positive duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder<T> windowLength(@Nonnull Duration length) {
+      Utils.requireNonNull(length, "length");
+
+      if (length.isZero() || length.isNegative()) {
+        throw new IllegalArgumentException("windowLength must be positive");
+      }
+
+      this.windowLength = length;
+      return this;
+    }
+
+    /**
+     * The maximum number of windows fetched concurrently. Default is 4.
+     *
+     * @param n a positive number of windows
+     * @return this builder for use in a chained invocation
+     */
+    public Builder<T> maxConcurrency(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("maxConcurrency must be positive");
+      }
+
+      this.maxConcurrency = n;
+      return this;
+    }
+
+    /**
+     * Builds a new resumable export.
+     *
+     * @return a resumable export
+     * @throws IllegalStateException if the connection is missing or the window length is not a
+     *     whole number of days for an inbound message export
+     */
+    @Nonnull
+    public ResumableExport<T> build() {
+      if (connection == null) {
+        throw new IllegalStateException("connection is required");
+      }
+
+      if (wholeDays && !windowLength.equals(Duration.ofDays(windowLength.toDays()))) {
+        throw new IllegalStateException("windowLength must be a whole number of days");
+      }
+
+      return new ResumableExport<T>(this);
+    }
+  }
+
+  /** Creates the fetchers of the windows and extracts the timestamps of exported elements. */
+  private interface Source<T> {
+
+    PagedFetcher<T> fetcher(ApiConnection connection, OffsetDateTime start, OffsetDateTime end);
+
+    OffsetDateTime timestamp(T element);
+  }
+
+  /** A checkpoint store that keeps the checkpoint in memory. */
+  private static final class MemoryCheckpointStore implements ExportCheckpointStore {
+
+    private volatile ExportCheckpoint checkpoint;
+
+    @Override
+    public ExportCheckpoint load() {
+      return checkpoint;
+    }
+
+    @Override
+    public void save(ExportCheckpoint checkpoint) {
+      this.checkpoint = checkpoint;
+    }
+  }
+
+  /** The default length of a window. */
+  private static final Duration DEFAULT_WINDOW_LENGTH = Duration.ofDays(1);
+
+  /** The default maximum number of windows fetched concurrently. */
+  private static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+  private final Source<T> source;
+
+  private final String filter;
+
+  private final OffsetDateTime start;
+
+  private final OffsetDateTime end;
+
+  private final ApiConnection connection;
+
+  private final ExportCheckpointStore checkpointStore;
+
+  private final Duration windowLength;
+
+  private final int maxConcurrency;
+
+  private ResumableExport(Builder<T> b) {
+    this.source = b.source;
+    this.filter = b.filter;
+    this.start = b.start;
+    this.end = b.end;
+    this.connection = b.connection;
+    this.checkpointStore =
+        b.checkpointStore == null ? new MemoryCheckpointStore() : b.checkpointStore;
+    this.windowLength = b.windowLength;
+    this.maxConcurrency = b.maxConcurrency;
+  }
+
+  /**
+   * Returns a builder of an export of the delivery reports matching the given filter. The filter
+   * must have both a start and an end date.
+   *
+   * @param filter the delivery report filter
+   * @return a non-null builder
+   * @throws IllegalArgumentException if the filter lacks a start or end date
+   */
+  @Nonnull
+  public static Builder<RecipientDeliveryReport> deliveryReports(
+      @Nonnull final DeliveryReportFilter filter) {
+    Utils.requireNonNull(filter, "filter");
+
+    if (filter.startDate() == null || filter.endDate() == null) {
+      throw new IllegalArgumentException("filter must have start and end date");
+    }
+
+    Source<RecipientDeliveryReport> source =
+        new Source<RecipientDeliveryReport>() {
+
+          @Override
+          public PagedFetcher<RecipientDeliveryReport> fetcher(
+              ApiConnection connection, OffsetDateTime start, OffsetDateTime end) {
+            return connection.fetchDeliveryReports(
+                DeliveryReportFilter.builder().using(filter).startDate(start).endDate(end).build());
+          }
+
+          @Override
+          public OffsetDateTime timestamp(RecipientDeliveryReport element) {
+            return element.at();
+          }
+        };
+
+    return new Builder<RecipientDeliveryReport>(
+        source, filter.toString(), filter.startDate(), filter.endDate(), false);
+  }
+
+  /**
+   * Returns a builder of an export of the inbound messages matching the given filter. The filter
+   * must have both a start and an end date.
+   *
+   * @param filter the inbound messages filter
+   * @return a non-null builder
+   * @throws IllegalArgumentException if the filter lacks a start or end date
+   */
+  @Nonnull
+  public static Builder<MoSms> inbounds(@Nonnull final InboundsFilter filter) {
+    Utils.requireNonNull(filter, "filter");
+
+    if (filter.startDate() == null || filter.endDate() == null) {
+      throw new IllegalArgumentException("filter must have start and end date");
+    }
+
+    Source<MoSms> source =
+        new Source<MoSms>() {
+
+          @Override
+          public PagedFetcher<MoSms> fetcher(
+              ApiConnection connection, OffsetDateTime start, OffsetDateTime end) {
+            return connection.fetchInbounds(
+                InboundsFilter.builder()
+                    .using(filter)
+                    .startDate(start.toLocalDate())
+                    .endDate(end.toLocalDate())
+                    .build());
+          }
+
+          @Override
+          public OffsetDateTime timestamp(MoSms element) {
+            return element.receivedAt();
+          }
+        };
+
+    return new Builder<MoSms>(
+        source,
+        filter.toString(),
+        OffsetDateTime.of(filter.startDate(), LocalTime.MIDNIGHT, ZoneOffset.UTC),
+        OffsetDateTime.of(filter.endDate(), LocalTime.MIDNIGHT, ZoneOffset.UTC),
+        true);
+  }
+
+  /**
+   * Runs the export, resuming from the saved checkpoint if there is one, and waits for it to
+   * complete.
+   *
+   * @param consumer the consumer of exported pages, it must be thread safe
+   * @return the checkpoint of the completed export
+   * @throws InterruptedException if interrupted while waiting, no further pages are then fetched
+   * @throws ApiException if fetching a page failed
+   * @throws ConcurrentException if loading or saving the checkpoint failed
+   * @throws IllegalStateException if the saved checkpoint belongs to an export of another filter
+   */
+  @Nonnull
+  public ExportCheckpoint run(@Nonnull Consumer<? super Page<T>> consumer)
+      throws InterruptedException, ApiException {
+    CompletableFuture<ExportCheckpoint> future = runAsync(consumer);
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(false);
+      throw e;
+    } catch (ExecutionException e) {
+      throw Utils.unwrapExecutionException(e);
+    }
+  }
+
+  /**
+   * Asynchronously runs the export, resuming from the saved checkpoint if there is one. The
+   * returned future fails with the first failure to fetch a page, consume a page, or save a
+   * checkpoint. The checkpoint then reflects all pages consumed before the failure, so running the
+   * export again resumes after them. Cancelling the future stops further pages from being fetched.
+   *
+   * @param consumer the consumer of exported pages, it must be thread safe
+   * @return a future yielding the checkpoint of the completed export
+   * @throws IllegalStateException if the saved checkpoint belongs to an export of another filter
+   */
+  @Nonnull
+  public CompletableFuture<ExportCheckpoint> runAsync(@Nonnull Consumer<? super Page<T>> consumer) {
+    Utils.requireNonNull(consumer, "consumer");
+
+    ExportCheckpoint checkpoint;
+
+    try {
+      checkpoint = checkpointStore.load();
+    } catch (IOException e) {
+      CompletableFuture<ExportCheckpoint> failed = new CompletableFuture<ExportCheckpoint>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+
+    if (checkpoint == null) {
+      checkpoint = initialCheckpoint();
+    } else if (!checkpoint.filter().equals(filter)) {
+      throw new IllegalStateException("checkpoint belongs to export of " + checkpoint.filter());
+    }
+
+    return new Run(checkpoint, consumer).start();
+  }
+
+  /**
+   * Splits the time range of the filter into windows.
+   *
+   * @return a checkpoint of an export that has not started
+   */
+  ExportCheckpoint initialCheckpoint() {
+    ExportCheckpoint.Builder builder = ExportCheckpoint.builder().filter(filter);
+
+    OffsetDateTime windowStart = start;
+
+    do {
+      OffsetDateTime windowEnd = windowStart.plus(windowLength);
+
+      if (!windowEnd.isBefore(end)) {
+        windowEnd = end;
+      }
+
+      builder.addWindow(
+          ExportCheckpoint.Window.builder().start(windowStart).end(windowEnd).build());
+
+      windowStart = windowEnd;
+    } while (windowStart.isBefore(end));
+
+    return builder.build();
+  }
+
+  /** A single run of the export. */
+  private final class Run {
+
+    private final Consumer<? super Page<T>> consumer;
+
+    private final CompletableFuture<ExportCheckpoint> future =
+        new CompletableFuture<ExportCheckpoint>();
+
+    /** The current state of each window, guarded by this run. */
+    private final ExportCheckpoint.Window[] windows;
+
+    /** Indices of the incomplete windows that have not yet been started. */
+    private final Queue<Integer> waiting = new ConcurrentLinkedQueue<Integer>();
+
+    /** The number of windows being fetched. */
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    Run(ExportCheckpoint checkpoint, Consumer<? super Page<T>> consumer) {
+      this.consumer = consumer;
+      this.windows = checkpoint.windows().toArray(new ExportCheckpoint.Window[0]);
+
+      for (int i = 0; i < windows.length; i++) {
+        if (!windows[i].done()) {
+          waiting.add(i);
+        }
+      }
+    }
+
+    CompletableFuture<ExportCheckpoint> start() {
+      int n = Math.min(maxConcurrency, waiting.size());
+
+      if (n == 0) {
+        future.complete(snapshot());
+        return future;
+      }
+
+      active.set(n);
+
+      for (int i = 0; i < n; i++) {
+        startNextWindow();
+      }
+
+      return future;
+    }
+
+    /** Starts fetching the next waiting window, or retires a fetch slot if there is none. */
+    private void startNextWindow() {
+      Integer i = stopped() ? null : waiting.poll();
+
+      if (i == null) {
+        if (active.decrementAndGet() == 0) {
+          finish();
+        }
+      } else {
+        new WindowRun(i).requestFetch();
+      }
+    }
+
+    private boolean stopped() {
+      return failure.get() != null || future.isCancelled();
+    }
+
+    private synchronized ExportCheckpoint snapshot() {
+      List<ExportCheckpoint.Window> list = new ArrayList<ExportCheckpoint.Window>(windows.length);
+
+      for (ExportCheckpoint.Window w : windows) {
+        list.add(w);
+      }
+
+      return ExportCheckpoint.builder().filter(filter).windows(list).build();
+    }
+
+    /**
+     * Records the consumption of a page and saves the resulting checkpoint.
+     *
+     * @param i the window index
+     * @param window the new state of the window
+     * @throws IOException if the checkpoint could not be saved
+     */
+    private synchronized void update(int i, ExportCheckpoint.Window window) throws IOException {
+      windows[i] = window;
+      checkpointStore.save(snapshot());
+    }
+
+    private void fail(Exception e) {
+      failure.compareAndSet(null, e);
+    }
+
+    private Exception toException(Throwable t) {
+      if (t instanceof CompletionException && t.getCause() != null) {
+        t = t.getCause();
+      }
+
+      return (t instanceof Exception) ? (Exception) t : new ExecutionException(t);
+    }
+
+    private void finish() {
+      Exception e = failure.get();
+
+      if (e != null) {
+        future.completeExceptionally(e);
+      } else {
+        future.complete(snapshot());
+      }
+    }
+
+    /** The sequential fetching of the pages of a single window. */
+    private final class WindowRun {
+
+      private final int index;
+
+      private final PagedFetcher<T> fetcher;
+
+      /** The number of requested fetches, only the thread raising it from zero fetches. */
+      private final AtomicInteger fetches = new AtomicInteger();
+
+      WindowRun(int index) {
+        this.index = index;
+        this.fetcher = source.fetcher(connection, windows[index].start(), windows[index].end());
+      }
+
+      /**
+       * Requests that the next page is fetched. Pages fetched immediately request further fetches,
+       * these are handled by the loop here rather than by recursion.
+       */
+      void requestFetch() {
+        if (fetches.getAndIncrement() != 0) {
+          return;
+        }
+
+        do {
+          fetch();
+        } while (fetches.decrementAndGet() != 0);
+      }
+
+      private void fetch() {
+        if (stopped()) {
+          startNextWindow();
+          return;
+        }
+
+        int nextPage;
+
+        synchronized (Run.this) {
+          nextPage = windows[index].nextPage();
+        }
+
+        CompletableFuture<Page<T>> f;
+
+        try {
+          f = fetcher.fetchAsync(nextPage);
+        } catch (RuntimeException e) {
+          fail(e);
+          startNextWindow();
+          return;
+        }
+
+        f.whenComplete(
+            (p, t) -> {
+              if (t == null) {
+                fetched(p);
+              } else {
+                fail(toException(t));
+                startNextWindow();
+              }
+            });
+      }
+
+      private void fetched(Page<T> page) {
+        ExportCheckpoint.Window window;
+
+        synchronized (Run.this) {
+          window = windows[index];
+        }
+
+        OffsetDateTime lastSeen = window.lastSeen();
+
+        for (T element : page) {
+          OffsetDateTime timestamp = source.timestamp(element);
+
+          if (timestamp != null && (lastSeen == null || timestamp.isAfter(lastSeen))) {
+            lastSeen = timestamp;
+          }
+        }
+
+        int seenElements = window.seenElements() + page.size();
+
+        window =
+            ExportCheckpoint.Window.builder()
+                .using(window)
+                .nextPage(window.nextPage() + 1)
+                .seenElements(seenElements)
+                .lastSeen(lastSeen)
+                .done(page.isEmpty() || seenElements >= page.totalSize())
+                .build();
+
+        try {
+          consumer.accept(page);
+          update(index, window);
+        } catch (IOException | RuntimeException e) {
+          fail(e);
+          startNextWindow();
+          return;
+        }
+
+        if (window.done()) {
+          startNextWindow();
+        } else {
+          requestFetch();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,429 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * A policy for automatically retrying failed requests. Retries are only performed for idempotent
+ * operations, that is, fetches, replacements, cancellations, deletions, and batch creations having
+ * a client reference.
+ *
+ * <p>A request is retried if it failed due to an I/O error or if XMS responded with one of the
+ * retryable status codes, by default 429, 500, 502, 503, and 504. The delay before each retry grows
+ * exponentially and is randomized to avoid synchronized retries from many clients. If the response
+ * includes a <code>Retry-After</code> header then the retry is delayed at least that long.
+ *
+ * <p>To avoid retries multiplying the load on XMS during an outage the number of retries is limited
+ * by a retry budget. Each request deposits a fraction of a retry into the budget and each retry
+ * withdraws a whole retry, when the budget is empty failed requests are not retried. A retry policy
+ * may be shared between several API connections, in which case they share the budget.
+ */
+public final class RetryPolicy {
+
+  /** A builder of retry policies. */
+  public static final class Builder {
+
+    private int maxAttempts = 3;
+
+    private Duration initialBackoff = Duration.ofMillis(100);
+
+    private Duration maxBackoff = Duration.ofSeconds(10);
+
+    private double multiplier = 2.0;
+
+    private double jitter = 1.0;
+
+    private boolean respectRetryAfter = true;
+
+    private Duration maxRetryAfter = Duration.ofSeconds(60);
+
+    private Set<Integer> retryableStatusCodes = DEFAULT_RETRYABLE_STATUS_CODES;
+
+    private double budgetRatio = 0.1;
+
+    private int budgetReserve = 10;
+
+    private Builder() {}
+
+    /**
+     * The maximum number of attempts, including the initial attempt. Default is 3.
+     *
+     * @param n a positive number of attempts
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxAttempts(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("maxAttempts must be positive");
+      }
+
+      this.maxAttempts = n;
+      return this;
+    }
+
+    /**
+     * The backoff before the first retry. Default is 100 milliseconds.
+     *
+     * @param backoff a non-negative duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder initialBackoff(@Nonnull Duration backoff) {
+      this.initialBackoff = requireNonNegative(backoff, "initialBackoff");
+      return this;
+    }
+
+    /**
+     * The maximum backoff between two attempts. Default is 10 seconds.
+     *
+     * @param backoff a non-negative duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxBackoff(@Nonnull Duration backoff) {
+      this.maxBackoff = requireNonNegative(backoff, "maxBackoff");
+      return this;
+    }
+
+    /**
+     * The factor by which the backoff grows for each retry. Default is 2.
+     *
+     * @param multiplier a factor of at least 1
+     * @return this builder for use in a chained invocation
+     */
+    public Builder multiplier(double multiplier) {
+      if (!(multiplier >= 1.0)) {
+        throw new IllegalArgumentException("multiplier must be at least 1");
+      }
+
+      this.multiplier = multiplier;
+      return this;
+    }
+
+    /**
+     * The fraction of the backoff that is randomized. Zero gives a fixed backoff and one, the
+     * default, gives a backoff chosen uniformly between zero and the exponential backoff.
+     *
+     * @param jitter a number between 0 and 1
+     * @return this builder for use in a chained invocation
+     */
+    public Builder jitter(double jitter) {
+      if (!(jitter >= 0.0 && jitter <= 1.0)) {
+        throw new IllegalArgumentException("jitter must be between 0 and 1");
+      }
+
+      this.jitter = jitter;
+      return this;
+    }
+
+    /**
+     * Whether to delay retries according to the <code>Retry-After</code> header of the response.
+     * Default is <code>true</code>.
+     *
+     * @param respect whether to respect the header
+     * @return this builder for use in a chained invocation
+     */
+    public Builder respectRetryAfter(boolean respect) {
+      this.respectRetryAfter = respect;
+      return this;
+    }
+
+    /**
+     * The longest <code>Retry-After</code> delay that is accepted. If the server asks for a longer
+     * delay then the request is not retried. Default is 60 seconds.
+     *
+     * @param max a non-negative duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxRetryAfter(@Nonnull Duration max) {
+      this.maxRetryAfter = requireNonNegative(max, "maxRetryAfter");
+      return this;
+    }
+
+    /**
+     * The HTTP status codes for which requests are retried. Default is 429, 500, 502, 503, and 504.
+     *
+     * @param codes the retryable status codes
+     * @return this builder for use in a chained invocation
+     */
+    public Builder retryableStatusCodes(int... codes) {
+      Set<Integer> set = new HashSet<Integer>();
+      for (int code : codes) {
+        set.add(code);
+      }
+
+      this.retryableStatusCodes = set;
+      return this;
+    }
+
+    /**
+     * The fraction of a retry deposited into the retry budget by each request. Default is 0.1,
+     * which in the long run allows one retry per ten requests.
+     *
+     * @param ratio a non-negative ratio
+     * @return this builder for use in a chained invocation
+     */
+    public Builder budgetRatio(double ratio) {
+      if (!(ratio >= 0.0) || Double.isInfinite(ratio)) {
+        throw new IllegalArgumentException("budgetRatio must be non-negative and finite");
+      }
+
+      this.budgetRatio = ratio;
+      return this;
+    }
+
+    /**
+     * The maximum number of retries that may be saved in the retry budget. The budget is initially
+     * full. Default is 10.
+     *
+     * @param reserve a non-negative number of retries
+     * @return this builder for use in a chained invocation
+     */
+    public Builder budgetReserve(int reserve) {
+      if (reserve < 0) {
+        throw new IllegalArgumentException("budgetReserve must be non-negative");
+      }
+
+      this.budgetReserve = reserve;
+      return this;
+    }
+
+    /**
+     * Builds a new retry policy.
+     *
+     * @return a retry policy
+     */
+    @Nonnull
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+
+    private static Duration requireNonNegative(Duration d, String name) {
+      if (Utils.requireNonNull(d, name).isNegative()) {
+        throw new IllegalArgumentException(name + " must be non-negative");
+      }
+
+      return d;
+    }
+  }
+
+  private static final Set<Integer> DEFAULT_RETRYABLE_STATUS_CODES = new HashSet<Integer>();
+
+  static {
+    DEFAULT_RETRYABLE_STATUS_CODES.add(429);
+    DEFAULT_RETRYABLE_STATUS_CODES.add(500);
+    DEFAULT_RETRYABLE_STATUS_CODES.add(502);
+    DEFAULT_RETRYABLE_STATUS_CODES.add(503);
+    DEFAULT_RETRYABLE_STATUS_CODES.add(504);
+  }
+
+  /** The budget is kept in thousandths of a retry. */
+  private static final long RETRY_COST = 1000;
+
+  private final int maxAttempts;
+
+  private final long initialBackoff;
+
+  private final long maxBackoff;
+
+  private final double multiplier;
+
+  private final double jitter;
+
+  private final boolean respectRetryAfter;
+
+  private final long maxRetryAfter;
+
+  private final Set<Integer> retryableStatusCodes;
+
+  private final long deposit;
+
+  private final long budgetCap;
+
+  /** The current retry budget. */
+  private final AtomicLong budget;
+
+  private final AtomicLong retries = new AtomicLong();
+
+  private final AtomicLong budgetRejections = new AtomicLong();
+
+  private RetryPolicy(Builder b) {
+    this.maxAttempts = b.maxAttempts;
+    this.initialBackoff = b.initialBackoff.toNanos();
+    this.maxBackoff = b.maxBackoff.toNanos();
+    this.multiplier = b.multiplier;
+    this.jitter = b.jitter;
+    this.respectRetryAfter = b.respectRetryAfter;
+    this.maxRetryAfter = b.maxRetryAfter.toNanos();
+    this.retryableStatusCodes = b.retryableStatusCodes;
+    this.deposit = Math.round(b.budgetRatio * RETRY_COST);
+    this.budgetCap = b.budgetReserve * RETRY_COST;
+    this.budget = new AtomicLong(budgetCap);
+  }
+
+  /**
+   * Returns a fresh builder of retry policies.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * The total number of retries performed under this policy.
+   *
+   * @return a non-negative number
+   */
+  public long retries() {
+    return retries.get();
+  }
+
+  /**
+   * The number of retries that were not performed because the retry budget was exhausted.
+   *
+   * @return a non-negative number
+   */
+  public long budgetRejections() {
+    return budgetRejections.get();
+  }
+
+  /** Records that a new retryable request is about to be sent, depositing into the budget. */
+  void recordRequest() {
+    if (deposit == 0) {
+      return;
+    }
+
+    long b;
+    do {
+      b = budget.get();
+      if (b >= budgetCap) {
+        return;
+      }
+    } while (!budget.compareAndSet(b, Math.min(b + deposit, budgetCap)));
+  }
+
+  /**
+   * Determines whether and when a request that failed with the given exception should be retried.
+   *
+   * @param attempt the number of attempts made so far
+   * @param e the cause of the failed attempt
+   * @return the delay in nanoseconds before retrying, or a negative value if the request should not
+   *     be retried
+   */
+  long retryDelay(int attempt, Exception e) {
+    if (attempt >= maxAttempts) {
+      return -1;
+    }
+
+    long retryAfter = 0;
+
+    if (e instanceof UnexpectedResponseException) {
+      HttpResponse response = ((UnexpectedResponseException) e).getResponse();
+
+      if (!retryableStatusCodes.contains(response.getStatusLine().getStatusCode())) {
+        return -1;
+      }
+
+      if (respectRetryAfter) {
+        retryAfter = retryAfter(response);
+
+        if (retryAfter > maxRetryAfter) {
+          return -1;
+        }
+      }
+    } else if (!(e instanceof IOException)) {
+      return -1;
+    }
+
+    if (!withdraw()) {
+      budgetRejections.incrementAndGet();
+      return -1;
+    }
+
+    retries.incrementAndGet();
+
+    return Math.max(backoff(attempt), retryAfter);
+  }
+
+  /**
+   * The randomized exponential backoff after the given attempt.
+   *
+   * @param attempt the number of attempts made so far
+   * @return a non-negative delay in nanoseconds
+   */
+  long backoff(int attempt) {
+    double base = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempt - 1));
+    double random = ThreadLocalRandom.current().nextDouble();
+
+    return (long) (base * (1.0 - jitter * random));
+  }
+
+  private boolean withdraw() {
+    long b;
+    do {
+      b = budget.get();
+      if (b < RETRY_COST) {
+        return false;
+      }
+    } while (!budget.compareAndSet(b, b - RETRY_COST));
+
+    return true;
+  }
+
+  /**
+   * Extracts the delay given by the <code>Retry-After</code> header of the given response.
+   *
+   * @param response the response to examine
+   * @return the delay in nanoseconds, zero if no valid header is present
+   */
+  private static long retryAfter(HttpResponse response) {
+    Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+    if (header == null) {
+      return 0;
+    }
+
+    String value = header.getValue().trim();
+
+    try {
+      return Duration.ofSeconds(Math.max(Long.parseLong(value), 0)).toNanos();
+    } catch (NumberFormatException e) {
+      @Nullable Date date = DateUtils.parseDate(value);
+
+      if (date == null) {
+        return 0;
+      }
+
+      long millis = date.getTime() - System.currentTimeMillis();
+      return Duration.ofMillis(Math.max(millis, 0)).toNanos();
+    }
+  }
+}
@@ -0,0 +1,357 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import com.sinch.xms.api.ParameterValues;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+/**
+ * Merges single-recipient text batches into multi-recipient batches, trading a few milliseconds of
+ * latency for far fewer requests. For example,
+ *
+ * <pre>
+ * SendCoalescer coalescer = SendCoalescer.builder()
+ *     .connection(conn)
+ *     .maxDelay(Duration.ofMillis(10))
+ *     .build();
+ *
+ * CompletableFuture&lt;BatchId&gt; id = coalescer.submit(otpMessage);
+ * </pre>
+ *
+ * <p>Batches are merged only if they have a single recipient and are equal in all attributes except
+ * their recipient, body, and parameters. That is, they must share sender, delivery report type,
+ * callback URL, client reference, and so on. Each recipient receives its own message, which is
+ * carried as a substitution of the <code>${body}</code> template parameter in the merged batch. A
+ * merged batch is sent when its oldest message has waited {@link #maxDelay()} or when it reaches
+ * {@link #maxBatchSize()} recipients, whichever happens first. Batches that cannot be merged are
+ * sent immediately.
+ *
+ * <p>The future of each submitted batch yields the identifier of the batch it was merged into, and
+ * if sending fails then the futures of all merged batches fail with the same exception. Cancelling
+ * the future of a submitted batch does not remove it from the merged batch.
+ */
+public final class SendCoalescer {
+
+  /** A builder of send coalescers. The API connection must be set. */
+  public static final class Builder {
+
+    private ApiConnection connection;
+
+    private Duration maxDelay = DEFAULT_MAX_DELAY;
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private Builder() {}
+
+    /**
+     * The API connection through which to send batches.
+     *
+     * @param connection a started API connection
+     * @return this builder for use in a chained invocation
+     */
+    public Builder connection(@Nonnull ApiConnection connection) {
+      this.connection = Utils.requireNonNull(connection, "connection");
+      return this;
+    }
+
+    /**
+     * The longest time a message waits for other messages to merge with. Default is 10
+     * milliseconds.
+     *
+     * @param maxDelay a positive duration
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxDelay(@Nonnull Duration maxDelay) {
+      Utils.requireNonNull(maxDelay, "maxDelay");
+
+      if (maxDelay.isNegative() || maxDelay.isZero()) {
+        throw new IllegalArgumentException("maxDelay must be positive");
+      }
+
+      this.maxDelay = maxDelay;
+      return this;
+    }
+
+    /**
+     * The maximum number of recipients of a merged batch. Default is 1000.
+     *
+     * @param n a positive number of recipients
+     * @return this builder for use in a chained invocation
+     */
+    public Builder maxBatchSize(int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("maxBatchSize must be positive");
+      }
+
+      this.maxBatchSize = n;
+      return this;
+    }
+
+    /**
+     * Builds a new send coalescer.
+     *
+     * @return a send coalescer
+     * @throws IllegalStateException if the connection is missing
+     */
+    @Nonnull
+    public SendCoalescer build() {
+      if (connection == null) {
+        throw new IllegalStateException("connection is required");
+      }
+
+      return new SendCoalescer(this);
+    }
+  }
+
+  /** The default longest time to wait for messages to merge with. */
+  private static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(10);
+
+  /** The default maximum number of recipients of a merged batch. */
+  private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+  /** The name of the template parameter carrying the message of each recipient. */
+  static final String BODY_PARAMETER = "body";
+
+  private final ApiConnection connection;
+
+  private final Duration maxDelay;
+
+  private final int maxBatchSize;
+
+  /** The pending groups, by merge key. Guarded by <code>this</code>. */
+  private final Map<MtBatchTextSmsCreate, Group> groups =
+      new HashMap<MtBatchTextSmsCreate, Group>();
+
+  private SendCoalescer(Builder b) {
+    this.connection = b.connection;
+    this.maxDelay = b.maxDelay;
+    this.maxBatchSize = b.maxBatchSize;
+  }
+
+  /**
+   * Returns a fresh builder of send coalescers.
+   *
+   * @return a non-null builder
+   */
+  @Nonnull
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * The longest time a message waits for other messages to merge with.
+   *
+   * @return a positive duration
+   */
+  public Duration maxDelay() {
+    return maxDelay;
+  }
+
+  /**
+   * The maximum number of recipients of a merged batch.
+   *
+   * @return a positive number
+   */
+  public int maxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Submits the given batch for sending, possibly merged with other batches.
+   *
+   * @param create the batch to send
+   * @return a future yielding the identifier of the created batch
+   */
+  @Nonnull
+  public CompletableFuture<BatchId> submit(@Nonnull MtBatchTextSmsCreate create) {
+    Utils.requireNonNull(create, "create");
+
+    if (create.recipients().size() != 1) {
+      CompletableFuture<BatchId> future = new CompletableFuture<BatchId>();
+      send(create, Collections.singletonList(future));
+      return future;
+    }
+
+    String recipient = create.recipients().get(0);
+    MtBatchTextSmsCreate key =
+        MtBatchTextSmsCreate.builder()
+            .using(create)
+            .recipients(Collections.singletonList("-"))
+            .body("")
+            .parameters(Collections.<String, ParameterValues>emptyMap())
+            .build();
+
+    CompletableFuture<BatchId> future = new CompletableFuture<BatchId>();
+    Group full = null;
+    Group displaced = null;
+
+    synchronized (this) {
+      Group group = groups.get(key);
+
+      if (group != null && group.bodies.containsKey(recipient)) {
+        // A recipient can only receive one message per batch.
+        displaced = groups.remove(key);
+        group = null;
+      }
+
+      if (group == null) {
+        final Group g = new Group(key);
+        g.timer =
+            SharedScheduler.get()
+                .schedule(() -> expired(g), maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+        groups.put(key, g);
+        group = g;
+      }
+
+      group.add(create, recipient, future);
+
+      if (group.size() >= maxBatchSize) {
+        groups.remove(key);
+        full = group;
+      }
+    }
+
+    if (displaced != null) {
+      displaced.send();
+    }
+
+    if (full != null) {
+      full.send();
+    }
+
+    return future;
+  }
+
+  /** Sends all pending batches immediately. */
+  public void flush() {
+    List<Group> pending;
+
+    synchronized (this) {
+      pending = new ArrayList<Group>(groups.values());
+      groups.clear();
+    }
+
+    for (Group group : pending) {
+      group.send();
+    }
+  }
+
+  /**
+   * Sends the given batch and completes the given futures with the identifier of the created batch,
+   * or with the failure.
+   */
+  private void send(MtBatchTextSmsCreate create, List<CompletableFuture<BatchId>> futures) {
+    try {
+      connection
+          .createBatchAsync(create)
+          .whenComplete(
+              (result, t) -> {
+                for (CompletableFuture<BatchId> f : futures) {
+                  if (t == null) {
+                    f.complete(result.id());
+                  } else {
+                    f.completeExceptionally(t);
+                  }
+                }
+              });
+    } catch (RuntimeException e) {
+      for (CompletableFuture<BatchId> f : futures) {
+        f.completeExceptionally(e);
+      }
+    }
+  }
+
+  /** Sends the given group, unless it was already sent. */
+  private void expired(Group group) {
+    synchronized (this) {
+      if (!groups.remove(group.key, group)) {
+        return;
+      }
+    }
+
+    group.send();
+  }
+
+  /** Messages that will be merged into a single batch. */
+  private final class Group {
+
+    private final MtBatchTextSmsCreate key;
+
+    /** The first submitted batch, sent as is if no other batch was merged with it. */
+    private MtBatchTextSmsCreate first;
+
+    private final Map<String, String> bodies = new LinkedHashMap<String, String>();
+
+    private final List<CompletableFuture<BatchId>> futures =
+        new ArrayList<CompletableFuture<BatchId>>();
+
+    private ScheduledFuture<?> timer;
+
+    Group(MtBatchTextSmsCreate key) {
+      this.key = key;
+    }
+
+    void add(MtBatchTextSmsCreate create, String recipient, CompletableFuture<BatchId> future) {
+      if (first == null) {
+        first = create;
+      }
+
+      bodies.put(recipient, MessageAnalyzer.expand(create, recipient));
+      futures.add(future);
+    }
+
+    int size() {
+      return futures.size();
+    }
+
+    /** Sends the merged batch, must be called at most once and without holding any lock. */
+    void send() {
+      timer.cancel(false);
+
+      MtBatchTextSmsCreate create;
+      if (futures.size() == 1) {
+        create = first;
+      } else {
+        create =
+            MtBatchTextSmsCreate.builder()
+                .using(key)
+                .recipients(bodies.keySet())
+                .body("${" + BODY_PARAMETER + "}")
+                .putParameter(
+                    BODY_PARAMETER, SinchSMSApi.parameterValues().substitutions(bodies).build())
+                .build();
+      }
+
+      SendCoalescer.this.send(create, futures);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Holder of a scheduler shared by all API connections. The scheduler is used for delaying requests
+ * and similar light-weight timer tasks, it runs on a single daemon thread and tasks executed on it
+ * are expected to complete quickly.
+ *
+ * <p>Cancelled tasks are removed from the queue immediately since timers guarding deadlines are
+ * typically cancelled long before they would fire.
+ */
+final class SharedScheduler {
+
+  private static final class Holder {
+
+    /** The thread currently running the scheduler. */
+    private static volatile Thread thread;
+
+    private static final ScheduledExecutorService INSTANCE = create();
+
+    private static ScheduledExecutorService create() {
+      ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(
+              1,
+              r -> {
+                Thread t = new Thread(r, "xms-scheduler");
+                t.setDaemon(true);
+                thread = t;
+                return t;
+              });
+
+      executor.setRemoveOnCancelPolicy(true);
+
+      return executor;
+    }
+  }
+
+  private SharedScheduler() {}
+
+  /**
+   * Returns the shared scheduler, creating it if necessary.
+   *
+   * @return a non-null scheduler
+   */
+  static ScheduledExecutorService get() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * Whether the calling thread is the thread of the shared scheduler. Work that may take long, such
+   * as running user callbacks, must be moved elsewhere when this is true.
+   *
+   * @return true if called from a task of the shared scheduler
+   */
+  static boolean isSchedulerThread() {
+    return Thread.currentThread() == Holder.thread;
+  }
+}
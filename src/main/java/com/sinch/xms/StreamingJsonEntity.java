@@ -0,0 +1,174 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+/**
+ * A request entity holding an object that is encoded as JSON while it is being sent. The entity is
+ * sent using chunked transfer encoding, one chunk at a time as the connection accepts more data,
+ * such that the JSON encoding of a large request is never held in memory as a whole.
+ *
+ * <p>Since the Jackson serializers cannot be suspended half-way the object is first serialized into
+ * a {@link TokenBuffer}, which holds the JSON tokens and refers to, rather than copies, the strings
+ * of the object. The tokens are then encoded into bytes a chunk at a time by the I/O thread.
+ *
+ * <p>The entity is repeatable, it may be sent again after the producer has been closed.
+ */
+final class StreamingJsonEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+
+  /** The approximate number of bytes encoded at a time. */
+  static final int CHUNK_SIZE = 8 * 1024;
+
+  private final ObjectWriter writer;
+
+  private final TokenBuffer tokens;
+
+  /** The tokens remaining to be encoded, <code>null</code> if sending has not started. */
+  private JsonParser source;
+
+  private JsonGenerator generator;
+
+  private ByteInOutStream chunk;
+
+  /** Encoded bytes not yet written to the connection. */
+  private ByteBuffer pending;
+
+  /** Whether all tokens have been encoded. */
+  private boolean exhausted;
+
+  /**
+   * Creates a new streaming entity for the given object.
+   *
+   * @param codecs the JSON writers
+   * @param object the object to send
+   * @throws IOException if the object could not be serialized
+   */
+  StreamingJsonEntity(JsonCodecs codecs, Object object) throws IOException {
+    this.writer = codecs.writer(TokenBuffer.class);
+    this.tokens = new TokenBuffer(codecs.mapper(), false);
+
+    codecs.writer(object.getClass()).writeValue(tokens, object);
+
+    setContentType(ContentType.APPLICATION_JSON.toString());
+    setChunked(true);
+  }
+
+  @Override
+  public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+    if (source == null) {
+      source = tokens.asParser();
+      chunk = new ByteInOutStream(CHUNK_SIZE + 1024);
+      generator = writer.createGenerator(chunk, JsonEncoding.UTF8);
+    }
+
+    while (true) {
+      if (pending != null && pending.hasRemaining()) {
+        encoder.write(pending);
+
+        if (pending.hasRemaining()) {
+          // The connection is saturated, we will be called again once it is writable.
+          return;
+        }
+      }
+
+      if (exhausted) {
+        encoder.complete();
+        return;
+      }
+
+      encodeChunk();
+    }
+  }
+
+  /**
+   * Encodes tokens until roughly a chunk worth of bytes is available in {@link #pending}.
+   *
+   * @throws IOException if encoding failed
+   */
+  private void encodeChunk() throws IOException {
+    chunk.reset();
+
+    while (chunk.size() + generator.getOutputBuffered() < CHUNK_SIZE) {
+      if (source.nextToken() == null) {
+        exhausted = true;
+        break;
+      }
+
+      generator.copyCurrentEvent(source);
+    }
+
+    generator.flush();
+
+    pending = chunk.toByteBuffer();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (source != null) {
+      source.close();
+    }
+
+    source = null;
+    generator = null;
+    chunk = null;
+    pending = null;
+    exhausted = false;
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    return new ByteArrayInputStream(writer.writeValueAsBytes(tokens));
+  }
+
+  @Override
+  public void writeTo(OutputStream outstream) throws IOException {
+    writer.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(outstream, tokens);
+  }
+}
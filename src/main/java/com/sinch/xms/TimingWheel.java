@@ -0,0 +1,250 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel, used to keep very many timers with modest precision. Time is
+ * measured in ticks, each level of the wheel has 64 slots, and each slot of a level spans 64 slots
+ * of the level below. A timer is placed in the lowest level whose range covers its deadline and
+ * moves to lower levels as time advances, so scheduling and cancelling timers take constant time.
+ *
+ * <p>This class is not thread safe.
+ *
+ * @param <T> the type of the items of the timers
+ */
+final class TimingWheel<T> {
+
+  /** A timer in the wheel. */
+  static final class Timer<T> {
+
+    private final T item;
+
+    private final long deadline;
+
+    private Timer<T> prev;
+
+    private Timer<T> next;
+
+    /** The index of the slot holding this timer, or -1 if not scheduled. */
+    private int slot = -1;
+
+    private Timer(T item, long deadline) {
+      this.item = item;
+      this.deadline = deadline;
+    }
+
+    T item() {
+      return item;
+    }
+
+    long deadline() {
+      return deadline;
+    }
+  }
+
+  private static final int BITS = 6;
+
+  private static final int SLOTS = 1 << BITS;
+
+  private static final int MASK = SLOTS - 1;
+
+  private final int levels;
+
+  /** The first timer of each slot of each level, level by level. */
+  private final Timer<T>[] slots;
+
+  private long now;
+
+  private int size = 0;
+
+  /**
+   * Creates a timing wheel starting at the given tick.
+   *
+   * @param levels the number of levels, the wheel covers 64 to the power of this number of ticks
+   * @param now the current tick
+   */
+  @SuppressWarnings("unchecked")
+  TimingWheel(int levels, long now) {
+    this.levels = levels;
+    this.slots = (Timer<T>[]) new Timer<?>[levels * SLOTS];
+    this.now = now;
+  }
+
+  /**
+   * The current tick.
+   *
+   * @return the tick to which the wheel has advanced
+   */
+  long now() {
+    return now;
+  }
+
+  /**
+   * The number of scheduled timers.
+   *
+   * @return a non-negative number
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Schedules a timer for the given item. A deadline that has passed expires at the next tick.
+   *
+   * @param item the item to hand out when the timer expires
+   * @param deadline the tick at which the timer expires
+   * @return the timer, for use with {@link #cancel(Timer)}
+   */
+  Timer<T> schedule(T item, long deadline) {
+    Timer<T> timer = new Timer<T>(item, Math.max(deadline, now + 1));
+
+    place(timer);
+    size++;
+
+    return timer;
+  }
+
+  /**
+   * Cancels the given timer.
+   *
+   * @param timer the timer to cancel
+   * @return true if the timer was scheduled, false if it had expired or was cancelled
+   */
+  boolean cancel(Timer<T> timer) {
+    if (timer.slot < 0) {
+      return false;
+    }
+
+    unlink(timer);
+    size--;
+
+    return true;
+  }
+
+  /**
+   * Advances the wheel to the given tick, handing the items of expired timers to the given consumer
+   * in deadline order.
+   *
+   * @param to the tick to advance to
+   * @param expired the consumer of expired items
+   */
+  void advance(long to, Consumer<? super T> expired) {
+    while (now < to) {
+      if (size == 0) {
+        now = to;
+        return;
+      }
+
+      now++;
+
+      cascade();
+
+      Timer<T> timer = slots[(int) (now & MASK)];
+
+      while (timer != null) {
+        Timer<T> next = timer.next;
+
+        unlink(timer);
+
+        if (timer.deadline > now) {
+          // Parked beyond the range of the wheel.
+          place(timer);
+        } else {
+          size--;
+          expired.accept(timer.item);
+        }
+
+        timer = next;
+      }
+    }
+  }
+
+  /** Moves the timers of the slots of higher levels that begin at the current tick downwards. */
+  private void cascade() {
+    int top = 0;
+
+    while (top + 1 < levels && (now & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+      top++;
+    }
+
+    for (int level = top; level > 0; level--) {
+      int index = level * SLOTS + (int) ((now >>> (BITS * level)) & MASK);
+      Timer<T> timer = slots[index];
+
+      while (timer != null) {
+        Timer<T> next = timer.next;
+
+        unlink(timer);
+        place(timer);
+
+        timer = next;
+      }
+    }
+  }
+
+  private void place(Timer<T> timer) {
+    long delta = timer.deadline - now;
+    int level = 0;
+
+    while (level + 1 < levels && delta >= (1L << (BITS * (level + 1)))) {
+      level++;
+    }
+
+    long position;
+
+    if (delta >= (1L << (BITS * (level + 1)))) {
+      // Beyond the range of the wheel, park it in the last slot of the top level to be placed
+      // again when that slot is cascaded.
+      position = (now >>> (BITS * level)) + MASK;
+    } else {
+      position = timer.deadline >>> (BITS * level);
+    }
+
+    int index = level * SLOTS + (int) (position & MASK);
+
+    timer.slot = index;
+    timer.prev = null;
+    timer.next = slots[index];
+
+    if (timer.next != null) {
+      timer.next.prev = timer;
+    }
+
+    slots[index] = timer;
+  }
+
+  private void unlink(Timer<T> timer) {
+    if (timer.prev == null) {
+      slots[timer.slot] = timer.next;
+    } else {
+      timer.prev.next = timer.next;
+    }
+
+    if (timer.next != null) {
+      timer.next.prev = timer.prev;
+    }
+
+    timer.prev = null;
+    timer.next = null;
+    timer.slot = -1;
+  }
+}
@@ -104,10 +104,11 @@ public final class Utils {
    * @throws UnexpectedResponseException if the server gave an unexpected response
    * @throws UnauthorizedException if the server refused access
    * @throws NotFoundException if the desired resource was not found
+   * @throws DeadlineExceededException if the call did not complete within its deadline
    */
   static ConcurrentException unwrapExecutionException(ExecutionException e)
       throws ErrorResponseException, UnexpectedResponseException, UnauthorizedException,
-          NotFoundException, BadRequestResponseException {
+          NotFoundException, BadRequestResponseException, DeadlineExceededException {
     if (e.getCause() instanceof RuntimeException) {
       throw (RuntimeException) e.getCause();
     } else if (e.getCause() instanceof Error) {
@@ -122,6 +123,8 @@ public final class Utils {
       throw (UnexpectedResponseException) e.getCause();
     } else if (e.getCause() instanceof UnauthorizedException) {
       throw (UnauthorizedException) e.getCause();
+    } else if (e.getCause() instanceof DeadlineExceededException) {
+      throw (DeadlineExceededException) e.getCause();
     } else {
       return new ConcurrentException(e.getCause());
     }
@@ -0,0 +1,55 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms.api;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * A Jackson module holding hand-written serializers and deserializers for the most frequently
+ * exchanged API objects, namely {@link MtBatchTextSmsCreate}, {@link MtBatchTextSmsResult}, and
+ * {@link RecipientDeliveryReportSms}. These produce and accept the same JSON as the reflective,
+ * annotation driven, (de)serializers but avoid most of their per-property overhead.
+ *
+ * <p>The module is registered by {@link com.sinch.xms.ApiObjectMapper} when accelerated mode is
+ * requested, it is typically not necessary to register it explicitly.
+ */
+public final class AcceleratedApiModule extends SimpleModule {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Creates a new module instance. */
+  public AcceleratedApiModule() {
+    super("AcceleratedApiModule");
+
+    addSerializer(MtBatchTextSmsCreate.class, new JacksonUtils.MtBatchTextSmsCreateSerializer());
+
+    // These types are annotated with builders, which take precedence over deserializers added to
+    // a module, so the deserializers are instead given through mix-in annotations.
+    setMixInAnnotation(MtBatchTextSmsResult.class, MtBatchTextSmsResultMixIn.class);
+    setMixInAnnotation(RecipientDeliveryReportSms.class, RecipientDeliveryReportSmsMixIn.class);
+  }
+
+  @JsonDeserialize(using = JacksonUtils.MtBatchTextSmsResultDeserializer.class)
+  private abstract static class MtBatchTextSmsResultMixIn {}
+
+  @JsonDeserialize(using = JacksonUtils.RecipientDeliveryReportSmsDeserializer.class)
+  private abstract static class RecipientDeliveryReportSmsMixIn {}
+}
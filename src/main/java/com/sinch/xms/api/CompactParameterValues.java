@@ -0,0 +1,214 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms.api;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Parameter values having a compact representation of their substitutions. Instances are created
+ * when deserializing the <code>parameters</code> object of a batch, where typically every parameter
+ * has a substitution for every recipient. Rather than one hash map per parameter, the recipient
+ * keys are interned in a {@link Keys} table shared by all parameters decoded in the same read and
+ * each parameter only holds an array of values, indexed by the position of the key in the table.
+ *
+ * <p>The substitution map iterates in the order in which the keys were first seen in the read,
+ * which may differ from the order of the individual JSON object.
+ */
+final class CompactParameterValues extends ParameterValues {
+
+  private final SubstitutionMap substitutions;
+
+  @Nullable private final String defaultValue;
+
+  CompactParameterValues(SubstitutionMap substitutions, @Nullable String defaultValue) {
+    this.substitutions = substitutions;
+    this.defaultValue = defaultValue;
+  }
+
+  @Override
+  public Map<String, String> substitutions() {
+    return substitutions;
+  }
+
+  @Override
+  @Nullable
+  public String defaultValue() {
+    return defaultValue;
+  }
+
+  /**
+   * A table of interned substitution keys. The position of a key never changes once added. A table
+   * is only modified by the thread performing the read that created it, subsequently it is only
+   * read.
+   */
+  static final class Keys {
+
+    private final HashMap<String, Integer> index = new HashMap<String, Integer>();
+
+    private String[] keys = new String[16];
+
+    private int size = 0;
+
+    /**
+     * Returns the position of the given key, adding it to the table if necessary.
+     *
+     * @param key the key to intern
+     * @return a non-negative position
+     */
+    int intern(String key) {
+      Integer i = index.get(key);
+
+      if (i != null) {
+        return i;
+      }
+
+      if (size == keys.length) {
+        String[] grown = new String[size * 2];
+        System.arraycopy(keys, 0, grown, 0, size);
+        keys = grown;
+      }
+
+      keys[size] = key;
+      index.put(key, size);
+
+      return size++;
+    }
+
+    /**
+     * Returns the position of the given key.
+     *
+     * @param key the key to find
+     * @return a position or -1 if the key is not in the table
+     */
+    int indexOf(@Nullable Object key) {
+      Integer i = index.get(key);
+      return i == null ? -1 : i;
+    }
+
+    String get(int i) {
+      return keys[i];
+    }
+
+    int size() {
+      return size;
+    }
+  }
+
+  /** An immutable map from the keys of a {@link Keys} table to values held in an array. */
+  static final class SubstitutionMap extends AbstractMap<String, String> {
+
+    private final Keys keys;
+
+    private final String[] values;
+
+    private final int size;
+
+    private transient Set<Map.Entry<String, String>> entrySet;
+
+    /**
+     * Creates a new map. Values are indexed by key position, a <code>null</code> value means that
+     * the key is absent.
+     *
+     * @param keys the key table
+     * @param values the values, not copied and must not be modified afterwards
+     * @param size the number of non-null values
+     */
+    SubstitutionMap(Keys keys, String[] values, int size) {
+      this.keys = keys;
+      this.values = values;
+      this.size = size;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    @Nullable
+    public String get(@Nullable Object key) {
+      int i = keys.indexOf(key);
+      return i >= 0 && i < values.length ? values[i] : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      Set<Map.Entry<String, String>> es = entrySet;
+
+      if (es == null) {
+        es = entrySet = new EntrySet();
+      }
+
+      return es;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, String>> {
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Iterator<Map.Entry<String, String>> iterator() {
+        return new Iterator<Map.Entry<String, String>>() {
+
+          private int next = advance(0);
+
+          private int advance(int from) {
+            while (from < values.length && values[from] == null) {
+              from++;
+            }
+            return from;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return next < values.length;
+          }
+
+          @Override
+          public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+
+            int i = next;
+            next = advance(i + 1);
+
+            return new AbstractMap.SimpleImmutableEntry<String, String>(keys.get(i), values[i]);
+          }
+        };
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms.api;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * A Jackson module that stores the recipients of batch delivery report statuses compactly. Numeric
+ * recipients take 8 bytes each rather than a string object each, which considerably reduces the
+ * memory needed to hold full delivery reports of large batches. The recipient strings are instead
+ * created each time they are accessed through {@link Status#recipients()}.
+ *
+ * <p>The module is registered by {@link com.sinch.xms.ApiConnection} when compact recipients are
+ * requested, it is typically not necessary to register it explicitly.
+ */
+public final class CompactRecipientsModule extends SimpleModule {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Creates a new module instance. */
+  public CompactRecipientsModule() {
+    super("CompactRecipientsModule");
+
+    // Status is annotated with a builder, which takes precedence over deserializers added to a
+    // module, so the deserializer is instead given through a mix-in annotation.
+    setMixInAnnotation(Status.class, StatusMixIn.class);
+  }
+
+  @JsonDeserialize(using = JacksonUtils.CompactStatusDeserializer.class)
+  private abstract static class StatusMixIn {}
+}
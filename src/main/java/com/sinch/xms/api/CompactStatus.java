@@ -0,0 +1,281 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import javax.annotation.Nullable;
+
+/**
+ * A delivery report status having a compact representation of its recipients. Instances are created
+ * when deserializing full batch delivery reports with the {@link CompactRecipientsModule}
+ * registered.
+ *
+ * <p>Each recipient is stored as a single <code>long</code>. Numeric MSISDNs, optionally prefixed
+ * by a plus sign, are packed into the value itself. Other recipients are stored as UTF-8 in an
+ * {@link Arena} shared by all statuses decoded in the same read and the value holds their position
+ * in the arena. The recipient strings are created when accessed.
+ */
+final class CompactStatus extends Status {
+
+  private final int code;
+
+  private final DeliveryStatus status;
+
+  private final int count;
+
+  private final RecipientList recipients;
+
+  CompactStatus(int code, DeliveryStatus status, int count, RecipientList recipients) {
+    this.code = code;
+    this.status = status;
+    this.count = count;
+    this.recipients = recipients;
+  }
+
+  @Override
+  @JsonProperty("code")
+  public int code() {
+    return code;
+  }
+
+  @Override
+  @JsonProperty("status")
+  public DeliveryStatus status() {
+    return status;
+  }
+
+  @Override
+  @JsonProperty("count")
+  public int count() {
+    return count;
+  }
+
+  @Override
+  @JsonProperty("recipients")
+  public List<String> recipients() {
+    return recipients;
+  }
+
+  /**
+   * A growing buffer holding the UTF-8 encoding of recipients that are not numeric. An arena is
+   * only modified by the thread performing the read that created it, subsequently it is only read.
+   */
+  static final class Arena {
+
+    private byte[] bytes = new byte[256];
+
+    private int size = 0;
+
+    /**
+     * Appends the given bytes to this arena.
+     *
+     * @param value the bytes to append
+     * @return the position of the appended bytes
+     */
+    int append(byte[] value) {
+      if (bytes.length - size < value.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + value.length));
+      }
+
+      int position = size;
+
+      System.arraycopy(value, 0, bytes, position, value.length);
+      size += value.length;
+
+      return position;
+    }
+
+    String get(int position, int length) {
+      return new String(bytes, position, length, StandardCharsets.UTF_8);
+    }
+
+    int size() {
+      return size;
+    }
+  }
+
+  /**
+   * An immutable list of recipients, each encoded in a <code>long</code>. Numeric recipients have
+   * the top bit clear, a plus sign flag, five bits holding the number of digits, and the value of
+   * the digits in the remaining 57 bits. Other recipients have the top bit set and hold their
+   * position and length in the arena.
+   */
+  static final class RecipientList extends AbstractList<String> implements RandomAccess {
+
+    /** The largest number of digits that fit in the 57 value bits. */
+    static final int MAX_DIGITS = 17;
+
+    private static final long ARENA_FLAG = 1L << 63;
+
+    private static final long PLUS_FLAG = 1L << 62;
+
+    private static final int DIGITS_SHIFT = 57;
+
+    private static final long VALUE_MASK = (1L << DIGITS_SHIFT) - 1;
+
+    private static final int LENGTH_BITS = 24;
+
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+    /** The largest length, in bytes, of a recipient stored in the arena. */
+    static final int MAX_ARENA_LENGTH = (int) LENGTH_MASK;
+
+    private final Arena arena;
+
+    private final long[] entries;
+
+    private final int size;
+
+    /**
+     * Creates a new list.
+     *
+     * @param arena the arena holding non-numeric recipients
+     * @param entries the encoded recipients, not copied and must not be modified afterwards
+     * @param size the number of recipients
+     */
+    RecipientList(Arena arena, long[] entries, int size) {
+      this.arena = arena;
+      this.entries = entries;
+      this.size = size;
+    }
+
+    /**
+     * Encodes the given characters as a numeric recipient.
+     *
+     * @param chars the characters holding the recipient
+     * @param offset the position of the recipient in the array
+     * @param length the number of characters of the recipient
+     * @return the encoded recipient or -1 if not numeric
+     */
+    static long encodeNumeric(char[] chars, int offset, int length) {
+      long entry = 0;
+      int start = offset;
+      int end = offset + length;
+
+      if (length > 0 && chars[start] == '+') {
+        entry = PLUS_FLAG;
+        start++;
+      }
+
+      int digits = end - start;
+
+      if (digits == 0 || digits > MAX_DIGITS) {
+        return -1;
+      }
+
+      long value = 0;
+
+      for (int i = start; i < end; i++) {
+        char c = chars[i];
+
+        if (c < '0' || c > '9') {
+          return -1;
+        }
+
+        value = value * 10 + (c - '0');
+      }
+
+      return entry | ((long) digits << DIGITS_SHIFT) | value;
+    }
+
+    /**
+     * Encodes a recipient held in the arena.
+     *
+     * @param position the position of the recipient in the arena
+     * @param length the length of the recipient in bytes, at most {@link #MAX_ARENA_LENGTH}
+     * @return the encoded recipient
+     */
+    static long encodeArena(int position, int length) {
+      return ARENA_FLAG | ((long) position << LENGTH_BITS) | length;
+    }
+
+    private static long encode(@Nullable Object o) {
+      if (!(o instanceof String)) {
+        return -1;
+      }
+
+      String s = (String) o;
+
+      return s.length() > MAX_DIGITS + 1 ? -1 : encodeNumeric(s.toCharArray(), 0, s.length());
+    }
+
+    @Override
+    public String get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+
+      long entry = entries[index];
+
+      if ((entry & ARENA_FLAG) != 0) {
+        return arena.get(
+            (int) ((entry & ~ARENA_FLAG) >>> LENGTH_BITS), (int) (entry & LENGTH_MASK));
+      }
+
+      boolean plus = (entry & PLUS_FLAG) != 0;
+      int digits = (int) ((entry >>> DIGITS_SHIFT) & 0x1f);
+      long value = entry & VALUE_MASK;
+      char[] chars = new char[plus ? digits + 1 : digits];
+
+      for (int i = chars.length - 1; i >= chars.length - digits; i--) {
+        chars[i] = (char) ('0' + value % 10);
+        value /= 10;
+      }
+
+      if (plus) {
+        chars[0] = '+';
+      }
+
+      return new String(chars);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public int indexOf(@Nullable Object o) {
+      long entry = encode(o);
+
+      if (entry < 0) {
+        return super.indexOf(o);
+      }
+
+      for (int i = 0; i < size; i++) {
+        if (entries[i] == entry) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    @Override
+    public boolean contains(@Nullable Object o) {
+      return indexOf(o) >= 0;
+    }
+  }
+}
@@ -20,17 +20,27 @@
 package com.sinch.xms.api;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.WritableTypeId;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
 import com.fasterxml.jackson.databind.deser.std.FromStringDeserializer;
-import com.fasterxml.jackson.databind.deser.std.StdNodeBasedDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.sinch.xms.SinchSMSApi;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Map;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 
@@ -72,35 +82,118 @@ class JacksonUtils {
     }
   }
 
-  /** JSON deserializer of parameter values. */
-  static final class ParameterValuesDeserializer extends StdNodeBasedDeserializer<ParameterValues> {
+  /**
+   * JSON deserializer of parameter values. The parameter object is read token by token and
+   * substitutions are stored compactly, see {@link CompactParameterValues}, with the recipient keys
+   * shared among all parameters decoded in the same read.
+   */
+  static final class ParameterValuesDeserializer extends StdDeserializer<ParameterValues> {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Parameters having substitutions for fewer than this fraction of all keys seen in the read are
+     * stored in a regular map.
+     */
+    private static final int SPARSE_FRACTION = 4;
+
     public ParameterValuesDeserializer() {
       super(ParameterValues.class);
     }
 
     @Override
-    public ParameterValues convert(JsonNode root, DeserializationContext ctxt) throws IOException {
-      ParameterValues.Builder builder = SinchSMSApi.parameterValues();
+    public ParameterValues deserialize(JsonParser p, DeserializationContext ctxt)
+        throws IOException {
+      String name;
 
-      if (root.has("default")) {
-        builder.defaultValue(root.get("default").asText());
+      if (p.isExpectedStartObjectToken()) {
+        name = p.nextFieldName();
+      } else if (p.hasToken(JsonToken.FIELD_NAME)) {
+        name = p.currentName();
+      } else if (p.hasToken(JsonToken.END_OBJECT)) {
+        name = null;
+      } else {
+        return (ParameterValues) ctxt.handleUnexpectedToken(handledType(), p);
       }
 
-      Iterator<Entry<String, JsonNode>> it = root.fields();
-      while (it.hasNext()) {
-        Entry<String, JsonNode> entry = it.next();
+      CompactParameterValues.Keys keys = keys(ctxt);
+      String defaultValue = null;
+      int[] positions = new int[16];
+      String[] values = new String[16];
+      int count = 0;
+
+      for (; name != null; name = p.nextFieldName()) {
+        p.nextToken();
+        String value = text(p);
 
-        if ("default".equals(entry.getKey())) {
-          builder.defaultValue(entry.getValue().asText());
-        } else {
-          builder.putSubstitution(entry.getKey(), entry.getValue().asText());
+        if ("default".equals(name)) {
+          defaultValue = value;
+          continue;
         }
+
+        if (count == positions.length) {
+          positions = Arrays.copyOf(positions, count * 2);
+          values = Arrays.copyOf(values, count * 2);
+        }
+
+        positions[count] = keys.intern(name);
+        values[count] = value;
+        count++;
       }
 
-      return builder.build();
+      if (count * SPARSE_FRACTION < keys.size()) {
+        ParameterValues.Builder builder = SinchSMSApi.parameterValues().defaultValue(defaultValue);
+
+        for (int i = 0; i < count; i++) {
+          builder.putSubstitution(keys.get(positions[i]), values[i]);
+        }
+
+        return builder.build();
+      }
+
+      String[] table = new String[keys.size()];
+      int size = 0;
+
+      for (int i = 0; i < count; i++) {
+        if (table[positions[i]] == null) {
+          size++;
+        }
+
+        table[positions[i]] = values[i];
+      }
+
+      return new CompactParameterValues(
+          new CompactParameterValues.SubstitutionMap(keys, table, size), defaultValue);
+    }
+
+    /**
+     * Returns the key table of the current read, creating it if necessary.
+     *
+     * @param ctxt the deserialization context of the current read
+     * @return a non-null key table
+     */
+    private static CompactParameterValues.Keys keys(DeserializationContext ctxt) {
+      CompactParameterValues.Keys keys =
+          (CompactParameterValues.Keys) ctxt.getAttribute(CompactParameterValues.Keys.class);
+
+      if (keys == null) {
+        keys = new CompactParameterValues.Keys();
+        ctxt.setAttribute(CompactParameterValues.Keys.class, keys);
+      }
+
+      return keys;
+    }
+
+    /**
+     * Reads the current value as text, structured values are skipped and read as an empty string.
+     */
+    private static String text(JsonParser p) throws IOException {
+      if (p.currentToken().isStructStart()) {
+        p.skipChildren();
+        return "";
+      }
+
+      return p.getText();
     }
   }
 
@@ -118,7 +211,7 @@ class JacksonUtils {
         throws IOException {
       gen.writeStartObject();
 
-      for (Entry<String, String> entry : value.substitutions().entrySet()) {
+      for (Map.Entry<String, String> entry : value.substitutions().entrySet()) {
         gen.writeStringField(entry.getKey(), entry.getValue());
       }
 
@@ -129,4 +222,453 @@ class JacksonUtils {
       gen.writeEndObject();
     }
   }
+
+  /**
+   * Hand-written Jackson serializer of textual batch creation requests. Produces the same JSON as
+   * the reflective serializer, including field order, but without the per-property indirection.
+   *
+   * @see AcceleratedApiModule
+   */
+  static final class MtBatchTextSmsCreateSerializer extends StdSerializer<MtBatchTextSmsCreate> {
+
+    private static final long serialVersionUID = 1L;
+
+    public MtBatchTextSmsCreateSerializer() {
+      super(MtBatchTextSmsCreate.class);
+    }
+
+    @Override
+    public void serialize(
+        MtBatchTextSmsCreate value, JsonGenerator gen, SerializerProvider provider)
+        throws IOException {
+      gen.writeStartObject(value);
+      writeFields(value, gen, provider);
+      gen.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(
+        MtBatchTextSmsCreate value,
+        JsonGenerator gen,
+        SerializerProvider provider,
+        TypeSerializer typeSer)
+        throws IOException {
+      WritableTypeId typeId =
+          typeSer.writeTypePrefix(gen, typeSer.typeId(value, JsonToken.START_OBJECT));
+      writeFields(value, gen, provider);
+      typeSer.writeTypeSuffix(gen, typeId);
+    }
+
+    private static void writeFields(
+        MtBatchTextSmsCreate value, JsonGenerator gen, SerializerProvider provider)
+        throws IOException {
+      gen.writeStringField("body", value.body());
+
+      if (!value.parameters().isEmpty()) {
+        gen.writeObjectFieldStart("parameters");
+        for (Map.Entry<String, ParameterValues> entry : value.parameters().entrySet()) {
+          provider.defaultSerializeField(entry.getKey(), entry.getValue(), gen);
+        }
+        gen.writeEndObject();
+      }
+
+      if (value.flashMessage() != null) {
+        gen.writeBooleanField("flash_message", value.flashMessage());
+      }
+      if (value.maxNumberOfMessageParts() != null) {
+        gen.writeNumberField("max_number_of_message_parts", value.maxNumberOfMessageParts());
+      }
+      if (value.dltPrincipalEntity() != null) {
+        gen.writeStringField("dlt_principal_entity_id", value.dltPrincipalEntity());
+      }
+      if (value.dltTemplateId() != null) {
+        gen.writeStringField("dlt_template_id", value.dltTemplateId());
+      }
+      if (value.senderTon() != null) {
+        gen.writeNumberField("from_ton", value.senderTon());
+      }
+      if (value.senderNpi() != null) {
+        gen.writeNumberField("from_npi", value.senderNpi());
+      }
+
+      gen.writeArrayFieldStart("to");
+      for (String recipient : value.recipients()) {
+        gen.writeString(recipient);
+      }
+      gen.writeEndArray();
+
+      if (value.sender() != null) {
+        gen.writeStringField("from", value.sender());
+      }
+      if (value.deliveryReport() != null) {
+        gen.writeStringField("delivery_report", value.deliveryReport().type());
+      }
+      if (value.sendAt() != null) {
+        provider.defaultSerializeField("send_at", value.sendAt(), gen);
+      }
+      if (value.expireAt() != null) {
+        provider.defaultSerializeField("expire_at", value.expireAt(), gen);
+      }
+      if (value.callbackUrl() != null) {
+        gen.writeStringField("callback_url", value.callbackUrl().toString());
+      }
+      if (value.feedbackEnabled() != null) {
+        gen.writeBooleanField("feedback_enabled", value.feedbackEnabled());
+      }
+      if (value.clientReference() != null) {
+        gen.writeStringField("client_reference", value.clientReference());
+      }
+    }
+  }
+
+  /**
+   * Base class of the hand-written deserializers. Handles being invoked both at the start of an
+   * object and, when called from a polymorphic type deserializer, at its first field.
+   *
+   * @param <T> the deserialized type
+   */
+  abstract static class FastObjectDeserializer<T> extends StdDeserializer<T>
+      implements ResolvableDeserializer {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient JsonDeserializer<Object> dateTimes;
+
+    FastObjectDeserializer(Class<T> type) {
+      super(type);
+    }
+
+    @Override
+    public void resolve(DeserializationContext ctxt) throws JsonMappingException {
+      dateTimes = ctxt.findRootValueDeserializer(ctxt.constructType(OffsetDateTime.class));
+    }
+
+    /**
+     * Returns the name of the first field of the object at the current position.
+     *
+     * @param p the JSON parser
+     * @param ctxt the deserialization context
+     * @return a field name or <code>null</code> if the object is empty
+     * @throws IOException if not positioned at an object
+     */
+    String firstFieldName(JsonParser p, DeserializationContext ctxt) throws IOException {
+      if (p.isExpectedStartObjectToken()) {
+        return p.nextFieldName();
+      } else if (p.hasToken(JsonToken.FIELD_NAME)) {
+        return p.currentName();
+      } else if (p.hasToken(JsonToken.END_OBJECT)) {
+        return null;
+      }
+
+      return (String) ctxt.handleUnexpectedToken(handledType(), p);
+    }
+
+    OffsetDateTime readDateTime(JsonParser p, DeserializationContext ctxt) throws IOException {
+      return (OffsetDateTime) dateTimes.deserialize(p, ctxt);
+    }
+
+    URI readUri(JsonParser p, DeserializationContext ctxt) throws IOException {
+      String value = p.getValueAsString();
+
+      try {
+        return new URI(value);
+      } catch (URISyntaxException e) {
+        throw ctxt.weirdStringException(value, URI.class, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Hand-written Jackson deserializer of textual batch results. Accepts the same JSON as the
+   * reflective builder based deserializer, unknown fields are ignored.
+   *
+   * @see AcceleratedApiModule
+   */
+  static final class MtBatchTextSmsResultDeserializer
+      extends FastObjectDeserializer<MtBatchTextSmsResult> {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient JsonDeserializer<Object> parameterValues;
+
+    public MtBatchTextSmsResultDeserializer() {
+      super(MtBatchTextSmsResult.class);
+    }
+
+    @Override
+    public void resolve(DeserializationContext ctxt) throws JsonMappingException {
+      super.resolve(ctxt);
+      parameterValues = ctxt.findRootValueDeserializer(ctxt.constructType(ParameterValues.class));
+    }
+
+    @Override
+    public MtBatchTextSmsResult deserialize(JsonParser p, DeserializationContext ctxt)
+        throws IOException {
+      MtBatchTextSmsResult.Builder builder = MtBatchTextSmsResult.builder();
+
+      for (String name = firstFieldName(p, ctxt); name != null; name = p.nextFieldName()) {
+        if (p.nextToken() == JsonToken.VALUE_NULL) {
+          continue;
+        }
+
+        switch (name) {
+          case "id":
+            builder.id(BatchId.of(p.getValueAsString()));
+            break;
+          case "to":
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+              builder.addRecipient(p.getValueAsString());
+            }
+            break;
+          case "from":
+            builder.sender(p.getValueAsString());
+            break;
+          case "delivery_report":
+            builder.deliveryReport(ReportType.of(p.getValueAsString()));
+            break;
+          case "callbackUrl":
+            builder.callbackUrl(readUri(p, ctxt));
+            break;
+          case "send_at":
+            builder.sendAt(readDateTime(p, ctxt));
+            break;
+          case "expire_at":
+            builder.expireAt(readDateTime(p, ctxt));
+            break;
+          case "created_at":
+            builder.createdAt(readDateTime(p, ctxt));
+            break;
+          case "modified_at":
+            builder.modifiedAt(readDateTime(p, ctxt));
+            break;
+          case "canceled":
+            builder.canceled(p.getValueAsBoolean());
+            break;
+          case "client_reference":
+            builder.clientReference(p.getValueAsString());
+            break;
+          case "feedback_enabled":
+            builder.feedbackEnabled(p.getValueAsBoolean());
+            break;
+          case "flash_message":
+            builder.flashMessage(p.getValueAsBoolean());
+            break;
+          case "max_number_of_message_parts":
+            builder.maxNumberOfMessageParts(p.getValueAsInt());
+            break;
+          case "dlt_principal_entity_id":
+            builder.dltPrincipalEntity(p.getValueAsString());
+            break;
+          case "dlt_template_id":
+            builder.dltTemplateId(p.getValueAsString());
+            break;
+          case "from_ton":
+            builder.senderTon(p.getValueAsInt());
+            break;
+          case "from_npi":
+            builder.senderNpi(p.getValueAsInt());
+            break;
+          case "body":
+            builder.body(p.getValueAsString());
+            break;
+          case "parameters":
+            for (String key = p.nextFieldName(); key != null; key = p.nextFieldName()) {
+              p.nextToken();
+              builder.putParameter(key, (ParameterValues) parameterValues.deserialize(p, ctxt));
+            }
+            break;
+          default:
+            p.skipChildren();
+        }
+      }
+
+      return builder.build();
+    }
+  }
+
+  /**
+   * Hand-written Jackson deserializer of SMS recipient delivery reports. Accepts the same JSON as
+   * the reflective builder based deserializer, unknown fields are ignored.
+   *
+   * @see AcceleratedApiModule
+   */
+  static final class RecipientDeliveryReportSmsDeserializer
+      extends FastObjectDeserializer<RecipientDeliveryReportSms> {
+
+    private static final long serialVersionUID = 1L;
+
+    public RecipientDeliveryReportSmsDeserializer() {
+      super(RecipientDeliveryReportSms.class);
+    }
+
+    @Override
+    public RecipientDeliveryReportSms deserialize(JsonParser p, DeserializationContext ctxt)
+        throws IOException {
+      RecipientDeliveryReportSms.Builder builder = RecipientDeliveryReportSms.builder();
+
+      for (String name = firstFieldName(p, ctxt); name != null; name = p.nextFieldName()) {
+        if (p.nextToken() == JsonToken.VALUE_NULL) {
+          continue;
+        }
+
+        switch (name) {
+          case "batch_id":
+            builder.batchId(BatchId.of(p.getValueAsString()));
+            break;
+          case "recipient":
+            builder.recipient(p.getValueAsString());
+            break;
+          case "code":
+            builder.code(p.getValueAsInt());
+            break;
+          case "status":
+            builder.status(DeliveryStatus.of(p.getValueAsString()));
+            break;
+          case "status_message":
+            builder.statusMessage(p.getValueAsString());
+            break;
+          case "operator":
+            builder.operator(p.getValueAsString());
+            break;
+          case "at":
+            builder.at(readDateTime(p, ctxt));
+            break;
+          case "operator_status_at":
+            builder.operatorStatusAt(readDateTime(p, ctxt));
+            break;
+          case "client_reference":
+            builder.clientReference(p.getValueAsString());
+            break;
+          case "encoding":
+            builder.encoding(p.getValueAsString());
+            break;
+          case "number_of_message_parts":
+            builder.numberOfMessageParts(p.getValueAsInt());
+            break;
+          default:
+            p.skipChildren();
+        }
+      }
+
+      return builder.build();
+    }
+  }
+
+  /**
+   * Hand-written Jackson deserializer of delivery report statuses storing their recipients
+   * compactly, see {@link CompactStatus}, with non-numeric recipients held in an arena shared among
+   * all statuses decoded in the same read. Accepts the same JSON as the reflective builder based
+   * deserializer, unknown fields are ignored.
+   *
+   * @see CompactRecipientsModule
+   */
+  static final class CompactStatusDeserializer extends FastObjectDeserializer<Status> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Upper bound on the initial capacity taken from the count of the status. */
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+
+    public CompactStatusDeserializer() {
+      super(Status.class);
+    }
+
+    @Override
+    public Status deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+      Status.Builder builder = Status.builder();
+      long[] entries = null;
+      int size = 0;
+      int count = 0;
+
+      for (String name = firstFieldName(p, ctxt); name != null; name = p.nextFieldName()) {
+        if (p.nextToken() == JsonToken.VALUE_NULL) {
+          continue;
+        }
+
+        switch (name) {
+          case "code":
+            builder.code(p.getValueAsInt());
+            break;
+          case "status":
+            builder.status(DeliveryStatus.of(p.getValueAsString()));
+            break;
+          case "count":
+            count = p.getValueAsInt();
+            builder.count(count);
+            break;
+          case "recipients":
+            if (entries == null) {
+              entries = new long[Math.max(16, Math.min(count, MAX_INITIAL_CAPACITY))];
+            }
+
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+              if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+              }
+
+              entries[size++] = readRecipient(p, ctxt);
+            }
+            break;
+          default:
+            p.skipChildren();
+        }
+      }
+
+      Status status = builder.build();
+
+      if (size == 0) {
+        return status;
+      }
+
+      if (size < entries.length) {
+        entries = Arrays.copyOf(entries, size);
+      }
+
+      return new CompactStatus(
+          status.code(),
+          status.status(),
+          status.count(),
+          new CompactStatus.RecipientList(arena(ctxt), entries, size));
+    }
+
+    private long readRecipient(JsonParser p, DeserializationContext ctxt) throws IOException {
+      if (!p.hasToken(JsonToken.VALUE_STRING)) {
+        throw ctxt.wrongTokenException(p, String.class, JsonToken.VALUE_STRING, "recipient");
+      }
+
+      long entry =
+          CompactStatus.RecipientList.encodeNumeric(
+              p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+
+      if (entry >= 0) {
+        return entry;
+      }
+
+      byte[] bytes = p.getText().getBytes(StandardCharsets.UTF_8);
+
+      if (bytes.length > CompactStatus.RecipientList.MAX_ARENA_LENGTH) {
+        throw ctxt.weirdStringException(p.getText(), String.class, "recipient too long");
+      }
+
+      return CompactStatus.RecipientList.encodeArena(arena(ctxt).append(bytes), bytes.length);
+    }
+
+    /**
+     * Returns the recipient arena of the current read, creating it if necessary.
+     *
+     * @param ctxt the deserialization context of the current read
+     * @return a non-null arena
+     */
+    private static CompactStatus.Arena arena(DeserializationContext ctxt) {
+      CompactStatus.Arena arena =
+          (CompactStatus.Arena) ctxt.getAttribute(CompactStatus.Arena.class);
+
+      if (arena == null) {
+        arena = new CompactStatus.Arena();
+        ctxt.setAttribute(CompactStatus.Arena.class, arena);
+      }
+
+      return arena;
+    }
+  }
 }
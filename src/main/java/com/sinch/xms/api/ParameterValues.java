@@ -22,6 +22,7 @@ package com.sinch.xms.api;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import java.util.Map;
+import java.util.Objects;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.immutables.value.Value;
@@ -64,4 +65,41 @@ public abstract class ParameterValues {
    */
   @Nullable
   public abstract String defaultValue();
+
+  /**
+   * Whether the given object is parameter values having equal substitutions and default value.
+   *
+   * @param another the object to compare with
+   * @return true if equal; false otherwise
+   */
+  @Override
+  public boolean equals(@Nullable Object another) {
+    if (this == another) {
+      return true;
+    } else if (!(another instanceof ParameterValues)) {
+      return false;
+    }
+
+    ParameterValues that = (ParameterValues) another;
+
+    return substitutions().equals(that.substitutions())
+        && Objects.equals(defaultValue(), that.defaultValue());
+  }
+
+  @Override
+  public int hashCode() {
+    int h = 31;
+    h = h * 17 + substitutions().hashCode();
+    h = h * 17 + Objects.hashCode(defaultValue());
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return "ParameterValues{substitutions="
+        + substitutions()
+        + ", defaultValue="
+        + defaultValue()
+        + "}";
+  }
 }
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import java.util.List;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.immutables.value.Value;
 
 /** A description of the messages having a given delivery state. */
@@ -58,4 +59,49 @@ public abstract class Status {
    * @return a non-null list of recipients
    */
   public abstract List<String> recipients();
+
+  /**
+   * Whether the given object is a status having equal code, status, count, and recipients.
+   *
+   * @param another the object to compare with
+   * @return true if equal; false otherwise
+   */
+  @Override
+  public boolean equals(@Nullable Object another) {
+    if (this == another) {
+      return true;
+    } else if (!(another instanceof Status)) {
+      return false;
+    }
+
+    Status that = (Status) another;
+
+    return code() == that.code()
+        && status().equals(that.status())
+        && count() == that.count()
+        && recipients().equals(that.recipients());
+  }
+
+  @Override
+  public int hashCode() {
+    int h = 31;
+    h = h * 17 + code();
+    h = h * 17 + status().hashCode();
+    h = h * 17 + count();
+    h = h * 17 + recipients().hashCode();
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return "Status{code="
+        + code()
+        + ", status="
+        + status()
+        + ", count="
+        + count()
+        + ", recipients="
+        + recipients()
+        + "}";
+  }
 }
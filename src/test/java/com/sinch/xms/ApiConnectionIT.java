@@ -20,6 +20,7 @@
 package com.sinch.xms;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
 import static com.github.tomakehurst.wiremock.client.WireMock.delete;
 import static com.github.tomakehurst.wiremock.client.WireMock.deleteRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
@@ -44,6 +45,7 @@ import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 import com.sinch.testsupport.TestUtils;
 import com.sinch.xms.api.ApiError;
 import com.sinch.xms.api.BatchDeliveryReport;
@@ -62,6 +64,7 @@ import com.sinch.xms.api.MoTextSms;
 import com.sinch.xms.api.MtBatchBinarySmsCreate;
 import com.sinch.xms.api.MtBatchBinarySmsResult;
 import com.sinch.xms.api.MtBatchBinarySmsUpdate;
+import com.sinch.xms.api.MtBatchCreate;
 import com.sinch.xms.api.MtBatchDryRunResult;
 import com.sinch.xms.api.MtBatchMmsCreate;
 import com.sinch.xms.api.MtBatchMmsResult;
@@ -83,29 +86,52 @@ import com.sinch.xms.api.ReportType;
 import com.sinch.xms.api.Status;
 import com.sinch.xms.api.Tags;
 import com.sinch.xms.api.TagsUpdate;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
 import org.eclipse.jetty.util.ConcurrentArrayQueue;
 import org.junit.Rule;
 import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 public class ApiConnectionIT {
 
@@ -133,6 +159,83 @@ public class ApiConnectionIT {
     }
   }
 
+  /**
+   * An HTTP client that delegates to an {@link ApiHttpAsyncClient} and throws {@link
+   * IllegalStateException} once closed, like clients that reject requests after shutdown.
+   */
+  private static class ClosingClient implements HttpAsyncClient, Closeable {
+
+    private final ApiHttpAsyncClient delegate = ApiHttpAsyncClient.builder().build();
+
+    private volatile boolean closed = false;
+
+    ClosingClient() {
+      delegate.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      delegate.close();
+    }
+
+    private void ensureOpen() {
+      if (closed) {
+        throw new IllegalStateException("client is closed");
+      }
+    }
+
+    @Override
+    public <T> Future<T> execute(
+        HttpAsyncRequestProducer requestProducer,
+        HttpAsyncResponseConsumer<T> responseConsumer,
+        HttpContext context,
+        FutureCallback<T> callback) {
+      ensureOpen();
+      return delegate.execute(requestProducer, responseConsumer, context, callback);
+    }
+
+    @Override
+    public <T> Future<T> execute(
+        HttpAsyncRequestProducer requestProducer,
+        HttpAsyncResponseConsumer<T> responseConsumer,
+        FutureCallback<T> callback) {
+      ensureOpen();
+      return delegate.execute(requestProducer, responseConsumer, callback);
+    }
+
+    @Override
+    public Future<HttpResponse> execute(
+        HttpHost target,
+        HttpRequest request,
+        HttpContext context,
+        FutureCallback<HttpResponse> callback) {
+      ensureOpen();
+      return delegate.execute(target, request, context, callback);
+    }
+
+    @Override
+    public Future<HttpResponse> execute(
+        HttpHost target, HttpRequest request, FutureCallback<HttpResponse> callback) {
+      ensureOpen();
+      return delegate.execute(target, request, callback);
+    }
+
+    @Override
+    public Future<HttpResponse> execute(
+        HttpUriRequest request, HttpContext context, FutureCallback<HttpResponse> callback) {
+      ensureOpen();
+      return delegate.execute(request, context, callback);
+    }
+
+    @Override
+    public Future<HttpResponse> execute(
+        HttpUriRequest request, FutureCallback<HttpResponse> callback) {
+      ensureOpen();
+      return delegate.execute(request, callback);
+    }
+  }
+
   private final ApiObjectMapper json = new ApiObjectMapper();
 
   @Rule
@@ -232,34 +335,19 @@ public class ApiConnectionIT {
   }
 
   @Test
-  public void canCreateTextBatchWithSubstitutions() throws Exception {
+  public void canBulkSendTextBatches() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
     OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
-    MtBatchTextSmsCreate request =
-        SinchSMSApi.batchTextSms()
-            .sender("12345")
-            .addRecipient("123456789")
-            .addRecipient("987654321")
-            .body("Hello, ${name}!")
-            .putParameter(
-                "name",
-                SinchSMSApi.parameterValues()
-                    .putSubstitution("123456789", "Jane")
-                    .defaultValue("world")
-                    .build())
-            .build();
-
-    MtBatchTextSmsResult expected =
+    MtBatchTextSmsResult response =
         MtBatchTextSmsResult.builder()
             .flashMessage(false)
             .feedbackEnabled(false)
             .deliveryReport(ReportType.NONE)
-            .sender(request.sender())
-            .recipients(request.recipients())
-            .body(request.body())
-            .parameters(request.parameters())
+            .sender("12345")
+            .addRecipient("123456789", "987654321")
+            .body("Hello, world!")
             .canceled(false)
             .id(batchId)
             .createdAt(time)
@@ -268,7 +356,17 @@ public class ApiConnectionIT {
 
     String path = "/v1/" + spid + "/batches";
 
-    stubPostResponse(expected, path, 201);
+    wm.stubFor(
+        post(urlEqualTo(path))
+            .willReturn(
+                aResponse()
+                    .withStatus(201)
+                    .withFixedDelay(50)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(json.writeValueAsBytes(response))));
+
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    final AtomicInteger successes = new AtomicInteger();
 
     try (ApiConnection conn =
         ApiConnection.builder()
@@ -276,34 +374,63 @@ public class ApiConnectionIT {
             .token("toktok")
             .endpoint("http://localhost:" + wm.port())
             .start(); ) {
-      MtBatchTextSmsResult actual = conn.createBatch(request);
-      assertThat(actual, is(expected));
+      final BulkSender sender =
+          BulkSender.builder()
+              .connection(conn)
+              .maxInFlight(4)
+              .listener(
+                  new BulkSender.Listener() {
+
+                    @Override
+                    public void succeeded(MtBatchCreate create, MtBatchResult result) {
+                      successes.incrementAndGet();
+                    }
+
+                    @Override
+                    public void failed(MtBatchCreate create, Exception e) {}
+                  })
+              .build();
+
+      BulkSendSummary summary =
+          sender.sendAll(
+              IntStream.range(0, 20)
+                  .mapToObj(
+                      i -> {
+                        maxInFlight.accumulateAndGet(sender.inFlight(), Math::max);
+                        return SinchSMSApi.batchTextSms()
+                            .sender("12345")
+                            .addRecipient("123456789", "987654321")
+                            .body("Hello, world " + i)
+                            .build();
+                      }));
+
+      assertThat(summary.submitted(), is(20L));
+      assertThat(summary.succeeded(), is(20L));
+      assertThat(summary.failed(), is(0L));
+      assertThat(summary.recipients(), is(40L));
+      assertThat(sender.inFlight(), is(0));
     }
 
-    verifyPostRequest(path, request);
+    assertThat(successes.get(), is(20));
+    assertThat(maxInFlight.get() <= 4, is(true));
+
+    wm.verify(20, postRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canCreateMmsBatch() throws Exception {
+  public void canBulkSendTextBatchesFromPublisher() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
     OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
-    MtBatchMmsCreate request =
-        SinchSMSApi.batchMms()
-            .sender("12345")
-            .addRecipient("123456789")
-            .addRecipient("987654321")
-            .body(MediaBody.builder().url("http://my.url.com").message("my body").build())
-            .build();
-
-    MtBatchMmsResult expected =
-        MtBatchMmsResult.builder()
+    MtBatchTextSmsResult response =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
             .feedbackEnabled(false)
             .deliveryReport(ReportType.NONE)
-            .sender(request.sender())
-            .recipients(request.recipients())
-            .body(request.body())
+            .sender("12345")
+            .addRecipient("123456789", "987654321")
+            .body("Hello, world!")
             .canceled(false)
             .id(batchId)
             .createdAt(time)
@@ -312,7 +439,17 @@ public class ApiConnectionIT {
 
     String path = "/v1/" + spid + "/batches";
 
-    stubPostResponse(expected, path, 201);
+    wm.stubFor(
+        post(urlEqualTo(path))
+            .willReturn(
+                aResponse()
+                    .withStatus(201)
+                    .withFixedDelay(50)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(json.writeValueAsBytes(response))));
+
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    final AtomicLong maxDemand = new AtomicLong();
 
     try (ApiConnection conn =
         ApiConnection.builder()
@@ -320,31 +457,111 @@ public class ApiConnectionIT {
             .token("toktok")
             .endpoint("http://localhost:" + wm.port())
             .start(); ) {
-      MtBatchMmsResult actual = conn.createBatch(request);
-      assertThat(actual, is(expected));
+      final BulkSender sender = BulkSender.builder().connection(conn).maxInFlight(4).build();
+
+      Publisher<MtBatchCreate> publisher =
+          subscriber ->
+              subscriber.onSubscribe(
+                  new Subscription() {
+
+                    private int next = 0;
+
+                    private long demand = 0;
+
+                    @Override
+                    public void request(long n) {
+                      demand += n;
+                      maxDemand.accumulateAndGet(demand, Math::max);
+
+                      while (demand > 0 && next < 20) {
+                        demand--;
+                        maxInFlight.accumulateAndGet(sender.inFlight(), Math::max);
+                        subscriber.onNext(
+                            SinchSMSApi.batchTextSms()
+                                .sender("12345")
+                                .addRecipient("123456789", "987654321")
+                                .body("Hello, world " + next++)
+                                .build());
+                      }
+
+                      if (next == 20) {
+                        subscriber.onComplete();
+                      }
+                    }
+
+                    @Override
+                    public void cancel() {}
+                  });
+
+      BulkSendSummary summary = sender.sendAllPublished(publisher);
+
+      assertThat(summary.submitted(), is(20L));
+      assertThat(summary.succeeded(), is(20L));
+      assertThat(summary.failed(), is(0L));
+      assertThat(summary.recipients(), is(40L));
+      assertThat(sender.inFlight(), is(0));
     }
 
-    verifyPostRequest(path, request);
+    assertThat(maxDemand.get(), is(1L));
+    assertThat(maxInFlight.get() <= 4, is(true));
+
+    wm.verify(20, postRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canHandleBatchCreateWithError() throws Exception {
+  public void canSendTextBatchInChunks() throws Exception {
     String spid = TestUtils.freshServicePlanId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+    String path = "/v1/" + spid + "/batches";
 
-    MtBatchTextSmsCreate request =
+    MtBatchTextSmsCreate campaign =
         SinchSMSApi.batchTextSms()
             .sender("12345")
-            .addRecipient("123456789")
-            .addRecipient("987654321")
-            .body("Hello, world!")
+            .addRecipient("111", "222", "333", "444", "555")
+            .body("Hello, ${name}")
+            .putParameter(
+                "name",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("111", "Jane")
+                    .putSubstitution("444", "Joe")
+                    .defaultValue("you")
+                    .build())
             .build();
 
-    ApiError apiError =
-        ApiError.of("syntax_constraint_violation", "The syntax constraint was violated");
+    MtBatchTextSmsResult response =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender("12345")
+            .addRecipient("111", "222")
+            .body("Hello, ${name}")
+            .canceled(false)
+            .id(TestUtils.freshBatchId())
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
 
-    String path = "/v1/" + spid + "/batches";
+    wm.stubFor(
+        post(urlEqualTo(path))
+            .atPriority(2)
+            .willReturn(
+                aResponse()
+                    .withStatus(201)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(json.writeValueAsBytes(response))));
 
-    stubPostResponse(apiError, path, 400);
+    wm.stubFor(
+        post(urlEqualTo(path))
+            .atPriority(1)
+            .withRequestBody(containing("555"))
+            .willReturn(
+                aResponse()
+                    .withStatus(400)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"code\":\"syntax_invalid_json\",\"text\":\"bad\"}")));
+
+    ChunkedBatchResult result;
 
     try (ApiConnection conn =
         ApiConnection.builder()
@@ -352,54 +569,63 @@ public class ApiConnectionIT {
             .token("toktok")
             .endpoint("http://localhost:" + wm.port())
             .start(); ) {
-      conn.createBatch(request);
-      fail("Expected exception, got none");
-    } catch (ErrorResponseException e) {
-      assertThat(e.getCode(), is(apiError.code()));
-      assertThat(e.getText(), is(apiError.text()));
+      result =
+          ChunkingSender.builder()
+              .connection(conn)
+              .chunkSize(2)
+              .maxConcurrency(2)
+              .build()
+              .send(campaign);
     }
+
+    assertThat(result.chunks(), is(3));
+    assertThat(result.batchIds(), is(Arrays.asList(response.id(), response.id())));
+    assertThat(result.isComplete(), is(false));
+    assertThat(result.failures().size(), is(1));
+    assertThat(result.failures().get(0).index(), is(2));
+    assertThat(result.failures().get(0).chunk().recipients(), is(Arrays.asList("555")));
+    assertThat(result.failures().get(0).cause(), is(instanceOf(ErrorResponseException.class)));
+
+    verifyPostRequest(
+        path,
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("333", "444")
+            .body("Hello, ${name}")
+            .putParameter(
+                "name",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("444", "Joe")
+                    .defaultValue("you")
+                    .build())
+            .build());
+
+    wm.verify(3, postRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canHandleBatchCreateWithInvalidJson() throws Exception {
+  public void canCoalesceSingleRecipientBatches() throws Exception {
     String spid = TestUtils.freshServicePlanId();
-    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+    String path = "/v1/" + spid + "/batches";
 
-    MtBatchTextSmsCreate request =
-        SinchSMSApi.batchTextSms()
+    MtBatchTextSmsResult response =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
             .sender("12345")
-            .addRecipient("123456789")
-            .addRecipient("987654321")
-            .body("Hello, world!")
+            .addRecipient("111")
+            .body("${body}")
+            .canceled(false)
+            .id(TestUtils.freshBatchId())
+            .createdAt(time)
+            .modifiedAt(time)
             .build();
 
-    String response =
-        String.join(
-                "\n",
-                "{",
-                "  'to': [",
-                "    '123456789',",
-                "    '987654321'",
-                "  ],",
-                "  'body': 'Hello, world!',",
-                "  'type' 'mt_text',",
-                "  'canceled': false,",
-                "  'id': '" + batchId + "',",
-                "  'from': '12345',",
-                "  'created_at': '2016-10-02T09:34:28.542Z',",
-                "  'modified_at': '2016-10-02T09:34:28.542Z'",
-                "}")
-            .replace('\'', '"');
-
-    String path = "/v1/" + spid + "/batches";
+    stubPostResponse(response, path, 201);
 
-    wm.stubFor(
-        post(urlEqualTo(path))
-            .willReturn(
-                aResponse()
-                    .withStatus(201)
-                    .withHeader("Content-Type", "application/json; charset=UTF-8")
-                    .withBody(response)));
+    List<CompletableFuture<BatchId>> futures = new ArrayList<CompletableFuture<BatchId>>();
 
     try (ApiConnection conn =
         ApiConnection.builder()
@@ -407,45 +633,72 @@ public class ApiConnectionIT {
             .token("toktok")
             .endpoint("http://localhost:" + wm.port())
             .start(); ) {
-      conn.createBatch(request);
-      fail("Expected exception, got none");
-    } catch (ConcurrentException e) {
-      assertThat(e.getCause(), is(instanceOf(JsonParseException.class)));
+      SendCoalescer coalescer =
+          SendCoalescer.builder().connection(conn).maxDelay(Duration.ofSeconds(10)).build();
+
+      futures.add(
+          coalescer.submit(
+              SinchSMSApi.batchTextSms().sender("12345").addRecipient("111").body("A").build()));
+      futures.add(
+          coalescer.submit(
+              SinchSMSApi.batchTextSms()
+                  .sender("12345")
+                  .addRecipient("222")
+                  .body("Hi ${name}")
+                  .putParameter("name", SinchSMSApi.parameterValues().defaultValue("Bo").build())
+                  .build()));
+      futures.add(
+          coalescer.submit(
+              SinchSMSApi.batchTextSms().sender("54321").addRecipient("333").body("C").build()));
+
+      coalescer.flush();
+
+      for (CompletableFuture<BatchId> future : futures) {
+        assertThat(future.get(5, TimeUnit.SECONDS), is(response.id()));
+      }
     }
+
+    verifyPostRequest(
+        path,
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("111", "222")
+            .body("${body}")
+            .putParameter(
+                "body",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("111", "A")
+                    .putSubstitution("222", "Hi Bo")
+                    .build())
+            .build());
+
+    verifyPostRequest(
+        path, SinchSMSApi.batchTextSms().sender("54321").addRecipient("333").body("C").build());
+
+    wm.verify(2, postRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canHandleBatchCreateWithInvalidServicePlanId() throws Exception {
-    String spid = "%&! #$";
+  public void coalescerSendsFullAndExpiredBatches() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+    String path = "/v1/" + spid + "/batches";
 
-    MtBatchTextSmsCreate request =
-        SinchSMSApi.batchTextSms()
+    MtBatchTextSmsResult response =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
             .sender("12345")
-            .addRecipient("123456789")
-            .addRecipient("987654321")
-            .body("Hello, world!")
+            .addRecipient("111")
+            .body("${body}")
+            .canceled(false)
+            .id(TestUtils.freshBatchId())
+            .createdAt(time)
+            .modifiedAt(time)
             .build();
 
-    String response =
-        String.join(
-                "\n",
-                "{",
-                "  'timestamp': '2024-09-13T09:10:58Z',",
-                "  'status': 400,",
-                "  'error': 'Bad Request',",
-                "  'path': '/xms/v1/%25%26%21%20%23%24'",
-                "}")
-            .replace('\'', '"');
-
-    String path = "/v1/%25&!%20%23$/batches";
-
-    wm.stubFor(
-        post(urlEqualTo(path))
-            .willReturn(
-                aResponse()
-                    .withStatus(400)
-                    .withHeader("Content-Type", "application/json; charset=UTF-8")
-                    .withBody(response)));
+    stubPostResponse(response, path, 201);
 
     try (ApiConnection conn =
         ApiConnection.builder()
@@ -453,26 +706,239 @@ public class ApiConnectionIT {
             .token("toktok")
             .endpoint("http://localhost:" + wm.port())
             .start(); ) {
-      conn.createBatch(request);
-      fail("Expected exception, got none");
-    } catch (BadRequestResponseException e) {
-      assertThat(e.getPath(), is("/xms/v1/%25%26%21%20%23%24"));
-      assertThat(e.getStatus(), is(400));
+      SendCoalescer coalescer =
+          SendCoalescer.builder()
+              .connection(conn)
+              .maxBatchSize(2)
+              .maxDelay(Duration.ofSeconds(1))
+              .build();
+
+      CompletableFuture<BatchId> first =
+          coalescer.submit(
+              SinchSMSApi.batchTextSms().sender("12345").addRecipient("111").body("A").build());
+      CompletableFuture<BatchId> second =
+          coalescer.submit(
+              SinchSMSApi.batchTextSms().sender("12345").addRecipient("111").body("B").build());
+      CompletableFuture<BatchId> third =
+          coalescer.submit(
+              SinchSMSApi.batchTextSms().sender("12345").addRecipient("222").body("C").build());
+
+      // The first batch is sent since its recipient reappears, the second when full.
+      assertThat(first.get(5, TimeUnit.SECONDS), is(response.id()));
+      assertThat(second.get(5, TimeUnit.SECONDS), is(response.id()));
+      assertThat(third.get(5, TimeUnit.SECONDS), is(response.id()));
+
+      CompletableFuture<BatchId> fourth =
+          coalescer.submit(
+              SinchSMSApi.batchTextSms().sender("12345").addRecipient("333").body("D").build());
+
+      // Sent when the delay expires.
+      assertThat(fourth.get(5, TimeUnit.SECONDS), is(response.id()));
     }
+
+    verifyPostRequest(
+        path, SinchSMSApi.batchTextSms().sender("12345").addRecipient("111").body("A").build());
+
+    wm.verify(3, postRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canHandleAsyncBatchCreateWithInvalidJson() throws Exception {
+  public void canCreateTextBatchWithSubstitutions() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
     MtBatchTextSmsCreate request =
         SinchSMSApi.batchTextSms()
             .sender("12345")
             .addRecipient("123456789")
             .addRecipient("987654321")
-            .body("Hello, world!")
-            .build();
+            .body("Hello, ${name}!")
+            .putParameter(
+                "name",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("123456789", "Jane")
+                    .defaultValue("world")
+                    .build())
+            .build();
+
+    MtBatchTextSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender(request.sender())
+            .recipients(request.recipients())
+            .body(request.body())
+            .parameters(request.parameters())
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    String path = "/v1/" + spid + "/batches";
+
+    stubPostResponse(expected, path, 201);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      MtBatchTextSmsResult actual = conn.createBatch(request);
+      assertThat(actual, is(expected));
+    }
+
+    verifyPostRequest(path, request);
+  }
+
+  @Test
+  public void canCreateStreamedTextBatch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    MtBatchTextSmsCreate request =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("123456789")
+            .addRecipient("987654321")
+            .body("Hello, ${name}!")
+            .putParameter(
+                "name",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("123456789", "Jane")
+                    .defaultValue("world")
+                    .build())
+            .build();
+
+    MtBatchTextSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender(request.sender())
+            .recipients(request.recipients())
+            .body(request.body())
+            .parameters(request.parameters())
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    String path = "/v1/" + spid + "/batches";
+
+    stubPostResponse(expected, path, 201);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .streamingThreshold(0)
+            .start(); ) {
+      MtBatchTextSmsResult actual = conn.createBatch(request);
+      assertThat(actual, is(expected));
+    }
+
+    verifyPostRequest(path, request);
+
+    wm.verify(
+        postRequestedFor(urlEqualTo(path)).withHeader("Transfer-Encoding", equalTo("chunked")));
+  }
+
+  @Test
+  public void canCreateMmsBatch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    MtBatchMmsCreate request =
+        SinchSMSApi.batchMms()
+            .sender("12345")
+            .addRecipient("123456789")
+            .addRecipient("987654321")
+            .body(MediaBody.builder().url("http://my.url.com").message("my body").build())
+            .build();
+
+    MtBatchMmsResult expected =
+        MtBatchMmsResult.builder()
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender(request.sender())
+            .recipients(request.recipients())
+            .body(request.body())
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    String path = "/v1/" + spid + "/batches";
+
+    stubPostResponse(expected, path, 201);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      MtBatchMmsResult actual = conn.createBatch(request);
+      assertThat(actual, is(expected));
+    }
+
+    verifyPostRequest(path, request);
+  }
+
+  @Test
+  public void canHandleBatchCreateWithError() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+
+    MtBatchTextSmsCreate request =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("123456789")
+            .addRecipient("987654321")
+            .body("Hello, world!")
+            .build();
+
+    ApiError apiError =
+        ApiError.of("syntax_constraint_violation", "The syntax constraint was violated");
+
+    String path = "/v1/" + spid + "/batches";
+
+    stubPostResponse(apiError, path, 400);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      conn.createBatch(request);
+      fail("Expected exception, got none");
+    } catch (ErrorResponseException e) {
+      assertThat(e.getCode(), is(apiError.code()));
+      assertThat(e.getText(), is(apiError.text()));
+    }
+  }
+
+  @Test
+  public void canHandleBatchCreateWithInvalidJson() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+
+    MtBatchTextSmsCreate request =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("123456789")
+            .addRecipient("987654321")
+            .body("Hello, world!")
+            .build();
 
     String response =
         String.join(
@@ -502,31 +968,22 @@ public class ApiConnectionIT {
                     .withHeader("Content-Type", "application/json; charset=UTF-8")
                     .withBody(response)));
 
-    FutureCallback<MtBatchTextSmsResult> callback =
-        new TestCallback<MtBatchTextSmsResult>() {
-
-          @Override
-          public void failed(Exception e) {
-            assertThat(e, is(instanceOf(JsonParseException.class)));
-          }
-        };
-
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
             .token("toktok")
             .endpoint("http://localhost:" + wm.port())
             .start(); ) {
-      conn.createBatchAsync(request, callback).get();
+      conn.createBatch(request);
       fail("Expected exception, got none");
-    } catch (ExecutionException e) {
+    } catch (ConcurrentException e) {
       assertThat(e.getCause(), is(instanceOf(JsonParseException.class)));
     }
   }
 
-  @Test(expected = UnauthorizedException.class)
-  public void canHandleBatchCreateWithUnauthorized() throws Exception {
-    String spid = TestUtils.freshServicePlanId();
+  @Test
+  public void canHandleBatchCreateWithInvalidServicePlanId() throws Exception {
+    String spid = "%&! #$";
 
     MtBatchTextSmsCreate request =
         SinchSMSApi.batchTextSms()
@@ -536,9 +993,26 @@ public class ApiConnectionIT {
             .body("Hello, world!")
             .build();
 
-    String path = "/v1/" + spid + "/batches";
+    String response =
+        String.join(
+                "\n",
+                "{",
+                "  'timestamp': '2024-09-13T09:10:58Z',",
+                "  'status': 400,",
+                "  'error': 'Bad Request',",
+                "  'path': '/xms/v1/%25%26%21%20%23%24'",
+                "}")
+            .replace('\'', '"');
 
-    stubPostResponse("", path, HttpStatus.SC_UNAUTHORIZED);
+    String path = "/v1/%25&!%20%23$/batches";
+
+    wm.stubFor(
+        post(urlEqualTo(path))
+            .willReturn(
+                aResponse()
+                    .withStatus(400)
+                    .withHeader("Content-Type", "application/json; charset=UTF-8")
+                    .withBody(response)));
 
     try (ApiConnection conn =
         ApiConnection.builder()
@@ -548,12 +1022,16 @@ public class ApiConnectionIT {
             .start(); ) {
       conn.createBatch(request);
       fail("Expected exception, got none");
+    } catch (BadRequestResponseException e) {
+      assertThat(e.getPath(), is("/xms/v1/%25%26%21%20%23%24"));
+      assertThat(e.getStatus(), is(400));
     }
   }
 
   @Test
-  public void canHandleAsyncBatchCreateWithUnauthorized() throws Exception {
+  public void canHandleAsyncBatchCreateWithInvalidJson() throws Exception {
     String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
 
     MtBatchTextSmsCreate request =
         SinchSMSApi.batchTextSms()
@@ -563,16 +1041,105 @@ public class ApiConnectionIT {
             .body("Hello, world!")
             .build();
 
+    String response =
+        String.join(
+                "\n",
+                "{",
+                "  'to': [",
+                "    '123456789',",
+                "    '987654321'",
+                "  ],",
+                "  'body': 'Hello, world!',",
+                "  'type' 'mt_text',",
+                "  'canceled': false,",
+                "  'id': '" + batchId + "',",
+                "  'from': '12345',",
+                "  'created_at': '2016-10-02T09:34:28.542Z',",
+                "  'modified_at': '2016-10-02T09:34:28.542Z'",
+                "}")
+            .replace('\'', '"');
+
     String path = "/v1/" + spid + "/batches";
 
-    stubPostResponse("", path, HttpStatus.SC_UNAUTHORIZED);
+    wm.stubFor(
+        post(urlEqualTo(path))
+            .willReturn(
+                aResponse()
+                    .withStatus(201)
+                    .withHeader("Content-Type", "application/json; charset=UTF-8")
+                    .withBody(response)));
 
     FutureCallback<MtBatchTextSmsResult> callback =
         new TestCallback<MtBatchTextSmsResult>() {
 
           @Override
           public void failed(Exception e) {
-            assertThat(e, is(instanceOf(UnauthorizedException.class)));
+            assertThat(e, is(instanceOf(JsonParseException.class)));
+          }
+        };
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      conn.createBatchAsync(request, callback).get();
+      fail("Expected exception, got none");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(JsonParseException.class)));
+    }
+  }
+
+  @Test(expected = UnauthorizedException.class)
+  public void canHandleBatchCreateWithUnauthorized() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+
+    MtBatchTextSmsCreate request =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("123456789")
+            .addRecipient("987654321")
+            .body("Hello, world!")
+            .build();
+
+    String path = "/v1/" + spid + "/batches";
+
+    stubPostResponse("", path, HttpStatus.SC_UNAUTHORIZED);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      conn.createBatch(request);
+      fail("Expected exception, got none");
+    }
+  }
+
+  @Test
+  public void canHandleAsyncBatchCreateWithUnauthorized() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+
+    MtBatchTextSmsCreate request =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("123456789")
+            .addRecipient("987654321")
+            .body("Hello, world!")
+            .build();
+
+    String path = "/v1/" + spid + "/batches";
+
+    stubPostResponse("", path, HttpStatus.SC_UNAUTHORIZED);
+
+    FutureCallback<MtBatchTextSmsResult> callback =
+        new TestCallback<MtBatchTextSmsResult>() {
+
+          @Override
+          public void failed(Exception e) {
+            assertThat(e, is(instanceOf(UnauthorizedException.class)));
           }
         };
 
@@ -621,304 +1188,1024 @@ public class ApiConnectionIT {
 
     String path = "/v1/" + spid + "/batches/" + batchId;
 
-    stubPutResponse(expected, path, 201);
+    stubPutResponse(expected, path, 201);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      MtBatchBinarySmsResult actual = conn.replaceBatch(batchId, request);
+      assertThat(actual, is(expected));
+    }
+
+    verifyPutRequest(path, request);
+  }
+
+  @Test
+  public void canReplaceTextBatch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    MtBatchTextSmsCreate request =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("123456789")
+            .addRecipient("987654321")
+            .body("Hello, world!")
+            .build();
+
+    MtBatchTextSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender(request.sender())
+            .recipients(request.recipients())
+            .body(request.body())
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    stubPutResponse(expected, path, 201);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      MtBatchTextSmsResult actual = conn.replaceBatch(batchId, request);
+      assertThat(actual, is(expected));
+    }
+
+    verifyPutRequest(path, request);
+  }
+
+  @Test
+  public void canReplaceMmsBatch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    MtBatchMmsCreate request =
+        SinchSMSApi.batchMms()
+            .sender("12345")
+            .addRecipient("123456789")
+            .addRecipient("987654321")
+            .body(MediaBody.builder().url("http://my.url.com").build())
+            .build();
+
+    MtBatchMmsResult expected =
+        MtBatchMmsResult.builder()
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender(request.sender())
+            .recipients(request.recipients())
+            .body(request.body())
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    stubPutResponse(expected, path, 201);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      MtBatchMmsResult actual = conn.replaceBatch(batchId, request);
+      assertThat(actual, is(expected));
+    }
+
+    verifyPutRequest(path, request);
+  }
+
+  @Test
+  public void canUpdateSimpleTextBatch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    MtBatchTextSmsUpdate request =
+        SinchSMSApi.batchTextSmsUpdate()
+            .sender("12345")
+            .body("Hello, world!")
+            .unsetDeliveryReport()
+            .unsetExpireAt()
+            .build();
+
+    MtBatchTextSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender(request.sender())
+            .addRecipient("123")
+            .body(request.body())
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    stubPostResponse(expected, path, 201);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      MtBatchTextSmsResult actual = conn.updateBatch(batchId, request);
+      assertThat(actual, is(expected));
+    }
+
+    verifyPostRequest(path, request);
+  }
+
+  @Test
+  public void canUpdateSimpleBinaryBatch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    MtBatchBinarySmsUpdate request =
+        SinchSMSApi.batchBinarySmsUpdate()
+            .sender("12345")
+            .body("howdy".getBytes(TestUtils.US_ASCII))
+            .unsetExpireAt()
+            .build();
+
+    MtBatchBinarySmsResult expected =
+        MtBatchBinarySmsResult.builder()
+            .sender(request.sender())
+            .addRecipient("123")
+            .body(request.body())
+            .udh((byte) 1, (byte) 0xff)
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    stubPostResponse(expected, path, 201);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      MtBatchBinarySmsResult actual = conn.updateBatch(batchId, request);
+      assertThat(actual, is(expected));
+    }
+
+    verifyPostRequest(path, request);
+  }
+
+  @Test
+  public void canUpdateSimpleMmsBatch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    MtBatchMmsUpdate request =
+        SinchSMSApi.batchMmsUpdate()
+            .sender("12345")
+            .body(MediaBody.builder().url("http://my.url.com").build())
+            .unsetDeliveryReport()
+            .unsetExpireAt()
+            .build();
+
+    MtBatchMmsResult expected =
+        MtBatchMmsResult.builder()
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender(request.sender())
+            .addRecipient("123")
+            .body(request.body())
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    stubPostResponse(expected, path, 201);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      MtBatchMmsResult actual = conn.updateBatch(batchId, request);
+      assertThat(actual, is(expected));
+    }
+
+    verifyPostRequest(path, request);
+  }
+
+  @Test
+  public void canFetchTextBatch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    final MtBatchSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender("12345")
+            .addRecipient("123456789", "987654321")
+            .body("Hello, world!")
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    stubGetResponse(expected, path);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      MtBatchResult actual = conn.fetchBatch(batchId);
+      assertThat(actual, is(expected));
+    }
+
+    verifyGetRequest(path);
+  }
+
+  @Test
+  public void canFetchTextBatchAccelerated() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    final MtBatchSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender("12345")
+            .addRecipient("123456789", "987654321")
+            .body("Hello, world!")
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    stubGetResponse(expected, path);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .acceleratedJson(true)
+            .start(); ) {
+      MtBatchResult actual = conn.fetchBatch(batchId);
+      assertThat(actual, is(expected));
+    }
+
+    verifyGetRequest(path);
+  }
+
+  @Test
+  public void canFetchTextBatchAsync() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    final MtBatchSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender("12345")
+            .addRecipient("123456789", "987654321")
+            .body("Hello, world!")
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    stubGetResponse(expected, path);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      FutureCallback<MtBatchResult> testCallback =
+          new TestCallback<MtBatchResult>() {
+
+            @Override
+            public void completed(MtBatchResult result) {
+              assertThat(result, is(expected));
+            }
+          };
+
+      MtBatchResult actual = conn.fetchBatchAsync(batchId, testCallback).get();
+      assertThat(actual, is(expected));
+    }
+
+    verifyGetRequest(path);
+  }
+
+  @Test
+  public void canFetchTextBatchCompletable() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    final MtBatchSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender("12345")
+            .addRecipient("123456789", "987654321")
+            .body("Hello, world!")
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    stubGetResponse(expected, path);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      BatchId actual =
+          conn.fetchBatchAsync(batchId).thenApply(MtBatchResult::id).get(10, TimeUnit.SECONDS);
+      assertThat(actual, is(batchId));
+    }
+
+    verifyGetRequest(path);
+  }
+
+  @Test
+  public void canFetchBinaryBatch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    final MtBatchSmsResult expected =
+        MtBatchBinarySmsResult.builder()
+            .sender("12345")
+            .addRecipient("123456789", "987654321")
+            .body((byte) 0xf0, (byte) 0x0f)
+            .udh((byte) 0x50, (byte) 0x05)
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    stubGetResponse(expected, path);
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      FutureCallback<MtBatchResult> testCallback =
+          new TestCallback<MtBatchResult>() {
+
+            @Override
+            public void completed(MtBatchResult result) {
+              assertThat(result, is(expected));
+            }
+          };
+
+      MtBatchResult actual = conn.fetchBatchAsync(batchId, testCallback).get();
+      assertThat(actual, is(expected));
+    }
+
+    verifyGetRequest(path);
+  }
+
+  @Test
+  public void canHandle404WhenFetchingBatchSync() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    wm.stubFor(
+        get(urlEqualTo(path))
+            .willReturn(
+                aResponse()
+                    .withStatus(404)
+                    .withHeader("Content-Type", ContentType.TEXT_PLAIN.toString())
+                    .withBody("BAD")));
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      conn.fetchBatch(batchId);
+      fail("Expected exception, got none");
+    } catch (NotFoundException e) {
+      assertThat(e.getPath(), is(path));
+    }
+  }
+
+  @Test
+  public void canHandle404WhenFetchingBatchAsync() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+
+    final String path = "/v1/" + spid + "/batches/" + batchId;
+
+    wm.stubFor(
+        get(urlEqualTo(path))
+            .willReturn(
+                aResponse()
+                    .withStatus(404)
+                    .withHeader("Content-Type", ContentType.TEXT_PLAIN.toString())
+                    .withBody("BAD")));
+
+    FutureCallback<MtBatchResult> callback =
+        new TestCallback<MtBatchResult>() {
+
+          @Override
+          public void failed(Exception e) {
+            assertThat(e, is(instanceOf(NotFoundException.class)));
+            NotFoundException nfe = (NotFoundException) e;
+            assertThat(nfe.getPath(), is(path));
+          }
+        };
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      conn.fetchBatchAsync(batchId, callback).get();
+      fail("Expected exception, got none");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(NotFoundException.class)));
+    }
+  }
+
+  @Test
+  public void canRunCallbacksOnExecutor() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    final MtBatchSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender("12345")
+            .addRecipient("123456789", "987654321")
+            .body("Hello, world!")
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    stubGetResponse(expected, path);
+
+    ExecutorService executor =
+        Executors.newSingleThreadExecutor(r -> new Thread(r, "callback-thread"));
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .callbackExecutor(executor)
+            .start(); ) {
+      final AtomicReference<String> thread = new AtomicReference<String>();
+      final CountDownLatch latch = new CountDownLatch(1);
+
+      conn.fetchBatchAsync(
+              batchId,
+              new FutureCallback<MtBatchResult>() {
+
+                @Override
+                public void completed(MtBatchResult result) {
+                  thread.set(Thread.currentThread().getName());
+                  latch.countDown();
+                }
+
+                @Override
+                public void failed(Exception ex) {}
+
+                @Override
+                public void cancelled() {}
+              })
+          .get(10, TimeUnit.SECONDS);
+
+      assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+
+      assertThat(thread.get(), is("callback-thread"));
+      assertThat(conn.callbackDispatcher().dispatchedCallbacks(), is(1L));
+    } finally {
+      executor.shutdown();
+    }
+
+    verifyGetRequest(path);
+  }
+
+  @Test
+  public void rejectsRequestsBeyondPendingLimit() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    String path = "/v1/" + spid + "/batches/" + batchId;
+
+    final MtBatchSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender("12345")
+            .addRecipient("123456789")
+            .body("Hello, world!")
+            .canceled(false)
+            .id(batchId)
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    String response = json.writeValueAsString(expected);
+
+    wm.stubFor(
+        get(urlEqualTo(path))
+            .willReturn(
+                aResponse()
+                    .withStatus(200)
+                    .withFixedDelay(500)
+                    .withHeader("Content-Type", "application/json; charset=UTF-8")
+                    .withBody(response)));
+
+    ApiHttpAsyncClient client = ApiHttpAsyncClient.builder().maxPendingRequests(1).build();
+    client.start();
 
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
-            .token("toktok")
+            .token("tok")
             .endpoint("http://localhost:" + wm.port())
+            .httpClient(client)
             .start(); ) {
-      MtBatchBinarySmsResult actual = conn.replaceBatch(batchId, request);
-      assertThat(actual, is(expected));
-    }
+      CompletableFuture<MtBatchResult> first = conn.fetchBatchAsync(batchId);
+      CompletableFuture<MtBatchResult> second = conn.fetchBatchAsync(batchId);
 
-    verifyPutRequest(path, request);
+      assertThat(client.pendingRequests(), is(1));
+
+      try {
+        second.get(10, TimeUnit.SECONDS);
+        fail("Expected exception, got none");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause(), is(instanceOf(RejectedExecutionException.class)));
+      }
+
+      assertThat(first.get(10, TimeUnit.SECONDS).id(), is(batchId));
+      assertThat(client.pendingRequests(), is(0));
+    } finally {
+      client.close();
+    }
   }
 
   @Test
-  public void canReplaceTextBatch() throws Exception {
+  public void canRateLimitRequests() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
     OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
-    MtBatchTextSmsCreate request =
-        SinchSMSApi.batchTextSms()
-            .sender("12345")
-            .addRecipient("123456789")
-            .addRecipient("987654321")
-            .body("Hello, world!")
-            .build();
+    String path = "/v1/" + spid + "/batches/" + batchId;
 
-    MtBatchTextSmsResult expected =
+    final MtBatchSmsResult expected =
         MtBatchTextSmsResult.builder()
             .flashMessage(false)
             .feedbackEnabled(false)
             .deliveryReport(ReportType.NONE)
-            .sender(request.sender())
-            .recipients(request.recipients())
-            .body(request.body())
+            .sender("12345")
+            .addRecipient("123456789")
+            .body("Hello, world!")
             .canceled(false)
             .id(batchId)
             .createdAt(time)
             .modifiedAt(time)
             .build();
 
-    String path = "/v1/" + spid + "/batches/" + batchId;
-
-    stubPutResponse(expected, path, 201);
+    stubGetResponse(expected, path);
 
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
-            .token("toktok")
+            .token("tok")
             .endpoint("http://localhost:" + wm.port())
+            .rateLimiter(RateLimiter.builder().requestsPerSecond(10).build())
             .start(); ) {
-      MtBatchTextSmsResult actual = conn.replaceBatch(batchId, request);
-      assertThat(actual, is(expected));
+      long start = System.nanoTime();
+
+      List<CompletableFuture<MtBatchResult>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(conn.fetchBatchAsync(batchId));
+      }
+
+      for (CompletableFuture<MtBatchResult> future : futures) {
+        assertThat(future.get(10, TimeUnit.SECONDS).id(), is(batchId));
+      }
+
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertThat(elapsedMillis >= 250, is(true));
     }
 
-    verifyPutRequest(path, request);
+    wm.verify(4, getRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canReplaceMmsBatch() throws Exception {
+  public void canRejectRateLimitedRequests() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
     OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
-    MtBatchMmsCreate request =
-        SinchSMSApi.batchMms()
-            .sender("12345")
-            .addRecipient("123456789")
-            .addRecipient("987654321")
-            .body(MediaBody.builder().url("http://my.url.com").build())
-            .build();
+    String path = "/v1/" + spid + "/batches/" + batchId;
 
-    MtBatchMmsResult expected =
-        MtBatchMmsResult.builder()
+    final MtBatchSmsResult expected =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
             .feedbackEnabled(false)
             .deliveryReport(ReportType.NONE)
-            .sender(request.sender())
-            .recipients(request.recipients())
-            .body(request.body())
+            .sender("12345")
+            .addRecipient("123456789")
+            .body("Hello, world!")
             .canceled(false)
             .id(batchId)
             .createdAt(time)
             .modifiedAt(time)
             .build();
 
-    String path = "/v1/" + spid + "/batches/" + batchId;
-
-    stubPutResponse(expected, path, 201);
+    stubGetResponse(expected, path);
 
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
-            .token("toktok")
+            .token("tok")
             .endpoint("http://localhost:" + wm.port())
+            .rateLimiter(
+                RateLimiter.builder().requestsPerSecond(0.1).mode(RateLimiter.Mode.REJECT).build())
             .start(); ) {
-      MtBatchMmsResult actual = conn.replaceBatch(batchId, request);
-      assertThat(actual, is(expected));
+      assertThat(conn.fetchBatch(batchId).id(), is(batchId));
+
+      try {
+        conn.fetchBatch(batchId);
+        fail("Expected exception, got none");
+      } catch (RateLimitExceededException e) {
+        assertThat(e.getRetryAfter().getSeconds() > 0, is(true));
+      }
     }
 
-    verifyPutRequest(path, request);
+    wm.verify(1, getRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canUpdateSimpleTextBatch() throws Exception {
+  public void canRetryFetchBatch() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
     OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
-    MtBatchTextSmsUpdate request =
-        SinchSMSApi.batchTextSmsUpdate()
-            .sender("12345")
-            .body("Hello, world!")
-            .unsetDeliveryReport()
-            .unsetExpireAt()
-            .build();
+    String path = "/v1/" + spid + "/batches/" + batchId;
 
-    MtBatchTextSmsResult expected =
+    final MtBatchSmsResult expected =
         MtBatchTextSmsResult.builder()
             .flashMessage(false)
             .feedbackEnabled(false)
             .deliveryReport(ReportType.NONE)
-            .sender(request.sender())
-            .addRecipient("123")
-            .body(request.body())
+            .sender("12345")
+            .addRecipient("123456789")
+            .body("Hello, world!")
             .canceled(false)
             .id(batchId)
             .createdAt(time)
             .modifiedAt(time)
             .build();
 
-    String path = "/v1/" + spid + "/batches/" + batchId;
+    wm.stubFor(
+        get(urlEqualTo(path))
+            .inScenario("retry")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(aResponse().withStatus(503).withHeader("Retry-After", "0"))
+            .willSetStateTo("unavailable"));
 
-    stubPostResponse(expected, path, 201);
+    wm.stubFor(
+        get(urlEqualTo(path))
+            .inScenario("retry")
+            .whenScenarioStateIs("unavailable")
+            .willReturn(aResponse().withStatus(429))
+            .willSetStateTo("available"));
+
+    wm.stubFor(
+        get(urlEqualTo(path))
+            .inScenario("retry")
+            .whenScenarioStateIs("available")
+            .willReturn(
+                aResponse()
+                    .withStatus(200)
+                    .withHeader("Content-Type", "application/json; charset=UTF-8")
+                    .withBody(json.writeValueAsString(expected))));
+
+    RetryPolicy retryPolicy = RetryPolicy.builder().initialBackoff(Duration.ofMillis(10)).build();
 
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
-            .token("toktok")
+            .token("tok")
             .endpoint("http://localhost:" + wm.port())
+            .retryPolicy(retryPolicy)
             .start(); ) {
-      MtBatchTextSmsResult actual = conn.updateBatch(batchId, request);
-      assertThat(actual, is(expected));
+      assertThat(conn.fetchBatch(batchId), is(expected));
     }
 
-    verifyPostRequest(path, request);
+    assertThat(retryPolicy.retries(), is(2L));
+
+    wm.verify(3, getRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canUpdateSimpleBinaryBatch() throws Exception {
+  public void failsWhenClientClosedDuringRetryDelay() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
-    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
-
-    MtBatchBinarySmsUpdate request =
-        SinchSMSApi.batchBinarySmsUpdate()
-            .sender("12345")
-            .body("howdy".getBytes(TestUtils.US_ASCII))
-            .unsetExpireAt()
-            .build();
-
-    MtBatchBinarySmsResult expected =
-        MtBatchBinarySmsResult.builder()
-            .sender(request.sender())
-            .addRecipient("123")
-            .body(request.body())
-            .udh((byte) 1, (byte) 0xff)
-            .flashMessage(false)
-            .feedbackEnabled(false)
-            .deliveryReport(ReportType.NONE)
-            .canceled(false)
-            .id(batchId)
-            .createdAt(time)
-            .modifiedAt(time)
-            .build();
 
     String path = "/v1/" + spid + "/batches/" + batchId;
 
-    stubPostResponse(expected, path, 201);
+    wm.stubFor(
+        get(urlEqualTo(path))
+            .willReturn(aResponse().withStatus(503).withHeader("Retry-After", "1")));
+
+    ClosingClient client = new ClosingClient();
 
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
-            .token("toktok")
+            .token("tok")
             .endpoint("http://localhost:" + wm.port())
+            .httpClient(client)
+            .retryPolicy(RetryPolicy.builder().build())
             .start(); ) {
-      MtBatchBinarySmsResult actual = conn.updateBatch(batchId, request);
-      assertThat(actual, is(expected));
+      CompletableFuture<MtBatchResult> future = conn.fetchBatchAsync(batchId);
+
+      while (wm.findAll(getRequestedFor(urlEqualTo(path))).isEmpty()) {
+        Thread.sleep(10);
+      }
+
+      // Let the response arrive, the retry is then delayed by a second.
+      Thread.sleep(300);
+
+      client.close();
+
+      try {
+        future.get(5, TimeUnit.SECONDS);
+        fail("Expected exception, got none");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+      }
     }
 
-    verifyPostRequest(path, request);
+    wm.verify(1, getRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canUpdateSimpleMmsBatch() throws Exception {
+  public void doesNotRetryCreateWithoutClientReference() throws Exception {
     String spid = TestUtils.freshServicePlanId();
-    BatchId batchId = TestUtils.freshBatchId();
-    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
-    MtBatchMmsUpdate request =
-        SinchSMSApi.batchMmsUpdate()
+    String path = "/v1/" + spid + "/batches";
+
+    wm.stubFor(post(urlEqualTo(path)).willReturn(aResponse().withStatus(503)));
+
+    MtBatchTextSmsCreate request =
+        SinchSMSApi.batchTextSms()
             .sender("12345")
-            .body(MediaBody.builder().url("http://my.url.com").build())
-            .unsetDeliveryReport()
-            .unsetExpireAt()
+            .addRecipient("123456789")
+            .body("Hello, world!")
             .build();
 
-    MtBatchMmsResult expected =
-        MtBatchMmsResult.builder()
-            .feedbackEnabled(false)
-            .deliveryReport(ReportType.NONE)
-            .sender(request.sender())
-            .addRecipient("123")
-            .body(request.body())
-            .canceled(false)
-            .id(batchId)
-            .createdAt(time)
-            .modifiedAt(time)
-            .build();
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("toktok")
+            .endpoint("http://localhost:" + wm.port())
+            .retryPolicy(RetryPolicy.builder().initialBackoff(Duration.ofMillis(10)).build())
+            .start(); ) {
+      conn.createBatch(request);
+      fail("Expected exception, got none");
+    } catch (UnexpectedResponseException e) {
+      assertThat(e.getResponse().getStatusLine().getStatusCode(), is(503));
+    }
+
+    wm.verify(1, postRequestedFor(urlEqualTo(path)));
+  }
+
+  @Test
+  public void circuitBreakerFailsFastWhenOpen() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
 
     String path = "/v1/" + spid + "/batches/" + batchId;
 
-    stubPostResponse(expected, path, 201);
+    wm.stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(503)));
+
+    CircuitBreaker breaker = CircuitBreaker.builder().windowSize(4).minimumCalls(2).build();
+
+    final List<CircuitBreaker.State> transitions = new ArrayList<>();
+    breaker.addListener((b, from, to) -> transitions.add(to));
 
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
-            .token("toktok")
+            .token("tok")
             .endpoint("http://localhost:" + wm.port())
+            .circuitBreaker(breaker)
             .start(); ) {
-      MtBatchMmsResult actual = conn.updateBatch(batchId, request);
-      assertThat(actual, is(expected));
+      for (int i = 0; i < 2; i++) {
+        try {
+          conn.fetchBatch(batchId);
+          fail("Expected exception, got none");
+        } catch (UnexpectedResponseException e) {
+          assertThat(e.getResponse().getStatusLine().getStatusCode(), is(503));
+        }
+      }
+
+      assertThat(breaker.state(), is(CircuitBreaker.State.OPEN));
+
+      try {
+        conn.fetchBatch(batchId);
+        fail("Expected exception, got none");
+      } catch (CircuitBreakerOpenException e) {
+        assertThat(e.getState(), is(CircuitBreaker.State.OPEN));
+      }
     }
 
-    verifyPostRequest(path, request);
+    assertThat(transitions, is(Arrays.asList(CircuitBreaker.State.OPEN)));
+
+    wm.verify(2, getRequestedFor(urlEqualTo(path)));
   }
 
   @Test
-  public void canFetchTextBatch() throws Exception {
+  public void deadlineAbortsSlowCall() throws Exception {
     String spid = TestUtils.freshServicePlanId();
-    BatchId batchId = TestUtils.freshBatchId();
+    BatchId slowBatchId = TestUtils.freshBatchId();
+    BatchId fastBatchId = TestUtils.freshBatchId();
     OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
-    String path = "/v1/" + spid + "/batches/" + batchId;
-
     final MtBatchSmsResult expected =
         MtBatchTextSmsResult.builder()
             .flashMessage(false)
             .feedbackEnabled(false)
             .deliveryReport(ReportType.NONE)
             .sender("12345")
-            .addRecipient("123456789", "987654321")
+            .addRecipient("123456789")
             .body("Hello, world!")
             .canceled(false)
-            .id(batchId)
+            .id(fastBatchId)
             .createdAt(time)
             .modifiedAt(time)
             .build();
 
-    stubGetResponse(expected, path);
+    wm.stubFor(
+        get(urlEqualTo("/v1/" + spid + "/batches/" + slowBatchId))
+            .willReturn(aResponse().withStatus(200).withFixedDelay(5000)));
+
+    stubGetResponse(expected, "/v1/" + spid + "/batches/" + fastBatchId);
+
+    // A single connection, if the slow exchange is not aborted then the fast one cannot proceed.
+    ApiHttpAsyncClient client =
+        ApiHttpAsyncClient.builder().maxConnectionsTotal(1).maxConnectionsPerRoute(1).build();
+    client.start();
 
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
             .token("tok")
             .endpoint("http://localhost:" + wm.port())
+            .httpClient(client)
             .start(); ) {
-      MtBatchResult actual = conn.fetchBatch(batchId);
-      assertThat(actual, is(expected));
-    }
+      Duration deadline = Duration.ofMillis(100);
 
-    verifyGetRequest(path);
+      try {
+        conn.withDeadline(deadline).fetchBatch(slowBatchId);
+        fail("Expected exception, got none");
+      } catch (DeadlineExceededException e) {
+        assertThat(e.getDeadline(), is(deadline));
+      }
+
+      assertThat(conn.fetchBatchAsync(fastBatchId).get(2, TimeUnit.SECONDS), is(expected));
+    } finally {
+      client.close();
+    }
   }
 
   @Test
-  public void canFetchTextBatchAsync() throws Exception {
+  public void exceededDeadlinesOpenCircuitBreaker() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
-    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
     String path = "/v1/" + spid + "/batches/" + batchId;
 
-    final MtBatchSmsResult expected =
-        MtBatchTextSmsResult.builder()
-            .flashMessage(false)
-            .feedbackEnabled(false)
-            .deliveryReport(ReportType.NONE)
-            .sender("12345")
-            .addRecipient("123456789", "987654321")
-            .body("Hello, world!")
-            .canceled(false)
-            .id(batchId)
-            .createdAt(time)
-            .modifiedAt(time)
-            .build();
+    wm.stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(200).withFixedDelay(2000)));
+
+    CircuitBreaker breaker = CircuitBreaker.builder().windowSize(4).minimumCalls(2).build();
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .circuitBreaker(breaker)
+            .start(); ) {
+      ApiConnection deadlined = conn.withDeadline(Duration.ofMillis(100));
+
+      for (int i = 0; i < 2; i++) {
+        try {
+          deadlined.fetchBatch(batchId);
+          fail("Expected exception, got none");
+        } catch (DeadlineExceededException e) {
+          // Expected.
+        }
+      }
+
+      assertThat(breaker.state(), is(CircuitBreaker.State.OPEN));
+      assertThat(breaker.failureRate(), is(1.0));
+
+      try {
+        deadlined.fetchBatch(batchId);
+        fail("Expected exception, got none");
+      } catch (CircuitBreakerOpenException e) {
+        assertThat(e.getState(), is(CircuitBreaker.State.OPEN));
+      }
+    }
+  }
 
-    stubGetResponse(expected, path);
+  @Test
+  public void deadlineAppliesToPageFetches() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchFilter filter = SinchSMSApi.batchFilter().build();
+
+    wm.stubFor(
+        get(urlEqualTo("/v1/" + spid + "/batches?page=0"))
+            .willReturn(aResponse().withStatus(200).withFixedDelay(5000)));
 
     try (ApiConnection conn =
         ApiConnection.builder()
@@ -926,99 +2213,60 @@ public class ApiConnectionIT {
             .token("tok")
             .endpoint("http://localhost:" + wm.port())
             .start(); ) {
-      FutureCallback<MtBatchResult> testCallback =
-          new TestCallback<MtBatchResult>() {
-
-            @Override
-            public void completed(MtBatchResult result) {
-              assertThat(result, is(expected));
-            }
-          };
+      PagedFetcher<MtBatchResult> fetcher =
+          conn.withDeadline(Duration.ofMillis(100)).fetchBatches(filter);
 
-      MtBatchResult actual = conn.fetchBatchAsync(batchId, testCallback).get();
-      assertThat(actual, is(expected));
+      try {
+        fetcher.pages().iterator().next();
+        fail("Expected exception, got none");
+      } catch (RuntimeApiException e) {
+        assertThat(e.getCause(), is(instanceOf(DeadlineExceededException.class)));
+      }
     }
-
-    verifyGetRequest(path);
   }
 
   @Test
-  public void canFetchBinaryBatch() throws Exception {
+  public void reusesResponseBuffers() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
     OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
 
-    String path = "/v1/" + spid + "/batches/" + batchId;
-
     final MtBatchSmsResult expected =
-        MtBatchBinarySmsResult.builder()
-            .sender("12345")
-            .addRecipient("123456789", "987654321")
-            .body((byte) 0xf0, (byte) 0x0f)
-            .udh((byte) 0x50, (byte) 0x05)
+        MtBatchTextSmsResult.builder()
             .flashMessage(false)
             .feedbackEnabled(false)
             .deliveryReport(ReportType.NONE)
+            .sender("12345")
+            .addRecipient("123456789")
+            .body("Hello, world!")
             .canceled(false)
             .id(batchId)
             .createdAt(time)
             .modifiedAt(time)
             .build();
 
-    stubGetResponse(expected, path);
+    stubGetResponse(expected, "/v1/" + spid + "/batches/" + batchId);
+
+    ResponseBufferPool pool = ResponseBufferPool.builder().build();
 
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
             .token("tok")
             .endpoint("http://localhost:" + wm.port())
+            .responseBufferPool(pool)
             .start(); ) {
-      FutureCallback<MtBatchResult> testCallback =
-          new TestCallback<MtBatchResult>() {
-
-            @Override
-            public void completed(MtBatchResult result) {
-              assertThat(result, is(expected));
-            }
-          };
-
-      MtBatchResult actual = conn.fetchBatchAsync(batchId, testCallback).get();
-      assertThat(actual, is(expected));
+      for (int i = 0; i < 3; i++) {
+        assertThat(conn.fetchBatch(batchId), is(expected));
+      }
     }
 
-    verifyGetRequest(path);
-  }
-
-  @Test
-  public void canHandle404WhenFetchingBatchSync() throws Exception {
-    String spid = TestUtils.freshServicePlanId();
-    BatchId batchId = TestUtils.freshBatchId();
-
-    String path = "/v1/" + spid + "/batches/" + batchId;
-
-    wm.stubFor(
-        get(urlEqualTo(path))
-            .willReturn(
-                aResponse()
-                    .withStatus(404)
-                    .withHeader("Content-Type", ContentType.TEXT_PLAIN.toString())
-                    .withBody("BAD")));
-
-    try (ApiConnection conn =
-        ApiConnection.builder()
-            .servicePlanId(spid)
-            .token("toktok")
-            .endpoint("http://localhost:" + wm.port())
-            .start(); ) {
-      conn.fetchBatch(batchId);
-      fail("Expected exception, got none");
-    } catch (NotFoundException e) {
-      assertThat(e.getPath(), is(path));
-    }
+    assertThat(pool.misses(), is(1L));
+    assertThat(pool.hits(), is(2L));
   }
 
   @Test
-  public void canHandle404WhenFetchingBatchAsync() throws Exception {
+  public void canHandle404WhenFetchingBatchCompletable() throws Exception {
     String spid = TestUtils.freshServicePlanId();
     BatchId batchId = TestUtils.freshBatchId();
 
@@ -1032,27 +2280,17 @@ public class ApiConnectionIT {
                     .withHeader("Content-Type", ContentType.TEXT_PLAIN.toString())
                     .withBody("BAD")));
 
-    FutureCallback<MtBatchResult> callback =
-        new TestCallback<MtBatchResult>() {
-
-          @Override
-          public void failed(Exception e) {
-            assertThat(e, is(instanceOf(NotFoundException.class)));
-            NotFoundException nfe = (NotFoundException) e;
-            assertThat(nfe.getPath(), is(path));
-          }
-        };
-
     try (ApiConnection conn =
         ApiConnection.builder()
             .servicePlanId(spid)
             .token("toktok")
             .endpoint("http://localhost:" + wm.port())
             .start(); ) {
-      conn.fetchBatchAsync(batchId, callback).get();
+      conn.fetchBatchAsync(batchId).get(10, TimeUnit.SECONDS);
       fail("Expected exception, got none");
     } catch (ExecutionException e) {
       assertThat(e.getCause(), is(instanceOf(NotFoundException.class)));
+      assertThat(((NotFoundException) e.getCause()).getPath(), is(path));
     }
   }
 
@@ -1536,6 +2774,178 @@ public class ApiConnectionIT {
     verifyGetRequest(path2);
   }
 
+  @Test
+  public void canIterateOverPagesWithPrefetch() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchFilter filter = SinchSMSApi.batchFilter().build();
+
+    List<Page<MtBatchResult>> expecteds = new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+      Page<MtBatchResult> expected =
+          PagedBatchResult.builder()
+              .page(i)
+              .size(1)
+              .totalSize(4)
+              .addContent(
+                  MtBatchTextSmsResult.builder()
+                      .flashMessage(false)
+                      .feedbackEnabled(false)
+                      .deliveryReport(ReportType.NONE)
+                      .id(TestUtils.freshBatchId())
+                      .body("body " + i)
+                      .canceled(false)
+                      .build())
+              .build();
+
+      stubGetResponse(expected, "/v1/" + spid + "/batches?page=" + i);
+
+      expecteds.add(expected);
+    }
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      PagedFetcher<MtBatchResult> fetcher = conn.fetchBatches(filter);
+
+      List<Page<MtBatchResult>> actuals = new ArrayList<>();
+
+      for (Page<MtBatchResult> result : fetcher.pages(2)) {
+        actuals.add(result);
+      }
+
+      assertThat(actuals, is(expecteds));
+    }
+
+    for (int i = 0; i < 4; i++) {
+      verifyGetRequest("/v1/" + spid + "/batches?page=" + i);
+    }
+  }
+
+  @Test
+  public void canStreamBatchesInParallel() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchFilter filter = SinchSMSApi.batchFilter().build();
+
+    List<MtBatchResult> expecteds = new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+      Page<MtBatchResult> page =
+          PagedBatchResult.builder()
+              .page(i)
+              .size(1)
+              .totalSize(4)
+              .addContent(
+                  MtBatchTextSmsResult.builder()
+                      .flashMessage(false)
+                      .feedbackEnabled(false)
+                      .deliveryReport(ReportType.NONE)
+                      .id(TestUtils.freshBatchId())
+                      .body("body " + i)
+                      .canceled(false)
+                      .build())
+              .build();
+
+      stubGetResponse(page, "/v1/" + spid + "/batches?page=" + i);
+
+      expecteds.addAll(page.content());
+    }
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      List<MtBatchResult> actuals =
+          conn.fetchBatches(filter).parallelStream().collect(Collectors.toList());
+
+      assertThat(actuals, is(expecteds));
+    }
+
+    for (int i = 0; i < 4; i++) {
+      verifyGetRequest("/v1/" + spid + "/batches?page=" + i);
+    }
+  }
+
+  @Test
+  public void canPublishBatches() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchFilter filter = SinchSMSApi.batchFilter().build();
+
+    List<MtBatchResult> expecteds = new ArrayList<>();
+
+    for (int i = 0; i < 3; i++) {
+      Page<MtBatchResult> page =
+          PagedBatchResult.builder()
+              .page(i)
+              .size(1)
+              .totalSize(3)
+              .addContent(
+                  MtBatchTextSmsResult.builder()
+                      .flashMessage(false)
+                      .feedbackEnabled(false)
+                      .deliveryReport(ReportType.NONE)
+                      .id(TestUtils.freshBatchId())
+                      .body("body " + i)
+                      .canceled(false)
+                      .build())
+              .build();
+
+      stubGetResponse(page, "/v1/" + spid + "/batches?page=" + i);
+
+      expecteds.addAll(page.content());
+    }
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      final List<MtBatchResult> actuals = new ArrayList<>();
+      final AtomicReference<Throwable> error = new AtomicReference<>();
+      final CountDownLatch done = new CountDownLatch(1);
+
+      PagedPublisher.from(conn.fetchBatches(filter))
+          .subscribe(
+              new Subscriber<MtBatchResult>() {
+
+                @Override
+                public void onSubscribe(Subscription s) {
+                  s.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(MtBatchResult t) {
+                  actuals.add(t);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                  error.set(t);
+                  done.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                  done.countDown();
+                }
+              });
+
+      assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+      assertThat(error.get(), is(nullValue()));
+      assertThat(actuals, is(expecteds));
+    }
+
+    for (int i = 0; i < 3; i++) {
+      verifyGetRequest("/v1/" + spid + "/batches?page=" + i);
+    }
+  }
+
   @Test
   public void canFetchDeliveryReportSync() throws Exception {
     String spid = TestUtils.freshServicePlanId();
@@ -1591,6 +3001,52 @@ public class ApiConnectionIT {
     verifyGetRequest(path);
   }
 
+  @Test
+  public void canFetchDeliveryReportWithCompactRecipients() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+
+    String path = "/v1/" + spid + "/batches/" + batchId + "/delivery_report?type=full";
+
+    final BatchDeliveryReportSms expected =
+        BatchDeliveryReportSms.builder()
+            .batchId(batchId)
+            .totalMessageCount(4)
+            .addStatus(
+                Status.builder()
+                    .code(0)
+                    .status(DeliveryStatus.DELIVERED)
+                    .count(3)
+                    .addRecipient("46701234567", "+46701234568", "SINCH")
+                    .build())
+            .addStatus(
+                Status.builder()
+                    .code(402)
+                    .status(DeliveryStatus.FAILED)
+                    .count(1)
+                    .addRecipient("0046701234569")
+                    .build())
+            .build();
+
+    stubGetResponse(expected, path);
+
+    BatchDeliveryReportParams filter = SinchSMSApi.batchDeliveryReportParams().fullReport().build();
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .compactRecipients(true)
+            .start(); ) {
+      BatchDeliveryReport actual = conn.fetchDeliveryReport(batchId, filter);
+      assertThat(actual, is((BatchDeliveryReport) expected));
+      assertThat(actual.statuses().get(1).recipients().get(0), is("0046701234569"));
+    }
+
+    verifyGetRequest(path);
+  }
+
   @Test
   public void canFetchDeliveryReportAsync() throws Exception {
     String spid = TestUtils.freshServicePlanId();
@@ -3003,6 +4459,176 @@ public class ApiConnectionIT {
     verifyGetRequest(path);
   }
 
+  @Test
+  public void canResumeInboundsExport() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    InboundsFilter filter =
+        SinchSMSApi.inboundsFilter()
+            .startDate(LocalDate.of(2024, 1, 1))
+            .endDate(LocalDate.of(2024, 1, 3))
+            .build();
+    OffsetDateTime time = OffsetDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    String window1 = "/v1/" + spid + "/inbounds?page=%d&start_date=2024-01-01&end_date=2024-01-02";
+    String window2 = "/v1/" + spid + "/inbounds?page=0&start_date=2024-01-02&end_date=2024-01-03";
+
+    List<MoSms> expecteds = new ArrayList<>();
+
+    for (int i = 0; i < 3; i++) {
+      Page<MoSms> page =
+          PagedInboundsResult.builder()
+              .page(i == 2 ? 0 : i)
+              .size(1)
+              .totalSize(i == 2 ? 1 : 2)
+              .addContent(
+                  MoTextSms.builder()
+                      .sender("987654321")
+                      .recipient("54321")
+                      .id(TestUtils.freshSmsId())
+                      .receivedAt(time.plusHours(6 * i))
+                      .body("body " + i)
+                      .build())
+              .build();
+
+      stubGetResponse(page, i == 2 ? window2 : String.format(window1, i));
+
+      expecteds.addAll(page.content());
+    }
+
+    // The second window first fails.
+    wm.stubFor(get(urlEqualTo(window2)).willReturn(aResponse().withStatus(500)));
+
+    try (ApiConnection conn =
+        ApiConnection.builder()
+            .servicePlanId(spid)
+            .token("tok")
+            .endpoint("http://localhost:" + wm.port())
+            .start(); ) {
+      ResumableExport<MoSms> export =
+          ResumableExport.inbounds(filter).connection(conn).maxConcurrency(1).build();
+
+      final List<MoSms> actuals = Collections.synchronizedList(new ArrayList<MoSms>());
+
+      try {
+        export.run(page -> actuals.addAll(page.content()));
+        fail("expected failure");
+      } catch (UnexpectedResponseException e) {
+        assertThat(actuals, is(expecteds.subList(0, 2)));
+      }
+
+      stubGetResponse(
+          PagedInboundsResult.builder()
+              .page(0)
+              .size(1)
+              .totalSize(1)
+              .addContent(expecteds.get(2))
+              .build(),
+          window2);
+
+      ExportCheckpoint checkpoint = export.run(page -> actuals.addAll(page.content()));
+
+      assertThat(actuals, is(expecteds));
+      assertThat(checkpoint.isComplete(), is(true));
+      assertThat(checkpoint.windows().get(0).lastSeen().isEqual(time.plusHours(6)), is(true));
+    }
+
+    wm.verify(1, getRequestedFor(urlEqualTo(String.format(window1, 0))));
+    wm.verify(1, getRequestedFor(urlEqualTo(String.format(window1, 1))));
+    wm.verify(2, getRequestedFor(urlEqualTo(window2)));
+  }
+
+  @Test
+  public void canPollDeliveryReportUntilFinal() throws Exception {
+    String spid = TestUtils.freshServicePlanId();
+    BatchId batchId = TestUtils.freshBatchId();
+
+    String path = "/v1/" + spid + "/batches/" + batchId + "/delivery_report?type=summary";
+
+    final BatchDeliveryReportSms dispatched =
+        BatchDeliveryReportSms.builder()
+            .batchId(batchId)
+            .totalMessageCount(2)
+            .addStatus(Status.builder().code(0).status(DeliveryStatus.DISPATCHED).count(2).build())
+            .build();
+
+    final BatchDeliveryReportSms delivered =
+        BatchDeliveryReportSms.builder()
+            .batchId(batchId)
+            .totalMessageCount(2)
+            .addStatus(Status.builder().code(0).status(DeliveryStatus.DELIVERED).count(2).build())
+            .build();
+
+    wm.stubFor(
+        get(urlEqualTo(path))
+            .inScenario("poll")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(
+                aResponse()
+                    .withStatus(200)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(json.writeValueAsBytes(dispatched)))
+            .willSetStateTo("delivered"));
+
+    wm.stubFor(
+        get(urlEqualTo(path))
+            .inScenario("poll")
+            .whenScenarioStateIs("delivered")
+            .willReturn(
+                aResponse()
+                    .withStatus(200)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(json.writeValueAsBytes(delivered))));
+
+    final List<BatchDeliveryReport> updates =
+        Collections.synchronizedList(new ArrayList<BatchDeliveryReport>());
+    final CompletableFuture<BatchDeliveryReport> completed =
+        new CompletableFuture<BatchDeliveryReport>();
+
+    DeliveryReportPoller.Listener listener =
+        new DeliveryReportPoller.Listener() {
+
+          @Override
+          public void updated(BatchDeliveryReport report) {
+            updates.add(report);
+          }
+
+          @Override
+          public void completed(BatchDeliveryReport report) {
+            completed.complete(report);
+          }
+
+          @Override
+          public void failed(BatchId id, Exception e) {
+            completed.completeExceptionally(e);
+          }
+        };
+
+    try (ApiConnection conn =
+            ApiConnection.builder()
+                .servicePlanId(spid)
+                .token("tok")
+                .endpoint("http://localhost:" + wm.port())
+                .start();
+        DeliveryReportPoller poller =
+            DeliveryReportPoller.builder()
+                .connection(conn)
+                .listener(listener)
+                .minInterval(Duration.ofMillis(20))
+                .maxInterval(Duration.ofMillis(50))
+                .tick(Duration.ofMillis(5))
+                .jitter(0)
+                .start(); ) {
+      assertThat(poller.track(batchId), is(true));
+      assertThat(poller.track(batchId), is(false));
+
+      assertThat(completed.get(5, TimeUnit.SECONDS), is((BatchDeliveryReport) delivered));
+      assertThat(updates, is(Arrays.<BatchDeliveryReport>asList(dispatched)));
+      assertThat(poller.tracked().isEmpty(), is(true));
+    }
+
+    wm.verify(2, getRequestedFor(urlEqualTo(path)));
+  }
+
   @Test
   public void canListInboundsWithTwoPages() throws Exception {
     String spid = TestUtils.freshServicePlanId();
@@ -21,19 +21,28 @@ package com.sinch.xms;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import com.sinch.testsupport.TestUtils;
+import com.sinch.xms.api.MtBatchResult;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.BasicFuture;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
@@ -154,6 +163,158 @@ public class ApiConnectionTest {
     assertThat(client.isRunning(), is(false));
   }
 
+  @Test
+  public void derivedConnectionSharesHttpClient() throws Exception {
+    ApiConnection conn = ApiConnection.builder().token("token").servicePlanId("spid").build();
+
+    ApiHttpAsyncClient client = (ApiHttpAsyncClient) conn.httpClient();
+
+    conn.start();
+
+    ApiConnection derived = conn.withDeadline(Duration.ofSeconds(1));
+
+    assertThat(derived.deadline(), is(Duration.ofSeconds(1)));
+    assertThat(derived.httpClient(), is(sameInstance((HttpAsyncClient) client)));
+    assertThat(conn.deadline(), is(nullValue()));
+
+    derived.close();
+
+    assertThat(client.isRunning(), is(true));
+
+    conn.close();
+
+    assertThat(client.isRunning(), is(false));
+  }
+
+  @Test
+  public void derivedConnectionSharesCodecs() throws Exception {
+    ApiConnection conn = ApiConnection.builder().token("token").servicePlanId("spid").build();
+
+    ApiConnection derived = conn.withDeadline(Duration.ofSeconds(1));
+    ApiConnection derivedTwice = derived.withDeadline(Duration.ofSeconds(2));
+
+    assertThat(derived.codecs(), is(sameInstance(conn.codecs())));
+    assertThat(derivedTwice.codecs(), is(sameInstance(conn.codecs())));
+    assertThat(derived, is(conn.withDeadline(Duration.ofSeconds(1))));
+  }
+
+  @Test
+  public void copyHasCodecsOfItsOwn() throws Exception {
+    ApiConnection conn = ApiConnection.builder().token("token").servicePlanId("spid").build();
+
+    ApiConnection copy = ApiConnection.builder().using(conn).prettyPrintJson(true).build();
+
+    assertThat(copy.codecs(), is(not(sameInstance(conn.codecs()))));
+    assertThat(copy.withDeadline(Duration.ofSeconds(1)).codecs(), is(sameInstance(copy.codecs())));
+  }
+
+  @Test
+  public void copyStartsAndClosesSharedHttpClient() throws Exception {
+    ApiConnection conn = ApiConnection.builder().token("token").servicePlanId("spid").build();
+
+    ApiHttpAsyncClient client = (ApiHttpAsyncClient) conn.httpClient();
+
+    ApiConnection copy = ApiConnection.builder().using(conn).servicePlanId("other").build();
+
+    assertThat(copy.httpClient(), is(sameInstance((HttpAsyncClient) client)));
+
+    copy.start();
+
+    assertThat(client.isRunning(), is(true));
+
+    copy.close();
+
+    assertThat(client.isRunning(), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveDeadline() throws Exception {
+    ApiConnection.builder()
+        .token("token")
+        .servicePlanId("spid")
+        .build()
+        .withDeadline(Duration.ZERO);
+  }
+
+  @Test
+  public void completesExpiredCallsOffSchedulerThread() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final BlockingQueue<String> threads = new LinkedBlockingQueue<String>();
+
+    ApiConnection conn =
+        ApiConnection.builder()
+            .token("token")
+            .servicePlanId("spid")
+            .deadline(Duration.ofMillis(50))
+            .httpClient(
+                new DummyClient() {
+
+                  @Override
+                  public <T> Future<T> execute(
+                      HttpAsyncRequestProducer requestProducer,
+                      HttpAsyncResponseConsumer<T> responseConsumer,
+                      FutureCallback<T> callback) {
+                    // An exchange that never completes.
+                    return new BasicFuture<T>(null);
+                  }
+
+                  @Override
+                  public void close() throws IOException {}
+                })
+            .build();
+
+    FutureCallback<MtBatchResult> blocking =
+        new FutureCallback<MtBatchResult>() {
+
+          @Override
+          public void completed(MtBatchResult result) {}
+
+          @Override
+          public void failed(Exception ex) {
+            threads.add(Thread.currentThread().getName());
+
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+
+          @Override
+          public void cancelled() {}
+        };
+
+    FutureCallback<MtBatchResult> recording =
+        new FutureCallback<MtBatchResult>() {
+
+          @Override
+          public void completed(MtBatchResult result) {}
+
+          @Override
+          public void failed(Exception ex) {
+            threads.add(Thread.currentThread().getName());
+          }
+
+          @Override
+          public void cancelled() {}
+        };
+
+    try {
+      conn.fetchBatchAsync(TestUtils.freshBatchId(), blocking);
+      conn.fetchBatchAsync(TestUtils.freshBatchId(), recording);
+
+      // The blocked callback must not delay the deadline of the second call.
+      for (int i = 0; i < 2; i++) {
+        String thread = threads.poll(5, TimeUnit.SECONDS);
+
+        assertThat(thread, is(not(nullValue())));
+        assertThat(thread, is(not("xms-scheduler")));
+      }
+    } finally {
+      release.countDown();
+    }
+  }
+
   @Test
   public void leavesExternalHttpClientAlone() throws Exception {
     final AtomicBoolean clientClosed = new AtomicBoolean();
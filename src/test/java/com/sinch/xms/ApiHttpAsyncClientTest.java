@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import org.junit.Test;
+
+public class ApiHttpAsyncClientTest {
+
+  @Test
+  public void canBuildCustomizedClient() throws Exception {
+    ApiHttpAsyncClient client =
+        ApiHttpAsyncClient.builder()
+            .maxConnectionsTotal(500)
+            .maxConnectionsPerRoute(250)
+            .ioThreadCount(2)
+            .connectTimeout(Duration.ofSeconds(5))
+            .socketTimeout(Duration.ofSeconds(10))
+            .socketSendBufferSize(64 * 1024)
+            .socketReceiveBufferSize(64 * 1024)
+            .tcpNoDelay(true)
+            .connectionTimeToLive(Duration.ofMinutes(5))
+            .evictIdleConnections(Duration.ofSeconds(30))
+            .maxPendingRequests(1000)
+            .build();
+
+    assertThat(client.isRunning(), is(false));
+    assertThat(client.poolStats().getMax(), is(500));
+    assertThat(client.pendingRequests(), is(0));
+
+    client.start();
+
+    assertThat(client.isRunning(), is(true));
+
+    client.close();
+
+    assertThat(client.isRunning(), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveConnectionLimit() throws Exception {
+    ApiHttpAsyncClient.builder().maxConnectionsTotal(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeTimeout() throws Exception {
+    ApiHttpAsyncClient.builder().socketTimeout(Duration.ofSeconds(-1));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void rejectsNullTimeout() throws Exception {
+    ApiHttpAsyncClient.builder().connectTimeout(null);
+  }
+}
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.sinch.xms.api.MtBatchCreate;
+import java.io.IOException;
+import java.time.Duration;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+
+public class BulkSenderTest {
+
+  @Test(expected = IllegalStateException.class)
+  public void requiresConnection() throws Exception {
+    BulkSender.builder().build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveMaxInFlight() throws Exception {
+    BulkSender.builder().maxInFlight(0);
+  }
+
+  @Test
+  public void emptySenderHasEmptySummary() throws Exception {
+    BulkSender sender =
+        BulkSender.builder()
+            .connection(ApiConnection.builder().servicePlanId("spid").token("tok").build())
+            .maxInFlight(8)
+            .build();
+
+    BulkSendSummary summary = sender.summary();
+
+    assertThat(sender.inFlight(), is(0));
+    assertThat(summary.submitted(), is(0L));
+    assertThat(summary.elapsed(), is(Duration.ZERO));
+    assertThat(summary.batchesPerSecond(), is(0.0));
+  }
+
+  @Test
+  public void rethrowsPublisherError() throws Exception {
+    BulkSender sender =
+        BulkSender.builder()
+            .connection(ApiConnection.builder().servicePlanId("spid").token("tok").build())
+            .build();
+
+    try {
+      sender.sendAllPublished(failing(new IllegalStateException("boom")));
+      fail("expected exception");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("boom"));
+    }
+
+    try {
+      sender.sendAllPublished(failing(new IOException("boom")));
+      fail("expected exception");
+    } catch (ConcurrentException e) {
+      assertThat(e.getCause(), is(instanceOf(IOException.class)));
+    }
+
+    assertThat(sender.inFlight(), is(0));
+    assertThat(sender.summary().submitted(), is(0L));
+  }
+
+  @Test
+  public void summaryComputesRates() throws Exception {
+    BulkSendSummary summary =
+        BulkSendSummaryImpl.builder()
+            .submitted(10)
+            .succeeded(8)
+            .failed(2)
+            .recipients(40)
+            .elapsed(Duration.ofSeconds(2))
+            .build();
+
+    assertThat(summary.batchesPerSecond(), is(5.0));
+    assertThat(summary.recipientsPerSecond(), is(20.0));
+  }
+
+  private static Publisher<MtBatchCreate> failing(final Throwable t) {
+    return subscriber ->
+        subscriber.onSubscribe(
+            new Subscription() {
+
+              @Override
+              public void request(long n) {
+                subscriber.onError(t);
+              }
+
+              @Override
+              public void cancel() {}
+            });
+  }
+}
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.sinch.testsupport.TestUtils;
+import com.sinch.xms.api.DeliveryStatus;
+import com.sinch.xms.api.RecipientDeliveryReportSms;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.Test;
+
+/**
+ * Load test of {@link CallbackReceiver}. A local generator posts recipient delivery reports from
+ * several threads over keep-alive connections, retrying callbacks answered with 503 like XMS does,
+ * and the test verifies that every callback reaches the handler exactly once.
+ */
+public class CallbackReceiverLoadIT {
+
+  private static final int GENERATOR_THREADS = 8;
+
+  private static final int CALLBACKS_PER_THREAD = 2500;
+
+  @Test
+  public void handlesSustainedCallbackLoad() throws Exception {
+    final LongAdder handled = new LongAdder();
+    final AtomicLong retries = new AtomicLong();
+
+    final byte[] body =
+        new ApiObjectMapper(false)
+            .writeValueAsBytes(
+                RecipientDeliveryReportSms.builder()
+                    .batchId(TestUtils.freshBatchId())
+                    .recipient("987654321")
+                    .code(0)
+                    .status(DeliveryStatus.DELIVERED)
+                    .at(OffsetDateTime.now())
+                    .build());
+
+    ExecutorService generator = Executors.newFixedThreadPool(GENERATOR_THREADS);
+
+    try (CallbackReceiver receiver =
+        CallbackReceiver.builder()
+            .queueCapacity(1000)
+            .onRecipientDeliveryReport(report -> handled.increment())
+            .start()) {
+      final URL url = new URL("http://localhost:" + receiver.address().getPort() + "/");
+
+      long start = System.nanoTime();
+
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int t = 0; t < GENERATOR_THREADS; t++) {
+        futures.add(
+            generator.submit(
+                () -> {
+                  for (int i = 0; i < CALLBACKS_PER_THREAD; i++) {
+                    while (post(url, body) == 503) {
+                      retries.incrementAndGet();
+                      Thread.sleep(1);
+                    }
+                  }
+
+                  return null;
+                }));
+      }
+
+      for (Future<?> f : futures) {
+        f.get(5, TimeUnit.MINUTES);
+      }
+
+      long elapsed = System.nanoTime() - start;
+      long total = (long) GENERATOR_THREADS * CALLBACKS_PER_THREAD;
+
+      System.out.printf(
+          "received %d callbacks in %d ms (%.0f/s), %d retries%n",
+          total, TimeUnit.NANOSECONDS.toMillis(elapsed), total * 1e9 / elapsed, retries.get());
+
+      receiver.close();
+
+      assertThat(receiver.received(), is(total));
+      assertThat(handled.sum(), is(total));
+      assertThat(receiver.failed(), is(0L));
+    } finally {
+      generator.shutdown();
+    }
+  }
+
+  private static int post(URL url, byte[] body) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    conn.setFixedLengthStreamingMode(body.length);
+    conn.setRequestProperty("Content-Type", "application/json");
+
+    try (OutputStream out = conn.getOutputStream()) {
+      out.write(body);
+    }
+
+    int status = conn.getResponseCode();
+
+    // Drain the response to let the connection be reused.
+    try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+      if (in != null) {
+        while (in.read() != -1) {}
+      }
+    }
+
+    return status;
+  }
+}
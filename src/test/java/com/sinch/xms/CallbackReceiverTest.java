@@ -0,0 +1,280 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.sinch.testsupport.TestUtils;
+import com.sinch.xms.api.BatchDeliveryReport;
+import com.sinch.xms.api.BatchDeliveryReportSms;
+import com.sinch.xms.api.DeliveryStatus;
+import com.sinch.xms.api.MoSms;
+import com.sinch.xms.api.MoTextSms;
+import com.sinch.xms.api.RecipientDeliveryReport;
+import com.sinch.xms.api.RecipientDeliveryReportSms;
+import com.sinch.xms.api.Status;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class CallbackReceiverTest {
+
+  private final ApiObjectMapper json = new ApiObjectMapper(false);
+
+  private final OffsetDateTime time = OffsetDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+  @Test
+  public void dispatchesEventsToHandlers() throws Exception {
+    BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+
+    RecipientDeliveryReport report =
+        RecipientDeliveryReportSms.builder()
+            .batchId(TestUtils.freshBatchId())
+            .recipient("987654321")
+            .code(0)
+            .status(DeliveryStatus.DELIVERED)
+            .at(time)
+            .build();
+
+    MoSms mo =
+        MoTextSms.builder()
+            .id(TestUtils.freshSmsId())
+            .sender("987654321")
+            .recipient("12345")
+            .receivedAt(time)
+            .body("hello")
+            .build();
+
+    BatchDeliveryReport batchReport =
+        BatchDeliveryReportSms.builder()
+            .batchId(TestUtils.freshBatchId())
+            .totalMessageCount(1)
+            .addStatus(
+                Status.builder()
+                    .code(0)
+                    .status(DeliveryStatus.DELIVERED)
+                    .count(1)
+                    .addRecipient("987654321")
+                    .build())
+            .build();
+
+    try (CallbackReceiver receiver =
+        CallbackReceiver.builder()
+            .onRecipientDeliveryReport(events::add)
+            .onInbound(events::add)
+            .onBatchDeliveryReport(events::add)
+            .start()) {
+      assertThat(post(receiver, json.writeValueAsString(report)), is(200));
+      assertThat(events.poll(10, TimeUnit.SECONDS), is((Object) report));
+
+      assertThat(post(receiver, json.writeValueAsString(mo)), is(200));
+      assertThat(events.poll(10, TimeUnit.SECONDS), is((Object) mo));
+
+      assertThat(post(receiver, json.writeValueAsString(batchReport)), is(200));
+      assertThat(events.poll(10, TimeUnit.SECONDS), is((Object) batchReport));
+
+      assertThat(receiver.received(), is(3L));
+    }
+  }
+
+  @Test
+  public void canParseLargeBodies() throws Exception {
+    BlockingQueue<MoSms> events = new LinkedBlockingQueue<MoSms>();
+
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      body.append((char) ('a' + i % 26));
+    }
+
+    MoSms mo =
+        MoTextSms.builder()
+            .id(TestUtils.freshSmsId())
+            .sender("987654321")
+            .recipient("12345")
+            .receivedAt(time)
+            .body(body.toString())
+            .build();
+
+    try (CallbackReceiver receiver =
+        CallbackReceiver.builder()
+            .bufferPool(ResponseBufferPool.builder().minBufferSize(16).maxBufferSize(64).build())
+            .onInbound(events::add)
+            .start()) {
+      assertThat(post(receiver, json.writeValueAsString(mo)), is(200));
+      assertThat(events.poll(10, TimeUnit.SECONDS), is(mo));
+    }
+  }
+
+  @Test
+  public void rejectsBadCallbacks() throws Exception {
+    try (CallbackReceiver receiver = CallbackReceiver.builder().onInbound(mo -> {}).start()) {
+      assertThat(post(receiver, "{\"type\": \"mo_text\", "), is(400));
+      assertThat(post(receiver, "{\"type\": \"unknown\"}"), is(400));
+      assertThat(post(receiver, "[1, 2, 3]"), is(400));
+
+      // There is no handler of recipient delivery reports.
+      assertThat(post(receiver, "{\"type\": \"recipient_delivery_report_sms\"}"), is(400));
+
+      HttpURLConnection conn = connect(receiver);
+      assertThat(conn.getResponseCode(), is(405));
+
+      assertThat(receiver.rejected(), is(4L));
+      assertThat(receiver.received(), is(0L));
+    }
+  }
+
+  @Test
+  public void rejectsTooLargeCallbacks() throws Exception {
+    StringBuilder body = new StringBuilder("{\"type\": \"mo_text\", \"body\": \"");
+    for (int i = 0; i < 1000; i++) {
+      body.append('a');
+    }
+    body.append("\"}");
+
+    try (CallbackReceiver receiver =
+        CallbackReceiver.builder()
+            .bufferPool(ResponseBufferPool.builder().minBufferSize(16).maxBufferSize(64).build())
+            .maxBodySize(100)
+            .onInbound(mo -> {})
+            .start()) {
+      assertThat(post(receiver, body.toString()), is(413));
+
+      HttpURLConnection conn = connect(receiver);
+      conn.setRequestMethod("POST");
+      conn.setDoOutput(true);
+      conn.setChunkedStreamingMode(64);
+
+      try (OutputStream out = conn.getOutputStream()) {
+        out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+      }
+
+      assertThat(conn.getResponseCode(), is(413));
+
+      assertThat(receiver.rejected(), is(2L));
+      assertThat(receiver.received(), is(0L));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveMaxBodySize() {
+    CallbackReceiver.builder().maxBodySize(0);
+  }
+
+  @Test
+  public void rejectsCallbacksWhenQueueIsFull() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    String mo =
+        json.writeValueAsString(
+            MoTextSms.builder()
+                .id(TestUtils.freshSmsId())
+                .sender("987654321")
+                .recipient("12345")
+                .receivedAt(time)
+                .body("hello")
+                .build());
+
+    try (CallbackReceiver receiver =
+        CallbackReceiver.builder()
+            .handlerThreads(1)
+            .queueCapacity(1)
+            .onInbound(
+                m -> {
+                  blocked.countDown();
+                  try {
+                    release.await();
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                })
+            .start()) {
+      assertThat(post(receiver, mo), is(200));
+      assertThat(blocked.await(10, TimeUnit.SECONDS), is(true));
+
+      assertThat(post(receiver, mo), is(200));
+      assertThat(post(receiver, mo), is(503));
+
+      release.countDown();
+
+      assertThat(receiver.received(), is(2L));
+      assertThat(receiver.rejected(), is(1L));
+    }
+  }
+
+  @Test
+  public void countsFailedHandlers() throws Exception {
+    final CountDownLatch handled = new CountDownLatch(1);
+
+    String mo =
+        json.writeValueAsString(
+            MoTextSms.builder()
+                .id(TestUtils.freshSmsId())
+                .sender("987654321")
+                .recipient("12345")
+                .receivedAt(time)
+                .body("hello")
+                .build());
+
+    CallbackReceiver receiver =
+        CallbackReceiver.builder()
+            .onInbound(
+                m -> {
+                  handled.countDown();
+                  throw new IllegalStateException("fail");
+                })
+            .start();
+
+    assertThat(post(receiver, mo), is(200));
+    assertThat(handled.await(10, TimeUnit.SECONDS), is(true));
+
+    receiver.close();
+
+    assertThat(receiver.failed(), is(1L));
+  }
+
+  private static HttpURLConnection connect(CallbackReceiver receiver) throws IOException {
+    URL url = new URL("http://localhost:" + receiver.address().getPort() + "/");
+    return (HttpURLConnection) url.openConnection();
+  }
+
+  private static int post(CallbackReceiver receiver, String body) throws IOException {
+    HttpURLConnection conn = connect(receiver);
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    conn.setRequestProperty("Content-Type", "application/json");
+
+    try (OutputStream out = conn.getOutputStream()) {
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    return conn.getResponseCode();
+  }
+}
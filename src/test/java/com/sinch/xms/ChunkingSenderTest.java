@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.sinch.xms.api.MtBatchBinarySmsCreate;
+import com.sinch.xms.api.MtBatchCreate;
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import com.sinch.xms.api.ParameterValues;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class ChunkingSenderTest {
+
+  @Test(expected = IllegalStateException.class)
+  public void requiresConnection() throws Exception {
+    ChunkingSender.builder().build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveChunkSize() throws Exception {
+    ChunkingSender.builder().chunkSize(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveMaxConcurrency() throws Exception {
+    ChunkingSender.builder().maxConcurrency(0);
+  }
+
+  @Test
+  public void chunkKeepsOnlySubstitutionsOfItsRecipients() throws Exception {
+    MtBatchTextSmsCreate original =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("111", "222", "333", "444")
+            .body("Hello, ${name}")
+            .clientReference("ref")
+            .putParameter(
+                "name",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("111", "Jane")
+                    .putSubstitution("333", "Joe")
+                    .defaultValue("you")
+                    .build())
+            .putParameter(
+                "code", SinchSMSApi.parameterValues().putSubstitution("444", "42").build())
+            .build();
+
+    MtBatchCreate template = ChunkingSender.chunk(original, original, 0, 2);
+    MtBatchCreate actual = ChunkingSender.chunk(template, original, 2, 4);
+
+    MtBatchTextSmsCreate expected =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("333", "444")
+            .body("Hello, ${name}")
+            .clientReference("ref")
+            .putParameter(
+                "name",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("333", "Joe")
+                    .defaultValue("you")
+                    .build())
+            .putParameter(
+                "code", SinchSMSApi.parameterValues().putSubstitution("444", "42").build())
+            .build();
+
+    assertThat(actual, is((MtBatchCreate) expected));
+    assertThat(
+        ((MtBatchTextSmsCreate) template).parameters().get("code"),
+        is(ParameterValues.builder().build()));
+  }
+
+  @Test
+  public void chunkOfBinaryBatchKeepsBody() throws Exception {
+    MtBatchBinarySmsCreate original =
+        SinchSMSApi.batchBinarySms()
+            .sender("12345")
+            .addRecipient("111", "222", "333")
+            .body(new byte[] {1, 2, 3})
+            .udh(new byte[] {4, 5})
+            .build();
+
+    MtBatchBinarySmsCreate actual =
+        (MtBatchBinarySmsCreate) ChunkingSender.chunk(original, original, 2, 3);
+
+    assertThat(actual.recipients(), is(Collections.singletonList("333")));
+    assertThat(actual.body(), is(new byte[] {1, 2, 3}));
+    assertThat(actual.udh(), is(new byte[] {4, 5}));
+  }
+
+  @Test
+  public void chunksAreBoundedBySize() throws Exception {
+    MtBatchTextSmsCreate original =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("111", "222", "333")
+            .body("Hi")
+            .build();
+
+    assertThat(
+        ChunkingSender.chunk(original, original, 0, 2).recipients(),
+        is(Arrays.asList("111", "222")));
+  }
+}
@@ -0,0 +1,235 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+  private final List<CircuitBreaker.State> transitions = new ArrayList<CircuitBreaker.State>();
+
+  private CircuitBreaker breaker() {
+    CircuitBreaker breaker =
+        CircuitBreaker.builder()
+            .windowSize(10)
+            .minimumCalls(4)
+            .failureRateThreshold(0.5)
+            .slowCallRateThreshold(0.75)
+            .slowCallDuration(Duration.ofSeconds(1))
+            .openDuration(Duration.ofSeconds(30))
+            .probeCalls(2)
+            .clock(now::get)
+            .build();
+
+    breaker.addListener((b, from, to) -> transitions.add(to));
+
+    return breaker;
+  }
+
+  private static void call(CircuitBreaker breaker, Exception failure) {
+    breaker.record(breaker.acquirePermission(), 0, failure);
+  }
+
+  private static UnexpectedResponseException response(int status) {
+    return new UnexpectedResponseException(
+        new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "status"));
+  }
+
+  private static void assertRejected(CircuitBreaker breaker) {
+    try {
+      breaker.acquirePermission();
+      fail("Expected exception, got none");
+    } catch (CircuitBreakerOpenException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void staysClosedBelowMinimumCalls() throws Exception {
+    CircuitBreaker breaker = breaker();
+
+    for (int i = 0; i < 3; i++) {
+      call(breaker, new IOException());
+    }
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.CLOSED));
+  }
+
+  @Test
+  public void opensOnFailureRate() throws Exception {
+    CircuitBreaker breaker = breaker();
+
+    call(breaker, null);
+    call(breaker, response(503));
+    call(breaker, null);
+    call(breaker, new IOException());
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.OPEN));
+    assertThat(transitions, is(Arrays.asList(CircuitBreaker.State.OPEN)));
+    assertRejected(breaker);
+  }
+
+  @Test
+  public void opensOnExceededDeadlines() throws Exception {
+    CircuitBreaker breaker = breaker();
+
+    for (int i = 0; i < 4; i++) {
+      call(breaker, new DeadlineExceededException(Duration.ofMillis(800)));
+    }
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.OPEN));
+    assertThat(breaker.failureRate(), is(1.0));
+  }
+
+  @Test
+  public void ignoresClientErrors() throws Exception {
+    CircuitBreaker breaker = breaker();
+
+    for (int i = 0; i < 10; i++) {
+      call(breaker, new NotFoundException("/path"));
+      call(breaker, response(429));
+    }
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.CLOSED));
+    assertThat(breaker.failureRate(), is(0.0));
+  }
+
+  @Test
+  public void opensOnSlowCallRate() throws Exception {
+    CircuitBreaker breaker = breaker();
+
+    for (int i = 0; i < 4; i++) {
+      breaker.record(breaker.acquirePermission(), TimeUnit.SECONDS.toNanos(2), null);
+    }
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.OPEN));
+  }
+
+  @Test
+  public void closesAfterSuccessfulProbes() throws Exception {
+    CircuitBreaker breaker = breaker();
+
+    for (int i = 0; i < 4; i++) {
+      call(breaker, new IOException());
+    }
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+    long probe1 = breaker.acquirePermission();
+    long probe2 = breaker.acquirePermission();
+    assertThat(breaker.state(), is(CircuitBreaker.State.HALF_OPEN));
+    assertRejected(breaker);
+
+    breaker.record(probe1, 0, null);
+    breaker.record(probe2, 0, null);
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.CLOSED));
+    assertThat(breaker.failureRate(), is(0.0));
+    assertThat(
+        transitions,
+        is(
+            Arrays.asList(
+                CircuitBreaker.State.OPEN,
+                CircuitBreaker.State.HALF_OPEN,
+                CircuitBreaker.State.CLOSED)));
+  }
+
+  @Test
+  public void ignoresStaleOutcomesWhileHalfOpen() throws Exception {
+    CircuitBreaker breaker = breaker();
+
+    long stale1 = breaker.acquirePermission();
+    long stale2 = breaker.acquirePermission();
+
+    for (int i = 0; i < 4; i++) {
+      call(breaker, new IOException());
+    }
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+    long probe = breaker.acquirePermission();
+    assertThat(breaker.state(), is(CircuitBreaker.State.HALF_OPEN));
+
+    // Calls permitted while closed neither count as probes nor free probe permits.
+    breaker.record(stale1, 0, new IOException());
+    breaker.releasePermission(stale2);
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.HALF_OPEN));
+
+    breaker.acquirePermission();
+    assertRejected(breaker);
+
+    breaker.record(probe, 0, null);
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.HALF_OPEN));
+  }
+
+  @Test
+  public void reopensAfterFailedProbe() throws Exception {
+    CircuitBreaker breaker = breaker();
+
+    for (int i = 0; i < 4; i++) {
+      call(breaker, new IOException());
+    }
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+    call(breaker, new IOException());
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.OPEN));
+    assertRejected(breaker);
+  }
+
+  @Test
+  public void slidingWindowForgetsOldCalls() throws Exception {
+    CircuitBreaker breaker = breaker();
+
+    for (int i = 0; i < 4; i++) {
+      call(breaker, null);
+    }
+
+    call(breaker, new IOException());
+    call(breaker, new IOException());
+    call(breaker, new IOException());
+
+    assertThat(breaker.state(), is(CircuitBreaker.State.CLOSED));
+
+    for (int i = 0; i < 10; i++) {
+      call(breaker, null);
+    }
+
+    assertThat(breaker.failureRate(), is(0.0));
+  }
+}
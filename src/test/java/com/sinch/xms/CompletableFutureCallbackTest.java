@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import org.junit.Test;
+
+public class CompletableFutureCallbackTest {
+
+  @Test
+  public void completesWithCallbackResult() throws Exception {
+    CompletableFuture<Integer> future =
+        CompletableFutureCallback.adapt(
+            callback -> {
+              callback.completed(42);
+              return new FutureTask<Integer>(() -> 42);
+            });
+
+    assertThat(future.get(), is(42));
+  }
+
+  @Test(expected = ExecutionException.class)
+  public void failsWithCallbackFailure() throws Exception {
+    CompletableFuture<Integer> future =
+        CompletableFutureCallback.adapt(
+            callback -> {
+              callback.failed(new IllegalStateException("failed"));
+              return new FutureTask<Integer>(() -> 42);
+            });
+
+    future.get();
+  }
+
+  @Test
+  public void cancelsUnderlyingFuture() throws Exception {
+    final Future<Integer> underlying = new FutureTask<Integer>(() -> 42);
+
+    CompletableFuture<Integer> future = CompletableFutureCallback.adapt(callback -> underlying);
+
+    assertThat(future.cancel(true), is(true));
+    assertThat(underlying.isCancelled(), is(true));
+  }
+
+  @Test
+  public void cancelledCallbackCancelsFuture() throws Exception {
+    CompletableFuture<Integer> future =
+        CompletableFutureCallback.adapt(
+            callback -> {
+              callback.cancelled();
+              return new FutureTask<Integer>(() -> 42);
+            });
+
+    assertThat(future.isCancelled(), is(true));
+  }
+}
@@ -0,0 +1,178 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.sinch.testsupport.TestUtils;
+import com.sinch.xms.api.BatchDeliveryReport;
+import com.sinch.xms.api.BatchDeliveryReportSms;
+import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.DeliveryStatus;
+import com.sinch.xms.api.Status;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class DeliveryReportPollerTest {
+
+  private static final long MIN = 1000;
+
+  private static final long MAX = 600000;
+
+  @Test
+  public void lengthensIntervalWhileUnchanged() {
+    assertThat(DeliveryReportPoller.nextInterval(1000, false, 5000, 0, MIN, MAX), is(2000L));
+    assertThat(DeliveryReportPoller.nextInterval(400000, false, 5000, 0, MIN, MAX), is(MAX));
+  }
+
+  @Test
+  public void shortensIntervalWhenChanged() {
+    assertThat(DeliveryReportPoller.nextInterval(8000, true, 3600000, 0, MIN, MAX), is(4000L));
+    assertThat(DeliveryReportPoller.nextInterval(1000, true, 3600000, 0, MIN, MAX), is(MIN));
+  }
+
+  @Test
+  public void followsAgeOfBatch() {
+    assertThat(DeliveryReportPoller.nextInterval(1000, false, 3600000, 0, MIN, MAX), is(360000L));
+    assertThat(DeliveryReportPoller.nextInterval(1000, false, 36000000, 0, MIN, MAX), is(MAX));
+  }
+
+  @Test
+  public void pollsShortlyAfterExpiry() {
+    assertThat(
+        DeliveryReportPoller.nextInterval(60000, false, 600000, 30000, MIN, MAX), is(31000L));
+    assertThat(
+        DeliveryReportPoller.nextInterval(60000, false, 600000, 300000, MIN, MAX), is(120000L));
+  }
+
+  @Test
+  public void isFinalWhenAllMessagesHaveFinalStatus() {
+    assertThat(DeliveryReportPoller.isFinal(report(2)), is(false));
+    assertThat(
+        DeliveryReportPoller.isFinal(report(2, status(DeliveryStatus.DISPATCHED, 2))), is(false));
+    assertThat(
+        DeliveryReportPoller.isFinal(report(2, status(DeliveryStatus.DELIVERED, 1))), is(false));
+    assertThat(
+        DeliveryReportPoller.isFinal(
+            report(2, status(DeliveryStatus.DELIVERED, 1), status(DeliveryStatus.QUEUED, 1))),
+        is(false));
+    assertThat(
+        DeliveryReportPoller.isFinal(
+            report(2, status(DeliveryStatus.DELIVERED, 1), status(DeliveryStatus.EXPIRED, 1))),
+        is(true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void requiresConnection() {
+    DeliveryReportPoller.builder().start();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveInterval() {
+    DeliveryReportPoller.builder().minInterval(Duration.ZERO);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsInvalidJitter() {
+    DeliveryReportPoller.builder().jitter(1.5);
+  }
+
+  @Test
+  public void keepsPollingWhenFetchThrows() throws Exception {
+    final Map<BatchId, AtomicInteger> failures = new ConcurrentHashMap<BatchId, AtomicInteger>();
+
+    ApiConnection conn =
+        ApiConnection.builder()
+            .token("token")
+            .servicePlanId("spid")
+            .httpClient(new ThrowingClient())
+            .build();
+
+    DeliveryReportPoller.Listener listener =
+        new DeliveryReportPoller.Listener() {
+
+          @Override
+          public void updated(BatchDeliveryReport report) {}
+
+          @Override
+          public void completed(BatchDeliveryReport report) {}
+
+          @Override
+          public void failed(BatchId id, Exception e) {
+            assertThat(e.getMessage(), is("client is closed"));
+            failures.get(id).incrementAndGet();
+          }
+        };
+
+    BatchId[] ids = {TestUtils.freshBatchId(), TestUtils.freshBatchId(), TestUtils.freshBatchId()};
+
+    try (DeliveryReportPoller poller =
+        DeliveryReportPoller.builder()
+            .connection(conn)
+            .listener(listener)
+            .maxConcurrentPolls(1)
+            .minInterval(Duration.ofMillis(10))
+            .maxInterval(Duration.ofMillis(20))
+            .tick(Duration.ofMillis(5))
+            .start()) {
+      for (BatchId id : ids) {
+        failures.put(id, new AtomicInteger());
+        assertThat(poller.track(id), is(true));
+      }
+
+      long stop = System.currentTimeMillis() + 5000;
+      while (!polledTwice(failures) && System.currentTimeMillis() < stop) {
+        Thread.sleep(10);
+      }
+
+      assertThat(polledTwice(failures), is(true));
+      assertThat(poller.tracked().size(), is(3));
+    }
+  }
+
+  private static boolean polledTwice(Map<BatchId, AtomicInteger> failures) {
+    for (AtomicInteger n : failures.values()) {
+      if (n.get() < 2) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static BatchDeliveryReport report(int total, Status... statuses) {
+    BatchDeliveryReportSms.Builder builder =
+        BatchDeliveryReportSms.builder().batchId(TestUtils.freshBatchId()).totalMessageCount(total);
+
+    for (Status status : statuses) {
+      builder.addStatus(status);
+    }
+
+    return builder.build();
+  }
+
+  private static Status status(DeliveryStatus status, int count) {
+    return Status.builder().code(0).status(status).count(count).build();
+  }
+}
@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.sinch.testsupport.TestUtils;
+import com.sinch.xms.api.BatchDeliveryReport;
+import com.sinch.xms.api.BatchDeliveryReportMms;
+import com.sinch.xms.api.BatchDeliveryReportSms;
+import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.DeliveryStatus;
+import com.sinch.xms.api.RecipientDeliveryReport;
+import com.sinch.xms.api.RecipientDeliveryReportMms;
+import com.sinch.xms.api.RecipientDeliveryReportSms;
+import com.sinch.xms.api.Status;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import org.junit.Test;
+
+public class DeliveryStatusAggregatorTest {
+
+  private final BatchId batchId = TestUtils.freshBatchId();
+
+  private final OffsetDateTime time = OffsetDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+  @Test
+  public void countsEachRecipientInItsLatestStatus() throws Exception {
+    DeliveryStatusAggregator aggregator = DeliveryStatusAggregator.builder().build();
+
+    aggregator.ingest(report("111", DeliveryStatus.DISPATCHED, 0, 0));
+    aggregator.ingest(report("222", DeliveryStatus.DISPATCHED, 0, 0));
+    aggregator.ingest(report("111", DeliveryStatus.DELIVERED, 0, 5));
+    aggregator.ingest(report("333", DeliveryStatus.FAILED, 402, 5));
+
+    BatchDeliveryReport expected =
+        BatchDeliveryReportSms.builder()
+            .batchId(batchId)
+            .totalMessageCount(3)
+            .addStatus(status(DeliveryStatus.DISPATCHED, 0, 1))
+            .addStatus(status(DeliveryStatus.DELIVERED, 0, 1))
+            .addStatus(status(DeliveryStatus.FAILED, 402, 1))
+            .build();
+
+    assertThat(aggregator.summary(batchId), is(expected));
+    assertThat(aggregator.count(batchId, DeliveryStatus.DISPATCHED), is(1));
+    assertThat(aggregator.count(batchId, DeliveryStatus.EXPIRED), is(0));
+  }
+
+  @Test
+  public void ignoresLateReportsOfEarlierStates() throws Exception {
+    DeliveryStatusAggregator aggregator = DeliveryStatusAggregator.builder().build();
+
+    aggregator.ingest(report("111", DeliveryStatus.DELIVERED, 0, 5));
+    aggregator.ingest(report("111", DeliveryStatus.DISPATCHED, 0, 0));
+
+    BatchDeliveryReport expected =
+        BatchDeliveryReportSms.builder()
+            .batchId(batchId)
+            .totalMessageCount(1)
+            .addStatus(status(DeliveryStatus.DELIVERED, 0, 1))
+            .build();
+
+    assertThat(aggregator.summary(batchId), is(expected));
+  }
+
+  @Test
+  public void countsEveryReportWithoutRecipientTracking() throws Exception {
+    DeliveryStatusAggregator aggregator =
+        DeliveryStatusAggregator.builder().trackRecipients(false).build();
+
+    aggregator.ingest(report("111", DeliveryStatus.DELIVERED, 0, 5));
+    aggregator.ingest(report("111", DeliveryStatus.DELIVERED, 0, 5));
+
+    assertThat(aggregator.count(batchId, DeliveryStatus.DELIVERED), is(2));
+    assertThat(aggregator.summary(batchId).totalMessageCount(), is(2));
+  }
+
+  @Test
+  public void cachesSummaryUntilChanged() throws Exception {
+    DeliveryStatusAggregator aggregator = DeliveryStatusAggregator.builder().build();
+
+    aggregator.ingest(report("111", DeliveryStatus.DELIVERED, 0, 5));
+
+    BatchDeliveryReport first = aggregator.summary(batchId);
+    assertThat(aggregator.summary(batchId), is(sameInstance(first)));
+
+    aggregator.ingest(report("222", DeliveryStatus.DELIVERED, 0, 5));
+    assertThat(aggregator.summary(batchId).totalMessageCount(), is(2));
+  }
+
+  @Test
+  public void summarizesMmsBatchesAsMms() throws Exception {
+    DeliveryStatusAggregator aggregator = DeliveryStatusAggregator.builder().build();
+
+    aggregator.ingest(
+        RecipientDeliveryReportMms.builder()
+            .batchId(batchId)
+            .recipient("111")
+            .code(0)
+            .status(DeliveryStatus.DELIVERED)
+            .at(time)
+            .clientReference("ref")
+            .build());
+
+    BatchDeliveryReport summary = aggregator.summary(batchId);
+
+    assertThat(summary, is(instanceOf(BatchDeliveryReportMms.class)));
+    assertThat(summary.clientReference(), is("ref"));
+  }
+
+  @Test
+  public void canTrackManyRecipients() throws Exception {
+    DeliveryStatusAggregator aggregator = DeliveryStatusAggregator.builder().build();
+
+    for (int i = 0; i < 10000; i++) {
+      aggregator.ingest(report(String.valueOf(1000000 + i), DeliveryStatus.DISPATCHED, 0, 0));
+    }
+
+    for (int i = 0; i < 10000; i += 2) {
+      aggregator.ingest(report(String.valueOf(1000000 + i), DeliveryStatus.DELIVERED, 0, 1));
+    }
+
+    assertThat(aggregator.count(batchId, DeliveryStatus.DISPATCHED), is(5000));
+    assertThat(aggregator.count(batchId, DeliveryStatus.DELIVERED), is(5000));
+    assertThat(aggregator.summary(batchId).totalMessageCount(), is(10000));
+  }
+
+  @Test
+  public void forgetsRemovedBatches() throws Exception {
+    DeliveryStatusAggregator aggregator = DeliveryStatusAggregator.builder().build();
+
+    aggregator.ingest(report("111", DeliveryStatus.DELIVERED, 0, 5));
+    assertThat(aggregator.batches().contains(batchId), is(true));
+
+    assertThat(aggregator.remove(batchId), is(true));
+    assertThat(aggregator.summary(batchId), is(nullValue()));
+    assertThat(aggregator.remove(batchId), is(false));
+  }
+
+  private RecipientDeliveryReport report(
+      String recipient, DeliveryStatus status, int code, int minutes) {
+    return RecipientDeliveryReportSms.builder()
+        .batchId(batchId)
+        .recipient(recipient)
+        .code(code)
+        .status(status)
+        .at(time.plusMinutes(minutes))
+        .build();
+  }
+
+  private static Status status(DeliveryStatus status, int code, int count) {
+    return Status.builder().status(status).code(code).count(count).build();
+  }
+}
@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.concurrent.FutureCallback;
+import org.junit.Test;
+
+public class ExecutorCallbackWrapperTest {
+
+  private final AtomicInteger completions = new AtomicInteger();
+
+  private final FutureCallback<Integer> countingCallback =
+      new FutureCallback<Integer>() {
+
+        @Override
+        public void completed(Integer result) {
+          completions.addAndGet(result);
+        }
+
+        @Override
+        public void failed(Exception ex) {}
+
+        @Override
+        public void cancelled() {}
+      };
+
+  @Test
+  public void canWrapNull() throws Exception {
+    ExecutorCallbackWrapper wrapper = new ExecutorCallbackWrapper(Runnable::run);
+
+    assertThat(wrapper.wrap(null), is(nullValue()));
+  }
+
+  @Test
+  public void tracksPendingCallbacks() throws Exception {
+    List<Runnable> queue = new ArrayList<Runnable>();
+    ExecutorCallbackWrapper wrapper = new ExecutorCallbackWrapper(queue::add);
+
+    FutureCallback<Integer> callback = wrapper.wrap(countingCallback);
+    callback.completed(1);
+    callback.completed(2);
+
+    assertThat(completions.get(), is(0));
+    assertThat(wrapper.pendingCallbacks(), is(2));
+    assertThat(wrapper.peakPendingCallbacks(), is(2));
+
+    queue.forEach(Runnable::run);
+
+    assertThat(completions.get(), is(3));
+    assertThat(wrapper.pendingCallbacks(), is(0));
+    assertThat(wrapper.peakPendingCallbacks(), is(2));
+    assertThat(wrapper.dispatchedCallbacks(), is(2L));
+  }
+
+  @Test
+  public void runsRejectedCallbackOnCallingThread() throws Exception {
+    ExecutorCallbackWrapper wrapper =
+        new ExecutorCallbackWrapper(
+            r -> {
+              throw new RejectedExecutionException();
+            });
+
+    wrapper.wrap(countingCallback).completed(5);
+
+    assertThat(completions.get(), is(5));
+    assertThat(wrapper.pendingCallbacks(), is(0));
+    assertThat(wrapper.rejectedCallbacks(), is(1L));
+  }
+
+  @Test
+  public void dropsExceptionsOnExecutor() throws Exception {
+    ExecutorCallbackWrapper wrapper = new ExecutorCallbackWrapper(Runnable::run);
+
+    wrapper
+        .wrap(
+            new FutureCallback<Integer>() {
+
+              @Override
+              public void completed(Integer result) {
+                throw new RuntimeException("completed");
+              }
+
+              @Override
+              public void failed(Exception ex) {}
+
+              @Override
+              public void cancelled() {}
+            })
+        .completed(1);
+
+    assertThat(wrapper.dispatchedCallbacks(), is(1L));
+  }
+}
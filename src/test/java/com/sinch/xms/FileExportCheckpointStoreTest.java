@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileExportCheckpointStoreTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void loadsNullIfNoCheckpoint() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("checkpoint.json");
+
+    assertThat(ExportCheckpointStore.file(file).load(), is(nullValue()));
+  }
+
+  @Test
+  public void canSaveAndLoadCheckpoint() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("checkpoint.json");
+    OffsetDateTime start = OffsetDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.ofHours(2));
+
+    ExportCheckpoint expected =
+        ExportCheckpoint.builder()
+            .filter("DeliveryReportFilter{pageSize=0}")
+            .addWindow(
+                ExportCheckpoint.Window.builder()
+                    .start(start)
+                    .end(start.plusDays(1))
+                    .nextPage(2)
+                    .seenElements(200)
+                    .lastSeen(start.plusHours(3))
+                    .build(),
+                ExportCheckpoint.Window.builder()
+                    .start(start.plusDays(1))
+                    .end(start.plusDays(2))
+                    .done(true)
+                    .build())
+            .build();
+
+    ExportCheckpointStore store = ExportCheckpointStore.file(file);
+    store.save(expected);
+    store.save(expected);
+
+    assertThat(store.load(), is(expected));
+    assertThat(Files.list(folder.getRoot().toPath()).count(), is(1L));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsInvalidCheckpoint() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("checkpoint.json");
+    Files.write(file, "{\"windows\":[]}".getBytes(StandardCharsets.UTF_8));
+
+    ExportCheckpointStore.file(file).load();
+  }
+}
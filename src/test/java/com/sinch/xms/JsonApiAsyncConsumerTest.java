@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.sinch.xms.api.ApiError;
+import com.sinch.xms.api.BatchId;
+import com.sinch.xms.api.MtBatchTextSmsResult;
+import com.sinch.xms.api.ReportType;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class JsonApiAsyncConsumerTest {
+
+  private final ApiObjectMapper json = new ApiObjectMapper();
+
+  private final MtBatchTextSmsResult batch =
+      MtBatchTextSmsResult.builder()
+          .flashMessage(false)
+          .feedbackEnabled(false)
+          .deliveryReport(ReportType.NONE)
+          .sender("12345")
+          .addRecipient("123456789", "987654321")
+          .body("Hello, world! åäö € 😀")
+          .canceled(false)
+          .id(BatchId.of("4nQCc1T6Dg"))
+          .createdAt(OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC))
+          .modifiedAt(OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC))
+          .build();
+
+  @Test
+  public void canParseSuccessInSingleChunk() throws Exception {
+    byte[] body = json.writeValueAsBytes(batch);
+
+    assertThat(consume(200, body, body.length, false), is(batch));
+  }
+
+  @Test
+  public void canParseSuccessInSingleByteChunks() throws Exception {
+    byte[] body = json.writeValueAsBytes(batch);
+
+    assertThat(consume(200, body, 1, false), is(batch));
+  }
+
+  @Test
+  public void canParseSuccessInDirectBufferChunks() throws Exception {
+    byte[] body = json.writeValueAsBytes(batch);
+
+    assertThat(consume(201, body, 7, true), is(batch));
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void failsOnMalformedSuccess() throws Exception {
+    byte[] body = "{\"id\": ]".getBytes(StandardCharsets.UTF_8);
+
+    consume(200, body, 3, false);
+  }
+
+  @Test
+  public void canParseErrorInChunks() throws Exception {
+    ApiError error = ApiError.of("syntax_invalid_json", "The JSON is invalid");
+    byte[] body = json.writeValueAsBytes(error);
+
+    try {
+      consume(400, body, 5, false);
+      fail("Expected exception, got none");
+    } catch (ErrorResponseException e) {
+      assertThat(e.getCode(), is(error.code()));
+      assertThat(e.getText(), is(error.text()));
+    }
+  }
+
+  /**
+   * Feeds the given body to a fresh consumer in chunks of the given size.
+   *
+   * @param status the response status code
+   * @param body the response body
+   * @param chunkSize the maximum number of bytes fed at a time
+   * @param direct whether to feed the chunks using direct byte buffers
+   * @return the consumed result
+   * @throws Exception if consumption failed
+   */
+  private MtBatchTextSmsResult consume(int status, byte[] body, int chunkSize, boolean direct)
+      throws Exception {
+    JsonApiAsyncConsumer<MtBatchTextSmsResult> consumer =
+        new JsonApiAsyncConsumer<MtBatchTextSmsResult>(
+            new JsonCodecs(json), MtBatchTextSmsResult.class, ResponseBufferPool.builder().build());
+
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "");
+    consumer.onResponseReceived(response);
+
+    ByteBuffer buf = direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+
+    for (int offset = 0; offset < body.length; offset += chunkSize) {
+      buf.clear();
+      buf.put(body, offset, Math.min(chunkSize, body.length - offset));
+      buf.flip();
+
+      consumer.onByteReceived(buf, null);
+    }
+
+    return consumer.buildResult(null);
+  }
+}
@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.sinch.testsupport.TestUtils;
+import com.sinch.xms.api.MtBatchResult;
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import com.sinch.xms.api.MtBatchTextSmsResult;
+import com.sinch.xms.api.ReportType;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import org.junit.Test;
+
+public class JsonCodecsTest {
+
+  private final ApiObjectMapper json = new ApiObjectMapper(false);
+
+  private final JsonCodecs codecs = new JsonCodecs(json);
+
+  @Test
+  public void reusesReadersAndWriters() throws Exception {
+    assertThat(
+        codecs.reader(MtBatchResult.class), is(sameInstance(codecs.reader(MtBatchResult.class))));
+    assertThat(codecs.reader(String.class), is(sameInstance(codecs.reader(String.class))));
+    assertThat(codecs.writer(String.class), is(sameInstance(codecs.writer(String.class))));
+  }
+
+  @Test
+  public void writesLikeMapper() throws Exception {
+    MtBatchTextSmsCreate batch =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("123456789", "987654321")
+            .body("Hello, world!")
+            .build();
+
+    assertThat(
+        codecs.writer(batch.getClass()).writeValueAsString(batch),
+        is(json.writeValueAsString(batch)));
+  }
+
+  @Test
+  public void readsPolymorphicResult() throws Exception {
+    OffsetDateTime time = OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+    MtBatchTextSmsResult batch =
+        MtBatchTextSmsResult.builder()
+            .flashMessage(false)
+            .feedbackEnabled(false)
+            .deliveryReport(ReportType.NONE)
+            .sender("12345")
+            .addRecipient("123456789")
+            .body("Hello, world!")
+            .canceled(false)
+            .id(TestUtils.freshBatchId())
+            .createdAt(time)
+            .modifiedAt(time)
+            .build();
+
+    MtBatchResult actual =
+        codecs.reader(MtBatchResult.class).readValue(json.writeValueAsBytes(batch));
+
+    assertThat(actual, is((MtBatchResult) batch));
+  }
+}
@@ -0,0 +1,181 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.sinch.xms.api.MtBatchDryRunResult;
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class MessageAnalyzerTest {
+
+  private static String repeat(String s, int n) {
+    return String.join("", Collections.nCopies(n, s));
+  }
+
+  @Test
+  public void countsGsmParts() throws Exception {
+    assertThat(MessageAnalyzer.numberOfParts(""), is(1));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("a", 160)), is(1));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("a", 161)), is(2));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("a", 306)), is(2));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("a", 307)), is(3));
+  }
+
+  @Test
+  public void countsExtensionCharactersAsTwoSeptets() throws Exception {
+    assertThat(MessageAnalyzer.isGsm7("{€}"), is(true));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("{", 80)), is(1));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("{", 81)), is(2));
+
+    // An escape sequence never straddles two parts, 76 fit in the first part.
+    assertThat(MessageAnalyzer.numberOfParts(repeat("a", 152) + repeat("{", 76)), is(2));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("a", 152) + repeat("{", 77)), is(3));
+  }
+
+  @Test
+  public void countsUnicodeParts() throws Exception {
+    assertThat(MessageAnalyzer.isGsm7("Жанна"), is(false));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("Ж", 70)), is(1));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("Ж", 71)), is(2));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("Ж", 134)), is(2));
+    assertThat(MessageAnalyzer.numberOfParts(repeat("Ж", 135)), is(3));
+  }
+
+  @Test
+  public void neverSplitsSurrogatePairs() throws Exception {
+    String emoji = "😀";
+
+    assertThat(MessageAnalyzer.numberOfParts(repeat(emoji, 35)), is(1));
+    assertThat(MessageAnalyzer.numberOfParts("ЖЖ" + repeat(emoji, 34) + "Ж"), is(2));
+
+    // 134 characters would fit two parts, but the 33rd pair does not fit in the first.
+    assertThat(MessageAnalyzer.numberOfParts("ЖЖ" + repeat(emoji, 33) + repeat("Ж", 66)), is(3));
+  }
+
+  @Test
+  public void expandsParametersPerRecipient() throws Exception {
+    MtBatchTextSmsCreate batch =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("111", "222", "333")
+            .body("Hello ${name}, see ${unknown}")
+            .putParameter(
+                "name",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("111", "Жанна")
+                    .putSubstitution("333", repeat("a", 150))
+                    .defaultValue("you")
+                    .build())
+            .build();
+
+    MtBatchDryRunResult expected =
+        MtBatchDryRunResult.builder()
+            .numberOfRecipients(3)
+            .numberOfMessages(4)
+            .addPerRecipient(
+                MtBatchDryRunResult.PerRecipient.builder()
+                    .recipient("111")
+                    .numberOfParts(1)
+                    .body("Hello Жанна, see ${unknown}")
+                    .encoding("unicode")
+                    .build())
+            .addPerRecipient(
+                MtBatchDryRunResult.PerRecipient.builder()
+                    .recipient("222")
+                    .numberOfParts(1)
+                    .body("Hello you, see ${unknown}")
+                    .encoding("text")
+                    .build())
+            .build();
+
+    assertThat(MessageAnalyzer.dryRun(batch, true, 2), is(expected));
+  }
+
+  @Test
+  public void leavesParameterWithoutValueUnexpanded() throws Exception {
+    MtBatchTextSmsCreate batch =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("111")
+            .body("Hi ${name}")
+            .putParameter(
+                "name", SinchSMSApi.parameterValues().putSubstitution("222", "Joe").build())
+            .build();
+
+    MtBatchDryRunResult actual = MessageAnalyzer.dryRun(batch, true, 100);
+
+    assertThat(actual.perRecipient().get(0).body(), is("Hi ${name}"));
+  }
+
+  @Test
+  public void honorsMaxNumberOfMessageParts() throws Exception {
+    MtBatchTextSmsCreate batch =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("111", "222")
+            .body("${text}")
+            .putParameter(
+                "text",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("111", repeat("a", 200))
+                    .defaultValue("short")
+                    .build())
+            .maxNumberOfMessageParts(1)
+            .build();
+
+    MtBatchDryRunResult actual = MessageAnalyzer.dryRun(batch, true, 1);
+
+    assertThat(actual.numberOfMessages(), is(1));
+    assertThat(actual.perRecipient().get(0).numberOfParts(), is(2));
+  }
+
+  @Test
+  public void analyzesLargeBatches() throws Exception {
+    List<String> recipients = new ArrayList<String>();
+    for (int i = 0; i < 10000; i++) {
+      recipients.add(Integer.toString(1000000 + i));
+    }
+
+    MtBatchTextSmsCreate batch =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .recipients(recipients)
+            .body(repeat("a", 200))
+            .build();
+
+    MtBatchDryRunResult actual = MessageAnalyzer.dryRun(batch);
+
+    assertThat(actual.numberOfRecipients(), is(10000));
+    assertThat(actual.numberOfMessages(), is(20000));
+    assertThat(actual.perRecipient().isEmpty(), is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeNumberOfRecipients() throws Exception {
+    MessageAnalyzer.dryRun(
+        SinchSMSApi.batchTextSms().sender("1").addRecipient("2").body("b").build(), true, -1);
+  }
+}
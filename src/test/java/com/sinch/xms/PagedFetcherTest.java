@@ -19,23 +19,32 @@
  */
 package com.sinch.xms;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeThat;
 
 import com.pholser.junit.quickcheck.Property;
+import com.pholser.junit.quickcheck.generator.InRange;
 import com.pholser.junit.quickcheck.runner.JUnitQuickcheck;
 import com.sinch.xms.api.Page;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import org.apache.http.concurrent.FutureCallback;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 
 @RunWith(JUnitQuickcheck.class)
@@ -94,6 +103,226 @@ public class PagedFetcherTest {
     assertThat(actual, is(expected));
   }
 
+  @Property
+  public void canIterateOverPagesWithPrefetch(
+      final List<List<Integer>> pages, @InRange(minInt = 0, maxInt = 8) int prefetch)
+      throws Exception {
+    // We are always able to fetch at least one page from XMS.
+    assumeThat(pages, hasSize(greaterThanOrEqualTo(1)));
+
+    PagedFetcher<Integer> fetcher = mockedFetcher(pages);
+
+    List<List<Integer>> actual = new ArrayList<List<Integer>>();
+    for (Page<Integer> p : fetcher.pages(prefetch)) {
+      actual.add(new ArrayList<Integer>(p.content()));
+    }
+
+    assertThat(actual, is(pages));
+  }
+
+  @Property
+  public void canIterateOverElementsWithPrefetch(
+      final List<List<Integer>> pages, @InRange(minInt = 0, maxInt = 8) int prefetch)
+      throws Exception {
+    // We are always able to fetch at least one page from XMS.
+    assumeThat(pages, hasSize(greaterThanOrEqualTo(1)));
+
+    PagedFetcher<Integer> fetcher = mockedFetcher(pages);
+
+    List<Integer> expected = new ArrayList<Integer>();
+    for (List<Integer> p : pages) {
+      expected.addAll(p);
+    }
+
+    List<Integer> actual = new ArrayList<Integer>();
+    for (int a : fetcher.elements(prefetch)) {
+      actual.add(a);
+    }
+
+    assertThat(actual, is(expected));
+  }
+
+  @Test
+  public void prefetchKeepsWindowOfFetchesInFlight() throws Exception {
+    final List<Integer> requested = new ArrayList<Integer>();
+
+    PagedFetcher<Integer> fetcher =
+        new PagedFetcher<Integer>() {
+
+          @Override
+          Future<Page<Integer>> fetchAsync(int page, FutureCallback<Page<Integer>> callback) {
+            requested.add(page);
+            return CompletableFuture.completedFuture(
+                mockedPage(page, Arrays.asList(2 * page, 2 * page + 1), 20));
+          }
+        };
+
+    Iterator<Page<Integer>> it = fetcher.pages(3).iterator();
+
+    it.next();
+    assertThat(requested, is(Arrays.asList(0, 1, 2, 3)));
+
+    it.next();
+    assertThat(requested, is(Arrays.asList(0, 1, 2, 3, 4)));
+
+    int pages = 2;
+    while (it.hasNext()) {
+      assertThat(it.next().page(), is(pages++));
+    }
+
+    assertThat(pages, is(10));
+    assertThat(requested, is(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)));
+  }
+
+  @Test
+  public void prefetchCancelsOutstandingFetchesOnFailure() throws Exception {
+    final List<CompletableFuture<Page<Integer>>> futures =
+        new ArrayList<CompletableFuture<Page<Integer>>>();
+
+    PagedFetcher<Integer> fetcher =
+        new PagedFetcher<Integer>() {
+
+          @Override
+          Future<Page<Integer>> fetchAsync(int page, FutureCallback<Page<Integer>> callback) {
+            CompletableFuture<Page<Integer>> future = new CompletableFuture<Page<Integer>>();
+
+            if (page == 0) {
+              future.complete(mockedPage(0, Arrays.asList(0, 1), 8));
+            } else if (page == 1) {
+              future.completeExceptionally(new IOException("fail"));
+            }
+
+            futures.add(future);
+
+            return future;
+          }
+        };
+
+    Iterator<Page<Integer>> it = fetcher.pages(8).iterator();
+
+    it.next();
+    assertThat(futures.size(), is(4));
+
+    try {
+      it.next();
+      fail("expected failure");
+    } catch (RuntimeApiException e) {
+      assertThat(e.getCause().getCause(), is(instanceOf(IOException.class)));
+    }
+
+    assertThat(futures.get(2).isCancelled(), is(true));
+    assertThat(futures.get(3).isCancelled(), is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativePrefetch() throws Exception {
+    mockedFetcher(Arrays.asList(Arrays.asList(1))).pages(-1);
+  }
+
+  @Property
+  public void canStreamElements(
+      @InRange(minInt = 0, maxInt = 200) int totalSize,
+      @InRange(minInt = 1, maxInt = 20) int pageSize)
+      throws Exception {
+    List<List<Integer>> pages = uniformPages(totalSize, pageSize);
+
+    List<Integer> actual = mockedFetcher(pages).stream().collect(Collectors.toList());
+
+    assertThat(actual, is(flatten(pages)));
+  }
+
+  @Property
+  public void canStreamElementsInParallel(
+      @InRange(minInt = 0, maxInt = 200) int totalSize,
+      @InRange(minInt = 1, maxInt = 20) int pageSize)
+      throws Exception {
+    List<List<Integer>> pages = uniformPages(totalSize, pageSize);
+
+    List<Integer> actual = mockedFetcher(pages).parallelStream().collect(Collectors.toList());
+
+    assertThat(actual, is(flatten(pages)));
+  }
+
+  @Test
+  public void spliteratorSplitsByPageRanges() throws Exception {
+    final List<Integer> requested = new ArrayList<Integer>();
+
+    PagedFetcher<Integer> fetcher =
+        new PagedFetcher<Integer>() {
+
+          @Override
+          Future<Page<Integer>> fetchAsync(int page, FutureCallback<Page<Integer>> callback) {
+            requested.add(page);
+            return CompletableFuture.completedFuture(
+                mockedPage(page, Arrays.asList(2 * page, 2 * page + 1), 16));
+          }
+        };
+
+    Spliterator<Integer> suffix = fetcher.spliterator();
+    assertThat(suffix.estimateSize(), is(16L));
+
+    Spliterator<Integer> prefix = suffix.trySplit();
+    assertThat(prefix.estimateSize(), is(8L));
+    assertThat(suffix.estimateSize(), is(8L));
+    assertThat(requested, is(Arrays.asList(0)));
+
+    List<Integer> actual = new ArrayList<Integer>();
+    suffix.forEachRemaining(actual::add);
+    assertThat(actual, is(Arrays.asList(8, 9, 10, 11, 12, 13, 14, 15)));
+    assertThat(requested, is(Arrays.asList(0, 4, 5, 6, 7)));
+
+    actual.clear();
+    prefix.forEachRemaining(actual::add);
+    assertThat(actual, is(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7)));
+    assertThat(requested, is(Arrays.asList(0, 4, 5, 6, 7, 1, 2, 3)));
+  }
+
+  @Test
+  public void streamContinuesWhenResultGrows() throws Exception {
+    PagedFetcher<Integer> fetcher =
+        new PagedFetcher<Integer>() {
+
+          @Override
+          Future<Page<Integer>> fetchAsync(int page, FutureCallback<Page<Integer>> callback) {
+            // The first page claims 2 elements, later pages claim 4.
+            int totalSize = page == 0 ? 2 : 4;
+            return CompletableFuture.completedFuture(
+                mockedPage(page, Arrays.asList(page), totalSize));
+          }
+        };
+
+    List<Integer> actual = fetcher.stream().collect(Collectors.toList());
+
+    assertThat(actual, is(Arrays.asList(0, 1, 2, 3)));
+  }
+
+  @Test
+  public void streamThrowsRuntimeApiExceptionOnFailure() throws Exception {
+    PagedFetcher<Integer> fetcher =
+        new PagedFetcher<Integer>() {
+
+          @Override
+          Future<Page<Integer>> fetchAsync(int page, FutureCallback<Page<Integer>> callback) {
+            CompletableFuture<Page<Integer>> future = new CompletableFuture<Page<Integer>>();
+
+            if (page == 0) {
+              future.complete(mockedPage(0, Arrays.asList(0), 2));
+            } else {
+              future.completeExceptionally(new IOException("fail"));
+            }
+
+            return future;
+          }
+        };
+
+    try {
+      fetcher.stream().count();
+      fail("expected failure");
+    } catch (RuntimeApiException e) {
+      assertThat(e.getCause().getCause(), is(instanceOf(IOException.class)));
+    }
+  }
+
   private static PagedFetcher<Integer> mockedFetcher(final List<List<Integer>> pages) {
     final ExecutorService executor = Executors.newSingleThreadExecutor();
 
@@ -144,4 +373,61 @@ public class PagedFetcherTest {
       }
     };
   }
+
+  private static Page<Integer> mockedPage(
+      final int pageNum, final List<Integer> content, final int totalSize) {
+    return new Page<Integer>() {
+
+      @Override
+      public int page() {
+        return pageNum;
+      }
+
+      @Override
+      public int size() {
+        return content.size();
+      }
+
+      @Override
+      public int totalSize() {
+        return totalSize;
+      }
+
+      @Override
+      public List<Integer> content() {
+        return content;
+      }
+    };
+  }
+
+  private static List<List<Integer>> uniformPages(int totalSize, int pageSize) {
+    List<List<Integer>> pages = new ArrayList<List<Integer>>();
+
+    for (int start = 0; start < totalSize; start += pageSize) {
+      List<Integer> page = new ArrayList<Integer>();
+
+      for (int i = start; i < Math.min(start + pageSize, totalSize); i++) {
+        page.add(i);
+      }
+
+      pages.add(page);
+    }
+
+    // We are always able to fetch at least one page from XMS.
+    if (pages.isEmpty()) {
+      pages.add(new ArrayList<Integer>());
+    }
+
+    return pages;
+  }
+
+  private static List<Integer> flatten(List<List<Integer>> pages) {
+    List<Integer> elements = new ArrayList<Integer>();
+
+    for (List<Integer> p : pages) {
+      elements.addAll(p);
+    }
+
+    return elements;
+  }
 }
@@ -0,0 +1,307 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.sinch.xms.api.ApiError;
+import com.sinch.xms.api.Page;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.concurrent.FutureCallback;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class PagedPublisherTest {
+
+  /** Fetcher of pages of two elements each, holding the futures of requested pages. */
+  private static final class ManualFetcher extends PagedFetcher<Integer> {
+
+    private final int totalSize;
+
+    final List<CompletableFuture<Page<Integer>>> requests =
+        new ArrayList<CompletableFuture<Page<Integer>>>();
+
+    ManualFetcher(int totalSize) {
+      this.totalSize = totalSize;
+    }
+
+    @Override
+    Future<Page<Integer>> fetchAsync(int page, FutureCallback<Page<Integer>> callback) {
+      CompletableFuture<Page<Integer>> future = new CompletableFuture<Page<Integer>>();
+      requests.add(future);
+      return notifying(future, callback);
+    }
+
+    void complete(int page) {
+      List<Integer> content = new ArrayList<Integer>();
+
+      for (int i = 2 * page; i < Math.min(2 * page + 2, totalSize); i++) {
+        content.add(i);
+      }
+
+      requests.get(page).complete(page(page, content, totalSize));
+    }
+  }
+
+  private static class TestSubscriber implements Subscriber<Integer> {
+
+    final List<Integer> values = new ArrayList<Integer>();
+
+    final CountDownLatch done = new CountDownLatch(1);
+
+    Subscription subscription;
+
+    Throwable error;
+
+    boolean completed;
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      subscription = s;
+    }
+
+    @Override
+    public void onNext(Integer t) {
+      values.add(t);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+      done.countDown();
+    }
+  }
+
+  @Test
+  public void fetchesPagesOnDemand() throws Exception {
+    ManualFetcher fetcher = new ManualFetcher(5);
+    TestSubscriber subscriber = new TestSubscriber();
+
+    PagedPublisher.from(fetcher).subscribe(subscriber);
+    assertThat(fetcher.requests.size(), is(0));
+
+    subscriber.subscription.request(1);
+    assertThat(fetcher.requests.size(), is(1));
+
+    fetcher.complete(0);
+    assertThat(subscriber.values, is(Arrays.asList(0)));
+
+    subscriber.subscription.request(1);
+    assertThat(subscriber.values, is(Arrays.asList(0, 1)));
+    assertThat(fetcher.requests.size(), is(1));
+
+    subscriber.subscription.request(2);
+    assertThat(fetcher.requests.size(), is(2));
+
+    fetcher.complete(1);
+    assertThat(subscriber.values, is(Arrays.asList(0, 1, 2, 3)));
+    assertThat(fetcher.requests.size(), is(2));
+    assertThat(subscriber.completed, is(false));
+
+    subscriber.subscription.request(10);
+    fetcher.complete(2);
+    assertThat(subscriber.values, is(Arrays.asList(0, 1, 2, 3, 4)));
+    assertThat(subscriber.completed, is(true));
+    assertThat(fetcher.requests.size(), is(3));
+  }
+
+  @Test
+  public void completesAfterSingleEmptyPage() throws Exception {
+    ManualFetcher fetcher = new ManualFetcher(0);
+    TestSubscriber subscriber = new TestSubscriber();
+
+    PagedPublisher.from(fetcher).subscribe(subscriber);
+    subscriber.subscription.request(1);
+    fetcher.complete(0);
+
+    assertThat(subscriber.values.isEmpty(), is(true));
+    assertThat(subscriber.completed, is(true));
+  }
+
+  @Test
+  public void publishesFetchFailureAsError() throws Exception {
+    ManualFetcher fetcher = new ManualFetcher(5);
+    TestSubscriber subscriber = new TestSubscriber();
+
+    PagedPublisher.from(fetcher).subscribe(subscriber);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    fetcher.complete(0);
+    fetcher
+        .requests
+        .get(1)
+        .completeExceptionally(new ErrorResponseException(ApiError.of("c", "t")));
+
+    assertThat(subscriber.values, is(Arrays.asList(0, 1)));
+    assertThat(subscriber.error, is(instanceOf(ErrorResponseException.class)));
+    assertThat(subscriber.completed, is(false));
+  }
+
+  @Test
+  public void wrapsCheckedFetchFailure() throws Exception {
+    ManualFetcher fetcher = new ManualFetcher(5);
+    TestSubscriber subscriber = new TestSubscriber();
+
+    PagedPublisher.from(fetcher).subscribe(subscriber);
+    subscriber.subscription.request(1);
+    fetcher.requests.get(0).completeExceptionally(new IOException("fail"));
+
+    assertThat(subscriber.error, is(instanceOf(ConcurrentException.class)));
+    assertThat(subscriber.error.getCause(), is(instanceOf(IOException.class)));
+  }
+
+  @Test
+  public void cancelCancelsPendingFetch() throws Exception {
+    ManualFetcher fetcher = new ManualFetcher(5);
+    TestSubscriber subscriber = new TestSubscriber();
+
+    PagedPublisher.from(fetcher).subscribe(subscriber);
+    subscriber.subscription.request(1);
+    subscriber.subscription.cancel();
+
+    assertThat(fetcher.requests.get(0).isCancelled(), is(true));
+
+    subscriber.subscription.request(1);
+    assertThat(fetcher.requests.size(), is(1));
+    assertThat(subscriber.error, is(nullValue()));
+    assertThat(subscriber.completed, is(false));
+  }
+
+  @Test
+  public void rejectsNonPositiveRequest() throws Exception {
+    ManualFetcher fetcher = new ManualFetcher(5);
+    TestSubscriber subscriber = new TestSubscriber();
+
+    PagedPublisher.from(fetcher).subscribe(subscriber);
+    subscriber.subscription.request(0);
+
+    assertThat(subscriber.error, is(instanceOf(IllegalArgumentException.class)));
+  }
+
+  @Test
+  public void canPublishPagesCompletedOnOtherThreads() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    try {
+      PagedFetcher<Integer> fetcher =
+          new PagedFetcher<Integer>() {
+
+            @Override
+            Future<Page<Integer>> fetchAsync(
+                final int page, FutureCallback<Page<Integer>> callback) {
+              return notifying(
+                  CompletableFuture.supplyAsync(
+                      () -> page(page, Arrays.asList(3 * page, 3 * page + 1, 3 * page + 2), 300),
+                      executor),
+                  callback);
+            }
+          };
+
+      final TestSubscriber subscriber =
+          new TestSubscriber() {
+
+            @Override
+            public void onNext(Integer t) {
+              super.onNext(t);
+              subscription.request(1);
+            }
+          };
+
+      PagedPublisher.from(fetcher).subscribe(subscriber);
+      subscriber.subscription.request(1);
+
+      assertThat(subscriber.done.await(10, TimeUnit.SECONDS), is(true));
+      assertThat(subscriber.completed, is(true));
+      assertThat(subscriber.values.size(), is(300));
+
+      for (int i = 0; i < 300; i++) {
+        assertThat(subscriber.values.get(i), is(i));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Notifies the callback when the given future completes, like a real fetcher would. */
+  private static CompletableFuture<Page<Integer>> notifying(
+      CompletableFuture<Page<Integer>> future, final FutureCallback<Page<Integer>> callback) {
+    future.whenComplete(
+        (page, t) -> {
+          if (callback == null) {
+            return;
+          } else if (t == null) {
+            callback.completed(page);
+          } else if (t instanceof CancellationException) {
+            callback.cancelled();
+          } else {
+            callback.failed(
+                t instanceof CompletionException ? (Exception) t.getCause() : (Exception) t);
+          }
+        });
+
+    return future;
+  }
+
+  private static Page<Integer> page(
+      final int pageNum, final List<Integer> content, final int totalSize) {
+    return new Page<Integer>() {
+
+      @Override
+      public int page() {
+        return pageNum;
+      }
+
+      @Override
+      public int size() {
+        return content.size();
+      }
+
+      @Override
+      public int totalSize() {
+        return totalSize;
+      }
+
+      @Override
+      public List<Integer> content() {
+        return content;
+      }
+    };
+  }
+}
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+  private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+  @Test
+  public void unlimitedLimiterNeverDelays() throws Exception {
+    RateLimiter limiter = RateLimiter.builder().clock(now::get).build();
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(limiter.reserve(100), is(0L));
+    }
+  }
+
+  @Test
+  public void spacesRequestsEvenly() throws Exception {
+    RateLimiter limiter = RateLimiter.builder().requestsPerSecond(10).clock(now::get).build();
+
+    assertThat(limiter.reserve(0), is(0L));
+    assertThat(limiter.reserve(0), is(TimeUnit.MILLISECONDS.toNanos(100)));
+    assertThat(limiter.reserve(0), is(TimeUnit.MILLISECONDS.toNanos(200)));
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+    assertThat(limiter.reserve(0), is(0L));
+  }
+
+  @Test
+  public void allowsBurst() throws Exception {
+    RateLimiter limiter =
+        RateLimiter.builder()
+            .requestsPerSecond(10)
+            .burst(Duration.ofMillis(500))
+            .clock(now::get)
+            .build();
+
+    for (int i = 0; i < 6; i++) {
+      assertThat(limiter.reserve(0), is(0L));
+    }
+
+    assertThat(limiter.reserve(0), is(TimeUnit.MILLISECONDS.toNanos(100)));
+  }
+
+  @Test
+  public void metersRecipients() throws Exception {
+    RateLimiter limiter = RateLimiter.builder().recipientsPerSecond(100).clock(now::get).build();
+
+    assertThat(limiter.reserve(50), is(0L));
+    assertThat(limiter.reserve(50), is(TimeUnit.MILLISECONDS.toNanos(500)));
+  }
+
+  @Test
+  public void rejectsInRejectMode() throws Exception {
+    RateLimiter limiter =
+        RateLimiter.builder()
+            .requestsPerSecond(10)
+            .recipientsPerSecond(100)
+            .mode(RateLimiter.Mode.REJECT)
+            .clock(now::get)
+            .build();
+
+    assertThat(limiter.reserve(10), is(0L));
+
+    try {
+      limiter.reserve(10);
+      fail("Expected exception, got none");
+    } catch (RateLimitExceededException e) {
+      assertThat(e.getRetryAfter(), is(Duration.ofMillis(100)));
+    }
+
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+    assertThat(limiter.reserve(10), is(0L));
+  }
+
+  @Test
+  public void rejectsDelayBeyondMaximum() throws Exception {
+    RateLimiter limiter =
+        RateLimiter.builder()
+            .requestsPerSecond(1)
+            .maxDelay(Duration.ofSeconds(1))
+            .clock(now::get)
+            .build();
+
+    assertThat(limiter.reserve(0), is(0L));
+    assertThat(limiter.reserve(0), is(TimeUnit.SECONDS.toNanos(1)));
+
+    try {
+      limiter.reserve(0);
+      fail("Expected exception, got none");
+    } catch (RateLimitExceededException e) {
+      assertThat(e.getRetryAfter(), is(Duration.ofSeconds(2)));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeRate() throws Exception {
+    RateLimiter.builder().requestsPerSecond(-1);
+  }
+}
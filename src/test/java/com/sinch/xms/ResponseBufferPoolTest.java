@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ResponseBufferPoolTest {
+
+  @Test
+  public void allocatesOnMissAndReusesOnHit() throws Exception {
+    ResponseBufferPool pool = ResponseBufferPool.builder().build();
+
+    byte[] first = pool.acquire();
+
+    assertThat(first.length, is(1024));
+    assertThat(pool.misses(), is(1L));
+
+    pool.release(first, 100);
+
+    assertThat(pool.pooledBytes(), is(1024L));
+    assertThat(pool.acquire(), is(sameInstance(first)));
+    assertThat(pool.hits(), is(1L));
+    assertThat(pool.pooledBytes(), is(0L));
+  }
+
+  @Test
+  public void discardsBuffersBeyondMaxPooledBytes() throws Exception {
+    ResponseBufferPool pool = ResponseBufferPool.builder().maxPooledBytes(1024).build();
+
+    byte[] first = pool.acquire();
+    byte[] second = pool.acquire();
+
+    assertThat(second, is(not(sameInstance(first))));
+
+    pool.release(first, 100);
+    pool.release(second, 100);
+
+    assertThat(pool.pooledBytes(), is(1024L));
+    assertThat(pool.discards(), is(1L));
+  }
+
+  @Test
+  public void adaptsBufferSizeToResponseSizes() throws Exception {
+    ResponseBufferPool pool = ResponseBufferPool.builder().build();
+
+    for (int i = 0; i < 256; i++) {
+      pool.release(pool.acquire(), 10000);
+    }
+
+    assertThat(pool.bufferSize(), is(16384));
+    assertThat(pool.acquire().length, is(16384));
+  }
+
+  @Test
+  public void limitsBufferSizeToMaximum() throws Exception {
+    ResponseBufferPool pool =
+        ResponseBufferPool.builder().minBufferSize(512).maxBufferSize(4096).build();
+
+    assertThat(pool.bufferSize(), is(512));
+
+    for (int i = 0; i < 256; i++) {
+      pool.release(pool.acquire(), 1000000);
+    }
+
+    assertThat(pool.bufferSize(), is(4096));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMinAboveMax() throws Exception {
+    ResponseBufferPool.builder().minBufferSize(8192).maxBufferSize(1024).build();
+  }
+}
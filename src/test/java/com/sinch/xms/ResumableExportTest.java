@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResumableExportTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final OffsetDateTime start = OffsetDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+  private final DeliveryReportFilter filter =
+      SinchSMSApi.deliveryReportFilter().startDate(start).endDate(start.plusHours(60)).build();
+
+  private final ApiConnection conn =
+      ApiConnection.builder().servicePlanId("spid").token("tok").build();
+
+  @Test(expected = IllegalStateException.class)
+  public void requiresConnection() throws Exception {
+    ResumableExport.deliveryReports(filter).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void requiresFilterDates() throws Exception {
+    ResumableExport.deliveryReports(SinchSMSApi.deliveryReportFilter().startDate(start).build());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveWindowLength() throws Exception {
+    ResumableExport.deliveryReports(filter).windowLength(Duration.ZERO);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsPartialDayWindowsForInbounds() throws Exception {
+    InboundsFilter inbounds =
+        SinchSMSApi.inboundsFilter()
+            .startDate(LocalDate.of(2024, 1, 1))
+            .endDate(LocalDate.of(2024, 1, 3))
+            .build();
+
+    ResumableExport.inbounds(inbounds).connection(conn).windowLength(Duration.ofHours(12)).build();
+  }
+
+  @Test
+  public void splitsRangeIntoWindows() throws Exception {
+    ExportCheckpoint checkpoint =
+        ResumableExport.deliveryReports(filter).connection(conn).build().initialCheckpoint();
+
+    List<OffsetDateTime> starts =
+        checkpoint.windows().stream()
+            .map(ExportCheckpoint.Window::start)
+            .collect(Collectors.toList());
+
+    assertThat(starts, is(Arrays.asList(start, start.plusDays(1), start.plusDays(2))));
+    assertThat(checkpoint.windows().get(2).end(), is(start.plusHours(60)));
+    assertThat(checkpoint.filter(), is(filter.toString()));
+    assertThat(checkpoint.isComplete(), is(false));
+  }
+
+  @Test
+  public void completesImmediatelyFromCompleteCheckpoint() throws Exception {
+    ExportCheckpointStore store =
+        ExportCheckpointStore.file(folder.getRoot().toPath().resolve("c"));
+
+    ExportCheckpoint done =
+        ExportCheckpoint.builder()
+            .filter(filter.toString())
+            .addWindow(
+                ExportCheckpoint.Window.builder()
+                    .start(start)
+                    .end(start.plusHours(60))
+                    .nextPage(3)
+                    .seenElements(300)
+                    .done(true)
+                    .build())
+            .build();
+
+    store.save(done);
+
+    ExportCheckpoint actual =
+        ResumableExport.deliveryReports(filter)
+            .connection(conn)
+            .checkpointStore(store)
+            .build()
+            .run(
+                page -> {
+                  throw new AssertionError("unexpected page");
+                });
+
+    assertThat(actual, is(done));
+  }
+
+  @Test
+  public void failsWhenFetchThrows() throws Exception {
+    ApiConnection throwing =
+        ApiConnection.builder()
+            .servicePlanId("spid")
+            .token("tok")
+            .httpClient(new ThrowingClient())
+            .build();
+
+    CompletableFuture<ExportCheckpoint> future =
+        ResumableExport.deliveryReports(filter)
+            .connection(throwing)
+            .checkpointStore(ExportCheckpointStore.file(folder.getRoot().toPath().resolve("c")))
+            .maxConcurrency(2)
+            .build()
+            .runAsync(
+                page -> {
+                  throw new AssertionError("unexpected page");
+                });
+
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail("expected failure");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+      assertThat(e.getCause().getMessage(), is("client is closed"));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsCheckpointOfOtherFilter() throws Exception {
+    ExportCheckpointStore store =
+        ExportCheckpointStore.file(folder.getRoot().toPath().resolve("c"));
+
+    store.save(ExportCheckpoint.builder().filter("other").build());
+
+    ResumableExport.deliveryReports(filter)
+        .connection(conn)
+        .checkpointStore(store)
+        .build()
+        .runAsync(page -> {});
+  }
+}
@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+  private static UnexpectedResponseException response(int status) {
+    return new UnexpectedResponseException(
+        new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "status"));
+  }
+
+  private static UnexpectedResponseException response(int status, String retryAfter) {
+    BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "status");
+    response.addHeader("Retry-After", retryAfter);
+    return new UnexpectedResponseException(response);
+  }
+
+  @Test
+  public void retriesRetryableStatus() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().jitter(0).build();
+
+    assertThat(policy.retryDelay(1, response(503)), is(TimeUnit.MILLISECONDS.toNanos(100)));
+    assertThat(policy.retryDelay(2, response(429)), is(TimeUnit.MILLISECONDS.toNanos(200)));
+    assertThat(policy.retries(), is(2L));
+  }
+
+  @Test
+  public void retriesIOException() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().build();
+
+    assertThat(policy.retryDelay(1, new IOException("connection reset")) >= 0, is(true));
+  }
+
+  @Test
+  public void doesNotRetryOtherFailures() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().build();
+
+    assertThat(policy.retryDelay(1, response(501)), is(-1L));
+    assertThat(policy.retryDelay(1, new UnauthorizedException()), is(-1L));
+    assertThat(policy.retries(), is(0L));
+  }
+
+  @Test
+  public void stopsAfterMaxAttempts() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().maxAttempts(2).build();
+
+    assertThat(policy.retryDelay(1, response(503)) >= 0, is(true));
+    assertThat(policy.retryDelay(2, response(503)), is(-1L));
+  }
+
+  @Test
+  public void capsBackoff() throws Exception {
+    RetryPolicy policy =
+        RetryPolicy.builder().jitter(0).maxAttempts(100).maxBackoff(Duration.ofSeconds(1)).build();
+
+    assertThat(policy.backoff(50), is(TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  @Test
+  public void jitterStaysWithinBackoff() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().build();
+
+    for (int i = 0; i < 100; i++) {
+      long backoff = policy.backoff(3);
+      assertThat(backoff >= 0 && backoff <= TimeUnit.MILLISECONDS.toNanos(400), is(true));
+    }
+  }
+
+  @Test
+  public void respectsRetryAfter() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().build();
+
+    assertThat(policy.retryDelay(1, response(503, "3")), is(TimeUnit.SECONDS.toNanos(3)));
+    assertThat(policy.retryDelay(1, response(503, "3600")), is(-1L));
+  }
+
+  @Test
+  public void canIgnoreRetryAfter() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().jitter(0).respectRetryAfter(false).build();
+
+    assertThat(policy.retryDelay(1, response(503, "3")), is(TimeUnit.MILLISECONDS.toNanos(100)));
+  }
+
+  @Test
+  public void limitsRetriesByBudget() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().budgetReserve(2).budgetRatio(0.5).build();
+
+    assertThat(policy.retryDelay(1, response(503)) >= 0, is(true));
+    assertThat(policy.retryDelay(1, response(503)) >= 0, is(true));
+    assertThat(policy.retryDelay(1, response(503)), is(-1L));
+    assertThat(policy.budgetRejections(), is(1L));
+
+    policy.recordRequest();
+    assertThat(policy.retryDelay(1, response(503)), is(-1L));
+
+    policy.recordRequest();
+    assertThat(policy.retryDelay(1, response(503)) >= 0, is(true));
+  }
+}
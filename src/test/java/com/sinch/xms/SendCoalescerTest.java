@@ -0,0 +1,55 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import org.junit.Test;
+
+public class SendCoalescerTest {
+
+  @Test(expected = IllegalStateException.class)
+  public void requiresConnection() throws Exception {
+    SendCoalescer.builder().build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveMaxDelay() throws Exception {
+    SendCoalescer.builder().maxDelay(Duration.ZERO);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveMaxBatchSize() throws Exception {
+    SendCoalescer.builder().maxBatchSize(0);
+  }
+
+  @Test
+  public void hasDefaults() throws Exception {
+    SendCoalescer coalescer =
+        SendCoalescer.builder()
+            .connection(ApiConnection.builder().servicePlanId("spid").token("tok").build())
+            .build();
+
+    assertThat(coalescer.maxDelay(), is(Duration.ofMillis(10)));
+    assertThat(coalescer.maxBatchSize(), is(1000));
+  }
+}
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.sinch.xms.api.MtBatchTextSmsCreate;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.http.nio.ContentEncoder;
+import org.junit.Test;
+
+public class StreamingJsonEntityTest {
+
+  /** An encoder accepting a limited number of bytes per write, like a saturated channel. */
+  private static final class LimitedEncoder implements ContentEncoder {
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    private final int limit;
+
+    private boolean completed = false;
+
+    LimitedEncoder(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      int n = Math.min(limit, src.remaining());
+
+      for (int i = 0; i < n; i++) {
+        written.write(src.get());
+      }
+
+      return n;
+    }
+
+    @Override
+    public void complete() {
+      completed = true;
+    }
+
+    @Override
+    public boolean isCompleted() {
+      return completed;
+    }
+  }
+
+  private final ApiObjectMapper json = new ApiObjectMapper();
+
+  private final MtBatchTextSmsCreate batch = largeBatch(5000);
+
+  private static MtBatchTextSmsCreate largeBatch(int recipients) {
+    List<String> to = new ArrayList<String>();
+
+    for (int i = 0; i < recipients; i++) {
+      to.add(String.format("467%08d", i));
+    }
+
+    return SinchSMSApi.batchTextSms()
+        .sender("12345")
+        .recipients(to)
+        .body("Hello, ${name}! åäö €")
+        .putParameter(
+            "name",
+            SinchSMSApi.parameterValues()
+                .putSubstitution(to.get(0), "Jane")
+                .defaultValue("world")
+                .build())
+        .build();
+  }
+
+  /** Produces the whole entity, returning the number of produce calls needed. */
+  private static int produce(StreamingJsonEntity entity, LimitedEncoder encoder) throws Exception {
+    int calls = 0;
+
+    while (!encoder.isCompleted()) {
+      entity.produceContent(encoder, null);
+      calls++;
+    }
+
+    return calls;
+  }
+
+  @Test
+  public void producesSameJsonAsMapper() throws Exception {
+    StreamingJsonEntity entity = new StreamingJsonEntity(new JsonCodecs(json), batch);
+    LimitedEncoder encoder = new LimitedEncoder(Integer.MAX_VALUE);
+
+    assertThat(produce(entity, encoder), is(1));
+    assertThat(encoder.written.toByteArray(), is(json.writeValueAsBytes(batch)));
+  }
+
+  @Test
+  public void resumesWhenChannelIsSaturated() throws Exception {
+    StreamingJsonEntity entity = new StreamingJsonEntity(new JsonCodecs(json), batch);
+    LimitedEncoder encoder = new LimitedEncoder(1000);
+
+    byte[] expected = json.writeValueAsBytes(batch);
+
+    assertThat(
+        produce(entity, encoder) > expected.length / StreamingJsonEntity.CHUNK_SIZE, is(true));
+    assertThat(encoder.written.toByteArray(), is(expected));
+  }
+
+  @Test
+  public void canProduceAgainAfterClose() throws Exception {
+    StreamingJsonEntity entity = new StreamingJsonEntity(new JsonCodecs(json), batch);
+
+    produce(entity, new LimitedEncoder(100));
+    entity.close();
+
+    LimitedEncoder encoder = new LimitedEncoder(Integer.MAX_VALUE);
+    produce(entity, encoder);
+
+    assertThat(entity.isRepeatable(), is(true));
+    assertThat(encoder.written.toByteArray(), is(json.writeValueAsBytes(batch)));
+  }
+
+  @Test
+  public void canWriteToStream() throws Exception {
+    StreamingJsonEntity entity = new StreamingJsonEntity(new JsonCodecs(json), batch);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    entity.writeTo(out);
+
+    assertThat(entity.isChunked(), is(true));
+    assertThat(out.toByteArray(), is(json.writeValueAsBytes(batch)));
+  }
+}
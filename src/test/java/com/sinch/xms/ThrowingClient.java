@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import java.util.concurrent.Future;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+/** An HTTP client that fails to issue any request, as if it had been closed. */
+class ThrowingClient implements HttpAsyncClient {
+
+  @Override
+  public <T> Future<T> execute(
+      HttpAsyncRequestProducer requestProducer,
+      HttpAsyncResponseConsumer<T> responseConsumer,
+      HttpContext context,
+      FutureCallback<T> callback) {
+    throw new IllegalStateException("client is closed");
+  }
+
+  @Override
+  public <T> Future<T> execute(
+      HttpAsyncRequestProducer requestProducer,
+      HttpAsyncResponseConsumer<T> responseConsumer,
+      FutureCallback<T> callback) {
+    return execute(requestProducer, responseConsumer, null, callback);
+  }
+
+  @Override
+  public Future<HttpResponse> execute(
+      HttpHost target,
+      HttpRequest request,
+      HttpContext context,
+      FutureCallback<HttpResponse> callback) {
+    throw new IllegalStateException("client is closed");
+  }
+
+  @Override
+  public Future<HttpResponse> execute(
+      HttpHost target, HttpRequest request, FutureCallback<HttpResponse> callback) {
+    return execute(target, request, null, callback);
+  }
+
+  @Override
+  public Future<HttpResponse> execute(
+      HttpUriRequest request, HttpContext context, FutureCallback<HttpResponse> callback) {
+    throw new IllegalStateException("client is closed");
+  }
+
+  @Override
+  public Future<HttpResponse> execute(
+      HttpUriRequest request, FutureCallback<HttpResponse> callback) {
+    return execute(request, null, callback);
+  }
+}
@@ -0,0 +1,130 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.pholser.junit.quickcheck.Property;
+import com.pholser.junit.quickcheck.generator.InRange;
+import com.pholser.junit.quickcheck.runner.JUnitQuickcheck;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitQuickcheck.class)
+public class TimingWheelTest {
+
+  @Property
+  public void expiresTimersAtTheirDeadline(
+      List<@InRange(minLong = 0, maxLong = 300000) Long> deadlines,
+      @InRange(minLong = 0, maxLong = 100000) long start,
+      @InRange(minInt = 1, maxInt = 5000) int step) {
+    TimingWheel<Long> wheel = new TimingWheel<Long>(3, start);
+
+    for (Long deadline : deadlines) {
+      wheel.schedule(start + deadline, start + deadline);
+    }
+
+    long end = start + 300000;
+
+    while (wheel.now() < end) {
+      final long from = wheel.now();
+      final long to = Math.min(end, from + step);
+
+      wheel.advance(
+          to,
+          deadline -> {
+            // A timer expires during the advance covering its deadline, never earlier or later.
+            assertThat((deadline > from || deadline == start) && deadline <= to, is(true));
+            assertThat(deadline <= wheel.now(), is(true));
+          });
+    }
+
+    assertThat(wheel.size(), is(0));
+  }
+
+  @Test
+  public void expiresTimersInDeadlineOrder() {
+    TimingWheel<Integer> wheel = new TimingWheel<Integer>(2, 0);
+    List<Integer> expired = new ArrayList<Integer>();
+
+    wheel.schedule(3, 4000);
+    wheel.schedule(1, 70);
+    wheel.schedule(2, 65);
+    wheel.schedule(0, 10);
+
+    wheel.advance(4000, expired::add);
+
+    assertThat(expired, is(Arrays.asList(0, 2, 1, 3)));
+    assertThat(wheel.now(), is(4000L));
+  }
+
+  @Test
+  public void expiresPastDeadlinesAtNextTick() {
+    TimingWheel<String> wheel = new TimingWheel<String>(2, 100);
+    List<String> expired = new ArrayList<String>();
+
+    TimingWheel.Timer<String> timer = wheel.schedule("late", 50);
+
+    assertThat(timer.deadline(), is(101L));
+
+    wheel.advance(101, expired::add);
+
+    assertThat(expired, is(Arrays.asList("late")));
+  }
+
+  @Test
+  public void keepsTimersBeyondItsRange() {
+    TimingWheel<String> wheel = new TimingWheel<String>(1, 0);
+    List<String> expired = new ArrayList<String>();
+
+    wheel.schedule("far", 1000);
+
+    wheel.advance(999, expired::add);
+    assertThat(expired.isEmpty(), is(true));
+
+    wheel.advance(1000, expired::add);
+    assertThat(expired, is(Arrays.asList("far")));
+  }
+
+  @Test
+  public void cancelledTimersDoNotExpire() {
+    TimingWheel<String> wheel = new TimingWheel<String>(2, 0);
+    List<String> expired = new ArrayList<String>();
+
+    TimingWheel.Timer<String> a = wheel.schedule("a", 100);
+    TimingWheel.Timer<String> b = wheel.schedule("b", 100);
+    TimingWheel.Timer<String> c = wheel.schedule("c", 100);
+
+    assertThat(wheel.cancel(b), is(true));
+    assertThat(wheel.cancel(b), is(false));
+    assertThat(wheel.size(), is(2));
+
+    wheel.advance(200, expired::add);
+
+    assertThat(expired.size(), is(2));
+    assertThat(expired.contains("b"), is(false));
+    assertThat(wheel.cancel(a), is(false));
+    assertThat(wheel.cancel(c), is(false));
+  }
+}
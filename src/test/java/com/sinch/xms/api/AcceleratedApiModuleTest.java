@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms.api;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.sinch.xms.ApiObjectMapper;
+import com.sinch.xms.SinchSMSApi;
+import com.sinch.xms.Utils;
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import org.junit.Test;
+
+public class AcceleratedApiModuleTest {
+
+  private final ApiObjectMapper plain = new ApiObjectMapper(false);
+
+  private final ApiObjectMapper accelerated = new ApiObjectMapper(false, true);
+
+  private final OffsetDateTime time =
+      OffsetDateTime.of(2016, 10, 2, 9, 34, 28, 542000000, ZoneOffset.UTC);
+
+  @Test
+  public void serializesTextBatchLikeReflectiveSerializer() throws Exception {
+    MtBatchTextSmsCreate input =
+        SinchSMSApi.batchTextSms()
+            .sender("12345")
+            .addRecipient("987654321", "123456789")
+            .body("Hello, ${name}")
+            .putParameter(
+                "name",
+                SinchSMSApi.parameterValues()
+                    .putSubstitution("987654321", "Jane")
+                    .defaultValue("world")
+                    .build())
+            .flashMessage(true)
+            .maxNumberOfMessageParts(2)
+            .dltPrincipalEntity("entity")
+            .dltTemplateId("template")
+            .senderTon(1)
+            .senderNpi(2)
+            .deliveryReport(ReportType.PER_RECIPIENT)
+            .sendAt(time)
+            .expireAt(time.plusDays(1))
+            .callbackUrl(URI.create("http://localhost/callback"))
+            .feedbackEnabled(false)
+            .clientReference("ref")
+            .build();
+
+    assertThat(accelerated.writeValueAsString(input), is(plain.writeValueAsString(input)));
+    assertThat(
+        new ApiObjectMapper(true, true).writeValueAsString(input),
+        is(new ApiObjectMapper(true).writeValueAsString(input)));
+  }
+
+  @Test
+  public void serializesMinimalTextBatchLikeReflectiveSerializer() throws Exception {
+    MtBatchTextSmsCreate input =
+        SinchSMSApi.batchTextSms().sender("12345").addRecipient("987654321").body("Hi").build();
+
+    assertThat(accelerated.writeValueAsString(input), is(plain.writeValueAsString(input)));
+  }
+
+  @Test
+  public void deserializesTextBatchLikeReflectiveDeserializer() throws Exception {
+    String input =
+        Utils.join(
+                "\n",
+                "{",
+                "  'from': '12345',",
+                "  'to': [ '123456789', '987654321' ],",
+                "  'body': 'Hello, ${name}',",
+                "  'parameters': {",
+                "    'name': { '123456789': 'Joe', 'default': 'world' }",
+                "  },",
+                "  'unknown': { 'nested': [ 1, 2 ] },",
+                "  'delivery_report': 'none',",
+                "  'callbackUrl': 'http://localhost/callback',",
+                "  'send_at': '2016-10-02T09:34:28.542Z',",
+                "  'expire_at': null,",
+                "  'created_at': '2016-10-02T09:34:28.542Z',",
+                "  'modified_at': '2016-10-02T09:34:28.542Z',",
+                "  'canceled': false,",
+                "  'flash_message': true,",
+                "  'max_number_of_message_parts': 3,",
+                "  'from_ton': 1,",
+                "  'from_npi': 2,",
+                "  'client_reference': 'ref',",
+                "  'feedback_enabled': true,",
+                "  'id': '!-@#',",
+                "  'type': 'mt_text'",
+                "}")
+            .replace('\'', '"');
+
+    MtBatchResult expected = plain.readValue(input, MtBatchResult.class);
+    MtBatchResult actual = accelerated.readValue(input, MtBatchResult.class);
+
+    assertThat(actual, is(instanceOf(MtBatchTextSmsResult.class)));
+    assertThat(actual, is(expected));
+    assertThat(accelerated.readValue(input, MtBatchTextSmsResult.class), is(expected));
+  }
+
+  @Test
+  public void deserializesDeliveryReportLikeReflectiveDeserializer() throws Exception {
+    String input =
+        Utils.join(
+                "\n",
+                "{",
+                "  'type': 'recipient_delivery_report_sms',",
+                "  'batch_id': 'batchid',",
+                "  'recipient': '12345',",
+                "  'code': 10,",
+                "  'status': 'Delivered',",
+                "  'status_message': 'status message',",
+                "  'operator': '818181',",
+                "  'at': '2016-10-02T09:34:28.542Z',",
+                "  'operator_status_at': '2016-11-02T09:34:28.542Z',",
+                "  'client_reference': 'client_ref',",
+                "  'encoding': 'GSM',",
+                "  'number_of_message_parts': 1,",
+                "  'applied_originator': 'ignored'",
+                "}")
+            .replace('\'', '"');
+
+    RecipientDeliveryReport expected = plain.readValue(input, RecipientDeliveryReport.class);
+    RecipientDeliveryReport actual = accelerated.readValue(input, RecipientDeliveryReport.class);
+
+    assertThat(actual, is(instanceOf(RecipientDeliveryReportSms.class)));
+    assertThat(actual, is(expected));
+  }
+
+  @Test
+  public void roundTripsOtherTypes() throws Exception {
+    RecipientDeliveryReport input =
+        new RecipientDeliveryReportMms.Builder()
+            .batchId(BatchId.of("batchid"))
+            .recipient("12345")
+            .code(10)
+            .status(DeliveryStatus.DELIVERED)
+            .at(time)
+            .build();
+
+    String json = accelerated.writeValueAsString(input);
+
+    assertThat(json, is(plain.writeValueAsString(input)));
+    assertThat(accelerated.readValue(json, RecipientDeliveryReport.class), is(input));
+  }
+
+  @Test
+  public void usesHandWrittenDeserializers() throws Exception {
+    DeserializationContext ctxt =
+        ((DefaultDeserializationContext) accelerated.getDeserializationContext())
+            .createInstance(
+                accelerated.getDeserializationConfig(), accelerated.createParser("{}"), null);
+
+    assertThat(
+        ctxt.findContextualValueDeserializer(ctxt.constructType(MtBatchTextSmsResult.class), null),
+        is(instanceOf(JacksonUtils.MtBatchTextSmsResultDeserializer.class)));
+    assertThat(
+        ctxt.findContextualValueDeserializer(
+            ctxt.constructType(RecipientDeliveryReportSms.class), null),
+        is(instanceOf(JacksonUtils.RecipientDeliveryReportSmsDeserializer.class)));
+  }
+}
@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms.api;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class CompactParameterValuesTest {
+
+  @Test
+  public void keysAreInterned() throws Exception {
+    CompactParameterValues.Keys keys = new CompactParameterValues.Keys();
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(keys.intern("k" + i), is(i));
+    }
+
+    assertThat(keys.intern("k42"), is(42));
+    assertThat(keys.indexOf("k99"), is(99));
+    assertThat(keys.indexOf("k100"), is(-1));
+    assertThat(keys.size(), is(100));
+  }
+
+  @Test
+  public void substitutionMapBehavesAsMap() throws Exception {
+    CompactParameterValues.Keys keys = new CompactParameterValues.Keys();
+    keys.intern("a");
+    keys.intern("b");
+    keys.intern("c");
+
+    Map<String, String> actual =
+        new CompactParameterValues.SubstitutionMap(keys, new String[] {"1", null, "3"}, 2);
+
+    keys.intern("d");
+
+    Map<String, String> expected = new LinkedHashMap<String, String>();
+    expected.put("a", "1");
+    expected.put("c", "3");
+
+    assertThat(actual, is(expected));
+    assertThat(actual.hashCode(), is(expected.hashCode()));
+    assertThat(actual.containsKey("b"), is(false));
+    assertThat(actual.containsKey("d"), is(false));
+    assertThat(actual.get("c"), is("3"));
+    assertThat(Arrays.asList(actual.keySet().toArray()), is(Arrays.<Object>asList("a", "c")));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void substitutionMapIsUnmodifiable() throws Exception {
+    CompactParameterValues.Keys keys = new CompactParameterValues.Keys();
+    keys.intern("a");
+
+    new CompactParameterValues.SubstitutionMap(keys, new String[] {"1"}, 1).put("a", "2");
+  }
+}
@@ -0,0 +1,173 @@
+/*-
+ * #%L
+ * SDK for Sinch SMS
+ * %%
+ * Copyright (C) 2016 Sinch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.sinch.xms.api;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.sinch.testsupport.TestUtils;
+import com.sinch.xms.ApiObjectMapper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class CompactStatusTest {
+
+  private final ApiObjectMapper plain = new ApiObjectMapper(false);
+
+  private final ApiObjectMapper compact = new ApiObjectMapper(false);
+
+  {
+    compact.registerModule(new CompactRecipientsModule());
+  }
+
+  @Test
+  public void recipientListRoundTripsRecipients() throws Exception {
+    List<String> expected =
+        Arrays.asList(
+            "46701234567",
+            "+46701234567",
+            "0046701234567",
+            "0",
+            "99999999999999999",
+            "+99999999999999999",
+            "999999999999999999",
+            "SINCH",
+            "+",
+            "",
+            "12 34",
+            "räksmörgås");
+
+    CompactStatus.Arena arena = new CompactStatus.Arena();
+    long[] entries = new long[expected.size()];
+
+    for (int i = 0; i < entries.length; i++) {
+      String recipient = expected.get(i);
+      long entry =
+          CompactStatus.RecipientList.encodeNumeric(recipient.toCharArray(), 0, recipient.length());
+
+      if (entry < 0) {
+        byte[] bytes = recipient.getBytes("UTF-8");
+        entry = CompactStatus.RecipientList.encodeArena(arena.append(bytes), bytes.length);
+      }
+
+      entries[i] = entry;
+    }
+
+    List<String> actual = new CompactStatus.RecipientList(arena, entries, entries.length);
+
+    assertThat(actual, is(expected));
+    assertThat(actual.hashCode(), is(expected.hashCode()));
+    assertThat(actual.indexOf("+46701234567"), is(1));
+    assertThat(actual.indexOf("46701234568"), is(-1));
+    assertThat(actual.indexOf("SINCH"), is(7));
+    assertThat(actual.contains("0046701234567"), is(true));
+    assertThat(actual.contains("046701234567"), is(false));
+
+    // Only the recipients that are not numeric are held in the arena.
+    assertThat(arena.size(), is("999999999999999999SINCH+12 34räksmörgås".length() + 3));
+  }
+
+  @Test
+  public void classifiesNumericRecipients() throws Exception {
+    assertThat(encode("123") >= 0, is(true));
+    assertThat(encode("+123") >= 0, is(true));
+    assertThat(encode("+") >= 0, is(false));
+    assertThat(encode("12a") >= 0, is(false));
+    assertThat(encode("1+2") >= 0, is(false));
+    assertThat(encode("123456789012345678") >= 0, is(false));
+    assertThat(encode("0123") == encode("123"), is(false));
+  }
+
+  @Test
+  public void deserializesDeliveryReportLikeReflectiveDeserializer() throws Exception {
+    BatchDeliveryReport report =
+        BatchDeliveryReportSms.builder()
+            .batchId(TestUtils.freshBatchId())
+            .totalMessageCount(5)
+            .addStatus(
+                Status.builder()
+                    .code(0)
+                    .status(DeliveryStatus.DELIVERED)
+                    .count(3)
+                    .addRecipient("46701234567", "+46701234568", "SINCH")
+                    .build())
+            .addStatus(
+                Status.builder()
+                    .code(402)
+                    .status(DeliveryStatus.FAILED)
+                    .count(2)
+                    .addRecipient("4670000000", "räksmörgås")
+                    .build())
+            .addStatus(Status.builder().code(0).status(DeliveryStatus.QUEUED).count(7).build())
+            .build();
+
+    String json = plain.writeValueAsString(report);
+
+    BatchDeliveryReport actual = compact.readValue(json, BatchDeliveryReport.class);
+
+    assertThat(actual, is(report));
+    assertThat(report.equals(actual), is(true));
+    assertThat(actual.hashCode(), is(report.hashCode()));
+    assertThat(actual.statuses().get(0), is(instanceOf(CompactStatus.class)));
+    assertThat(actual.statuses().get(2), is(instanceOf(StatusImpl.class)));
+    assertThat(plain.readTree(compact.writeValueAsString(actual)), is(plain.readTree(json)));
+  }
+
+  @Test
+  public void sharesArenaWithinRead() throws Exception {
+    List<Status> statuses = new ArrayList<Status>();
+
+    for (int i = 0; i < 3; i++) {
+      statuses.add(
+          Status.builder()
+              .code(i)
+              .status(DeliveryStatus.DELIVERED)
+              .count(1)
+              .addRecipient("name" + i)
+              .build());
+    }
+
+    String json =
+        plain.writeValueAsString(
+            BatchDeliveryReportSms.builder()
+                .batchId(TestUtils.freshBatchId())
+                .totalMessageCount(3)
+                .statuses(statuses)
+                .build());
+
+    BatchDeliveryReport actual = compact.readValue(json, BatchDeliveryReport.class);
+
+    assertThat(actual.statuses(), is(statuses));
+    assertThat(actual.statuses().get(2).recipients().get(0), is("name2"));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void rejectsIndexBeyondSize() throws Exception {
+    new CompactStatus.RecipientList(new CompactStatus.Arena(), new long[4], 2).get(2);
+  }
+
+  private static long encode(String recipient) {
+    return CompactStatus.RecipientList.encodeNumeric(
+        recipient.toCharArray(), 0, recipient.length());
+  }
+}
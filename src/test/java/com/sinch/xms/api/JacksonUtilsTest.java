@@ -19,14 +19,21 @@
  */
 package com.sinch.xms.api;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
 import com.fasterxml.jackson.databind.exc.InvalidFormatException;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import com.sinch.xms.ApiObjectMapper;
+import com.sinch.xms.SinchSMSApi;
+import java.util.Map;
 import org.junit.Test;
 
 public class JacksonUtilsTest {
@@ -59,6 +66,62 @@ public class JacksonUtilsTest {
     mapper.readValue("\"0001g2030405\"", byte[].class);
   }
 
+  @Test
+  public void parameterValuesDeserializerCanDeserialize() throws Exception {
+    String input = "{\"123\":\"Joe\",\"default\":\"you\",\"456\":7}";
+
+    ParameterValues expected =
+        SinchSMSApi.parameterValues()
+            .putSubstitution("123", "Joe")
+            .putSubstitution("456", "7")
+            .defaultValue("you")
+            .build();
+
+    ParameterValues actual = new ApiObjectMapper().readValue(input, ParameterValues.class);
+
+    assertThat(actual, is(expected));
+    assertThat(expected, is(actual));
+    assertThat(actual.hashCode(), is(expected.hashCode()));
+    assertThat(actual.toString(), is(expected.toString()));
+  }
+
+  @Test
+  public void parameterValuesDeserializerSharesKeysBetweenParameters() throws Exception {
+    String input = "{\"a\":{\"123\":\"x1\",\"456\":\"x2\"},\"b\":{\"456\":\"y2\",\"123\":\"y1\"}}";
+
+    Map<String, ParameterValues> actual =
+        new ApiObjectMapper()
+            .readValue(input, new TypeReference<Map<String, ParameterValues>>() {});
+
+    ParameterValues a = actual.get("a");
+    ParameterValues b = actual.get("b");
+
+    assertThat(a, is(instanceOf(CompactParameterValues.class)));
+    assertThat(b, is(instanceOf(CompactParameterValues.class)));
+    assertThat(b.substitutions().get("123"), is("y1"));
+    assertThat(b.substitutions().get("789"), is((String) null));
+    assertThat(
+        a.substitutions().keySet().iterator().next(),
+        is(sameInstance(b.substitutions().keySet().iterator().next())));
+  }
+
+  @Test
+  public void parameterValuesDeserializerUsesRegularMapForSparseParameters() throws Exception {
+    String input =
+        "{\"a\":{\"1\":\"x\",\"2\":\"x\",\"3\":\"x\",\"4\":\"x\",\"5\":\"x\"},"
+            + "\"b\":{\"1\":\"y\",\"default\":\"z\"}}";
+
+    Map<String, ParameterValues> actual =
+        new ApiObjectMapper()
+            .readValue(input, new TypeReference<Map<String, ParameterValues>>() {});
+
+    ParameterValues expected =
+        SinchSMSApi.parameterValues().putSubstitution("1", "y").defaultValue("z").build();
+
+    assertThat(actual.get("b"), is(not(instanceOf(CompactParameterValues.class))));
+    assertThat(actual.get("b"), is(expected));
+  }
+
   private static <T> ObjectMapper serMapper(StdScalarSerializer<T> ser) {
     SimpleModule module = new SimpleModule().addSerializer(ser.handledType(), ser);
     return new ObjectMapper().registerModule(module);